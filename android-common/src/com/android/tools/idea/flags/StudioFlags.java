@@ -150,11 +150,22 @@ public final class StudioFlags {
     "Support method tracing through APIs from android.os.Debug.",
     true);
 
+  public static final Flag<Boolean> PROFILER_CPU_CAPTURE_ARCHIVE = Flag.create(
+    PROFILER, "cpu.capture.archive", "Archive parsed CPU traces",
+    "Save the parsed call trees of imported CPU traces in the system directory, so that importing the trace again maps them instead of " +
+    "parsing the trace.",
+    false);
+
   public static final Flag<Boolean> PROFILER_MEMORY_CAPTURE_FILTER = Flag.create(
     PROFILER, "memory.capture.filter", "Enable Memory Capture Filter",
     "Show a text input field in the Memory profiler that is used to filter class names.",
     true);
 
+  public static final Flag<Boolean> PROFILER_LAZY_HEAP_DUMP_LOADING = Flag.create(
+    PROFILER, "memory.heapdump.lazy", "Enable Lazy Heap Dump Loading",
+    "Map heap dumps from disk and compute their retained sizes in the background, after the heap dump is shown.",
+    false);
+
   public static final Flag<Boolean> PROFILER_USE_LIVE_ALLOCATIONS = Flag.create(
     PROFILER, "livealloc", "Enable JVMTI-based live allocation tracking",
     "For Android O or newer, allocations are tracked all the time while inside the Memory Profiler.",
@@ -181,6 +192,12 @@ public final class StudioFlags {
     "based recording on device.",
     true);
 
+  public static final Flag<Boolean> PROFILER_PERFETTO_DIRECT_IMPORT = Flag.create(
+    PROFILER, "perfetto.direct.import", "Import perfetto traces directly",
+    "Build the model of perfetto traces from their decoded ftrace events, instead of converting them to systrace lines, sorting the " +
+    "lines and parsing them back.",
+    false);
+
   public static final Flag<Boolean> PROFILER_TRACK_JNI_REFS = Flag.create(
     PROFILER, "jni", "Enable JVMTI-based JNI reference tracking.",
     "For Android O or newer, JNI references are tracked in Memory Profiler and shown in JNI heap.",
@@ -256,6 +273,18 @@ public final class StudioFlags {
     "Enable experimental version of the Scout inference system",
     false);
 
+  public static final Flag<Boolean> NELE_RENDER_CLASS_CACHE = Flag.create(
+    NELE, "render.class.cache", "Cache the classes rewritten for rendering",
+    "If enabled, the classes rewritten for the render class loaders are cached in memory and on disk, keyed by their contents, " +
+    "so that class loaders created after a build only need to rewrite the classes that changed.",
+    true);
+
+  public static final Flag<Boolean> NELE_INCREMENTAL_RESOURCE_CLASSES = Flag.create(
+    NELE, "incremental.resource.classes", "Regenerate only the R classes affected by resource changes",
+    "If enabled, the R classes generated for rendering are kept per resource type and library, and after a resource change " +
+    "only the types whose fields changed are regenerated.",
+    true);
+
   public static final Flag<Boolean> NELE_RENDER_DIAGNOSTICS = Flag.create(
     NELE, "diagnostics", "Enable rendering on-screen stats",
     "If enabled, the surface displays some debug information to diagnose performance",
@@ -425,6 +454,13 @@ public final class StudioFlags {
   public static final Flag<Boolean> KOTLIN_DSL_PARSING = Flag.create(
     GRADLE_IDE, "kotlin.dsl", "Enable parsing for Kotlin build files",
     "Enables parsing for Gradle build files written using Kotlin (.gradle.kts)", false);
+  public static final Flag<Boolean> PRECOMPUTE_MERGED_MANIFESTS = Flag.create(
+    GRADLE_IDE, "merged.manifest.precompute", "Precompute merged manifests after sync",
+    "Computes the merged manifests of all Android modules in the background after each sync, libraries first.", true);
+  public static final Flag<Boolean> GRADLE_DSL_INCREMENTAL_PARSING = Flag.create(
+    GRADLE_IDE, "dsl.incremental.parsing", "Parse Gradle build files incrementally",
+    "Loads the PSI of module build files in parallel before building their models, and only re-parses the build files " +
+    "which changed (and the files depending on them) when a project build model is re-parsed.", true);
 
   // REMOVE or change default to true after http://b/80245603 is fixed.
   public static final Flag<Boolean> L4_DEPENDENCY_MODEL = Flag.create(
@@ -608,6 +644,39 @@ public final class StudioFlags {
     true
   );
 
+  public static final Flag<Boolean> ASYNC_GUTTER_ICONS = Flag.create(
+    EDITOR, "async.gutter.icons",
+    "Render gutter icons in the background",
+    "If enabled, drawable gutter icons that are not cached yet are rendered on a background thread while a placeholder is painted, " +
+    "instead of being rendered while the editor paints.",
+    true
+  );
+
+  //endregion
+
+  //region Lint
+  private static final FlagGroup LINT = new FlagGroup(FLAGS, "lint", "Lint");
+
+  public static final Flag<Boolean> LINT_PARALLEL_BATCH = Flag.create(
+    LINT, "parallel.batch",
+    "Run batch lint analysis in parallel",
+    "If enabled, \"Inspect Code\" runs single-file lint checks in parallel, one module per worker thread, and reuses cached " +
+    "results for files whose contents have not changed since the previous run.",
+    false);
+
+  public static final Flag<Boolean> LINT_INCREMENTAL_EDITOR = Flag.create(
+    LINT, "incremental.editor",
+    "Reuse on-the-fly lint results",
+    "If enabled, editor lint analysis reuses the previous results when nothing has changed, and for XML files only reruns " +
+    "the detectors registered for the elements and attributes that were edited.",
+    false);
+
+  public static final Flag<Boolean> LINT_EDITOR_DETECTOR_TIMING = Flag.create(
+    LINT, "editor.detector.timing",
+    "Time on-the-fly lint detectors",
+    "If enabled, editor lint analysis runs each detector separately and logs the ones that take a long time. " +
+    "This is slower than running them together and is intended for diagnostics.",
+    false);
   //endregion
 
   //region Analyzer
@@ -615,6 +684,10 @@ public final class StudioFlags {
   public static final Flag<Boolean> ENABLE_APP_SIZE_OPTIMIZER = Flag.create(
     ANALYZER, "enable.app.size.optimizer", "Enable size optimization suggestions in apk analyzer",
     "If enabled, it will enable the apk analyzer tool to display suggestions for reducing application size", false);
+  public static final Flag<Boolean> APK_DIFF_STREAMING = Flag.create(
+    ANALYZER, "apk.diff.streaming", "Use the streaming APK diff",
+    "If enabled, comparing two APKs reads their zip central directories and compares entries in parallel, instead of " +
+    "building a full tree for each archive first.", false);
   //endregion
 
   //region Unified App Bundle
@@ -33,7 +33,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a single entry in the translations editor.
@@ -60,11 +62,22 @@ public final class StringResource {
   private final Project myProject;
 
   public StringResource(@NotNull StringResourceKey key, @NotNull StringResourceRepository repository, @NotNull Project project) {
+    this(key, repository.getItems(key), repository, project);
+  }
+
+  /**
+   * Creates the resource of the key from the given items of the key. This reads the PSI tags of the items, so it can be called off the
+   * EDT in a read action.
+   */
+  StringResource(@NotNull StringResourceKey key,
+                 @NotNull Collection<ResourceItem> items,
+                 @NotNull StringResourceRepository repository,
+                 @NotNull Project project) {
     boolean translatable = true;
     ResourceItemEntry defaultValue = new ResourceItemEntry();
     Map<Locale, ResourceItemEntry> localeToTranslationMap = new HashMap<>();
 
-    for (ResourceItem item : repository.getItems(key)) {
+    for (ResourceItem item : items) {
       XmlTag tag = AndroidResourceUtil.getItemTag(project, item);
 
       if (tag != null && "false".equals(tag.getAttributeValue(SdkConstants.ATTR_TRANSLATABLE))) {
@@ -110,7 +123,7 @@ public final class StringResource {
 
   @NotNull
   public String getDefaultValueAsString() {
-    return myDefaultValue.myString;
+    return myDefaultValue.getString();
   }
 
   public boolean setDefaultValue(@NotNull String defaultValue) {
@@ -125,7 +138,7 @@ public final class StringResource {
       return true;
     }
 
-    if (myDefaultValue.myString.equals(defaultValue)) {
+    if (myDefaultValue.getString().equals(defaultValue)) {
       return false;
     }
 
@@ -169,7 +182,7 @@ public final class StringResource {
       return "Key \"" + myKey.getName() + "\" is missing its default value";
     }
 
-    if (!myDefaultValue.myStringValid) {
+    if (!myDefaultValue.isStringValid()) {
       return "Invalid XML";
     }
 
@@ -193,7 +206,7 @@ public final class StringResource {
   @NotNull
   public String getTranslationAsString(@NotNull Locale locale) {
     ResourceItemEntry resourceItemEntry = myLocaleToTranslationMap.get(locale);
-    return resourceItemEntry == null ? "" : resourceItemEntry.myString;
+    return resourceItemEntry == null ? "" : resourceItemEntry.getString();
   }
 
   public boolean putTranslation(@NotNull Locale locale, @NotNull String translation) {
@@ -253,7 +266,7 @@ public final class StringResource {
   public String validateTranslation(@NotNull Locale locale) {
     ResourceItemEntry entry = myLocaleToTranslationMap.get(locale);
 
-    if (entry != null && !entry.myStringValid) {
+    if (entry != null && !entry.isStringValid()) {
       return "Invalid XML";
     }
 
@@ -269,6 +282,26 @@ public final class StringResource {
     }
   }
 
+  /**
+   * Returns the items of the default value and the translations, to tell whether the resource is out of date with the repository.
+   */
+  @NotNull
+  Set<ResourceItem> getResourceItems() {
+    Set<ResourceItem> items = new HashSet<>();
+
+    if (myDefaultValue.myResourceItem != null) {
+      items.add(myDefaultValue.myResourceItem);
+    }
+
+    for (ResourceItemEntry entry : myLocaleToTranslationMap.values()) {
+      if (entry.myResourceItem != null) {
+        items.add(entry.myResourceItem);
+      }
+    }
+
+    return items;
+  }
+
   @NotNull
   Collection<Locale> getTranslatedLocales() {
     return myLocaleToTranslationMap.keySet();
@@ -288,17 +321,29 @@ public final class StringResource {
   }
 
   private static boolean isTranslationMissing(@Nullable ResourceItemEntry item) {
-    return item == null || item.myString.isEmpty();
+    return item == null || item.getString().isEmpty();
+  }
+
+  /**
+   * Returns the value of the item as shown in the table, or its raw XML value if it cannot be unescaped.
+   */
+  @NotNull
+  static String getDisplayValue(@NotNull ResourceItem item) {
+    return new ResourceItemEntry(item).getString();
   }
 
+  /**
+   * A resource item and its value. The value is only read when it is first needed, so that loading a key does not read its values in
+   * the locales that are not shown.
+   */
   private static final class ResourceItemEntry {
     @Nullable
     private final ResourceItem myResourceItem;
 
-    @NotNull
-    private final String myString;
+    @Nullable
+    private String myString;
 
-    private final boolean myStringValid;
+    private boolean myStringValid;
 
     public ResourceItemEntry() {
       myResourceItem = null;
@@ -308,7 +353,28 @@ public final class StringResource {
 
     private ResourceItemEntry(@NotNull ResourceItem resourceItem) {
       myResourceItem = resourceItem;
-      ResourceValue value = resourceItem.getResourceValue();
+    }
+
+    @NotNull
+    private String getString() {
+      if (myString == null) {
+        readValue();
+      }
+
+      return myString;
+    }
+
+    private boolean isStringValid() {
+      if (myString == null) {
+        readValue();
+      }
+
+      return myStringValid;
+    }
+
+    private void readValue() {
+      assert myResourceItem != null;
+      ResourceValue value = myResourceItem.getResourceValue();
 
       if (value == null) {
         myString = "";
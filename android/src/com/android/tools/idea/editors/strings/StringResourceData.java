@@ -23,38 +23,96 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.intellij.facet.Facet;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.xml.XmlAttribute;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.refactoring.rename.RenameProcessor;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * The keys and translations shown by the translations editor. Only the keys are read up front. The {@link StringResource} of a key, with
+ * its values in all locales, is loaded in the background the first time its row is painted. When the repository changes, only the
+ * keys of the resource directories that changed are checked again in the background, and only the ones whose items or values differ
+ * are reloaded.
+ */
 public class StringResourceData {
   private static final int MAX_LOCALE_LABEL_COUNT = 3;
 
+  /** Separates the values in the {@link #mySearchIndex} entries, so that no search text matches across values. */
+  private static final char SEARCH_SEPARATOR = '\0';
+
   private final Facet myFacet;
+  /** The keys, in table order, with their resources, or null for the resources that have not been loaded yet. */
   private final Map<StringResourceKey, StringResource> myKeyToResourceMap;
   private final StringResourceRepository myRepository;
 
+  /** The modification counts of the repositories, by resource directory, that the loaded resources and derived data are up to date with. */
+  private final Map<VirtualFile, Long> myModificationCounts;
+  @Nullable private Set<Locale> myLocaleSet;
+  /**
+   * The text shown in each row, searched by {@link #containsText}. It has an entry for every loaded key, which is also used to tell
+   * whether the values of the key changed, and for all the keys once {@link #containsText} is first called.
+   */
+  private final Map<StringResourceKey, String> mySearchIndex;
+  private boolean mySearchIndexComplete;
+
+  /** The keys whose rows were painted before their resources were loaded. */
+  private final Set<StringResourceKey> myKeysToLoad;
+  private boolean myUpdateScheduled;
+  private boolean myUpdateRunning;
+  private Executor myUpdateExecutor;
+  @Nullable private Listener myListener;
+
+  /**
+   * Notified on the EDT when resources were loaded or brought up to date in the background.
+   */
+  public interface Listener {
+    void dataChanged(boolean keysOrLocalesChanged);
+  }
+
   StringResourceData(@NotNull Facet facet,
-                     @NotNull Map<StringResourceKey, StringResource> keyToResourceMap,
+                     @NotNull Collection<StringResourceKey> keys,
                      @NotNull StringResourceRepository repository) {
     myFacet = facet;
-    myKeyToResourceMap = keyToResourceMap;
+    myKeyToResourceMap = new LinkedHashMap<>();
+    for (StringResourceKey key : keys) {
+      myKeyToResourceMap.put(key, null);
+    }
     myRepository = repository;
+    myModificationCounts = repository.getModificationCounts();
+    mySearchIndex = new HashMap<>();
+    myKeysToLoad = new LinkedHashSet<>();
+    myUpdateExecutor = AppExecutorUtil.getAppExecutorService();
+  }
+
+  public void setListener(@Nullable Listener listener) {
+    myListener = listener;
+  }
+
+  @VisibleForTesting
+  void setUpdateExecutor(@NotNull Executor executor) {
+    myUpdateExecutor = executor;
   }
 
   public void setKeyName(@NotNull StringResourceKey key, @NotNull String name) {
@@ -90,8 +148,8 @@ public class StringResourceData {
     new RenameProcessor(project, nameAttributeValue, name, false, false).run();
 
     myKeyToResourceMap.remove(key);
-    key = new StringResourceKey(name, key.getDirectory());
-    myKeyToResourceMap.put(key, new StringResource(key, myRepository, project));
+    myKeyToResourceMap.put(new StringResourceKey(name, key.getDirectory()), null);
+    mySearchIndex.remove(key);
   }
 
   public boolean setTranslatable(@NotNull StringResourceKey key, boolean translatable) {
@@ -197,24 +255,263 @@ public class StringResourceData {
     return locale == null ? "" : LocaleMenuAction.getLocaleLabel(locale, false);
   }
 
+  @VisibleForTesting
+  boolean isLoaded(@NotNull StringResourceKey key) {
+    return myKeyToResourceMap.get(key) != null;
+  }
+
   boolean containsKey(@NotNull StringResourceKey key) {
     return myKeyToResourceMap.containsKey(key);
   }
 
+  /**
+   * Returns the resource of the key, loading it on the calling thread if it has not been loaded yet. This must be called on the EDT.
+   */
   @NotNull
   public StringResource getStringResource(@NotNull StringResourceKey key) {
+    if (!myKeyToResourceMap.containsKey(key)) {
+      throw new IllegalArgumentException(key.toString());
+    }
+
+    scheduleUpdate();
     StringResource resource = myKeyToResourceMap.get(key);
 
     if (resource == null) {
-      throw new IllegalArgumentException(key.toString());
+      resource = new StringResource(key, myRepository, myFacet.getModule().getProject());
+      myKeyToResourceMap.put(key, resource);
+      mySearchIndex.computeIfAbsent(key, this::getSearchText);
+    }
+
+    return resource;
+  }
+
+  /**
+   * Returns the resource of the key if it has been loaded, and otherwise schedules loading it in the background and returns null. The
+   * table calls this while painting, so that painting never reads the PSI of the resources.
+   */
+  @Nullable
+  public StringResource getLoadedStringResource(@NotNull StringResourceKey key) {
+    StringResource resource = myKeyToResourceMap.get(key);
+
+    if (resource == null && myKeyToResourceMap.containsKey(key)) {
+      myKeysToLoad.add(key);
     }
 
+    scheduleUpdate();
     return resource;
   }
 
+  /**
+   * Returns the resources of all the keys, loading the ones that have not been loaded yet.
+   */
   @NotNull
   public Collection<StringResource> getResources() {
-    return myKeyToResourceMap.values();
+    return getKeys().stream()
+      .map(this::getStringResource)
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns true if the name, resource folder, default value or one of the translations of the key contains the given text. This
+   * searches an index of the values of all keys rather than loading their {@link StringResource}s.
+   */
+  public boolean containsText(@NotNull StringResourceKey key, @NotNull String text) {
+    scheduleUpdate();
+    if (!mySearchIndexComplete) {
+      myRepository.sync();
+      for (StringResourceKey indexKey : myKeyToResourceMap.keySet()) {
+        mySearchIndex.computeIfAbsent(indexKey, this::getSearchText);
+      }
+      mySearchIndexComplete = true;
+    }
+    String searchText = myKeyToResourceMap.containsKey(key) ? mySearchIndex.computeIfAbsent(key, this::getSearchText) : null;
+    return searchText != null && searchText.contains(text);
+  }
+
+  @NotNull
+  private String getSearchText(@NotNull StringResourceKey key) {
+    return getSearchText(key, myRepository.getCurrentItems(key));
+  }
+
+  @NotNull
+  private String getSearchText(@NotNull StringResourceKey key, @NotNull Collection<ResourceItem> items) {
+    StringBuilder builder = new StringBuilder(key.getName());
+    VirtualFile directory = key.getDirectory();
+    if (directory != null) {
+      builder.append(SEARCH_SEPARATOR).append(VirtualFiles.toString(directory, myFacet.getModule().getProject()));
+    }
+    for (ResourceItem item : items) {
+      builder.append(SEARCH_SEPARATOR).append(StringResource.getDisplayValue(item));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Schedules an update if rows are waiting for their resources or the repository changed since the last one. The update is started
+   * later on the EDT, so that all the rows painted in one pass are loaded together.
+   */
+  private void scheduleUpdate() {
+    if (myUpdateScheduled || myUpdateRunning) {
+      return;
+    }
+
+    if (myKeysToLoad.isEmpty() && myModificationCounts.equals(myRepository.getModificationCounts())) {
+      return;
+    }
+
+    myUpdateScheduled = true;
+    ApplicationManager.getApplication().invokeLater(this::startUpdate, myFacet.getModule().getDisposed());
+  }
+
+  private void startUpdate() {
+    myUpdateScheduled = false;
+
+    // The repositories can only be synced on the EDT, so the update reads them as of now
+    myRepository.sync();
+    Update update = new Update(myRepository.getModificationCounts());
+
+    if (update.myChangedDirectories.isEmpty() && myKeysToLoad.isEmpty()) {
+      return;
+    }
+
+    update.myKeysToLoad.addAll(myKeysToLoad);
+    myKeysToLoad.clear();
+
+    // Only the keys with a loaded resource or a search index entry can be out of date
+    myKeyToResourceMap.forEach((key, resource) -> {
+      if (update.myChangedDirectories.contains(key.getDirectory())) {
+        String searchText = mySearchIndex.get(key);
+        if (resource != null || searchText != null) {
+          update.myKeysToCheck.put(key, new CheckedKey(resource == null ? null : resource.getResourceItems(), searchText));
+        }
+      }
+    });
+
+    myUpdateRunning = true;
+    Application application = ApplicationManager.getApplication();
+
+    myUpdateExecutor.execute(() -> {
+      application.runReadAction(update::run);
+      application.invokeLater(() -> finishUpdate(update), myFacet.getModule().getDisposed());
+    });
+  }
+
+  private void finishUpdate(@NotNull Update update) {
+    myUpdateRunning = false;
+    myModificationCounts.putAll(update.myModificationCounts);
+
+    boolean keysOrLocalesChanged = false;
+
+    if (update.myKeys != null && !update.myKeys.equals(myKeyToResourceMap.keySet())) {
+      Map<StringResourceKey, StringResource> keyToResourceMap = new LinkedHashMap<>(myKeyToResourceMap);
+      myKeyToResourceMap.clear();
+      for (StringResourceKey key : update.myKeys) {
+        myKeyToResourceMap.put(key, keyToResourceMap.get(key));
+      }
+      mySearchIndex.keySet().retainAll(update.myKeys);
+      keysOrLocalesChanged = true;
+    }
+
+    update.myResources.forEach((key, resource) -> {
+      // A resource loaded on the EDT meanwhile may have been edited since, so a newly loaded one does not replace it
+      if (myKeyToResourceMap.containsKey(key) && (myKeyToResourceMap.get(key) == null || update.myKeysToCheck.containsKey(key))) {
+        myKeyToResourceMap.put(key, resource);
+      }
+    });
+
+    update.mySearchTexts.forEach((key, searchText) -> {
+      if (myKeyToResourceMap.containsKey(key)) {
+        mySearchIndex.put(key, searchText);
+      }
+    });
+
+    if (update.myLocales != null && myLocaleSet != null && !update.myLocales.equals(myLocaleSet)) {
+      myLocaleSet = update.myLocales;
+      keysOrLocalesChanged = true;
+    }
+
+    if (myListener != null && (keysOrLocalesChanged || !update.myResources.isEmpty())) {
+      myListener.dataChanged(keysOrLocalesChanged);
+    }
+
+    scheduleUpdate();
+  }
+
+  /**
+   * The items and search text a key had when it was last loaded, to tell whether it changed.
+   */
+  private static final class CheckedKey {
+    @Nullable private final Set<ResourceItem> myItems;
+    @Nullable private final String mySearchText;
+
+    private CheckedKey(@Nullable Set<ResourceItem> items, @Nullable String searchText) {
+      myItems = items;
+      mySearchText = searchText;
+    }
+  }
+
+  /**
+   * Loads the resources of the painted rows and reads the keys of the changed resource directories again. It runs in a read action off
+   * the EDT and only reads the repositories; its results are applied to the data back on the EDT.
+   */
+  private final class Update implements Runnable {
+    private final Map<VirtualFile, Long> myModificationCounts;
+    private final Set<VirtualFile> myChangedDirectories;
+    private final List<StringResourceKey> myKeysToLoad = new ArrayList<>();
+    private final Map<StringResourceKey, CheckedKey> myKeysToCheck = new HashMap<>();
+
+    private final Map<StringResourceKey, StringResource> myResources = new HashMap<>();
+    private final Map<StringResourceKey, String> mySearchTexts = new HashMap<>();
+    @Nullable private Set<StringResourceKey> myKeys;
+    @Nullable private Set<Locale> myLocales;
+
+    private Update(@NotNull Map<VirtualFile, Long> modificationCounts) {
+      myModificationCounts = modificationCounts;
+      myChangedDirectories = new HashSet<>();
+
+      modificationCounts.forEach((directory, count) -> {
+        if (!count.equals(StringResourceData.this.myModificationCounts.get(directory))) {
+          myChangedDirectories.add(directory);
+        }
+      });
+    }
+
+    @Override
+    public void run() {
+      Project project = myFacet.getModule().getProject();
+
+      for (StringResourceKey key : myKeysToLoad) {
+        Collection<ResourceItem> items = myRepository.getCurrentItems(key);
+        myResources.put(key, new StringResource(key, items, myRepository, project));
+        mySearchTexts.put(key, getSearchText(key, items));
+      }
+
+      if (myChangedDirectories.isEmpty()) {
+        return;
+      }
+
+      myKeys = myRepository.getKeys();
+      myLocales = myRepository.getTranslatedLocales();
+
+      myKeysToCheck.forEach((key, checkedKey) -> {
+        if (myResources.containsKey(key) || !myKeys.contains(key)) {
+          return;
+        }
+
+        Collection<ResourceItem> items = myRepository.getCurrentItems(key);
+        String searchText = getSearchText(key, items);
+
+        if (searchText.equals(checkedKey.mySearchText) && (checkedKey.myItems == null || checkedKey.myItems.equals(new HashSet<>(items)))) {
+          return;
+        }
+
+        mySearchTexts.put(key, searchText);
+
+        if (checkedKey.myItems != null) {
+          myResources.put(key, new StringResource(key, items, myRepository, project));
+        }
+      });
+    }
   }
 
   @NotNull
@@ -224,19 +521,21 @@ public class StringResourceData {
 
   @NotNull
   public List<Locale> getLocaleList() {
-    return getTranslatedLocaleStream()
-      .distinct()
+    return getLocaleSet().stream()
       .sorted(Locale.LANGUAGE_NAME_COMPARATOR)
       .collect(Collectors.toList());
   }
 
+  /**
+   * Returns the locales with at least one translation. These are read from the configurations of the resource items, without loading
+   * their values.
+   */
   @NotNull
   Set<Locale> getLocaleSet() {
-    return getTranslatedLocaleStream().collect(Collectors.toSet());
-  }
-
-  @NotNull
-  private Stream<Locale> getTranslatedLocaleStream() {
-    return myKeyToResourceMap.values().stream().flatMap(resource -> resource.getTranslatedLocales().stream());
+    scheduleUpdate();
+    if (myLocaleSet == null) {
+      myLocaleSet = myRepository.getTranslatedLocales();
+    }
+    return myLocaleSet;
   }
 }
@@ -26,15 +26,18 @@ import com.android.tools.idea.res.LocalResourceRepository.EmptyRepository;
 import com.android.tools.idea.res.MultiResourceRepository;
 import com.android.tools.idea.res.ResourceFolderRepository;
 import com.google.common.collect.Maps;
-import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -101,20 +104,87 @@ public class StringResourceRepository {
 
   @NotNull
   public final StringResourceData getData(@NotNull AndroidFacet facet) {
-    Map<StringResourceKey, StringResource> map = new LinkedHashMap<>();
-    Project project = facet.getModule().getProject();
+    return new StringResourceData(facet, getKeys(), this);
+  }
+
+  /**
+   * Returns the keys of all the strings, in table order. This only reads the names of the resource items, so it can be called off the
+   * EDT in a read action.
+   */
+  @NotNull
+  final Set<StringResourceKey> getKeys() {
+    Set<StringResourceKey> keys = new LinkedHashSet<>();
 
     myResourceDirectoryRepositoryMap.entrySet().stream()
       .flatMap(StringResourceRepository::getKeys)
-      .forEach(key -> map.put(key, new StringResource(key, this, project)));
+      .forEach(keys::add);
 
     if (myDynamicResourceRepository != null) {
       myDynamicResourceRepository.getResources(ResourceNamespace.TODO(), ResourceType.STRING).keySet().stream()
         .map(name -> new StringResourceKey(name, null))
-        .forEach(key -> map.put(key, new StringResource(key, this, project)));
+        .forEach(keys::add);
     }
 
-    return new StringResourceData(facet, map, this);
+    return keys;
+  }
+
+  /**
+   * Returns the locales of all the string translations, reading only the configurations of the resource items.
+   */
+  @NotNull
+  final Set<Locale> getTranslatedLocales() {
+    Set<LocaleQualifier> qualifiers = new HashSet<>();
+
+    getRepositories().forEach(repository -> {
+      for (ResourceItem item : repository.getResources(ResourceNamespace.TODO(), ResourceType.STRING).values()) {
+        LocaleQualifier qualifier = item.getConfiguration().getLocaleQualifier();
+
+        if (qualifier != null) {
+          qualifiers.add(qualifier);
+        }
+      }
+    });
+
+    return qualifiers.stream()
+      .map(Locale::create)
+      .collect(Collectors.toSet());
+  }
+
+  /**
+   * Returns a number that changes whenever one of the underlying repositories changes.
+   */
+  final long getModificationCount() {
+    return getRepositories().mapToLong(LocalResourceRepository::getModificationCount).sum();
+  }
+
+  /**
+   * Returns the modification counts of the underlying repositories by resource directory, with a null directory for the dynamic
+   * resources. Comparing them tells which keys a change may have touched.
+   */
+  @NotNull
+  final Map<VirtualFile, Long> getModificationCounts() {
+    Map<VirtualFile, Long> counts = new HashMap<>();
+    myResourceDirectoryRepositoryMap.forEach((directory, repository) -> counts.put(directory, repository.getModificationCount()));
+
+    if (myDynamicResourceRepository != null) {
+      counts.put(null, myDynamicResourceRepository.getModificationCount());
+    }
+
+    return counts;
+  }
+
+  /**
+   * Applies the pending changes of the underlying repositories, so that {@link #getCurrentItems} sees them. This must be called on the
+   * EDT.
+   */
+  final void sync() {
+    getRepositories().forEach(LocalResourceRepository::sync);
+  }
+
+  @NotNull
+  private Stream<LocalResourceRepository> getRepositories() {
+    Stream<LocalResourceRepository> repositories = myResourceDirectoryRepositoryMap.values().stream();
+    return myDynamicResourceRepository == null ? repositories : Stream.concat(repositories, Stream.of(myDynamicResourceRepository));
   }
 
   @NotNull
@@ -130,6 +200,15 @@ public class StringResourceRepository {
     return getItems(getRepository(key), key);
   }
 
+  /**
+   * Returns the items of the key as of the last {@link #sync}. Unlike {@link #getItems}, this does not sync the repository, so it can be
+   * called off the EDT in a read action.
+   */
+  @NotNull
+  final Collection<ResourceItem> getCurrentItems(@NotNull StringResourceKey key) {
+    return getRepository(key).getResources(ResourceNamespace.TODO(), ResourceType.STRING, key.getName());
+  }
+
   @Nullable
   final ResourceItem getDefaultValue(@NotNull StringResourceKey key) {
     return getItem(key, item -> item.getConfiguration().getLocaleQualifier() == null);
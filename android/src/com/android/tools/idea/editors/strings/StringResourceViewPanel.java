@@ -224,12 +224,14 @@ public final class StringResourceViewPanel implements Disposable {
 
       int row = myTable.getSelectedModelRowIndex();
       int column = myTable.getSelectedModelColumnIndex();
-      Object locale = model.getLocale(column);
+      Locale locale = model.getLocale(column);
 
       // TODO: Keys are not editable; we want them to be refactor operations
       setTextAndEditable(myKeyTextField, model.getKey(row).getName(), false);
 
-      String defaultValue = (String)model.getValueAt(row, StringResourceTableModel.DEFAULT_VALUE_COLUMN);
+      // The selected row may not have been painted yet, so its resource is loaded here rather than read from the painted values
+      StringResource resource = model.getStringResourceAt(row);
+      String defaultValue = resource.getDefaultValueAsString();
       boolean defaultValueEditable = isValueEditableInline(defaultValue); // don't allow editing multiline chars in a text field
       setTextAndEditable(myDefaultValueTextField.getTextField(), defaultValue, defaultValueEditable);
       myDefaultValueTextField.getButton().setEnabled(true);
@@ -237,7 +239,7 @@ public final class StringResourceViewPanel implements Disposable {
       boolean translationEditable = false;
       String translation = "";
       if (locale != null) {
-        translation = (String)model.getValueAt(row, column);
+        translation = resource.getTranslationAsString(locale);
         translationEditable = isValueEditableInline(translation); // don't allow editing multiline chars in a text field
       }
       setTextAndEditable(myTranslationTextField.getTextField(), translation, translationEditable);
@@ -279,10 +281,11 @@ public final class StringResourceViewPanel implements Disposable {
       int column = myTable.getSelectedModelColumnIndex();
 
       StringResourceTableModel model = myTable.getModel();
-      String value = (String)model.getValueAt(row, StringResourceTableModel.DEFAULT_VALUE_COLUMN);
+      StringResource resource = model.getStringResourceAt(row);
+      String value = resource.getDefaultValueAsString();
 
       Locale locale = model.getLocale(column);
-      String translation = locale == null ? null : (String)model.getValueAt(row, column);
+      String translation = locale == null ? null : resource.getTranslationAsString(locale);
 
       MultilineStringEditorDialog d = new MultilineStringEditorDialog(myFacet, model.getKey(row).getName(), value, locale, translation);
       if (d.showAndGet()) {
@@ -59,6 +59,24 @@ public class StringResourceTableModel extends AbstractTableModel {
 
     myKeys = data.getKeys();
     myLocales = data.getLocaleList();
+
+    data.setListener(keysOrLocalesChanged -> {
+      if (!keysOrLocalesChanged) {
+        fireTableRowsUpdated(0, myKeys.size() - 1);
+        return;
+      }
+
+      myKeys = data.getKeys();
+      List<Locale> locales = data.getLocaleList();
+
+      if (locales.equals(myLocales)) {
+        fireTableDataChanged();
+      }
+      else {
+        myLocales = locales;
+        fireTableStructureChanged();
+      }
+    });
   }
 
   @NotNull
@@ -76,6 +94,15 @@ public class StringResourceTableModel extends AbstractTableModel {
     return myData.getStringResource(getKey(row));
   }
 
+  /**
+   * Returns the resource of the row if it has been loaded, and otherwise has it loaded in the background. Painting goes through this so
+   * that it never reads PSI on the EDT; the rows are painted again when their resources are loaded.
+   */
+  @Nullable
+  private StringResource getLoadedStringResourceAt(int row) {
+    return myData.getLoadedStringResource(getKey(row));
+  }
+
   @NotNull
   public List<StringResourceKey> getKeys() {
     return myKeys;
@@ -149,20 +176,24 @@ public class StringResourceTableModel extends AbstractTableModel {
   @NotNull
   @Override
   public Object getValueAt(int row, int column) {
+    if (column == KEY_COLUMN) {
+      return getKey(row).getName();
+    }
+
+    StringResource resource = getLoadedStringResourceAt(row);
+
     switch (column) {
-      case KEY_COLUMN:
-        return getKey(row).getName();
       case RESOURCE_FOLDER_COLUMN:
-        return getStringResourceAt(row).getResourceFolder();
+        return resource == null ? "" : resource.getResourceFolder();
       case UNTRANSLATABLE_COLUMN:
-        return !getStringResourceAt(row).isTranslatable();
+        return resource != null && !resource.isTranslatable();
       case DEFAULT_VALUE_COLUMN:
-        return getStringResourceAt(row).getDefaultValueAsString();
+        return resource == null ? "" : resource.getDefaultValueAsString();
       default:
         Locale locale = getLocale(column);
         assert locale != null;
 
-        return getStringResourceAt(row).getTranslationAsString(locale);
+        return resource == null ? "" : resource.getTranslationAsString(locale);
     }
   }
 
@@ -209,6 +240,13 @@ public class StringResourceTableModel extends AbstractTableModel {
 
   @Nullable
   public String getCellProblem(int row, int column) {
+    StringResource resource = getLoadedStringResourceAt(row);
+
+    // The problems of a row are shown once its resource has been loaded
+    if (resource == null) {
+      return null;
+    }
+
     switch (column) {
       case KEY_COLUMN:
         return myData.validateKey(getKey(row));
@@ -216,12 +254,12 @@ public class StringResourceTableModel extends AbstractTableModel {
       case UNTRANSLATABLE_COLUMN:
         return null;
       case DEFAULT_VALUE_COLUMN:
-        return getStringResourceAt(row).validateDefaultValue();
+        return resource.validateDefaultValue();
       default:
         Locale locale = getLocale(column);
         assert locale != null;
 
-        return getStringResourceAt(row).validateTranslation(locale);
+        return resource.validateTranslation(locale);
     }
   }
 }
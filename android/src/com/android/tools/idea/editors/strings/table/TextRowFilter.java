@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.editors.strings.table;
 
+import com.android.tools.idea.editors.strings.StringResourceData;
 import com.intellij.openapi.actionSystem.Presentation;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,6 +29,13 @@ public class TextRowFilter extends StringResourceTableRowFilter {
 
   @Override
   public boolean include(Entry<? extends StringResourceTableModel, ? extends Integer> entry) {
+    StringResourceTableModel model = entry.getModel();
+    StringResourceData data = model.getData();
+    if (data != null) {
+      // Searching the index avoids loading the values of all the keys in all the locales
+      return data.containsText(model.getKey(entry.getIdentifier()), myText);
+    }
+
     for (int i = 0; i < entry.getValueCount(); i++) {
       String text = entry.getStringValue(i);
       if (text.contains(myText)) {
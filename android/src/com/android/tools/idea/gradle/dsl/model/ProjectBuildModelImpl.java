@@ -21,29 +21,55 @@ import static com.android.tools.idea.gradle.dsl.model.GradleBuildModelImpl.popul
 import static com.android.tools.idea.gradle.util.GradleUtil.getGradleBuildFile;
 import static com.android.tools.idea.gradle.util.GradleUtil.getGradleSettingsFile;
 
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.gradle.dsl.api.GradleBuildModel;
 import com.android.tools.idea.gradle.dsl.api.GradleSettingsModel;
 import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel;
 import com.android.tools.idea.gradle.dsl.parser.BuildModelContext;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleBuildFile;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleDslFile;
+import com.android.tools.idea.gradle.dsl.parser.files.GradlePropertiesFile;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleSettingsFile;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class ProjectBuildModelImpl implements ProjectBuildModel {
+  private static final Logger LOG = Logger.getInstance(ProjectBuildModelImpl.class);
+  private static final ExecutorService ourPsiLoader =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("Gradle Build File Loader", Runtime.getRuntime().availableProcessors());
+
   @NotNull private final BuildModelContext myBuildModelContext;
   @Nullable private final GradleBuildFile myProjectBuildFile;
 
@@ -160,8 +186,76 @@ public class ProjectBuildModelImpl implements ProjectBuildModel {
   public void reparse() {
     // myBuildModelContext has all the files removed when reset() is called. We need to ensure we collect the files before calling reset.
     List<GradleDslFile> files = myBuildModelContext.getAllRequestedFiles();
-    myBuildModelContext.reset();
-    files.forEach(GradleDslFile::reparse);
+    if (!StudioFlags.GRADLE_DSL_INCREMENTAL_PARSING.get()) {
+      myBuildModelContext.reset();
+      files.forEach(GradleDslFile::reparse);
+      return;
+    }
+
+    List<GradleDslFile> filesToReparse = findFilesToReparse(files);
+    filesToReparse.forEach(GradleDslFile::reparse);
+    logParseTimes("Re-parsed " + filesToReparse.size() + " of " + files.size() + " files", filesToReparse);
+  }
+
+  /**
+   * Returns the files which changed since they were last parsed, together with the files whose model depends on them: the files
+   * applying them, the child modules inheriting their properties, and the build files of changed properties files. The files are
+   * ordered such that each file comes after the files it depends on.
+   */
+  @VisibleForTesting
+  @NotNull
+  static List<GradleDslFile> findFilesToReparse(@NotNull Collection<GradleDslFile> files) {
+    Map<GradleDslFile, Set<GradleDslFile>> dependents = new HashMap<>();
+    for (GradleDslFile file : files) {
+      for (GradleDslFile appliedFile : file.getApplyDslElement()) {
+        dependents.computeIfAbsent(appliedFile, key -> new LinkedHashSet<>()).add(file);
+      }
+      dependents.computeIfAbsent(file, key -> new LinkedHashSet<>()).addAll(file.getChildModuleDslFiles());
+      if (file instanceof GradlePropertiesFile && file.getSiblingDslFile() != null) {
+        dependents.get(file).add(file.getSiblingDslFile());
+      }
+    }
+
+    Set<GradleDslFile> affected = new HashSet<>();
+    Deque<GradleDslFile> queue = new ArrayDeque<>();
+    for (GradleDslFile file : files) {
+      if (file.isChangedSinceParse()) {
+        queue.add(file);
+      }
+    }
+    while (!queue.isEmpty()) {
+      GradleDslFile file = queue.remove();
+      if (affected.add(file)) {
+        queue.addAll(dependents.getOrDefault(file, ImmutableSet.of()));
+      }
+    }
+
+    Set<GradleDslFile> ordered = new LinkedHashSet<>();
+    for (GradleDslFile file : files) {
+      addInDependencyOrder(file, affected, ordered, new HashSet<>());
+    }
+    return new ArrayList<>(ordered);
+  }
+
+  private static void addInDependencyOrder(@NotNull GradleDslFile file,
+                                           @NotNull Set<GradleDslFile> affected,
+                                           @NotNull Set<GradleDslFile> ordered,
+                                           @NotNull Set<GradleDslFile> visiting) {
+    if (!affected.contains(file) || ordered.contains(file) || !visiting.add(file)) {
+      return;
+    }
+    GradleDslFile parent = file.getParentModuleDslFile();
+    if (parent != null) {
+      addInDependencyOrder(parent, affected, ordered, visiting);
+    }
+    GradleDslFile sibling = file.getSiblingDslFile();
+    if (sibling instanceof GradlePropertiesFile) {
+      addInDependencyOrder(sibling, affected, ordered, visiting);
+    }
+    for (GradleDslFile appliedFile : file.getApplyDslElement()) {
+      addInDependencyOrder(appliedFile, affected, ordered, visiting);
+    }
+    ordered.add(file);
   }
 
   @NotNull
@@ -177,7 +271,7 @@ public class ProjectBuildModelImpl implements ProjectBuildModel {
       return allModels;
     }
 
-    allModels.addAll(settingsModel.modulePaths().stream().map((modulePath) -> {
+    List<VirtualFile> files = settingsModel.modulePaths().stream().map((modulePath) -> {
       // This should have already been added above
       if (modulePath.equals(":")) {
         return null;
@@ -188,16 +282,78 @@ public class ProjectBuildModelImpl implements ProjectBuildModel {
         return null;
       }
 
-      VirtualFile file = getGradleBuildFile(moduleDir);
-      if (file == null) {
-        return null;
-      }
+      return getGradleBuildFile(moduleDir);
+    }).filter(Objects::nonNull).collect(Collectors.toList());
 
-      return getModuleBuildModel(file);
-    }).filter(Objects::nonNull).collect(Collectors.toList()));
+    if (StudioFlags.GRADLE_DSL_INCREMENTAL_PARSING.get()) {
+      loadPsiInParallel(files);
+    }
+    List<GradleDslFile> dslFiles = new ArrayList<>();
+    for (VirtualFile file : files) {
+      GradleBuildFile dslFile = myBuildModelContext.getOrCreateBuildFile(file, false);
+      dslFiles.add(dslFile);
+      allModels.add(new GradleBuildModelImpl(dslFile));
+    }
+    logParseTimes("Parsed " + dslFiles.size() + " module build files", dslFiles);
     return allModels;
   }
 
+  /**
+   * Builds the PSI of the given files across a pool of threads. Building the models of the files has to happen sequentially,
+   * since files refer to the properties of their parent modules and of the files they apply, but building their syntax trees,
+   * which is most of the cost of parsing a build file, is independent for each file.
+   */
+  private void loadPsiInParallel(@NotNull List<VirtualFile> files) {
+    Application application = ApplicationManager.getApplication();
+    // The read actions of the pool threads can't run while this thread holds the write lock. They can't run either while a write action
+    // is pending, which would wait for this thread to release its read lock if it holds one. Write actions only start on the EDT, so
+    // none can be pending while the EDT waits here.
+    if (files.size() < 2 || application.isWriteAccessAllowed() || !application.isDispatchThread() && application.isReadAccessAllowed()) {
+      return;
+    }
+    Project project = myBuildModelContext.getProject();
+    List<Future<?>> futures = new ArrayList<>(files.size());
+    for (VirtualFile file : files) {
+      futures.add(ourPsiLoader.submit(() -> application.runReadAction(() -> {
+        if (project.isDisposed()) {
+          return;
+        }
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (psiFile != null) {
+          // Forces the syntax tree to be built.
+          psiFile.getNode();
+        }
+      })));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      catch (ExecutionException e) {
+        // Parsing the file again when building its model will report the problem, if any.
+        LOG.debug(e);
+      }
+    }
+  }
+
+  private static void logParseTimes(@NotNull String message, @NotNull List<GradleDslFile> files) {
+    if (!LOG.isDebugEnabled()) {
+      return;
+    }
+    long totalNanos = files.stream().mapToLong(GradleDslFile::getParseTimeNanos).sum();
+    StringBuilder sb = new StringBuilder(message).append(" in ").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append(" ms");
+    files.stream()
+      .sorted(Comparator.comparingLong(GradleDslFile::getParseTimeNanos).reversed())
+      .limit(10)
+      .forEach(file -> sb.append("\n  ").append(file.getFile().getPath()).append(": ")
+        .append(TimeUnit.NANOSECONDS.toMillis(file.getParseTimeNanos())).append(" ms"));
+    LOG.debug(sb.toString());
+  }
+
   private void runOverProjectTree(@NotNull Consumer<GradleDslFile> func) {
     myBuildModelContext.getAllRequestedFiles().forEach(func);
   }
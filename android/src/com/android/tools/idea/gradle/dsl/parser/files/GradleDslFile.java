@@ -68,6 +68,9 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   @Nullable private ApplyDslElement myApplyDslElement;
   @NotNull private final BuildModelContext myBuildModelContext;
 
+  private long myParsedModificationStamp = -1;
+  private long myParseNanos;
+
   protected GradleDslFile(@NotNull VirtualFile file,
                           @NotNull Project project,
                           @NotNull String moduleName,
@@ -111,6 +114,7 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   }
 
   public void parse() {
+    long start = System.nanoTime();
     myGradleDslParser.parse();
     // Attempt to resolve all the remaining dependencies. Ideally we would not have to do this here, but when elements
     // are created there parents are not necessarily attached to the tree. This means references to their siblings will not
@@ -123,6 +127,40 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
     // When key1 is parsed it can't find ext.vars.key. This is a bug with the parser that should be fixed in the future.
     // For now however we call resolveAll() here.
     getContext().getDependencyManager().resolveAll();
+    updateParsedModificationStamp();
+    myParseNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Returns whether this file needs to be parsed again to reflect its current contents: either its PSI changed since it was
+   * last parsed (for example because changes to the model were applied), or the model has changes which were not applied.
+   */
+  public boolean isChangedSinceParse() {
+    return isModified() || getModificationStamp() != myParsedModificationStamp;
+  }
+
+  /**
+   * Returns the time it took to last parse this file, in nanoseconds. This includes the time spent parsing the files it applies,
+   * unless they had already been parsed.
+   */
+  public long getParseTimeNanos() {
+    return myParseNanos;
+  }
+
+  /**
+   * Records the current contents of the file as the ones last parsed, see {@link #isChangedSinceParse()}.
+   */
+  protected void updateParsedModificationStamp() {
+    myParsedModificationStamp = getModificationStamp();
+  }
+
+  private long getModificationStamp() {
+    PsiElement element = getPsiElement();
+    if (element instanceof PsiFile) {
+      return ((PsiFile)element).getModificationStamp();
+    }
+    // Files without PSI, such as properties files, are read from the file itself.
+    return myFile.getModificationStamp();
   }
 
   @NotNull
@@ -132,7 +132,8 @@ public class GradleDslFileCache {
     return (GradlePropertiesFile)dslFile;
   }
 
-  private static Properties getProperties(@NotNull VirtualFile file) throws IOException {
+  @NotNull
+  static Properties getProperties(@NotNull VirtualFile file) throws IOException {
     Properties properties = new Properties();
     properties.load(new InputStreamReader(file.getInputStream(), Charsets.UTF_8));
     return properties;
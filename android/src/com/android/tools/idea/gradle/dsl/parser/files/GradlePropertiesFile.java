@@ -21,16 +21,20 @@ import com.android.tools.idea.gradle.dsl.parser.elements.GradleDslElement;
 import com.android.tools.idea.gradle.dsl.parser.elements.GradleDslSimpleExpression;
 import com.android.tools.idea.gradle.dsl.parser.elements.GradleNameElement;
 import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
 
 import static com.android.tools.idea.gradle.dsl.api.ext.PropertyType.PROPERTIES_FILE;
 
 public final class GradlePropertiesFile extends GradleDslFile {
+  private static final Logger LOG = Logger.getInstance(GradlePropertiesFile.class);
+
   @NotNull
   private final Properties myProperties;
 
@@ -41,11 +45,22 @@ public final class GradlePropertiesFile extends GradleDslFile {
                               @NotNull BuildModelContext context) {
     super(file, project, moduleName, context);
     myProperties = properties;
+    updateParsedModificationStamp();
   }
 
   @Override
   public void parse() {
-    // There is nothing to parse in a properties file as it's just a java properties file.
+    // There is nothing to parse in a properties file as it's just a java properties file, but the file may have changed since its
+    // properties were read.
+    try {
+      Properties properties = GradleDslFileCache.getProperties(getFile());
+      myProperties.clear();
+      myProperties.putAll(properties);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to process properties file " + getFile().getPath(), e);
+    }
+    updateParsedModificationStamp();
   }
 
   @Override
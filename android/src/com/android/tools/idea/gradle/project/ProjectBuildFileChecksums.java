@@ -29,36 +29,62 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.Projects.getBaseDirPath;
 import static com.android.tools.idea.gradle.util.GradleProjects.isGradleProjectModule;
 import static com.android.tools.idea.gradle.util.GradleUtil.*;
-import static com.google.common.io.Files.toByteArray;
 import static com.intellij.openapi.util.io.FileUtil.*;
 import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
-import static com.intellij.util.ArrayUtilRt.EMPTY_BYTE_ARRAY;
 
 /**
  * The Project data that needs to be persisted to check whether it is possible to reload the Project without the need of calling Gradle.
+ * <p/>
+ * For each build file we keep its size, modification time and a 64-bit content hash. When checking whether the cached data can be
+ * used, only the files whose modification time changed (but whose size didn't) are read and hashed, in parallel; files recorded
+ * too close to the time the checksums were computed are always hashed, since a later edit could have kept the same timestamp.
  */
-public class ProjectBuildFileChecksums implements Serializable {
-  // Key: build file path (relative if inside project). Value: MD5 hash of file.
-  private Map<String, byte[]> myFileChecksums = new HashMap<>();
+public class ProjectBuildFileChecksums {
+  private static final String STATE_FILE_NAME = "build_file_checksums.bin";
+  // The file written by previous versions, using Java serialization.
+  private static final String OLD_STATE_FILE_NAME = "build_file_checksums.ser";
+  private static final int MAGIC = 0x42464353; // "BFCS"
+  private static final int VERSION = 1;
+  // Files modified within this time before the checksums were computed may be modified again without changing their timestamp.
+  private static final long TIMESTAMP_GRANULARITY_MS = 2000;
+  // Below this number of files, hashing on the calling thread is faster than handing the work to other threads.
+  private static final int MIN_PARALLEL_FILE_COUNT = 8;
+
+  private static final Object ourExecutorLock = new Object();
+  private static ExecutorService ourHashExecutor;
+
+  // Key: build file path (relative if inside project).
+  private final Map<String, FileChecksum> myFileChecksums = new LinkedHashMap<>();
 
   /**
    * The last time a sync was done.
    */
   private long myLastGradleSyncTimestamp = -1L;
 
-  private transient File myRootFolderPath;
+  /**
+   * The time the checksums were computed.
+   */
+  private long myCreationTimestamp;
+
+  private File myRootFolderPath;
 
   public static class Loader {
     @Nullable
@@ -87,9 +113,6 @@ public class ProjectBuildFileChecksums implements Serializable {
     catch (IOException e) {
       getLog().warn(String.format("Error accessing state cache for project '%1$s', sync will be needed.", project.getName()));
     }
-    catch (ClassNotFoundException e) {
-      getLog().warn(String.format("Cannot recover state cache for project '%1$s', sync will be needed.", project.getName()));
-    }
     return null;
   }
 
@@ -111,19 +134,37 @@ public class ProjectBuildFileChecksums implements Serializable {
   }
 
   @Nullable
-  private static ProjectBuildFileChecksums loadFromDisk(@NotNull Project project) throws IOException, ClassNotFoundException {
-    File rootFolderPath = getBaseDirPath(project);
+  private static ProjectBuildFileChecksums loadFromDisk(@NotNull Project project) throws IOException {
     File dataFilePath = getProjectStateFile(project);
     if (!dataFilePath.exists()) {
       return null;
     }
-    try (FileInputStream fis = new FileInputStream(dataFilePath)) {
-      try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-        ProjectBuildFileChecksums data = (ProjectBuildFileChecksums)ois.readObject();
-        data.myRootFolderPath = rootFolderPath;
-        return data;
-      }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFilePath)))) {
+      return readFrom(in, getBaseDirPath(project));
+    }
+  }
+
+  /**
+   * Reads checksums written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @return the read data, or {@code null} if it was written in a different format.
+   */
+  @VisibleForTesting
+  @Nullable
+  static ProjectBuildFileChecksums readFrom(@NotNull DataInputStream in, @NotNull File rootFolderPath) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      return null;
+    }
+    ProjectBuildFileChecksums data = new ProjectBuildFileChecksums();
+    data.myRootFolderPath = rootFolderPath;
+    data.myLastGradleSyncTimestamp = in.readLong();
+    data.myCreationTimestamp = in.readLong();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      String key = in.readUTF();
+      data.myFileChecksums.put(key, new FileChecksum(in.readLong(), in.readLong(), in.readLong()));
     }
+    return data;
   }
 
   /**
@@ -139,6 +180,7 @@ public class ProjectBuildFileChecksums implements Serializable {
         File file = getProjectStateFile(project);
         ensureExists(file.getParentFile());
         buildFileChecksums.saveTo(file);
+        delete(new File(file.getParentFile(), OLD_STATE_FILE_NAME));
         cacheSaved = true;
       }
     }
@@ -154,8 +196,8 @@ public class ProjectBuildFileChecksums implements Serializable {
   @VisibleForTesting
   @Nullable
   static ProjectBuildFileChecksums createFrom(@NotNull Project project) throws IOException {
-    ProjectBuildFileChecksums buildFileChecksums = new ProjectBuildFileChecksums();
     File rootFolderPath = getBaseDirPath(project);
+    List<File> files = new ArrayList<>();
 
     for (Module module : ModuleManager.getInstance(project).getModules()) {
       GradleFacet gradleFacet = GradleFacet.getInstance(module);
@@ -165,54 +207,75 @@ public class ProjectBuildFileChecksums implements Serializable {
           getLog().warn(String.format("Trying to create project data from a not initialized project '%1$s'. Abort.", project.getName()));
           return null;
         }
-        buildFileChecksums.addFileChecksum(rootFolderPath, gradleModel.getBuildFile());
+        addFile(files, gradleModel.getBuildFile());
       }
 
       if (isGradleProjectModule(module)) {
-        buildFileChecksums.addFileChecksum(rootFolderPath, getGradleBuildFile(module));
-        buildFileChecksums.addFileChecksum(rootFolderPath, getGradleSettingsFile(rootFolderPath));
-        buildFileChecksums.addFileChecksum(rootFolderPath, new File(rootFolderPath, FN_GRADLE_PROPERTIES));
-        buildFileChecksums.addFileChecksum(rootFolderPath, new File(rootFolderPath, FN_LOCAL_PROPERTIES));
-        buildFileChecksums.addFileChecksum(rootFolderPath, getGradleUserSettingsFile());
+        addFile(files, getGradleBuildFile(module));
+        addFile(files, getGradleSettingsFile(rootFolderPath));
+        addFile(files, new File(rootFolderPath, FN_GRADLE_PROPERTIES));
+        addFile(files, new File(rootFolderPath, FN_LOCAL_PROPERTIES));
+        addFile(files, getGradleUserSettingsFile());
       }
 
       NdkModuleModel ndkModel = NdkModuleModel.get(module);
       if (ndkModel != null) {
         for (File externalBuildFile : ndkModel.getAndroidProject().getBuildFiles()) {
-          buildFileChecksums.addFileChecksum(rootFolderPath, externalBuildFile);
+          addFile(files, externalBuildFile);
         }
       }
     }
 
     GradleSyncState syncState = GradleSyncState.getInstance(project);
+    ProjectBuildFileChecksums buildFileChecksums = createFrom(rootFolderPath, files);
     buildFileChecksums.myLastGradleSyncTimestamp = syncState.getLastSyncFinishedTimeStamp();
     return buildFileChecksums;
   }
 
+  @VisibleForTesting
+  @NotNull
+  static ProjectBuildFileChecksums createFrom(@NotNull File rootFolderPath, @NotNull List<File> files) throws IOException {
+    ProjectBuildFileChecksums buildFileChecksums = new ProjectBuildFileChecksums();
+    buildFileChecksums.myRootFolderPath = rootFolderPath;
+    buildFileChecksums.myCreationTimestamp = System.currentTimeMillis();
+
+    // Stat the files before hashing them, so that a change made while hashing is detected next time.
+    List<FileChecksum> stats = new ArrayList<>(files.size());
+    for (File file : files) {
+      stats.add(FileChecksum.stat(file));
+    }
+    List<Long> hashes = hashAll(files);
+    for (int i = 0; i < files.size(); i++) {
+      FileChecksum stat = stats.get(i);
+      buildFileChecksums.myFileChecksums.put(getKey(rootFolderPath, files.get(i)),
+                                             new FileChecksum(stat.size, stat.lastModified, hashes.get(i)));
+    }
+    return buildFileChecksums;
+  }
+
   @NotNull
   private static File getProjectStateFile(@NotNull Project project) throws IOException {
-    return new File(getCacheFolderRootPath(project), "build_file_checksums.ser");
+    return new File(getCacheFolderRootPath(project), STATE_FILE_NAME);
   }
 
-  private void addFileChecksum(@NotNull File rootFolderPath, @Nullable VirtualFile file) throws IOException {
-    if (file == null) {
-      return;
+  private static void addFile(@NotNull List<File> files, @Nullable VirtualFile file) {
+    if (file != null) {
+      files.add(virtualToIoFile(file));
     }
-    addFileChecksum(rootFolderPath, virtualToIoFile(file));
   }
 
-  private void addFileChecksum(@NotNull File rootFolderPath, @Nullable File file) throws IOException {
-    if (file == null) {
-      return;
+  private static void addFile(@NotNull List<File> files, @Nullable File file) {
+    if (file != null) {
+      files.add(file);
     }
-    String key;
+  }
+
+  @NotNull
+  private static String getKey(@NotNull File rootFolderPath, @NotNull File file) {
     if (isAncestor(rootFolderPath, file, true)) {
-      key = getRelativePath(rootFolderPath, file);
-    }
-    else {
-      key = file.getAbsolutePath();
+      return getRelativePath(rootFolderPath, file);
     }
-    myFileChecksums.put(key, createChecksum(file));
+    return file.getAbsolutePath();
   }
 
   /**
@@ -221,10 +284,27 @@ public class ProjectBuildFileChecksums implements Serializable {
    * @param file the file where to save this data.
    */
   private void saveTo(@NotNull File file) throws IOException {
-    try (FileOutputStream fos = new FileOutputStream(file)) {
-      try (ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-        oos.writeObject(this);
-      }
+    // Write to a temporary file first, so that a failure doesn't leave a truncated file behind.
+    File tempFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      writeTo(out);
+    }
+    rename(tempFile, file);
+  }
+
+  @VisibleForTesting
+  void writeTo(@NotNull DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(myLastGradleSyncTimestamp);
+    out.writeLong(myCreationTimestamp);
+    out.writeInt(myFileChecksums.size());
+    for (Map.Entry<String, FileChecksum> entry : myFileChecksums.entrySet()) {
+      FileChecksum checksum = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeLong(checksum.size);
+      out.writeLong(checksum.lastModified);
+      out.writeLong(checksum.hash);
     }
   }
 
@@ -234,6 +314,10 @@ public class ProjectBuildFileChecksums implements Serializable {
       if (stateFile.isFile()) {
         delete(stateFile);
       }
+      File oldStateFile = new File(stateFile.getParentFile(), OLD_STATE_FILE_NAME);
+      if (oldStateFile.isFile()) {
+        delete(oldStateFile);
+      }
     }
     catch (IOException e) {
       getLog().warn(String.format("Failed to remove state for project '%1$s'", project.getName()));
@@ -251,31 +335,99 @@ public class ProjectBuildFileChecksums implements Serializable {
    * This validates that all the files that the external project data depends on, still have the same content checksum.
    *
    * @return whether the data is still valid.
-   * @throws IOException if there is a problem accessing these files.
    */
   public boolean canUseCachedData() {
-    for (Map.Entry<String, byte[]> entry : myFileChecksums.entrySet()) {
+    List<File> candidates = new ArrayList<>();
+    List<FileChecksum> expected = new ArrayList<>();
+    for (Map.Entry<String, FileChecksum> entry : myFileChecksums.entrySet()) {
       File file = new File(entry.getKey());
       if (!file.isAbsolute()) {
         file = new File(myRootFolderPath, file.getPath());
       }
-      try {
-        if (!Arrays.equals(entry.getValue(), createChecksum(file))) {
+      FileChecksum checksum = entry.getValue();
+      FileChecksum stat = FileChecksum.stat(file);
+      if (stat.size != checksum.size) {
+        // Different contents, no need to read the file.
+        return false;
+      }
+      if (stat.lastModified != checksum.lastModified || checksum.lastModified >= myCreationTimestamp - TIMESTAMP_GRANULARITY_MS) {
+        candidates.add(file);
+        expected.add(checksum);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return true;
+    }
+
+    try {
+      List<Long> hashes = hashAll(candidates);
+      for (int i = 0; i < candidates.size(); i++) {
+        if (hashes.get(i) != expected.get(i).hash) {
           return false;
         }
       }
-      catch (Throwable e) {
-        return false;
+      return true;
+    }
+    catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the content hashes of the given files, in the same order, computing them in parallel when there are enough files.
+   */
+  @NotNull
+  private static List<Long> hashAll(@NotNull List<File> files) throws IOException {
+    List<Long> hashes = new ArrayList<>(files.size());
+    if (files.size() < MIN_PARALLEL_FILE_COUNT) {
+      for (File file : files) {
+        hashes.add(createChecksum(file));
+      }
+      return hashes;
+    }
+
+    ExecutorService executor = getHashExecutor();
+    List<Future<Long>> futures = new ArrayList<>(files.size());
+    for (File file : files) {
+      futures.add(executor.submit(() -> createChecksum(file)));
+    }
+    try {
+      for (Future<Long> future : futures) {
+        hashes.add(future.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    finally {
+      for (Future<Long> future : futures) {
+        future.cancel(false);
       }
     }
-    return true;
+    return hashes;
   }
 
   @NotNull
-  private static byte[] createChecksum(@NotNull File file) throws IOException {
-    // For files tracked by the IDE we get the content from the virtual files, otherwise we revert to io.
-    byte[] data = file.exists() ? toByteArray(file) : EMPTY_BYTE_ARRAY;
-    return Hashing.md5().hashBytes(data).asBytes();
+  private static ExecutorService getHashExecutor() {
+    synchronized (ourExecutorLock) {
+      if (ourHashExecutor == null) {
+        ourHashExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Build File Checksums",
+                                                                               Runtime.getRuntime().availableProcessors());
+      }
+      return ourHashExecutor;
+    }
+  }
+
+  private static long createChecksum(@NotNull File file) throws IOException {
+    byte[] data = file.isFile() ? Files.readAllBytes(file.toPath()) : new byte[0];
+    return Hashing.farmHashFingerprint64().hashBytes(data).asLong();
   }
 
   public long getLastGradleSyncTimestamp() {
@@ -284,7 +436,27 @@ public class ProjectBuildFileChecksums implements Serializable {
 
   @VisibleForTesting
   @NotNull
-  Map<String, byte[]> getFileChecksums() {
+  Map<String, FileChecksum> getFileChecksums() {
     return myFileChecksums;
   }
+
+  @VisibleForTesting
+  static final class FileChecksum {
+    // -1 if the file does not exist.
+    final long size;
+    final long lastModified;
+    final long hash;
+
+    FileChecksum(long size, long lastModified, long hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    @NotNull
+    static FileChecksum stat(@NotNull File file) {
+      // File.length() and File.lastModified() return 0 for missing files, which would match an empty file.
+      return file.isFile() ? new FileChecksum(file.length(), file.lastModified(), 0) : new FileChecksum(-1, 0, 0);
+    }
+  }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import static com.android.SdkConstants.EXT_GRADLE;
+import static com.android.SdkConstants.EXT_JAVA;
+import static com.android.SdkConstants.EXT_KOTLIN;
+import static com.android.SdkConstants.EXT_XML;
+
+import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.idea.model.MergedManifestContributors;
+import com.android.tools.idea.res.ResourceRepositoryManager;
+import com.android.tools.lint.detector.api.Scope;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.facet.ProjectFacetManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.PathUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.inspections.lint.ProblemData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs the single-file lint checks of a batch analysis in parallel, with one lint driver per module, and reuses the
+ * {@link LintBatchResultCache} results of files whose contents have not changed since the previous run.
+ * <p>
+ * Only issues for which {@link #getSingleFileIssues} holds can be analyzed this way: their results depend on the
+ * contents of one file only, so sharding the modules across threads and caching per file does not change them.
+ * Everything else still needs a single project-wide lint driver.
+ */
+public class LintBatchAnalyzer {
+  private static final Logger LOG = Logger.getInstance(LintBatchAnalyzer.class);
+  private static final Set<String> LINT_FILE_EXTENSIONS = ImmutableSet.of(EXT_JAVA, EXT_KOTLIN, EXT_XML, EXT_GRADLE, "kts", "properties");
+
+  @NotNull private final Project myProject;
+  @NotNull private final AnalysisScope myScope;
+  @NotNull private final Set<Issue> myIssues;
+  @NotNull private final LintBatchResultCache myCache;
+  /** The lint scope of the batch run, which the detectors see in each module's request, e.g. to tell whether all resources are checked. */
+  @Nullable private final EnumSet<Scope> myLintScope;
+
+  private int myAnalyzedFileCount;
+  private int myCachedFileCount;
+
+  public LintBatchAnalyzer(@NotNull Project project,
+                           @NotNull AnalysisScope scope,
+                           @NotNull Set<Issue> issues,
+                           @NotNull LintBatchResultCache cache,
+                           @Nullable EnumSet<Scope> lintScope) {
+    myProject = project;
+    myScope = scope;
+    myIssues = issues;
+    myCache = cache;
+    myLintScope = lintScope;
+  }
+
+  /**
+   * Returns the subset of the given issues whose analysis only looks at a single file at a time.
+   */
+  @NotNull
+  public static Set<Issue> getSingleFileIssues(@NotNull Collection<Issue> issues) {
+    Set<Issue> result = new LinkedHashSet<>();
+    for (Issue issue : issues) {
+      if (Scope.checkSingleFile(issue.getImplementation().getScope())) {
+        result.add(issue);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Analyzes the given modules and adds the problems found to problemMap.
+   */
+  public void analyze(@NotNull List<Module> modules, @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap) {
+    long start = System.currentTimeMillis();
+    String configuration = LintBatchResultCache.computeConfigurationKey(
+      LintIdeClient.getStudioRevision(), myIssues, ProjectRootManager.getInstance(myProject).getModificationCount(),
+      ReadAction.compute(this::computeSourceStamp));
+
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    int threads = Math.max(1, Math.min(modules.size(), Runtime.getRuntime().availableProcessors() - 1));
+    ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Lint Batch Analysis", threads);
+    try {
+      List<Future<ModuleResult>> futures = new ArrayList<>(modules.size());
+      for (Module module : modules) {
+        futures.add(executor.submit(
+          () -> ProgressManager.getInstance().runProcess(() -> analyzeModule(module, configuration), ProgressWrapper.wrap(indicator))));
+      }
+      for (Future<ModuleResult> future : futures) {
+        ModuleResult result = getResult(future);
+        if (result != null) {
+          merge(result.myProblems, problemMap);
+          myAnalyzedFileCount += result.myAnalyzedFileCount;
+          myCachedFileCount += result.myCachedFileCount;
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    LOG.info(String.format("Lint batch analysis of %1$d modules on %2$d threads took %3$d ms (%4$d files analyzed, %5$d files cached)",
+                           modules.size(), threads, System.currentTimeMillis() - start, myAnalyzedFileCount, myCachedFileCount));
+  }
+
+  /**
+   * Returns a stamp of the files besides the checked one that a single-file check may consult: the manifests merged into each module's
+   * manifest, which give e.g. the minSdkVersion, and the resources of each module and its dependencies.
+   */
+  private long computeSourceStamp() {
+    Hasher hasher = Hashing.farmHashFingerprint64().newHasher();
+    for (AndroidFacet facet : ProjectFacetManager.getInstance(myProject).getFacets(AndroidFacet.ID)) {
+      for (VirtualFile manifest : MergedManifestContributors.determineFor(facet).allFiles) {
+        hasher.putString(manifest.getPath(), StandardCharsets.UTF_8).putLong(manifest.getModificationStamp());
+      }
+      hasher.putLong(ResourceRepositoryManager.getAppResources(facet).getModificationCount());
+    }
+    return hasher.hash().asLong();
+  }
+
+  /** Returns the number of files analyzed by the last {@link #analyze} call. */
+  public int getAnalyzedFileCount() {
+    return myAnalyzedFileCount;
+  }
+
+  /** Returns the number of files whose results were taken from the cache by the last {@link #analyze} call. */
+  public int getCachedFileCount() {
+    return myCachedFileCount;
+  }
+
+  @Nullable
+  private static ModuleResult getResult(@NotNull Future<ModuleResult> future) {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ProcessCanceledException) {
+        throw (ProcessCanceledException)cause;
+      }
+      LOG.warn("Lint batch analysis failed", cause);
+      return null;
+    }
+  }
+
+  @NotNull
+  private ModuleResult analyzeModule(@NotNull Module module, @NotNull String configuration) {
+    ModuleResult result = new ModuleResult();
+    List<VirtualFile> changed = new ArrayList<>();
+    Map<VirtualFile, Long> hashes = new HashMap<>();
+    for (VirtualFile file : ReadAction.compute(() -> collectFiles(module))) {
+      ProgressManager.checkCanceled();
+      Long hash = computeContentHash(file);
+      Map<Issue, List<ProblemData>> cached = hash != null ? myCache.get(file.getPath(), hash, configuration) : null;
+      if (cached != null) {
+        File ioFile = toLintFile(file);
+        for (Map.Entry<Issue, List<ProblemData>> entry : cached.entrySet()) {
+          result.myProblems.computeIfAbsent(entry.getKey(), issue -> new HashMap<>()).put(ioFile, new ArrayList<>(entry.getValue()));
+        }
+        result.myCachedFileCount++;
+      }
+      else {
+        changed.add(file);
+        if (hash != null) {
+          hashes.put(file, hash);
+        }
+      }
+    }
+    if (changed.isEmpty()) {
+      return result;
+    }
+
+    Map<Issue, Map<File, List<ProblemData>>> problems = new HashMap<>();
+    LintIdeClient client = LintIdeClient.forBatchShard(myProject, problems, myScope, myIssues);
+    try {
+      LintRequest request = new LintIdeRequest(client, myProject, changed, Collections.singletonList(module), false);
+      request.setScope(myLintScope);
+      new LintDriver(new LintIdeIssueRegistry(), client, request).analyze();
+    }
+    finally {
+      Disposer.dispose(client);
+    }
+    result.myAnalyzedFileCount = changed.size();
+
+    for (Map.Entry<VirtualFile, Long> entry : hashes.entrySet()) {
+      File ioFile = toLintFile(entry.getKey());
+      Map<Issue, List<ProblemData>> fileProblems = new HashMap<>();
+      for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueProblems : problems.entrySet()) {
+        List<ProblemData> list = issueProblems.getValue().get(ioFile);
+        if (list != null) {
+          fileProblems.put(issueProblems.getKey(), list);
+        }
+      }
+      myCache.put(entry.getKey().getPath(), entry.getValue(), configuration, fileProblems);
+    }
+    merge(problems, result.myProblems);
+    return result;
+  }
+
+  @NotNull
+  private List<VirtualFile> collectFiles(@NotNull Module module) {
+    List<VirtualFile> files = new ArrayList<>();
+    ModuleRootManager.getInstance(module).getFileIndex().iterateContent(file -> {
+      if (!file.isDirectory() && LINT_FILE_EXTENSIONS.contains(file.getExtension()) && myScope.contains(file)) {
+        files.add(file);
+      }
+      return true;
+    });
+    return files;
+  }
+
+  /**
+   * Returns the hash of the file contents, or null if the file should not be cached.
+   */
+  @Nullable
+  private static Long computeContentHash(@NotNull VirtualFile file) {
+    // Lint analyzes the unsaved document text, which is not what is on disk.
+    if (ReadAction.compute(() -> FileDocumentManager.getInstance().isFileModified(file))) {
+      return null;
+    }
+    try {
+      return LintBatchResultCache.hashContent(file.contentsToByteArray());
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Returns the file as the batch lint client records it in the problem map. */
+  @NotNull
+  private static File toLintFile(@NotNull VirtualFile file) {
+    return new File(PathUtil.getCanonicalPath(VfsUtilCore.virtualToIoFile(file).getPath()));
+  }
+
+  @VisibleForTesting
+  static void merge(@NotNull Map<Issue, Map<File, List<ProblemData>>> from, @NotNull Map<Issue, Map<File, List<ProblemData>>> to) {
+    for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueProblems : from.entrySet()) {
+      Map<File, List<ProblemData>> target = to.computeIfAbsent(issueProblems.getKey(), issue -> new HashMap<>());
+      for (Map.Entry<File, List<ProblemData>> fileProblems : issueProblems.getValue().entrySet()) {
+        target.computeIfAbsent(fileProblems.getKey(), file -> new ArrayList<>()).addAll(fileProblems.getValue());
+      }
+    }
+  }
+
+  private static class ModuleResult {
+    private final Map<Issue, Map<File, List<ProblemData>>> myProblems = new HashMap<>();
+    private int myAnalyzedFileCount;
+    private int myCachedFileCount;
+  }
+}
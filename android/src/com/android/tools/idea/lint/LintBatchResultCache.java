@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import com.android.tools.lint.detector.api.Issue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.android.inspections.lint.ProblemData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the problems found by single-file lint checks during batch ("Inspect Code") runs, keyed by file path and
+ * content hash, such that rerunning the inspections only re-analyzes the files that changed.
+ * <p>
+ * All entries are computed against a configuration key (see {@link #computeConfigurationKey}) which captures the lint
+ * version, the set of checks that were run, the project model and the manifests and resources the checks may consult.
+ * Seeing a new configuration key drops every entry. At most {@link #MAX_ENTRIES} files are kept, dropping the least
+ * recently used ones first.
+ */
+public class LintBatchResultCache {
+  @VisibleForTesting static final int MAX_ENTRIES = 20_000;
+
+  private final Cache<String, Entry> myEntries = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+  private final AtomicInteger myHitCount = new AtomicInteger();
+  private final AtomicInteger myMissCount = new AtomicInteger();
+  @Nullable private volatile String myConfiguration;
+
+  @NotNull
+  public static LintBatchResultCache getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, LintBatchResultCache.class);
+  }
+
+  /**
+   * Returns the cached problems for the file at the given path, or null if the file has not been analyzed with the same
+   * content and configuration before.
+   */
+  @Nullable
+  public Map<Issue, List<ProblemData>> get(@NotNull String path, long contentHash, @NotNull String configuration) {
+    checkConfiguration(configuration);
+    Entry entry = myEntries.getIfPresent(path);
+    if (entry == null || entry.myContentHash != contentHash) {
+      myMissCount.incrementAndGet();
+      return null;
+    }
+    myHitCount.incrementAndGet();
+    return entry.myProblems;
+  }
+
+  public void put(@NotNull String path, long contentHash, @NotNull String configuration, @NotNull Map<Issue, List<ProblemData>> problems) {
+    checkConfiguration(configuration);
+    myEntries.put(path, new Entry(contentHash, ImmutableMap.copyOf(problems)));
+  }
+
+  public void clear() {
+    myEntries.invalidateAll();
+  }
+
+  public int size() {
+    return (int)myEntries.size();
+  }
+
+  public int getHitCount() {
+    return myHitCount.get();
+  }
+
+  public int getMissCount() {
+    return myMissCount.get();
+  }
+
+  private void checkConfiguration(@NotNull String configuration) {
+    if (!configuration.equals(myConfiguration)) {
+      synchronized (this) {
+        if (!configuration.equals(myConfiguration)) {
+          myEntries.invalidateAll();
+          myConfiguration = configuration;
+        }
+      }
+    }
+  }
+
+  public static long hashContent(@NotNull byte[] content) {
+    return Hashing.farmHashFingerprint64().hashBytes(content).asLong();
+  }
+
+  /**
+   * Computes the key identifying the conditions the cached results were computed under.
+   *
+   * @param lintRevision the revision of the lint client, which identifies the bundled lint version
+   * @param issues the issues that were checked
+   * @param projectModelStamp a stamp that changes whenever the project model (and therefore the lint configuration) changes,
+   *                          such as the project roots modification count
+   * @param sourceStamp a stamp that changes whenever a file the single-file checks may consult besides the file being checked
+   *                    changes, i.e. the manifests merged into the modules' manifests (e.g. for the minSdkVersion) and the resources
+   */
+  @NotNull
+  public static String computeConfigurationKey(@Nullable String lintRevision,
+                                               @NotNull Collection<Issue> issues,
+                                               long projectModelStamp,
+                                               long sourceStamp) {
+    TreeSet<String> ids = new TreeSet<>();
+    for (Issue issue : issues) {
+      ids.add(issue.getId());
+    }
+    long issuesHash = Hashing.farmHashFingerprint64().hashString(String.join(",", ids), StandardCharsets.UTF_8).asLong();
+    return lintRevision + ":" + projectModelStamp + ":" + Long.toHexString(sourceStamp) + ":" + Long.toHexString(issuesHash);
+  }
+
+  private static class Entry {
+    private final long myContentHash;
+    @NotNull private final Map<Issue, List<ProblemData>> myProblems;
+
+    private Entry(long contentHash, @NotNull Map<Issue, List<ProblemData>> problems) {
+      myContentHash = contentHash;
+      myProblems = problems;
+    }
+  }
+}
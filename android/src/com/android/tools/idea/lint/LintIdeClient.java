@@ -155,7 +155,18 @@ public class LintIdeClient extends LintClient implements Disposable {
                                        @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap,
                                        @NotNull AnalysisScope scope,
                                        @NotNull Set<Issue> issues) {
-    return new BatchLintClient(project, problemMap, scope, issues);
+    return new BatchLintClient(project, problemMap, scope, issues, false);
+  }
+
+  /**
+   * Creates a lint client for one shard of a parallel batch analysis. Unlike {@link #forBatch}, problems for issues
+   * outside of {@code issues} (such as third party checks) are dropped, since those are reported by the main batch client.
+   */
+  public static LintIdeClient forBatchShard(@NotNull Project project,
+                                            @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap,
+                                            @NotNull AnalysisScope scope,
+                                            @NotNull Set<Issue> issues) {
+    return new BatchLintClient(project, problemMap, scope, issues, true);
   }
 
   /**
@@ -585,6 +596,12 @@ public class LintIdeClient extends LintClient implements Disposable {
   @Nullable
   @Override
   public String getClientRevision() {
+    return getStudioRevision();
+  }
+
+  /** Returns the {@link #getClientRevision() revision} of the lint clients, without having to create one. */
+  @NotNull
+  public static String getStudioRevision() {
     return ApplicationInfoEx.getInstanceEx().getStrictVersion();
   }
 
@@ -957,15 +974,18 @@ public class LintIdeClient extends LintClient implements Disposable {
     private final Map<Issue, Map<File, List<ProblemData>>> myProblemMap;
     private final AnalysisScope myScope;
     private final Set<Issue> myIssues;
+    private final boolean myOnlyKnownIssues;
 
     public BatchLintClient(@NotNull Project project,
                            @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap,
                            @NotNull AnalysisScope scope,
-                           @NotNull Set<Issue> issues) {
+                           @NotNull Set<Issue> issues,
+                           boolean onlyKnownIssues) {
       super(project);
       myProblemMap = problemMap;
       myScope = scope;
       myIssues = issues;
+      myOnlyKnownIssues = onlyKnownIssues;
     }
 
     @Nullable
@@ -989,6 +1009,9 @@ public class LintIdeClient extends LintClient implements Disposable {
                        @NonNull String message,
                        @NonNull TextFormat format,
                        @Nullable LintFix quickfixData) {
+      if (myOnlyKnownIssues && !myIssues.contains(issue)) {
+        return;
+      }
       VirtualFile vFile = null;
       File file = null;
 
@@ -19,6 +19,7 @@ import static com.android.SdkConstants.ANDROID_URI;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.SdkConstants;
+import com.android.annotations.concurrency.GuardedBy;
 import com.android.annotations.concurrency.Immutable;
 import com.android.annotations.concurrency.Slow;
 import com.android.builder.model.BaseConfig;
@@ -63,6 +64,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.input.CharSequenceInputStream;
 import org.jetbrains.android.dom.manifest.Manifest;
 import org.jetbrains.android.facet.AndroidFacet;
@@ -95,6 +97,12 @@ final class MergedManifestInfo {
   private final long mySyncTimestamp;
   @Nullable private final ImmutableList<MergingReport.Record> myLoggingRecords;
   @Nullable private final Actions myActions;
+  /** The merged manifest serialized as XML, computed on demand when merging it into the manifests of dependent modules. */
+  @GuardedBy("this")
+  @Nullable private byte[] myXmlBytes;
+
+  private static final AtomicLong ourLibraryManifestCount = new AtomicLong();
+  private static final AtomicLong ourLibraryManifestReuseCount = new AtomicLong();
 
   /**
    * Relevant information extracted from the result of running the manifest merger,
@@ -294,6 +302,31 @@ final class MergedManifestInfo {
     return myDomDocument;
   }
 
+  /**
+   * Returns the merged manifest serialized as XML, or null if the merge failed. The serialized form is computed once and
+   * shared by all the modules depending on this one, rather than once per dependent module.
+   */
+  @Nullable
+  private synchronized byte[] getXmlBytes() {
+    if (myXmlBytes == null && myDomDocument != null) {
+      myXmlBytes = XmlUtils.toXml(myDomDocument).getBytes(UTF_8);
+    }
+    else if (myXmlBytes != null) {
+      ourLibraryManifestReuseCount.incrementAndGet();
+    }
+    return myXmlBytes;
+  }
+
+  /** The number of times the merged manifest of a library module was merged into the manifest of another module. */
+  static long getLibraryManifestCount() {
+    return ourLibraryManifestCount.get();
+  }
+
+  /** The number of times the merged manifest of a library module was reused without serializing it again. */
+  static long getLibraryManifestReuseCount() {
+    return ourLibraryManifestReuseCount.get();
+  }
+
   @Nullable
   public ImmutableList<VirtualFile> getFiles() {
     return myModificationStamps.getFiles();
@@ -408,6 +441,9 @@ final class MergedManifestInfo {
     FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
 
     manifestMergerInvoker.withFileStreamProvider(new ManifestMerger2.FileStreamProvider() {
+      /** The modules of all the manifests of the project, computed when first needed. */
+      @Nullable private Map<VirtualFile, Module> myManifestModules;
+
       @Override
       protected InputStream getInputStream(@NotNull File file) throws IOException {
         VirtualFile vFile;
@@ -431,14 +467,13 @@ final class MergedManifestInfo {
           Module moduleContainingManifest = getAndroidModuleForManifest(vFile);
           if (moduleContainingManifest != null && !module.equals(moduleContainingManifest)) {
             MergedManifestSnapshot manifest = MergedManifestManager.getFreshSnapshotInCallingThread(moduleContainingManifest);
-
-            Document document = manifest.getDocument();
-            if (document != null) { // normally the case, but can fail on merge fail
-              // This is not very efficient. Consider enhancing the manifest merger API
-              // such that I can pass back a fully merged DOM document instead of
-              // an XML string since it will need to turn around and parse it anyway.
-              String text = XmlUtils.toXml(document);
-              return new ByteArrayInputStream(text.getBytes(UTF_8));
+            MergedManifestInfo info = manifest.getMergedManifestInfo();
+            // The manifest merger API takes the library manifests as streams, so we can't pass it the merged DOM document
+            // directly; the serialized form is at least shared by all the modules depending on this library.
+            byte[] bytes = info != null ? info.getXmlBytes() : null;
+            if (bytes != null) { // normally the case, but can fail on merge fail
+              ourLibraryManifestCount.incrementAndGet();
+              return new ByteArrayInputStream(bytes);
             }
           }
         }
@@ -468,23 +503,24 @@ final class MergedManifestInfo {
         //       |--- external/a
         //               |------- AndroidManifest.xml
         // where the build.gradle remaps the sources to point to $root/external/a/AndroidManifest.xml, obtaining the module containing the
-        // file will return root where it should have been "a". So the correct scheme is to actually iterate through all the modules in the
-        // project and look at their source providers
-        for (Module m : ModuleManager.getInstance(project).getModules()) {
-          AndroidFacet androidFacet = AndroidFacet.getInstance(m);
-          if (androidFacet == null) {
-            continue;
-          }
+        // file will return root where it should have been "a". So the correct scheme is to actually look at the source providers of all
+        // the modules in the project, which we index once per merge instead of once per library manifest.
+        if (myManifestModules == null) {
+          myManifestModules = new HashMap<>();
+          for (Module m : ModuleManager.getInstance(project).getModules()) {
+            AndroidFacet androidFacet = AndroidFacet.getInstance(m);
+            if (androidFacet == null) {
+              continue;
+            }
 
-          Collection<VirtualFile> manifestFiles = IdeaSourceProvider.getManifestFiles(androidFacet);
-          for (VirtualFile manifestFile : manifestFiles) {
-            if (vFile.equals(manifestFile)) {
-              return m;
+            Collection<VirtualFile> manifestFiles = IdeaSourceProvider.getManifestFiles(androidFacet);
+            for (VirtualFile manifestFile : manifestFiles) {
+              myManifestModules.putIfAbsent(manifestFile, m);
             }
           }
         }
 
-        return null;
+        return myManifestModules.get(vFile);
       }
     });
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.model
+
+import com.android.annotations.concurrency.AnyThread
+import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.idea.projectsystem.getModuleSystem
+import com.google.common.annotations.VisibleForTesting
+import com.google.common.util.concurrent.AsyncCallable
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.intellij.facet.ProjectFacetManager
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.module.Module
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Disposer
+import com.intellij.util.concurrency.AppExecutorUtil
+import org.jetbrains.android.facet.AndroidFacet
+import java.util.concurrent.Callable
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+private val LOG = Logger.getInstance(MergedManifestPrecomputer::class.java)
+
+/**
+ * Pool used to request the merged manifests of modules whose dependencies are ready. The computations themselves happen
+ * on the threads of each module's [MergedManifestManager].
+ */
+private val PRECOMPUTE_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+  "Merged Manifest Precompute Pool", Runtime.getRuntime().availableProcessors())
+
+/**
+ * Project service which computes the merged manifests of all the Android modules of a project in the background, typically
+ * right after a sync, so that the many features requesting them at that point find them ready instead of blocking on them.
+ *
+ * The merged manifest of a module includes the merged manifests of the library modules it depends on, so the manifests
+ * of libraries are requested before the manifests of the modules depending on them: independent modules are computed in
+ * parallel, and each library is merged once and then reused by all its dependents (see [MergedManifestInfo]).
+ *
+ * Scheduling the manifests again, or disposing the project, cancels the manifests which haven't been requested yet.
+ */
+class MergedManifestPrecomputer @VisibleForTesting constructor(
+  private val project: Project,
+  /** Returns the merged manifest of a module, computing it if it isn't up to date. */
+  private val requestManifest: (Module) -> ListenableFuture<*>
+) : Disposable {
+
+  constructor(project: Project) : this(project, { MergedManifestManager.getMergedManifest(it) })
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var scheduled: List<ListenableFuture<*>> = emptyList()
+
+  /** Incremented each time the scheduled manifests are canceled, so that pending requests can tell they are obsolete. */
+  private val generation = AtomicInteger()
+
+  private val computedCount = AtomicInteger()
+  private val upToDateCount = AtomicInteger()
+  private val computeNanos = AtomicLong()
+
+  /**
+   * Cancels any previously scheduled computations and schedules the computation of the merged manifests of all Android
+   * modules. The returned future completes once all of them are available.
+   */
+  @AnyThread
+  fun precomputeAll(): ListenableFuture<*> {
+    val dependencies = runReadAction {
+      ProjectFacetManager.getInstance(project).getFacets(AndroidFacet.ID)
+        .filter { !Disposer.isDisposed(it) }
+        .associate { it.module to it.module.getModuleSystem().getResourceModuleDependencies() }
+    }
+
+    synchronized(lock) {
+      cancel()
+      val currentGeneration = generation.get()
+      val futures = LinkedHashMap<Module, ListenableFuture<*>>()
+
+      fun schedule(module: Module, visiting: MutableSet<Module>): ListenableFuture<*> {
+        futures[module]?.let { return it }
+        if (!visiting.add(module)) {
+          // Circular dependency; don't wait on it.
+          return Futures.immediateFuture(null)
+        }
+        val dependencyFutures = dependencies[module].orEmpty()
+          .filter { it in dependencies }
+          .map { schedule(it, visiting) }
+        val future = Futures.whenAllComplete(dependencyFutures)
+          .callAsync(AsyncCallable { request(module, currentGeneration) }, PRECOMPUTE_EXECUTOR)
+        futures[module] = future
+        return future
+      }
+
+      dependencies.keys.forEach { schedule(it, HashSet()) }
+      scheduled = futures.values.toList()
+
+      return Futures.whenAllComplete(scheduled).call(Callable {
+        if (LOG.isDebugEnabled) {
+          LOG.debug("Merged manifests of ${futures.size} modules ready: $stats")
+        }
+      }, MoreExecutors.directExecutor())
+    }
+  }
+
+  private fun request(module: Module, requestGeneration: Int): ListenableFuture<*> {
+    if (generation.get() != requestGeneration || module.isDisposed) {
+      return Futures.immediateFuture(null)
+    }
+    val start = System.nanoTime()
+    val future = requestManifest(module)
+    if (future.isDone) {
+      upToDateCount.incrementAndGet()
+    }
+    else {
+      future.addListener(Runnable {
+        computedCount.incrementAndGet()
+        computeNanos.addAndGet(System.nanoTime() - start)
+      }, MoreExecutors.directExecutor())
+    }
+    return future
+  }
+
+  /**
+   * Cancels the computation of the merged manifests which haven't been requested yet.
+   */
+  @AnyThread
+  fun cancel() {
+    synchronized(lock) {
+      generation.incrementAndGet()
+      scheduled.forEach { it.cancel(false) }
+      scheduled = emptyList()
+    }
+  }
+
+  override fun dispose() = cancel()
+
+  /** The number of merged manifests which had to be computed. */
+  val computedManifestCount get() = computedCount.get()
+
+  /** The number of merged manifests which were already up to date when requested. */
+  val upToDateManifestCount get() = upToDateCount.get()
+
+  /** The total time spent waiting for the merged manifests which had to be computed, in milliseconds. */
+  val computeTimeMs get() = TimeUnit.NANOSECONDS.toMillis(computeNanos.get())
+
+  val stats
+    get() = "$computedManifestCount computed in $computeTimeMs ms, $upToDateManifestCount up to date, " +
+            "${MergedManifestInfo.getLibraryManifestReuseCount()} of ${MergedManifestInfo.getLibraryManifestCount()} library manifests reused"
+
+  companion object {
+    @JvmStatic
+    fun getInstance(project: Project): MergedManifestPrecomputer =
+      ServiceManager.getService(project, MergedManifestPrecomputer::class.java)
+  }
+}
@@ -18,6 +18,8 @@ package com.android.tools.idea.model
 import com.android.SdkConstants.FN_ANDROID_MANIFEST_XML
 import com.android.ide.common.util.PathString
 import com.android.resources.ResourceFolderType
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.projectsystem.PROJECT_SYSTEM_SYNC_TOPIC
 import com.android.tools.idea.projectsystem.ProjectSystemSyncManager.SyncResult
 import com.android.tools.idea.projectsystem.ProjectSystemSyncManager.SyncResultListener
 import com.android.tools.idea.projectsystem.getModuleSystem
@@ -112,6 +114,13 @@ class MergedManifestRefreshListener(project: Project) : PoliteAndroidVirtualFile
       project.listenUntilNextSync(listener = object : SyncResultListener {
         override fun syncEnded(result: SyncResult) = ensureSubscribed()
       })
+      project.messageBus.connect(project).subscribe(PROJECT_SYSTEM_SYNC_TOPIC, object : SyncResultListener {
+        override fun syncEnded(result: SyncResult) {
+          if (result.isSuccessful && StudioFlags.PRECOMPUTE_MERGED_MANIFESTS.get()) {
+            MergedManifestPrecomputer.getInstance(project).precomputeAll()
+          }
+        }
+      })
     }
   }
 
@@ -49,6 +49,12 @@ import org.jetbrains.org.objectweb.asm.Type;
  * This way we avoid custom views breaking the rendering.
  */
 public class ClassConverter {
+  /**
+   * Version of the transformations applied by {@link #rewriteClass}. Increment it whenever they change, to invalidate the
+   * classes rewritten by previous versions in {@link RenderClassCache}.
+   */
+  static final int REWRITE_VERSION = 1;
+
   private static final String ORIGINAL_SUFFIX = "_Original";
   private static final String ERROR_METHOD_DESCRIPTION;
 
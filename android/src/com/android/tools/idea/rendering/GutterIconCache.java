@@ -15,13 +15,24 @@
  */
 package com.android.tools.idea.rendering;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.android.ide.common.rendering.api.RenderResources;
-import com.google.common.collect.Maps;
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.ui.EmptyIcon;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import icons.AndroidIcons;
@@ -30,8 +41,19 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Cache of the thumbnails shown for drawables in the editor gutter, keyed by file path. The cache is bounded by the approximate
+ * memory used by the thumbnails, evicting the least recently used ones, and the thumbnails are only softly referenced.
+ * <p>
+ * {@link #getIcon} renders missing or out of date thumbnails on the calling thread. {@link #getIconOrPlaceholder}, used when painting,
+ * renders them on a background thread instead, in read actions which give way to write actions, and repaints the editor gutters when
+ * they are ready.
+ */
 public class GutterIconCache {
   private static final Logger LOG = Logger.getInstance(GutterIconCache.class);
   private static final Icon NONE = AndroidIcons.Android; // placeholder
@@ -39,18 +61,36 @@ public class GutterIconCache {
   @VisibleForTesting static final int MAX_WIDTH = JBUI.scale(16);
   @VisibleForTesting static final int MAX_HEIGHT = JBUI.scale(16);
 
+  /** The thumbnails are small, so this is enough for a few thousand of them. */
+  private static final long MAX_CACHE_BYTES = 8 * 1024 * 1024;
+
   private static final GutterIconCache ourInstance = new GutterIconCache();
 
-  private Map<String, Icon> myThumbnailCache = Maps.newHashMap();
+  /** Icons, with the modification stamps of their files when they were rendered. */
+  @NotNull private final Cache<String, CachedIcon> myThumbnailCache;
+  @NotNull private final Executor myRenderExecutor;
+  /** Paths of the files with a thumbnail being rendered by {@link #myRenderExecutor}. */
+  @NotNull private final Set<String> myPendingPaths = ContainerUtil.newConcurrentSet();
+  @NotNull private final AtomicBoolean myRepaintScheduled = new AtomicBoolean();
+  private volatile boolean myRetina;
 
-  /**
-   * Stores timestamps for the last modification time of image files using the
-   * path as a key.
-   */
-  private Map<String, Long> myModificationStampCache = Maps.newHashMap();
-  private boolean myRetina;
+  @NotNull private final AtomicLong myRenderCount = new AtomicLong();
+  @NotNull private final AtomicLong myRenderNanos = new AtomicLong();
+  @NotNull private final AtomicLong myPlaceholderCount = new AtomicLong();
 
   public GutterIconCache() {
+    this(AppExecutorUtil.createBoundedApplicationPoolExecutor("Gutter Icon Renderer", 2), MAX_CACHE_BYTES);
+  }
+
+  @VisibleForTesting
+  GutterIconCache(@NotNull Executor renderExecutor, long maxCacheBytes) {
+    myRenderExecutor = renderExecutor;
+    myThumbnailCache = CacheBuilder.newBuilder()
+      .maximumWeight(maxCacheBytes)
+      .weigher((String path, CachedIcon icon) -> icon.getWeight())
+      .softValues()
+      .recordStats()
+      .build();
   }
 
   @NotNull
@@ -60,38 +100,182 @@ public class GutterIconCache {
 
   @VisibleForTesting
   boolean isIconUpToDate(@NotNull VirtualFile file) {
-    String path = file.getPath();
-    if (myModificationStampCache.containsKey(path)) {
-      // Entry is valid if image resource has not been modified since the entry was cached
-      return myModificationStampCache.get(path) == file.getModificationStamp() && !FileDocumentManager.getInstance().isFileModified(file);
-    }
+    CachedIcon cachedIcon = myThumbnailCache.getIfPresent(file.getPath());
+    return cachedIcon != null && isUpToDate(cachedIcon, file);
+  }
 
-    return false;
+  private static boolean isUpToDate(@NotNull CachedIcon cachedIcon, @NotNull VirtualFile file) {
+    // Entry is valid if image resource has not been modified since the entry was cached
+    return cachedIcon.myModificationStamp == file.getModificationStamp() && !FileDocumentManager.getInstance().isFileModified(file);
   }
 
   @Nullable
   public Icon getIcon(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
-    boolean isRetina = UIUtil.isRetina();
-    if (myRetina != isRetina) {
-      myRetina = isRetina;
-      myThumbnailCache.clear();
+    checkRetina();
+    String path = file.getPath();
+    CachedIcon cachedIcon = myThumbnailCache.getIfPresent(path);
+    if (cachedIcon == null || !isUpToDate(cachedIcon, file)) {
+      cachedIcon = render(file, resolver, facet);
     }
+
+    return cachedIcon.myIcon != NONE ? cachedIcon.myIcon : null;
+  }
+
+  /**
+   * Like {@link #getIcon}, but instead of rendering a missing or out of date icon on the calling thread, schedules it to be rendered in
+   * the background and returns the previous icon for the file if there is one, or an empty placeholder otherwise. Meant to be called
+   * while painting.
+   */
+  @NotNull
+  public Icon getIconOrPlaceholder(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
+    if (!StudioFlags.ASYNC_GUTTER_ICONS.get()) {
+      Icon icon = getIcon(file, resolver, facet);
+      return icon != null ? icon : EmptyIcon.ICON_0;
+    }
+
+    checkRetina();
+    CachedIcon cachedIcon = myThumbnailCache.getIfPresent(file.getPath());
+    if (cachedIcon == null || !isUpToDate(cachedIcon, file)) {
+      scheduleRender(file, resolver, facet);
+      if (cachedIcon == null) {
+        myPlaceholderCount.incrementAndGet();
+        return EmptyIcon.create(MAX_WIDTH, MAX_HEIGHT);
+      }
+    }
+    return cachedIcon.myIcon != NONE ? cachedIcon.myIcon : EmptyIcon.ICON_0;
+  }
+
+  private void scheduleRender(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
     String path = file.getPath();
-    Icon myIcon = myThumbnailCache.get(path);
-    if (myIcon == null || !isIconUpToDate(file)) {
-      myIcon = GutterIconFactory.createIcon(file, resolver, MAX_WIDTH, MAX_HEIGHT, facet);
+    if (!myPendingPaths.add(path)) {
+      return;
+    }
+    myRenderExecutor.execute(() -> {
+      try {
+        if (renderInReadAction(file, resolver, facet)) {
+          scheduleRepaint(facet.getModule().getProject());
+        }
+      }
+      catch (Throwable t) {
+        LOG.warn("Cannot render gutter icon for " + path, t);
+      }
+      finally {
+        myPendingPaths.remove(path);
+      }
+    });
+  }
+
+  /**
+   * Renders the icon of the file in a read action, unless it was brought up to date in the meantime. The read action is canceled
+   * whenever a write action is pending, and run again after it, so that rendering doesn't hold up edits.
+   *
+   * @return whether the icon was rendered
+   */
+  private boolean renderInReadAction(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
+    AtomicBoolean rendered = new AtomicBoolean();
+    Runnable action = () -> {
+      if (facet.isDisposed() || !file.isValid()) {
+        return;
+      }
+      CachedIcon cachedIcon = myThumbnailCache.getIfPresent(file.getPath());
+      if (cachedIcon == null || !isUpToDate(cachedIcon, file)) {
+        render(file, resolver, facet);
+        rendered.set(true);
+      }
+    };
 
-      if (myIcon == null) {
-        myIcon = NONE;
+    if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+      action.run();
+    }
+    else {
+      while (!ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(action)) {
+        ProgressIndicatorUtils.yieldToPendingWriteActions();
       }
+    }
+    return rendered.get();
+  }
+
+  @NotNull
+  private CachedIcon render(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
+    // Record timestamp of image resource at the time of caching
+    long modificationStamp = file.getModificationStamp();
+    long start = System.nanoTime();
+    Icon icon = GutterIconFactory.createIcon(file, resolver, MAX_WIDTH, MAX_HEIGHT, facet);
+    myRenderNanos.addAndGet(System.nanoTime() - start);
+    myRenderCount.incrementAndGet();
+
+    CachedIcon cachedIcon = new CachedIcon(icon != null ? icon : NONE, modificationStamp);
+    myThumbnailCache.put(file.getPath(), cachedIcon);
+    return cachedIcon;
+  }
 
-      myThumbnailCache.put(path, myIcon);
+  /** Repaints the editor gutters of the project once, after any number of icons have been rendered in the background. */
+  private void scheduleRepaint(@NotNull Project project) {
+    if (!myRepaintScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    ApplicationManager.getApplication().invokeLater(() -> {
+      myRepaintScheduled.set(false);
+      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+        if (editor instanceof EditorEx && project.equals(editor.getProject())) {
+          ((EditorEx)editor).getGutterComponentEx().repaint();
+        }
+      }
+    }, project.getDisposed());
+  }
 
-      // Record timestamp of image resource at the time of caching
-      myModificationStampCache.put(path, file.getModificationStamp());
+  private void checkRetina() {
+    boolean isRetina = UIUtil.isRetina();
+    if (myRetina != isRetina) {
+      myRetina = isRetina;
+      myThumbnailCache.invalidateAll();
     }
+  }
 
-    return myIcon != NONE ? myIcon : null;
+  /** Drops all the cached icons. */
+  public void clear() {
+    myThumbnailCache.invalidateAll();
   }
 
+  @VisibleForTesting
+  long getCachedIconCount() {
+    return myThumbnailCache.size();
+  }
+
+  @VisibleForTesting
+  long getRenderCount() {
+    return myRenderCount.get();
+  }
+
+  @VisibleForTesting
+  long getPlaceholderCount() {
+    return myPlaceholderCount.get();
+  }
+
+  @NotNull
+  public String getStats() {
+    CacheStats stats = myThumbnailCache.stats();
+    return String.format("Gutter icon cache: %1$d icons, %2$d hits, %3$d misses, %4$d evictions, %5$d rendered (%6$d ms), " +
+                         "%7$d placeholders",
+                         myThumbnailCache.size(), stats.hitCount(), stats.missCount(), stats.evictionCount(), myRenderCount.get(),
+                         myRenderNanos.get() / 1000000, myPlaceholderCount.get());
+  }
+
+  private static class CachedIcon {
+    @NotNull final Icon myIcon;
+    final long myModificationStamp;
+
+    private CachedIcon(@NotNull Icon icon, long modificationStamp) {
+      myIcon = icon;
+      myModificationStamp = modificationStamp;
+    }
+
+    /** Returns the approximate number of bytes used by the icon, assuming 4 bytes per pixel. */
+    int getWeight() {
+      if (myIcon == NONE) {
+        return 1;
+      }
+      return Math.max(1, myIcon.getIconWidth() * myIcon.getIconHeight() * 4);
+    }
+  }
 }
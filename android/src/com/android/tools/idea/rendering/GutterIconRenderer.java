@@ -31,7 +31,6 @@ import com.intellij.ui.awt.RelativePoint;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.scale.JBUIScale;
 import com.intellij.util.io.URLUtil;
-import com.intellij.util.ui.EmptyIcon;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import javax.swing.Icon;
@@ -57,8 +56,7 @@ public class GutterIconRenderer extends com.intellij.openapi.editor.markup.Gutte
   @Override
   @NotNull
   public Icon getIcon() {
-    Icon icon = GutterIconCache.getInstance().getIcon(myFile, myResourceResolver, myFacet);
-    return icon == null ? EmptyIcon.ICON_0 : icon;
+    return GutterIconCache.getInstance().getIconOrPlaceholder(myFile, myResourceResolver, myFacet);
   }
 
   @Override
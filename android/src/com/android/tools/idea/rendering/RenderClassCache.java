@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Cache of the class files rewritten by {@link ClassConverter} for the render class loaders, keyed by the hash of the
+ * original class file contents. Recently used classes are kept in memory, and all classes are also stored on disk, so
+ * that they can be reused by new {@link org.jetbrains.android.uipreview.ModuleClassLoader}s created after a build
+ * (where most classes have not changed), and across IDE restarts.
+ * <p>
+ * The disk cache lives in a directory specific to the {@link ClassConverter#REWRITE_VERSION} and the class file
+ * version of the current JDK, so changing either invalidates it.
+ */
+public class RenderClassCache {
+  private static final Logger LOG = Logger.getInstance(RenderClassCache.class);
+
+  private static final long MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+  private static final long MAX_DISK_BYTES = 256 * 1024 * 1024;
+  private static final String CLASS_SUFFIX = ".class";
+
+  private static final Object ourLock = new Object();
+  private static RenderClassCache ourInstance;
+
+  @Nullable private final Path myDirectory;
+  @NotNull private final Executor myDiskExecutor;
+  private final long myMaxDiskBytes;
+  @NotNull private final Cache<String, byte[]> myMemoryCache;
+
+  private final AtomicLong myMemoryHitCount = new AtomicLong();
+  private final AtomicLong myDiskHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+  private final AtomicLong myConversionNanos = new AtomicLong();
+
+  /**
+   * @param directory the directory to store the rewritten classes in, or null to only cache classes in memory
+   * @param diskExecutor the executor used to write classes to disk
+   */
+  @VisibleForTesting
+  RenderClassCache(@Nullable Path directory, @NotNull Executor diskExecutor, long maxMemoryBytes, long maxDiskBytes) {
+    myDirectory = directory;
+    myDiskExecutor = diskExecutor;
+    myMaxDiskBytes = maxDiskBytes;
+    myMemoryCache = CacheBuilder.newBuilder()
+      .maximumWeight(maxMemoryBytes)
+      .weigher((String key, byte[] value) -> value.length)
+      .build();
+  }
+
+  /**
+   * Returns the cache shared by all the render class loaders, or null if the cache is disabled.
+   */
+  @Nullable
+  public static RenderClassCache getInstance() {
+    if (!StudioFlags.NELE_RENDER_CLASS_CACHE.get()) {
+      return null;
+    }
+    synchronized (ourLock) {
+      if (ourInstance == null) {
+        if (ApplicationManager.getApplication() == null) {
+          ourInstance = new RenderClassCache(null, Runnable::run, MAX_MEMORY_BYTES, 0);
+        }
+        else {
+          Path root = Paths.get(PathManager.getSystemPath(), "render-classes");
+          Path directory = root.resolve("v" + ClassConverter.REWRITE_VERSION + "-" + ClassConverter.getCurrentClassVersion());
+          Executor executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Render Class Cache", 1);
+          ourInstance = new RenderClassCache(directory, executor, MAX_MEMORY_BYTES, MAX_DISK_BYTES);
+          executor.execute(() -> ourInstance.trim(root));
+        }
+      }
+      return ourInstance;
+    }
+  }
+
+  /**
+   * Returns the rewritten version of the given class file, from the cache if possible, or otherwise by calling converter and
+   * caching the result.
+   */
+  @NotNull
+  public byte[] convert(@NotNull byte[] classData, @NotNull Function<byte[], byte[]> converter) {
+    String key = computeKey(classData);
+    byte[] result = myMemoryCache.getIfPresent(key);
+    if (result != null) {
+      myMemoryHitCount.incrementAndGet();
+      return result;
+    }
+
+    result = readFromDisk(key);
+    if (result != null) {
+      myDiskHitCount.incrementAndGet();
+      myMemoryCache.put(key, result);
+      return result;
+    }
+
+    myMissCount.incrementAndGet();
+    long start = System.nanoTime();
+    byte[] converted = converter.apply(classData);
+    myConversionNanos.addAndGet(System.nanoTime() - start);
+    myMemoryCache.put(key, converted);
+    if (myDirectory != null) {
+      myDiskExecutor.execute(() -> writeToDisk(key, converted));
+    }
+    if (LOG.isDebugEnabled() && myMissCount.get() % 1000 == 0) {
+      LOG.debug(getStats());
+    }
+    return converted;
+  }
+
+  @NotNull
+  static String computeKey(@NotNull byte[] classData) {
+    long hash = Hashing.farmHashFingerprint64().hashBytes(classData).asLong();
+    return String.format("%016x%08x", hash, classData.length);
+  }
+
+  @Nullable
+  private byte[] readFromDisk(@NotNull String key) {
+    if (myDirectory == null) {
+      return null;
+    }
+    try {
+      return Files.readAllBytes(getPath(key));
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      LOG.debug("Cannot read cached class " + key, e);
+      return null;
+    }
+  }
+
+  private void writeToDisk(@NotNull String key, @NotNull byte[] data) {
+    assert myDirectory != null;
+    Path path = getPath(key);
+    try {
+      Files.createDirectories(path.getParent());
+      // Write to a temporary file first, so that readers never see a partially written class.
+      Path temp = Files.createTempFile(path.getParent(), key, ".tmp");
+      Files.write(temp, data);
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      LOG.debug("Cannot write cached class " + key, e);
+    }
+  }
+
+  @NotNull
+  private Path getPath(@NotNull String key) {
+    assert myDirectory != null;
+    return myDirectory.resolve(key.substring(0, 2)).resolve(key + CLASS_SUFFIX);
+  }
+
+  /**
+   * Deletes the cache directories of other versions under root, and the least recently written classes of this version if
+   * the cache is larger than its maximum size.
+   */
+  @VisibleForTesting
+  void trim(@NotNull Path root) {
+    if (myDirectory == null || !Files.isDirectory(root)) {
+      return;
+    }
+    try (Stream<Path> versions = Files.list(root)) {
+      versions.filter(version -> !version.equals(myDirectory)).forEach(version -> FileUtil.delete(version.toFile()));
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+    }
+
+    List<File> files = new ArrayList<>();
+    long totalBytes = 0;
+    try (Stream<Path> paths = Files.walk(myDirectory)) {
+      for (Path path : (Iterable<Path>)paths::iterator) {
+        File file = path.toFile();
+        if (file.isFile()) {
+          files.add(file);
+          totalBytes += file.length();
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return;
+    }
+    if (totalBytes <= myMaxDiskBytes) {
+      return;
+    }
+    files.sort(Comparator.comparingLong(File::lastModified));
+    // Trim to 3/4 of the maximum size, so we don't need to do this again for a while.
+    for (File file : files) {
+      if (totalBytes <= myMaxDiskBytes * 3 / 4) {
+        break;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        totalBytes -= length;
+      }
+    }
+  }
+
+  /** Drops the classes cached in memory, such that the next lookups need to go to disk. */
+  public void clearMemoryCache() {
+    myMemoryCache.invalidateAll();
+  }
+
+  public long getMemoryHitCount() {
+    return myMemoryHitCount.get();
+  }
+
+  public long getDiskHitCount() {
+    return myDiskHitCount.get();
+  }
+
+  public long getMissCount() {
+    return myMissCount.get();
+  }
+
+  @NotNull
+  public String getStats() {
+    return String.format("Render class cache: %1$d memory hits, %2$d disk hits, %3$d misses (%4$d ms converting)",
+                         myMemoryHitCount.get(), myDiskHitCount.get(), myMissCount.get(), myConversionNanos.get() / 1000000);
+  }
+}
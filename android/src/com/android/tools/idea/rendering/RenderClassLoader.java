@@ -40,10 +40,10 @@ import static com.android.tools.idea.LogAnonymizerUtil.anonymizeClassName;
 public abstract class RenderClassLoader extends ClassLoader {
   protected static final Logger LOG = Logger.getInstance(RenderClassLoader.class);
 
-  // By default we do not use preload or use the cache but we will offer this fields to debug cases of uses where the
-  // disk I/O is very slow. We could try these flags and see if it helps.
+  // By default we do not use preload but we will offer this field to debug cases of uses where the
+  // disk I/O is very slow. We could try this flag and see if it helps.
+  // The rewritten classes are cached by RenderClassCache.
   private static boolean USE_PRELOAD = Boolean.getBoolean("render.class.loader.preload");
-  private static boolean USE_CACHE = Boolean.getBoolean("render.class.loader.cache");
 
   protected UrlClassLoader myJarClassLoader;
   protected boolean myInsideJarClassLoader;
@@ -120,16 +120,11 @@ public abstract class RenderClassLoader extends ClassLoader {
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("usePreload = " + USE_PRELOAD);
-      LOG.debug("useCache = " + USE_CACHE);
     }
     if (!USE_PRELOAD) {
       builder.noPreload();
     }
 
-    if (USE_CACHE) {
-      builder.useCache();
-    }
-
     try {
       // The setLogErrorOnMissingJar was added in Android Studio. We need to call it via reflection until the
       // change gets upstreamed.
@@ -179,9 +174,17 @@ public abstract class RenderClassLoader extends ClassLoader {
     }
   }
 
+  /**
+   * Returns the given class file rewritten by {@link ClassConverter}. The returned array may be shared with other class
+   * loaders through the {@link RenderClassCache}, so it must not be modified.
+   */
   @NotNull
   protected byte[] convertClass(@NotNull byte[] data) {
-    return ClassConverter.rewriteClass(data);
+    RenderClassCache cache = RenderClassCache.getInstance();
+    if (cache == null) {
+      return ClassConverter.rewriteClass(data);
+    }
+    return cache.convert(data, ClassConverter::rewriteClass);
   }
 
   @NotNull
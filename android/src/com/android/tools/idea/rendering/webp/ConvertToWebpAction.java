@@ -52,6 +52,7 @@ import com.intellij.notification.NotificationType;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
@@ -256,12 +257,12 @@ public class ConvertToWebpAction extends DumbAwareAction {
     private int myNinePatchCount;
     private int myLauncherIconCount;
     private int myTransparentCount;
-    private int myFileCount;
-    private long mySaved;
-    private int mySkipped;
 
     private List<VirtualFile> myParentFolders;
     private List<WebpConvertedFile> myConvertedFiles;
+    @Nullable private WebpBatchEncoder.Report myReport;
+    /** Whether the converted files are encoded and written by {@link #run}, rather than after the preview. */
+    private boolean myWritten;
 
     public WebpConversionTask(Project project,
                               WebpConversionSettings settings,
@@ -276,27 +277,54 @@ public class ConvertToWebpAction extends DumbAwareAction {
 
     @Override
     public void onFinished() {
-      if (mySettings.previewConversion &&
-          // Doesn't apply in lossless mode - nothing to preview, all conversions are exact
-          !mySettings.lossless &&
-          !myConvertedFiles.isEmpty()) {
-        WebpPreviewDialog dialog = new WebpPreviewDialog(this, myProject, mySettings, myConvertedFiles);
-        if (!dialog.showAndGet()) {
-          return;
+      if (myConvertedFiles == null) {
+        // Canceled before the images were found
+        return;
+      }
+      if (!myWritten) {
+        if (isPreviewNeeded()) {
+          WebpPreviewDialog dialog = new WebpPreviewDialog(myProject, mySettings, myConvertedFiles);
+          if (!dialog.showAndGet()) {
+            return;
+          }
+        }
+        // The files which weren't encoded by the preview are encoded in the background, like when there's no preview
+        Task.Backgroundable writeTask = new Task.Backgroundable(myProject, TITLE, true) {
+          @Override
+          public void run(@NotNull ProgressIndicator progressIndicator) {
+            encodeAndWrite(progressIndicator, true);
+          }
+
+          @Override
+          public void onFinished() {
+            notifyConverted();
+          }
+        };
+        if (ApplicationManager.getApplication().isUnitTestMode()) {
+          writeTask.run(new DumbProgressIndicator());
+          writeTask.onFinished();
+        }
+        else {
+          ProgressManager.getInstance().run(writeTask);
         }
-        encode(myConvertedFiles, true);
-      } else {
-        encode(myConvertedFiles, false);
+        return;
       }
-      writeImages(this, myProject, myConvertedFiles);
 
-      if (myShowBalloon) {
+      notifyConverted();
+    }
+
+    private void notifyConverted() {
+      if (myShowBalloon && myReport != null) {
+        int fileCount = myReport.getConvertedCount();
+        long saved = myReport.getSavedBytes();
+        int skipped = myReport.getSkippedCount();
+        int transparentCount = myTransparentCount + myReport.getFailedCount();
         StringBuilder sb = new StringBuilder();
-        if (myFiles.size() > 1 || myFileCount == 0) {
-          sb.append(Integer.toString(myFileCount)).append(" files were converted");
+        if (myFiles.size() > 1 || fileCount == 0) {
+          sb.append(Integer.toString(fileCount)).append(" files were converted");
         }
-        if (mySaved > 0 || myTransparentCount == 0 && myNinePatchCount == 0 && mySkipped == 0) {
-          sb.append("<br/>").append(formatSize(mySaved)).append(" saved");
+        if (saved > 0 || transparentCount == 0 && myNinePatchCount == 0 && skipped == 0) {
+          sb.append("<br/>").append(formatSize(saved)).append(" saved");
         }
         if (myNinePatchCount > 0) {
           sb.append("<br>").append(Integer.toString(myNinePatchCount)).append(" 9-patch files were skipped");
@@ -304,11 +332,14 @@ public class ConvertToWebpAction extends DumbAwareAction {
         if (myLauncherIconCount > 0) {
           sb.append("<br>").append(Integer.toString(myLauncherIconCount)).append(" launcher icons were skipped");
         }
-        if (myTransparentCount > 0) {
-          sb.append("<br>").append(Integer.toString(myTransparentCount)).append(" transparent images were skipped");
+        if (transparentCount > 0) {
+          sb.append("<br>").append(Integer.toString(transparentCount)).append(" transparent images were skipped");
+        }
+        if (skipped > 0) {
+          sb.append("<br>").append(Integer.toString(skipped)).append(" files were skipped because there was no net space savings");
         }
-        if (mySkipped > 0) {
-          sb.append("<br>").append(Integer.toString(mySkipped)).append(" files were skipped because there was no net space savings");
+        if (fileCount > 0) {
+          sb.append("<br>").append(String.format(Locale.US, "%.1f", myReport.getWallMillis() / 1000.0)).append(" seconds");
         }
         String message = sb.toString();
         new NotificationGroup("Convert to WebP", NotificationDisplayType.BALLOON, true)
@@ -319,21 +350,21 @@ public class ConvertToWebpAction extends DumbAwareAction {
       refreshFolders(myParentFolders);
     }
 
-    private void writeImages(Object requestor, Project project, List<WebpConvertedFile> files) {
+    private boolean isPreviewNeeded() {
+      // Doesn't apply in lossless mode - nothing to preview, all conversions are exact
+      return mySettings.previewConversion && !mySettings.lossless && !myConvertedFiles.isEmpty();
+    }
+
+    /**
+     * Replaces the source files of the given encoded files with their WebP versions, in a single write command. The encoded
+     * contents are released once written.
+     */
+    private static void writeImages(Object requestor, Project project, List<WebpConvertedFile> files) {
       WriteCommandAction.runWriteCommandAction(project, () -> {
         for (WebpConvertedFile convertedFile : files) {
           try {
-            if (convertedFile.encoded == null) {
-              myTransparentCount++;
-            } else {
-              if (mySettings.skipLargerImages && convertedFile.saved < 0) {
-                mySkipped++;
-              } else {
-                mySaved += convertedFile.saved;
-                myFileCount++;
-                convertedFile.apply(requestor);
-              }
-            }
+            convertedFile.apply(requestor);
+            convertedFile.encoded = null;
           }
           catch (IOException e) {
             Logger.getInstance(ConvertToWebpAction.class).warn(e);
@@ -345,34 +376,30 @@ public class ConvertToWebpAction extends DumbAwareAction {
     @Override
     public void run(@NotNull ProgressIndicator progressIndicator) {
       LinkedList<VirtualFile> images = new LinkedList<>(myFiles);
-      myConvertedFiles = findImages(progressIndicator, images);
-      myParentFolders = computeParentFolders(myConvertedFiles);
-    }
-
-    void encode(@NotNull List<WebpConvertedFile> files, boolean skipAlreadyEncoded) {
-      for (WebpConvertedFile file : files) {
-        if (skipAlreadyEncoded && file.encoded != null) {
-          continue;
-        }
+      List<WebpConvertedFile> convertedFiles = findImages(progressIndicator, images);
+      myParentFolders = computeParentFolders(convertedFiles);
+      myConvertedFiles = convertedFiles;
 
-        if (mySettings.skipNinePatches && isNinePatchFile(file.sourceFile)) {
-          // Shouldn't have gotten here: isEligibleForConversion should have filtered it out
-          assert false : file;
-          continue;
-        }
+      if (!isPreviewNeeded()) {
+        myWritten = true;
+        encodeAndWrite(progressIndicator, false);
+      }
+    }
 
-        if (!file.convert(mySettings)) {
-          // Shouldn't have gotten here: isEligibleForConversion should have filtered it out
-          assert false : file;
-        } else {
-          if (mySettings.skipLargerImages && file.saved < 0) {
-            mySkipped++;
-          } else {
-            mySaved += file.saved;
-            myFileCount++;
-          }
-        }
+    /**
+     * Encodes the converted files in parallel, and writes them in batches as they complete, so neither the encoding nor one
+     * large write action blocks the UI.
+     */
+    private void encodeAndWrite(@NotNull ProgressIndicator progressIndicator, boolean skipAlreadyEncoded) {
+      if (mySettings.skipNinePatches) {
+        // Shouldn't have gotten here: isEligibleForConversion should have filtered them out
+        assert myConvertedFiles.stream().noneMatch(file -> isNinePatchFile(file.sourceFile));
       }
+      progressIndicator.setIndeterminate(false);
+      progressIndicator.setText("Encoding images");
+      Application application = ApplicationManager.getApplication();
+      myReport = WebpBatchEncoder.create().encode(myConvertedFiles, mySettings, progressIndicator, skipAlreadyEncoded, batch ->
+        application.invokeAndWait(() -> writeImages(this, myProject, batch)));
     }
 
     private Set<String> getLauncherIconNames(LinkedList<VirtualFile> roots) {
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.webp;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodes a batch of {@link WebpConvertedFile}s to WebP across a pool of worker threads.
+ * <p>
+ * Encoded files are handed to a consumer in groups of {@code batchSize} as they complete, so that the caller can write them
+ * out (and release their encoded bytes) while the remaining files are still being encoded, instead of holding the whole
+ * batch in memory and writing it in one long write action at the end.
+ */
+class WebpBatchEncoder {
+  private static final Logger LOG = Logger.getInstance(WebpBatchEncoder.class);
+
+  static final int DEFAULT_BATCH_SIZE = 20;
+
+  private static final Object ourLock = new Object();
+  private static Executor ourExecutor;
+
+  @NotNull private final Executor myExecutor;
+  private final int myBatchSize;
+
+  WebpBatchEncoder(@NotNull Executor executor, int batchSize) {
+    myExecutor = executor;
+    myBatchSize = Math.max(1, batchSize);
+  }
+
+  /** Returns an encoder which uses one worker per core, shared by all conversions. */
+  @NotNull
+  static WebpBatchEncoder create() {
+    synchronized (ourLock) {
+      if (ourExecutor == null) {
+        ourExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("WebP Encoder", Runtime.getRuntime().availableProcessors());
+      }
+      return new WebpBatchEncoder(ourExecutor, DEFAULT_BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Encodes the given files, and returns a report of the sizes and time spent.
+   *
+   * @param files the files to encode
+   * @param settings the conversion settings
+   * @param indicator the progress indicator to report progress to and check for cancellation, if any
+   * @param skipAlreadyEncoded whether files which already have encoded contents (e.g. from the preview) should be left alone
+   * @param batchConsumer receives the successfully encoded files worth converting, in batches of at most {@code batchSize}
+   *                      files, on the calling thread; if null, the files just keep their encoded contents
+   */
+  @NotNull
+  Report encode(@NotNull List<WebpConvertedFile> files,
+                @NotNull WebpConversionSettings settings,
+                @Nullable ProgressIndicator indicator,
+                boolean skipAlreadyEncoded,
+                @Nullable Consumer<List<WebpConvertedFile>> batchConsumer) {
+    long start = System.nanoTime();
+    Report report = new Report();
+
+    CompletionService<Result> completionService = new ExecutorCompletionService<>(myExecutor);
+    List<Future<Result>> futures = new ArrayList<>(files.size());
+    List<WebpConvertedFile> batch = new ArrayList<>(myBatchSize);
+    for (WebpConvertedFile file : files) {
+      if (skipAlreadyEncoded && file.encoded != null) {
+        // Encoded earlier, e.g. in the preview dialog
+        report.add(file, settings, 0);
+        addToBatch(batch, file, settings, batchConsumer);
+        continue;
+      }
+      futures.add(completionService.submit(() -> {
+        long fileStart = System.nanoTime();
+        boolean converted = file.convert(settings);
+        return new Result(file, converted, System.nanoTime() - fileStart);
+      }));
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        Result result = takeResult(completionService, indicator);
+        if (indicator != null) {
+          indicator.setFraction((double)(i + 1) / futures.size());
+          indicator.setText2(result.file.sourceFile.getName());
+        }
+        if (!result.converted) {
+          report.myFailedCount++;
+          continue;
+        }
+        report.add(result.file, settings, result.nanos);
+        addToBatch(batch, result.file, settings, batchConsumer);
+      }
+    }
+    catch (ProcessCanceledException e) {
+      for (Future<Result> future : futures) {
+        future.cancel(false);
+      }
+      throw e;
+    }
+
+    if (batchConsumer != null && !batch.isEmpty()) {
+      batchConsumer.accept(new ArrayList<>(batch));
+    }
+    report.myWallNanos = System.nanoTime() - start;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(report.toString());
+    }
+    return report;
+  }
+
+  private void addToBatch(@NotNull List<WebpConvertedFile> batch,
+                          @NotNull WebpConvertedFile file,
+                          @NotNull WebpConversionSettings settings,
+                          @Nullable Consumer<List<WebpConvertedFile>> batchConsumer) {
+    if (batchConsumer == null || !isWorthConverting(file, settings)) {
+      return;
+    }
+    batch.add(file);
+    if (batch.size() >= myBatchSize) {
+      batchConsumer.accept(new ArrayList<>(batch));
+      batch.clear();
+    }
+  }
+
+  @NotNull
+  private static Result takeResult(@NotNull CompletionService<Result> completionService, @Nullable ProgressIndicator indicator) {
+    while (true) {
+      if (indicator != null) {
+        indicator.checkCanceled();
+      }
+      try {
+        Future<Result> future = completionService.poll(50, TimeUnit.MILLISECONDS);
+        if (future != null) {
+          return future.get();
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the given encoded file should replace its source file: with {@link WebpConversionSettings#skipLargerImages},
+   * only files whose encoded version is smaller are converted.
+   */
+  static boolean isWorthConverting(@NotNull WebpConvertedFile file, @NotNull WebpConversionSettings settings) {
+    return file.encoded != null && (!settings.skipLargerImages || file.saved > 0);
+  }
+
+  private static class Result {
+    @NotNull final WebpConvertedFile file;
+    final boolean converted;
+    final long nanos;
+
+    Result(@NotNull WebpConvertedFile file, boolean converted, long nanos) {
+      this.file = file;
+      this.converted = converted;
+      this.nanos = nanos;
+    }
+  }
+
+  /** Sizes and timings of a batch conversion. */
+  static class Report {
+    private int myConvertedCount;
+    private int mySkippedCount;
+    private int myFailedCount;
+    private long mySourceBytes;
+    private long myEncodedBytes;
+    private long myEncodeNanos;
+    private long myWallNanos;
+
+    private void add(@NotNull WebpConvertedFile file, @NotNull WebpConversionSettings settings, long nanos) {
+      myEncodeNanos += nanos;
+      if (isWorthConverting(file, settings)) {
+        myConvertedCount++;
+        mySourceBytes += file.sourceFileSize;
+        myEncodedBytes += file.encoded.length;
+      }
+      else {
+        mySkippedCount++;
+      }
+    }
+
+    /** The number of files whose encoded version replaces the source file. */
+    int getConvertedCount() {
+      return myConvertedCount;
+    }
+
+    /** The number of files which were encoded, but skipped because the encoded version is not smaller. */
+    int getSkippedCount() {
+      return mySkippedCount;
+    }
+
+    /** The number of files which could not be encoded. */
+    int getFailedCount() {
+      return myFailedCount;
+    }
+
+    /** The total size of the source files which are converted. */
+    long getSourceBytes() {
+      return mySourceBytes;
+    }
+
+    /** The total size of the encoded versions of the files which are converted. */
+    long getEncodedBytes() {
+      return myEncodedBytes;
+    }
+
+    long getSavedBytes() {
+      return mySourceBytes - myEncodedBytes;
+    }
+
+    /** The time spent encoding, summed across all worker threads. */
+    long getEncodeMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(myEncodeNanos);
+    }
+
+    /** The elapsed time of the whole batch, including the time spent by the batch consumer. */
+    long getWallMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(myWallNanos);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "WebP conversion: %1$d converted, %2$d skipped, %3$d failed, %4$s -> %5$s (%6$d ms, %7$d ms encoding)",
+                           myConvertedCount, mySkippedCount, myFailedCount, ConvertToWebpAction.formatSize(mySourceBytes),
+                           ConvertToWebpAction.formatSize(myEncodedBytes), getWallMillis(), getEncodeMillis());
+    }
+  }
+}
@@ -15,7 +15,6 @@
  */
 package com.android.tools.idea.rendering.webp;
 
-import com.android.tools.idea.rendering.webp.ConvertToWebpAction.WebpConversionTask;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
@@ -49,7 +48,6 @@ import static com.intellij.util.Alarm.ThreadToUse.POOLED_THREAD;
 import static com.intellij.util.ui.update.Update.LOW_PRIORITY;
 
 public class WebpPreviewDialog extends DialogWrapper implements ChangeListener, KeyListener {
-  private final WebpConversionTask myTask;
   private final Project myProject;
   private final WebpConversionSettings mySettings;
   private JBLabel myPngSizeLabel;
@@ -76,13 +74,11 @@ public class WebpPreviewDialog extends DialogWrapper implements ChangeListener,
   private MergingUpdateQueue myRenderingQueue;
   private AcceptAllAction myAcceptAll;
 
-  WebpPreviewDialog(@NotNull WebpConversionTask task,
-                    @NotNull Project project,
+  WebpPreviewDialog(@NotNull Project project,
                     @NotNull WebpConversionSettings settings,
                     @NotNull List<WebpConvertedFile> files) {
     super(project);
     setTitle("Preview and Adjust Converted Images");
-    myTask = task;
     myProject = project;
     mySettings = settings;
     myFiles = files;
@@ -227,7 +223,6 @@ public class WebpPreviewDialog extends DialogWrapper implements ChangeListener,
 
     @Override
     protected void doAction(ActionEvent e) {
-      myTask.encode(myFiles, true);
       doOKAction();
     }
   }
@@ -22,13 +22,17 @@ import com.android.ide.common.rendering.api.StyleableResourceValue;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceRepository;
 import com.android.resources.ResourceType;
+import com.android.tools.idea.flags.StudioFlags;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.ArrayUtil;
 import gnu.trove.TIntArrayList;
-import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -72,108 +76,175 @@ import static org.jetbrains.org.objectweb.asm.Opcodes.*;
 public class ResourceClassGenerator {
   private static final Logger LOG = Logger.getInstance(ResourceClassGenerator.class);
 
+  /** Maximum size of the bytecode kept in a {@link BytecodeCache}. */
+  private static final long MAX_CACHED_BYTECODE_BYTES = 32 * 1024 * 1024;
+
   interface NumericIdProvider {
     int getOrGenerateId(@NotNull ResourceReference resourceReference);
   }
 
-  private Map<ResourceType, TObjectIntHashMap<String>> myCache;
-  /** For int[] in styleables. The ints in styleables are stored in {@link #myCache}. */
-  private Map<String, TIntArrayList> myStyleableCache;
+  /** The fields of the generated inner classes, by resource type. */
+  private final Map<ResourceType, TypeFields> myTypeFields = new EnumMap<>(ResourceType.class);
+  /**
+   * The bytecode of the generated inner classes, possibly shared with other generators. In non-namespaced projects the same fields are
+   * used for the R classes of all libraries, so an entry is reused for as long as the {@link TypeFields} it was generated from are current.
+   */
+  @NotNull private final BytecodeCache myBytecodeCache;
   @NotNull private final ResourceRepository myResources;
   @NotNull private final NumericIdProvider myIdProvider;
   @NotNull private final ResourceNamespace myNamespace;
 
+  private long myGeneratedClassCount;
+  private long myReusedClassCount;
+  private long myGeneratedBytes;
+  private long myGenerationNanos;
+  private long myComputedTypeCount;
+  private long myUnchangedTypeCount;
+
   private ResourceClassGenerator(@NotNull NumericIdProvider idProvider,
                                  @NotNull ResourceRepository resources,
-                                 @NotNull ResourceNamespace namespace) {
+                                 @NotNull ResourceNamespace namespace,
+                                 @NotNull BytecodeCache bytecodeCache) {
     myIdProvider = idProvider;
     myResources = resources;
     myNamespace = namespace;
+    myBytecodeCache = bytecodeCache;
   }
 
   /**
-   * Creates a new {@linkplain ResourceClassGenerator}.
+   * Creates a new {@linkplain ResourceClassGenerator} with its own {@link BytecodeCache}.
    */
   @NotNull
   public static ResourceClassGenerator create(@NotNull NumericIdProvider manager,
                                               @NotNull ResourceRepository resources,
                                               @NotNull ResourceNamespace namespace) {
-    return new ResourceClassGenerator(manager, resources, namespace);
+    return create(manager, resources, namespace, new BytecodeCache());
+  }
+
+  /**
+   * Creates a new {@linkplain ResourceClassGenerator} which keeps the bytecode it generates in the given cache, so that the generators
+   * sharing a cache are bounded together.
+   */
+  @NotNull
+  public static ResourceClassGenerator create(@NotNull NumericIdProvider manager,
+                                              @NotNull ResourceRepository resources,
+                                              @NotNull ResourceNamespace namespace,
+                                              @NotNull BytecodeCache bytecodeCache) {
+    return new ResourceClassGenerator(manager, resources, namespace, bytecodeCache);
   }
 
   /**
    * @param fqcn Fully qualified class name (as accepted by ClassLoader, or as returned by Class.getName())
    */
   @Nullable
-  public byte[] generate(String fqcn) {
+  public synchronized byte[] generate(String fqcn) {
     String className = fqcn.replace('.', '/');
 
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("generate(%s)", anonymizeClassName(className)));
     }
-    ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
-    cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
 
     int index = className.lastIndexOf('$');
-    if (index != -1) {
-      String typeName = className.substring(index + 1);
-      ResourceType type = ResourceType.fromClassName(typeName);
-      if (type == null) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug(String.format("  type '%s' doesn't exist", typeName));
-        }
-        return null;
-      }
-
-      cw.visitInnerClass(className, className.substring(0, index), typeName, ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
-      if (myCache == null) {
-        myCache = Maps.newHashMap();
-      }
-      if (type == ResourceType.STYLEABLE) {
-        if (myStyleableCache == null) {
-          myCache.put(ResourceType.STYLEABLE, new TObjectIntHashMap<>());
-          myStyleableCache = Maps.newHashMap();
-          generateStyleable(cw, className);
-        }
-        else {
-          TObjectIntHashMap<String> indexFieldsCache = myCache.get(ResourceType.STYLEABLE);
-          assert indexFieldsCache != null;
-          generateFields(cw, indexFieldsCache);
-          generateIntArraysFromCache(cw, className);
-        }
-      } else {
-        TObjectIntHashMap<String> typeCache = myCache.get(type);
-        if (typeCache == null) {
-          typeCache = new TObjectIntHashMap<>();
-          myCache.put(type, typeCache);
-          generateValuesForType(cw, type, typeCache);
-        }
-        else {
-          generateFields(cw, typeCache);
-        }
-      }
-    } else {
+    if (index == -1) {
       // Default R class.
+      long start = System.nanoTime();
+      ClassWriter cw = createClassWriter(className);
       for (ResourceType t : myResources.getResourceTypes(myNamespace)) {
         if (t.getHasInnerClass()) {
           cw.visitInnerClass(className + "$" + t.getName(), className, t.getName(), ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
         }
       }
+      return finishClass(cw, start);
+    }
+
+    String typeName = className.substring(index + 1);
+    ResourceType type = ResourceType.fromClassName(typeName);
+    if (type == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("  type '%s' doesn't exist", typeName));
+      }
+      return null;
     }
 
+    boolean incremental = StudioFlags.NELE_INCREMENTAL_RESOURCE_CLASSES.get();
+    TypeFields fields = getFields(type, className, incremental);
+    if (incremental) {
+      GeneratedClass generated = myBytecodeCache.get(this, className);
+      if (generated != null && generated.myFields == fields) {
+        myReusedClassCount++;
+        return generated.myData;
+      }
+    }
+
+    long start = System.nanoTime();
+    ClassWriter cw = createClassWriter(className);
+    cw.visitInnerClass(className, className.substring(0, index), typeName, ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
+    fields.generate(cw, className);
+    byte[] data = finishClass(cw, start);
+    if (incremental) {
+      myBytecodeCache.put(this, className, new GeneratedClass(fields, data));
+    }
+    return data;
+  }
+
+  @NotNull
+  private static ClassWriter createClassWriter(@NotNull String className) {
+    ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
+    cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
+    return cw;
+  }
+
+  @NotNull
+  private byte[] finishClass(@NotNull ClassWriter cw, long start) {
     generateConstructor(cw);
     cw.visitEnd();
-    return cw.toByteArray();
+    byte[] data = cw.toByteArray();
+    myGeneratedClassCount++;
+    myGeneratedBytes += data.length;
+    myGenerationNanos += System.nanoTime() - start;
+    return data;
+  }
+
+  /**
+   * Returns the fields of the inner class for the given type. If the repository has changed since they were computed, the fields are
+   * computed again, but the previous ones (and the bytecode generated from them) are kept if the change did not affect this type.
+   */
+  @NotNull
+  private TypeFields getFields(@NotNull ResourceType type, @NotNull String className, boolean incremental) {
+    TypeFields fields = myTypeFields.get(type);
+    long modificationCount = getModificationCount();
+    if (fields != null && (!incremental || fields.myModificationCount == modificationCount)) {
+      return fields;
+    }
+
+    TypeFields newFields = type == ResourceType.STYLEABLE ? computeStyleableFields(className) : computeFields(type);
+    if (fields != null && fields.hasSameFields(newFields)) {
+      fields.myModificationCount = modificationCount;
+      myUnchangedTypeCount++;
+      return fields;
+    }
+    newFields.myModificationCount = modificationCount;
+    myTypeFields.put(type, newFields);
+    myComputedTypeCount++;
+    return newFields;
+  }
+
+  private long getModificationCount() {
+    // Repositories that are not modification trackers, like the ones of AARs, never change.
+    return myResources instanceof ModificationTracker ? ((ModificationTracker)myResources).getModificationCount() : 0;
   }
 
-  private void generateValuesForType(@NotNull ClassWriter cw, @NotNull ResourceType resType, @NotNull TObjectIntHashMap<String> cache) {
+  @NotNull
+  private TypeFields computeFields(@NotNull ResourceType resType) {
     Collection<String> resourceNames = myResources.getResources(myNamespace, resType).keySet();
+    String[] names = new String[resourceNames.size()];
+    int[] values = new int[resourceNames.size()];
+    int i = 0;
     for (String name : resourceNames) {
-      int initialValue = myIdProvider.getOrGenerateId(new ResourceReference(myNamespace, resType, name));
-      name = AndroidResourceUtil.getFieldNameByResourceName(name);
-      generateField(cw, name, initialValue);
-      cache.put(name, initialValue);
+      values[i] = myIdProvider.getOrGenerateId(new ResourceReference(myNamespace, resType, name));
+      names[i++] = AndroidResourceUtil.getFieldNameByResourceName(name);
     }
+    return new TypeFields(names, values, null);
   }
 
   /**
@@ -188,17 +259,22 @@ public class ResourceClassGenerator {
     return Lists.transform(dv.getAllAttributes(), ResourceValue::asReference);
   }
 
-  private void generateStyleable(@NotNull ClassWriter cw, String className) {
+  /**
+   * Computes the styleable fields: an int[] of attribute ids for each styleable, followed by the int indices into it.
+   */
+  @NotNull
+  private TypeFields computeStyleableFields(@NotNull String className) {
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("generateStyleable(%s)", anonymizeClassName(className)));
     }
     boolean debug = LOG.isDebugEnabled() && isPublicClass(className);
 
-    TObjectIntHashMap<String> indexFieldsCache = myCache.get(ResourceType.STYLEABLE);
     Collection<String> styleableNames = myResources.getResources(myNamespace, ResourceType.STYLEABLE).keySet();
     List<MergedStyleable> mergedStyleables = new ArrayList<>(styleableNames.size());
+    List<String> names = new ArrayList<>();
+    TIntArrayList values = new TIntArrayList();
+    List<int[]> arrays = new ArrayList<>();
 
-    // Generate all declarations - both int[] and int for the indices into the array.
     for (String styleableName : styleableNames) {
       List<ResourceItem> items = myResources.getResources(myNamespace, ResourceType.STYLEABLE, styleableName);
       if (items.isEmpty()) {
@@ -208,7 +284,6 @@ public class ResourceClassGenerator {
         continue;
       }
       String fieldName = AndroidResourceUtil.getFieldNameByResourceName(styleableName);
-      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, fieldName, "[I", null, null);
       if (debug) {
         LOG.debug("  Defined styleable " + fieldName);
       }
@@ -219,65 +294,39 @@ public class ResourceClassGenerator {
         mergedAttributes.addAll(getStyleableAttributes(item));
       }
 
-      mergedStyleables.add(new MergedStyleable(styleableName, mergedAttributes));
+      MergedStyleable mergedStyleable = new MergedStyleable(mergedAttributes);
+      mergedStyleables.add(mergedStyleable);
+      names.add(fieldName);
+      values.add(0);
+      arrays.add(mergedStyleable.attrIds);
 
       int idx = 0;
       for (ResourceReference attr : mergedAttributes) {
         String styleableEntryName = getResourceName(fieldName, attr);
-        int fieldValue = idx++;
-        cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, styleableEntryName, "I", null, fieldValue);
-        indexFieldsCache.put(styleableEntryName, fieldValue);
+        names.add(styleableEntryName);
+        values.add(idx++);
+        arrays.add(null);
         if (debug) {
           LOG.debug("  Defined styleable " + styleableEntryName);
         }
       }
     }
 
-    // Generate class initializer block to initialize the arrays declared above.
-    MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-    mv.visitCode();
+    // Look up the attribute ids once all the names are known, in the same order as they are initialized in the class initializer.
     for (MergedStyleable mergedStyleable : mergedStyleables) {
-      String fieldName = AndroidResourceUtil.getFieldNameByResourceName(mergedStyleable.name);
-      TIntArrayList values = new TIntArrayList();
+      int idx = 0;
       for (ResourceReference attr : mergedStyleable.attrs) {
-        values.add(myIdProvider.getOrGenerateId(attr));
+        mergedStyleable.attrIds[idx++] = myIdProvider.getOrGenerateId(attr);
       }
-      myStyleableCache.put(fieldName, values);
-      generateArrayInitialization(mv, className, fieldName, values);
     }
-    mv.visitInsn(RETURN);
-    mv.visitMaxs(4, 0);
-    mv.visitEnd();
-  }
 
-  private static void generateFields(@NotNull final ClassWriter cw, @NotNull TObjectIntHashMap<String> values) {
-    values.forEachEntry((name, value) -> {
-      generateField(cw, name, value);
-      return true;
-    });
+    return new TypeFields(ArrayUtil.toStringArray(names), values.toNativeArray(), arrays.toArray(new int[0][]));
   }
 
   private static void generateField(@NotNull ClassWriter cw, String name, int value) {
     cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, name, "I", null, value).visitEnd();
   }
 
-  private void generateIntArraysFromCache(@NotNull ClassWriter cw, String className) {
-    // Generate the field declarations.
-    for (String name : myStyleableCache.keySet()) {
-      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, name, "[I", null, null);
-    }
-
-    // Generate class initializer block to initialize the arrays declared above.
-    MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-    mv.visitCode();
-    myStyleableCache.forEach((arrayName, values) -> {
-      generateArrayInitialization(mv, className, arrayName, values);
-    });
-    mv.visitInsn(RETURN);
-    mv.visitMaxs(4, 0);
-    mv.visitEnd();
-  }
-
   /**
    * Generates the instruction to push value into the stack. It will select the best opcode depending on the given value.
    */
@@ -298,16 +347,16 @@ public class ResourceClassGenerator {
    * @param mv the class initializer's MethodVisitor (&lt;clinit&gt;)
    */
   private static void generateArrayInitialization(@NotNull MethodVisitor mv, String className, String fieldName,
-                                                  @NotNull TIntArrayList values) {
-    if (values.isEmpty()) {
+                                                  @NotNull int[] values) {
+    if (values.length == 0) {
       return;
     }
-    pushIntValue(mv, values.size());
+    pushIntValue(mv, values.length);
     mv.visitIntInsn(NEWARRAY, T_INT);
-    for (int idx = 0; idx < values.size(); idx++) {
+    for (int idx = 0; idx < values.length; idx++) {
       mv.visitInsn(DUP);
       pushIntValue(mv, idx);
-      mv.visitLdcInsn(values.get(idx));
+      mv.visitLdcInsn(values[idx]);
       mv.visitInsn(IASTORE);
     }
     mv.visitFieldInsn(PUTSTATIC, className, fieldName, "[I");
@@ -351,13 +400,135 @@ public class ResourceClassGenerator {
     }
   }
 
+  public long getGeneratedClassCount() {
+    return myGeneratedClassCount;
+  }
+
+  public long getReusedClassCount() {
+    return myReusedClassCount;
+  }
+
+  public long getGeneratedBytes() {
+    return myGeneratedBytes;
+  }
+
+  public long getGenerationNanos() {
+    return myGenerationNanos;
+  }
+
+  /** Returns the number of times the fields of an inner class were computed, because they were needed for the first time or changed. */
+  public long getComputedTypeCount() {
+    return myComputedTypeCount;
+  }
+
+  /** Returns the number of times a repository change was found not to affect the fields of an inner class. */
+  public long getUnchangedTypeCount() {
+    return myUnchangedTypeCount;
+  }
+
   private static class MergedStyleable {
-    @NotNull final String name;
     @NotNull final LinkedHashSet<ResourceReference> attrs;
+    @NotNull final int[] attrIds;
 
-    private MergedStyleable(@NotNull String name, @NotNull LinkedHashSet<ResourceReference> attrs) {
-      this.name = name;
+    private MergedStyleable(@NotNull LinkedHashSet<ResourceReference> attrs) {
       this.attrs = attrs;
+      this.attrIds = new int[attrs.size()];
+    }
+  }
+
+  /**
+   * The fields of an inner R class, in declaration order. The int fields are constants, the int[] fields (only used for styleables) are
+   * initialized in the class initializer.
+   */
+  private static class TypeFields {
+    @NotNull final String[] myNames;
+    /** The values of the int fields. */
+    @NotNull final int[] myValues;
+    /** The values of the int[] fields, with nulls for the int fields, or null if there are no int[] fields. */
+    @Nullable final int[][] myArrays;
+    /** The modification count of the repository when the fields were last found to be up to date. */
+    long myModificationCount;
+
+    private TypeFields(@NotNull String[] names, @NotNull int[] values, @Nullable int[][] arrays) {
+      myNames = names;
+      myValues = values;
+      myArrays = arrays;
+    }
+
+    boolean hasSameFields(@NotNull TypeFields other) {
+      return Arrays.equals(myNames, other.myNames) && Arrays.equals(myValues, other.myValues) && Arrays.deepEquals(myArrays, other.myArrays);
+    }
+
+    void generate(@NotNull ClassWriter cw, @NotNull String className) {
+      for (int i = 0; i < myNames.length; i++) {
+        if (myArrays != null && myArrays[i] != null) {
+          cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, myNames[i], "[I", null, null);
+        }
+        else {
+          generateField(cw, myNames[i], myValues[i]);
+        }
+      }
+      if (myArrays == null) {
+        return;
+      }
+
+      // Generate class initializer block to initialize the arrays declared above.
+      MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+      mv.visitCode();
+      for (int i = 0; i < myNames.length; i++) {
+        if (myArrays[i] != null) {
+          generateArrayInitialization(mv, className, myNames[i], myArrays[i]);
+        }
+      }
+      mv.visitInsn(RETURN);
+      mv.visitMaxs(4, 0);
+      mv.visitEnd();
+    }
+  }
+
+  private static class GeneratedClass {
+    @NotNull final TypeFields myFields;
+    @NotNull final byte[] myData;
+
+    private GeneratedClass(@NotNull TypeFields fields, @NotNull byte[] data) {
+      myFields = fields;
+      myData = data;
+    }
+  }
+
+  /**
+   * The bytecode of the inner classes generated by one or more generators, by generator and class name, bounded by its total size.
+   */
+  public static final class BytecodeCache {
+    @NotNull private final Cache<Pair<ResourceClassGenerator, String>, GeneratedClass> myCache;
+
+    public BytecodeCache() {
+      myCache = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_BYTECODE_BYTES)
+        .weigher((Pair<ResourceClassGenerator, String> key, GeneratedClass value) -> value.myData.length)
+        .build();
+    }
+
+    @Nullable
+    private GeneratedClass get(@NotNull ResourceClassGenerator generator, @NotNull String className) {
+      return myCache.getIfPresent(Pair.create(generator, className));
+    }
+
+    private void put(@NotNull ResourceClassGenerator generator, @NotNull String className, @NotNull GeneratedClass generatedClass) {
+      myCache.put(Pair.create(generator, className), generatedClass);
+    }
+
+    /** Returns the total size of the cached bytecode. */
+    public long getSize() {
+      long size = 0;
+      for (GeneratedClass generatedClass : myCache.asMap().values()) {
+        size += generatedClass.myData.length;
+      }
+      return size;
+    }
+
+    public void clear() {
+      myCache.invalidateAll();
     }
   }
 }
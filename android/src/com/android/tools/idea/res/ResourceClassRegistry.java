@@ -18,6 +18,7 @@ package com.android.tools.idea.res;
 import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.ResourceRepository;
 import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -27,9 +28,17 @@ import java.util.*;
 
 /**
  * A project-wide registry for class lookup of resource classes (R classes).
+ *
+ * <p>There is one {@link ResourceClassGenerator} per resource repository. Generators only recompute the inner classes whose fields were
+ * affected by changes to their repository, so the registry keeps them until {@link #clearCache()} is called. The bytecode they generate
+ * is kept in a single {@link ResourceClassGenerator.BytecodeCache}, so that its bound applies to the whole project rather than to each
+ * repository.
  */
 public class ResourceClassRegistry {
+  private static final Logger LOG = Logger.getInstance(ResourceClassRegistry.class);
+
   private final Map<ResourceRepository, ResourceClassGenerator> myGeneratorMap = new HashMap<>();
+  private final ResourceClassGenerator.BytecodeCache myBytecodeCache = new ResourceClassGenerator.BytecodeCache();
   private Set<String> myPackages;
 
   /**
@@ -52,7 +61,7 @@ public class ResourceClassRegistry {
       }
       myPackages.add(packageName);
       if (!myGeneratorMap.containsKey(repo)) {
-        ResourceClassGenerator generator = ResourceClassGenerator.create(idManager, repo, namespace);
+        ResourceClassGenerator generator = ResourceClassGenerator.create(idManager, repo, namespace, myBytecodeCache);
         myGeneratorMap.put(repo, generator);
       }
     }
@@ -70,7 +79,11 @@ public class ResourceClassRegistry {
         List<ResourceRepository> repositories = repositoryManager.getAppResourcesForNamespace(namespace);
         ResourceClassGenerator generator = findClassGenerator(repositories, className);
         if (generator != null) {
-          return generator.generate(className);
+          byte[] data = generator.generate(className);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(getStats());
+          }
+          return data;
         }
       }
     }
@@ -103,6 +116,32 @@ public class ResourceClassRegistry {
    */
   public void clearCache() {
     myGeneratorMap.clear();
+    myBytecodeCache.clear();
+  }
+
+  /**
+   * Returns a summary of the work done by the generators, for diagnostics.
+   */
+  @NotNull
+  public String getStats() {
+    long generated = 0;
+    long reused = 0;
+    long bytes = 0;
+    long nanos = 0;
+    long computedTypes = 0;
+    long unchangedTypes = 0;
+    for (ResourceClassGenerator generator : myGeneratorMap.values()) {
+      generated += generator.getGeneratedClassCount();
+      reused += generator.getReusedClassCount();
+      bytes += generator.getGeneratedBytes();
+      nanos += generator.getGenerationNanos();
+      computedTypes += generator.getComputedTypeCount();
+      unchangedTypes += generator.getUnchangedTypeCount();
+    }
+    return String.format(Locale.US, "R classes for %1$d repositories: %2$d generated (%3$d bytes, %4$d ms), %5$d reused; " +
+                                    "fields computed %6$d times, unchanged after %7$d repository changes; %8$d bytes cached",
+                         myGeneratorMap.size(), generated, bytes, nanos / 1000000, reused, computedTypes, unchangedTypes,
+                         myBytecodeCache.getSize());
   }
 
   /**
@@ -1,5 +1,6 @@
 package org.jetbrains.android.inspections.lint;
 
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.lint.*;
 import com.android.tools.idea.project.AndroidProjectInfo;
 import com.android.tools.idea.res.PsiProjectListener;
@@ -8,6 +9,7 @@ import com.android.tools.lint.checks.GradleDetector;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintDriver;
 import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.LintFix;
 import com.android.tools.lint.detector.api.Scope;
@@ -43,6 +45,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.ui.StartupUiUtil;
 import com.intellij.xml.util.XmlStringUtil;
@@ -123,66 +126,119 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
     }
 
     final Set<Issue> issues = getIssuesFromInspections(file.getProject(), file);
-    return new State(module, vFile, file.getText(), issues);
+    long modificationCount = PsiModificationTracker.SERVICE.getInstance(file.getProject()).getModificationCount();
+    return new State(module, vFile, file.getText(), issues, modificationCount);
   }
 
   @Override
   public State doAnnotate(final State state) {
     long startTime = System.currentTimeMillis();
 
-    final LintIdeClient client = LintIdeClient.forEditor(state);
-    try {
-      EnumSet<Scope> scope;
-      VirtualFile mainFile = state.getMainFile();
-      final FileType fileType = mainFile.getFileType();
-      String name = mainFile.getName();
-      if (fileType == StdFileTypes.XML) {
-        if (name.equals(ANDROID_MANIFEST_XML)) {
-          scope = Scope.MANIFEST_SCOPE;
-        } else {
-          scope = Scope.RESOURCE_FILE_SCOPE;
-        }
-      } else if (fileType == StdFileTypes.JAVA || fileType == KotlinFileType.INSTANCE) {
-        scope = Scope.JAVA_FILE_SCOPE;
-        if (name.endsWith(DOT_KTS)) {
-          scope = EnumSet.of(Scope.GRADLE_FILE, Scope.JAVA_FILE);
-        }
-      } else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
-        scope = EnumSet.of(Scope.PROGUARD_FILE);
-      } else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
-        scope = Scope.GRADLE_SCOPE;
-      } else if (fileType == StdFileTypes.PROPERTIES) {
-        scope = Scope.PROPERTY_SCOPE;
+    EnumSet<Scope> scope;
+    VirtualFile mainFile = state.getMainFile();
+    final FileType fileType = mainFile.getFileType();
+    String name = mainFile.getName();
+    if (fileType == StdFileTypes.XML) {
+      if (name.equals(ANDROID_MANIFEST_XML)) {
+        scope = Scope.MANIFEST_SCOPE;
       } else {
-        // #collectionInformation above should have prevented this
-        assert false;
-        return state;
+        scope = Scope.RESOURCE_FILE_SCOPE;
       }
-
-      Project project = state.getModule().getProject();
-      if (project.isDisposed()) {
-        return state;
+    } else if (fileType == StdFileTypes.JAVA || fileType == KotlinFileType.INSTANCE) {
+      scope = Scope.JAVA_FILE_SCOPE;
+      if (name.endsWith(DOT_KTS)) {
+        scope = EnumSet.of(Scope.GRADLE_FILE, Scope.JAVA_FILE);
       }
-      if (DumbService.isDumb(project)) {
-        return state; // Lint cannot run in dumb mode.
+    } else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
+      scope = EnumSet.of(Scope.PROGUARD_FILE);
+    } else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
+      scope = Scope.GRADLE_SCOPE;
+    } else if (fileType == StdFileTypes.PROPERTIES) {
+      scope = Scope.PROPERTY_SCOPE;
+    } else {
+      // #collectionInformation above should have prevented this
+      assert false;
+      return state;
+    }
+
+    Project project = state.getModule().getProject();
+    if (project.isDisposed()) {
+      return state;
+    }
+    if (DumbService.isDumb(project)) {
+      return state; // Lint cannot run in dumb mode.
+    }
+
+    if (!StudioFlags.LINT_INCREMENTAL_EDITOR.get() && !StudioFlags.LINT_EDITOR_DETECTOR_TIMING.get()) {
+      runLint(state, scope, startTime, true);
+      return state;
+    }
+
+    LintEditorResultCache.Plan plan = LintEditorResultCache.plan(state);
+    state.getProblems().addAll(plan.getReusedProblems());
+    Set<Issue> issues = plan.getIssuesToRun();
+    if (StudioFlags.LINT_EDITOR_DETECTOR_TIMING.get()) {
+      Map<Class<? extends Detector>, Set<Issue>> detectors = LintEditorResultCache.groupByDetector(issues);
+      int remaining = detectors.size();
+      for (Map.Entry<Class<? extends Detector>, Set<Issue>> entry : detectors.entrySet()) {
+        long detectorStart = System.nanoTime();
+        // The session is logged once, by the last detector, with the problems of all of them
+        runLint(state, entry.getValue(), scope, startTime, --remaining == 0);
+        LintDetectorTimings.record(entry.getKey(), name, System.nanoTime() - detectorStart);
       }
+    }
+    else if (!issues.isEmpty()) {
+      runLint(state, issues, scope, startTime, true);
+    }
+    LintEditorResultCache.store(state, plan);
+    return state;
+  }
+
+  /**
+   * Runs lint for the given subset of the issues of state, adding the problems found to state.
+   */
+  private static void runLint(@NotNull State state, @NotNull Set<Issue> issues, @NotNull EnumSet<Scope> scope, long startTime,
+                              boolean logSession) {
+    State subset = new State(state.getModule(), state.getMainFile(), state.getMainFileContent(), issues,
+                             state.getModificationCount());
+    runLint(subset, state, scope, startTime, logSession);
+  }
+
+  private static void runLint(@NotNull State state, @NotNull EnumSet<Scope> scope, long startTime, boolean logSession) {
+    runLint(state, state, scope, startTime, logSession);
+  }
 
-      List<VirtualFile> files = Collections.singletonList(mainFile);
+  /**
+   * Runs lint for the issues of subset, adding the problems found to state, whose problems are the ones logged for the session.
+   */
+  private static void runLint(@NotNull State subset, @NotNull State state, @NotNull EnumSet<Scope> scope, long startTime,
+                              boolean logSession) {
+    final LintIdeClient client = LintIdeClient.forEditor(subset);
+    try {
+      Project project = subset.getModule().getProject();
+      List<VirtualFile> files = Collections.singletonList(subset.getMainFile());
       LintRequest request = new LintIdeRequest(client, project, files,
-                                               Collections.singletonList(state.getModule()), true /* incremental */);
+                                               Collections.singletonList(subset.getModule()), true /* incremental */);
       request.setScope(scope);
 
       LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client, request);
       lint.analyze();
 
-      lint.setAnalysisStartTime(startTime);
-      LintIdeAnalytics analytics = new LintIdeAnalytics(project);
-      analytics.logSession(AnalysisType.IDE_FILE, lint, state.getModule(), state.getProblems(), null);
+      if (subset != state) {
+        state.getProblems().addAll(subset.getProblems());
+        if (subset.isDirty()) {
+          state.markDirty();
+        }
+      }
+      if (logSession) {
+        lint.setAnalysisStartTime(startTime);
+        LintIdeAnalytics analytics = new LintIdeAnalytics(project);
+        analytics.logSession(AnalysisType.IDE_FILE, lint, state.getModule(), state.getProblems(), null);
+      }
     }
     finally {
       Disposer.dispose(client);
     }
-    return state;
   }
 
   @NotNull
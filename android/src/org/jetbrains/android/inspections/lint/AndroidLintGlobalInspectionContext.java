@@ -6,7 +6,10 @@ import com.android.ide.common.gradle.model.IdeLintOptions;
 import com.android.ide.common.repository.GradleVersion;
 import com.android.tools.idea.editors.strings.StringsVirtualFile;
 import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.lint.AndroidLintLintBaselineInspection;
+import com.android.tools.idea.lint.LintBatchAnalyzer;
+import com.android.tools.idea.lint.LintBatchResultCache;
 import com.android.tools.idea.lint.LintIdeAnalytics;
 import com.android.tools.idea.lint.LintIdeClient;
 import com.android.tools.idea.lint.LintIdeIssueRegistry;
@@ -53,6 +56,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -119,7 +123,9 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
-    final LintIdeClient client = LintIdeClient.forBatch(project, problemMap, scope, issues);
+    // Mutable: issues handled by the parallel batch analysis are removed before running the main lint driver
+    final Set<Issue> clientIssues = new LinkedHashSet<>(issues);
+    final LintIdeClient client = LintIdeClient.forBatch(project, problemMap, scope, clientIssues);
 
     final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
     if (indicator != null) {
@@ -292,6 +298,16 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
+    if (myBaseline == null && files == null && StudioFlags.LINT_PARALLEL_BATCH.get()) {
+      Set<Issue> singleFileIssues = LintBatchAnalyzer.getSingleFileIssues(clientIssues);
+      if (!singleFileIssues.isEmpty()) {
+        new LintBatchAnalyzer(project, scope, singleFileIssues, LintBatchResultCache.getInstance(project), lintScope)
+          .analyze(modules, problemMap);
+        // The remaining issues look across files and still need the single, project wide lint driver below
+        clientIssues.removeAll(singleFileIssues);
+      }
+    }
+
     lint.analyze();
 
     // Running all detectors? Then add dynamically registered detectors too.
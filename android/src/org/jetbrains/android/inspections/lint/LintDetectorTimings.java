@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.tools.lint.detector.api.Detector;
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Accumulates the time spent in each lint detector during on-the-fly analysis, when
+ * {@link com.android.tools.idea.flags.StudioFlags#LINT_EDITOR_DETECTOR_TIMING} is enabled.
+ */
+final class LintDetectorTimings {
+  private static final Logger LOG = Logger.getInstance(LintDetectorTimings.class);
+  private static final long SLOW_DETECTOR_MS = 100;
+
+  private static final Map<String, Timing> ourTimings = new ConcurrentHashMap<>();
+
+  private LintDetectorTimings() {
+  }
+
+  static void record(@NotNull Class<? extends Detector> detector, @NotNull String fileName, long elapsedNanos) {
+    Timing timing = ourTimings.computeIfAbsent(detector.getName(), name -> new Timing());
+    timing.myRunCount.incrementAndGet();
+    timing.myTotalNanos.addAndGet(elapsedNanos);
+
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    if (elapsedMs >= SLOW_DETECTOR_MS) {
+      LOG.info(String.format("Lint detector %1$s took %2$d ms on %3$s (%4$d ms on average over %5$d runs)",
+                             detector.getSimpleName(), elapsedMs, fileName,
+                             TimeUnit.NANOSECONDS.toMillis(timing.myTotalNanos.get() / timing.myRunCount.get()), timing.myRunCount.get()));
+    }
+  }
+
+  /** Returns the total time spent in the detector with the given class name, in nanoseconds. */
+  static long getTotalNanos(@NotNull String detectorClassName) {
+    Timing timing = ourTimings.get(detectorClassName);
+    return timing != null ? timing.myTotalNanos.get() : 0;
+  }
+
+  /** Returns the number of times the detector with the given class name has been run and timed. */
+  static long getRunCount(@NotNull String detectorClassName) {
+    Timing timing = ourTimings.get(detectorClassName);
+    return timing != null ? timing.myRunCount.get() : 0;
+  }
+
+  static void reset() {
+    ourTimings.clear();
+  }
+
+  private static class Timing {
+    private final AtomicLong myRunCount = new AtomicLong();
+    private final AtomicLong myTotalNanos = new AtomicLong();
+  }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.tools.idea.res.ResourceRepositoryManager;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.XmlScanner;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers the result of the last on-the-fly lint run of a file, so that {@link AndroidLintExternalAnnotator} can avoid
+ * re-running detectors whose results cannot have changed.
+ * <ul>
+ *   <li>If neither the file nor anything else in the project has changed (same PSI modification count) and the same
+ *   issues are enabled, the previous problems are reused as is.</li>
+ *   <li>For XML files, the lines that changed since the last run are mapped to the element and attribute names they touch
+ *   (including the enclosing elements). Detectors which are {@link XmlScanner}s registered for other elements and
+ *   attributes only, and whose issues only look at the file itself, are not run again; their previous problems are reused
+ *   and moved to account for the edit. Detectors which look at other files too are always run again, even if the file
+ *   itself is unchanged, since another file or the manifest may have changed. Since detectors of the file itself can
+ *   still look up resources, all of them are run again when the resources of the module changed.</li>
+ *   <li>Everything else (Java, Kotlin, Gradle, ...) runs all detectors, since any edit can change symbol resolution.</li>
+ * </ul>
+ * The text of the file isn't kept: the previous run is only remembered by the hashes of the content and of its lines.
+ */
+class LintEditorResultCache {
+  private static final Logger LOG = Logger.getInstance(LintEditorResultCache.class);
+  private static final Key<Snapshot> SNAPSHOT_KEY = Key.create("android.lint.editor.snapshot");
+
+  /**
+   * Markup which can change the meaning of any element in the file (suppression, namespaces, comments hiding elements),
+   * causing all detectors to run if it is found in the changed text.
+   */
+  private static final String[] GLOBAL_MARKUP = {"<!--", "-->", "<![CDATA[", "]]>", "xmlns", "ignore", "targetApi", "<?"};
+
+  /** Matches comments, CDATA sections, processing instructions and start/end/empty tags, with groups 1-3 set for tags. */
+  private static final Pattern XML_TOKEN = Pattern.compile(
+    "<!--.*?-->|<!\\[CDATA\\[.*?]]>|<\\?.*?\\?>|<(/?)([\\w:.\\-]+)((?:[^>\"']|\"[^\"]*\"|'[^']*')*)>", Pattern.DOTALL);
+  private static final Pattern ELEMENT_NAME = Pattern.compile("</?\\s*([\\w:.\\-]+)");
+  private static final Pattern ATTRIBUTE_NAME = Pattern.compile("([\\w:.\\-]+)\\s*=");
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final Map<Class<? extends Detector>, Applicability> ourApplicability = new ConcurrentHashMap<>();
+
+  private LintEditorResultCache() {
+  }
+
+  /** What to do for an on-the-fly lint run of a file. */
+  static class Plan {
+    @NotNull private final List<ProblemData> myReusedProblems;
+    @NotNull private final Set<Issue> myIssuesToRun;
+    @NotNull private final Snapshot mySnapshot;
+
+    Plan(@NotNull List<ProblemData> reusedProblems, @NotNull Set<Issue> issuesToRun, @NotNull Snapshot snapshot) {
+      myReusedProblems = reusedProblems;
+      myIssuesToRun = issuesToRun;
+      mySnapshot = snapshot;
+    }
+
+    /** Problems from the previous run which are still valid for the current file content. */
+    @NotNull
+    List<ProblemData> getReusedProblems() {
+      return myReusedProblems;
+    }
+
+    /** The issues lint needs to run for; a subset of the enabled issues. */
+    @NotNull
+    Set<Issue> getIssuesToRun() {
+      return myIssuesToRun;
+    }
+  }
+
+  @NotNull
+  static Plan plan(@NotNull State state) {
+    return plan(state.getMainFile().getUserData(SNAPSHOT_KEY), state.getMainFileContent(), state.getIssues(),
+                state.getModificationCount(), getResourceModificationCount(state.getModule()),
+                state.getMainFile().getFileType() == StdFileTypes.XML);
+  }
+
+  @VisibleForTesting
+  @NotNull
+  static Plan plan(@Nullable Snapshot previous, @NotNull String content, @NotNull Set<Issue> issues, long modificationCount,
+                   long resourceModificationCount, boolean xml) {
+    Snapshot snapshot = Snapshot.create(content, issues, modificationCount, resourceModificationCount, xml);
+    if (previous == null || !previous.myIssues.equals(issues)) {
+      return new Plan(ImmutableList.of(), issues, snapshot);
+    }
+    if (snapshot.myContentHash == previous.myContentHash && modificationCount != -1 &&
+        modificationCount == previous.myModificationCount) {
+      return new Plan(previous.myProblems, Collections.emptySet(), snapshot);
+    }
+    if (snapshot.myXmlSummary == null || previous.myXmlSummary == null || resourceModificationCount == -1 ||
+        resourceModificationCount != previous.myResourceModificationCount) {
+      return new Plan(ImmutableList.of(), issues, snapshot);
+    }
+    Plan plan = planXml(previous.myXmlSummary, content, snapshot.myXmlSummary, issues, previous.myProblems, snapshot);
+    return plan != null ? plan : new Plan(ImmutableList.of(), issues, snapshot);
+  }
+
+  /**
+   * Records the problems found for the file content the plan was made for, to be used by the next {@link #plan}.
+   */
+  static void store(@NotNull State state, @NotNull Plan plan) {
+    VirtualFile file = state.getMainFile();
+    if (state.isDirty()) {
+      file.putUserData(SNAPSHOT_KEY, null);
+      return;
+    }
+    file.putUserData(SNAPSHOT_KEY, plan.mySnapshot.withProblems(ImmutableList.copyOf(state.getProblems())));
+  }
+
+  /**
+   * Returns the modification count of the resources visible to the module, or -1 if it doesn't have any.
+   */
+  private static long getResourceModificationCount(@NotNull Module module) {
+    AndroidFacet facet = AndroidFacet.getInstance(module);
+    return facet != null ? ResourceRepositoryManager.getAppResources(facet).getModificationCount() : -1;
+  }
+
+  /**
+   * Groups the issues by the detector class implementing them, preserving iteration order.
+   */
+  @NotNull
+  static Map<Class<? extends Detector>, Set<Issue>> groupByDetector(@NotNull Collection<Issue> issues) {
+    Map<Class<? extends Detector>, Set<Issue>> result = new LinkedHashMap<>();
+    for (Issue issue : issues) {
+      result.computeIfAbsent(issue.getImplementation().getDetectorClass(), detector -> new LinkedHashSet<>()).add(issue);
+    }
+    return result;
+  }
+
+  /**
+   * Plans the run of an XML file whose content or project changed since the last run. The content may be unchanged, in which
+   * case only the detectors looking at other files are run again.
+   */
+  @VisibleForTesting
+  @Nullable
+  static Plan planXml(@NotNull XmlSummary oldSummary, @NotNull String newContent, @NotNull XmlSummary newSummary,
+                      @NotNull Set<Issue> issues, @NotNull List<ProblemData> oldProblems, @NotNull Snapshot snapshot) {
+    ChangedRegion region = ChangedRegion.compute(oldSummary, newSummary);
+    Set<String> elements = new HashSet<>();
+    Set<String> attributes = new HashSet<>();
+    if (region != null &&
+        (!collectNames(newContent, region.myStart, region.myNewEnd, elements, attributes) ||
+         !oldSummary.collectRemovedNames(newSummary, elements, attributes))) {
+      return null;
+    }
+
+    Map<Class<? extends Detector>, Set<Issue>> detectors = groupByDetector(issues);
+    Set<Class<? extends Detector>> affected = new HashSet<>();
+    for (Map.Entry<Class<? extends Detector>, Set<Issue>> entry : detectors.entrySet()) {
+      Applicability applicability = getApplicability(entry.getKey());
+      if (!applicability.isFileLocal(entry.getValue()) || region != null && applicability.isAffected(elements, attributes)) {
+        affected.add(entry.getKey());
+      }
+    }
+
+    List<ProblemData> reused = new ArrayList<>();
+    for (ProblemData problem : oldProblems) {
+      Class<? extends Detector> detector = problem.getIssue().getImplementation().getDetectorClass();
+      if (!issues.contains(problem.getIssue()) || affected.contains(detector)) {
+        continue;
+      }
+      TextRange range = region != null ? region.map(problem.getTextRange()) : problem.getTextRange();
+      if (range == null) {
+        // The problem straddles the edit; we can't tell how it moved, so recompute it.
+        affected.add(detector);
+      }
+      else {
+        reused.add(new ProblemData(problem.getIssue(), problem.getMessage(), range, problem.getConfiguredSeverity(),
+                                   problem.getQuickfixData()));
+      }
+    }
+    reused.removeIf(problem -> affected.contains(problem.getIssue().getImplementation().getDetectorClass()));
+
+    Set<Issue> toRun = new LinkedHashSet<>();
+    for (Map.Entry<Class<? extends Detector>, Set<Issue>> entry : detectors.entrySet()) {
+      if (affected.contains(entry.getKey())) {
+        toRun.addAll(entry.getValue());
+      }
+    }
+    return new Plan(reused, toRun, snapshot);
+  }
+
+  /**
+   * Adds the names of the elements and attributes touched by the changed text [start, end) of content: the names
+   * appearing in the tags overlapping the change, and those of the enclosing elements. Returns false if the change
+   * touches markup that can affect the whole file.
+   */
+  @VisibleForTesting
+  static boolean collectNames(@NotNull String content, int start, int end, @NotNull Set<String> elements, @NotNull Set<String> attributes) {
+    int tagStart = content.lastIndexOf('<', Math.max(0, start - 1));
+    if (tagStart < 0) {
+      tagStart = 0;
+    }
+    else if (content.lastIndexOf('>', start - 1) > tagStart) {
+      // The change starts after the end of the last tag.
+      tagStart = start;
+    }
+    int tagEnd = content.indexOf('>', end);
+    int nextTagStart = content.indexOf('<', end);
+    if (nextTagStart >= 0 && (tagEnd < 0 || nextTagStart < tagEnd)) {
+      // The change ends before the start of the next tag.
+      tagEnd = end;
+    }
+    else {
+      tagEnd = tagEnd < 0 ? content.length() : tagEnd + 1;
+    }
+
+    // Also look at the characters around the change, in case it split or joined markup such as "<!--".
+    String changed = content.substring(Math.max(0, start - 8), Math.min(content.length(), end + 8));
+    for (String markup : GLOBAL_MARKUP) {
+      if (changed.contains(markup)) {
+        return false;
+      }
+    }
+
+    String text = content.substring(tagStart, tagEnd);
+    Matcher matcher = ELEMENT_NAME.matcher(text);
+    while (matcher.find()) {
+      elements.add(matcher.group(1));
+    }
+    matcher = ATTRIBUTE_NAME.matcher(text);
+    while (matcher.find()) {
+      attributes.add(localName(matcher.group(1)));
+    }
+
+    // Enclosing elements: the open tags before tagStart which have not been closed yet.
+    Deque<String> stack = new ArrayDeque<>();
+    matcher = XML_TOKEN.matcher(content);
+    matcher.region(0, tagStart);
+    while (matcher.find()) {
+      String name = matcher.group(2);
+      if (name == null) {
+        continue;
+      }
+      if (!matcher.group(1).isEmpty()) {
+        if (stack.isEmpty()) {
+          return false; // Mismatched tags; don't try to be clever
+        }
+        stack.pop();
+      }
+      else if (!matcher.group(3).endsWith("/")) {
+        stack.push(matcher.group());
+      }
+    }
+    for (String tag : stack) {
+      Matcher nameMatcher = ELEMENT_NAME.matcher(tag);
+      if (nameMatcher.find()) {
+        elements.add(nameMatcher.group(1));
+      }
+      Matcher attributeMatcher = ATTRIBUTE_NAME.matcher(tag);
+      while (attributeMatcher.find()) {
+        attributes.add(localName(attributeMatcher.group(1)));
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String localName(@NotNull String name) {
+    int index = name.indexOf(':');
+    return index == -1 ? name : name.substring(index + 1);
+  }
+
+  @NotNull
+  private static Applicability getApplicability(@NotNull Class<? extends Detector> detectorClass) {
+    return ourApplicability.computeIfAbsent(detectorClass, detector -> {
+      try {
+        Detector instance = detector.newInstance();
+        if (instance instanceof XmlScanner) {
+          XmlScanner scanner = (XmlScanner)instance;
+          return new Applicability(scanner.getApplicableElements(), scanner.getApplicableAttributes(), true);
+        }
+      }
+      catch (ReflectiveOperationException | RuntimeException e) {
+        LOG.debug("Cannot instantiate " + detector, e);
+      }
+      return Applicability.ALWAYS;
+    });
+  }
+
+  /** The element and attribute names a detector is registered for. */
+  private static class Applicability {
+    static final Applicability ALWAYS = new Applicability(null, null, false);
+
+    @Nullable private final Set<String> myElements;
+    @Nullable private final Set<String> myAttributes;
+    private final boolean myAlways;
+    private final boolean myXmlScanner;
+
+    private Applicability(@Nullable Collection<String> elements, @Nullable Collection<String> attributes, boolean xmlScanner) {
+      myXmlScanner = xmlScanner;
+      // Null for both means the detector visits the whole document, and an empty collection is XmlScanner.ALL
+      myAlways = elements == null && attributes == null || elements != null && elements.isEmpty() ||
+                 attributes != null && attributes.isEmpty();
+      myElements = elements != null ? new HashSet<>(elements) : null;
+      myAttributes = attributes != null ? new HashSet<>(attributes) : null;
+    }
+
+    boolean isAffected(@NotNull Set<String> elements, @NotNull Set<String> attributes) {
+      if (myAlways) {
+        return true;
+      }
+      return myElements != null && intersects(myElements, elements) || myAttributes != null && intersects(myAttributes, attributes);
+    }
+
+    /**
+     * Returns true if the detector only looks at the XML file it is run on for the given issues, so that its results
+     * can only change when that file does.
+     */
+    boolean isFileLocal(@NotNull Collection<Issue> issues) {
+      if (!myXmlScanner) {
+        return false;
+      }
+      for (Issue issue : issues) {
+        EnumSet<Scope> scope = issue.getImplementation().getScope();
+        if (scope.size() != 1 || !scope.contains(Scope.RESOURCE_FILE) && !scope.contains(Scope.MANIFEST)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean intersects(@NotNull Set<String> a, @NotNull Set<String> b) {
+      for (String s : b) {
+        if (a.contains(s)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The text range that differs between two versions of a file: [myStart, myOldEnd) in the old text was replaced by
+   * [myStart, myNewEnd) in the new text.
+   */
+  @VisibleForTesting
+  static class ChangedRegion {
+    final int myStart;
+    final int myOldEnd;
+    final int myNewEnd;
+
+    private ChangedRegion(int start, int oldEnd, int newEnd) {
+      myStart = start;
+      myOldEnd = oldEnd;
+      myNewEnd = newEnd;
+    }
+
+    /**
+     * Returns the lines that differ between two versions of a file, or null if they have the same lines.
+     */
+    @Nullable
+    static ChangedRegion compute(@NotNull XmlSummary oldSummary, @NotNull XmlSummary newSummary) {
+      int oldLines = oldSummary.getLineCount();
+      int newLines = newSummary.getLineCount();
+      int prefix = 0;
+      int max = Math.min(oldLines, newLines);
+      while (prefix < max && oldSummary.isSameLine(prefix, newSummary, prefix)) {
+        prefix++;
+      }
+      if (prefix == oldLines && prefix == newLines) {
+        return null;
+      }
+      int suffix = 0;
+      while (suffix < max - prefix && oldSummary.isSameLine(oldLines - suffix - 1, newSummary, newLines - suffix - 1)) {
+        suffix++;
+      }
+      return new ChangedRegion(oldSummary.getLineStart(prefix), oldSummary.getLineStart(oldLines - suffix),
+                               newSummary.getLineStart(newLines - suffix));
+    }
+
+    /**
+     * Maps a range of the old text to the new text, or returns null if the range partially overlaps the change.
+     */
+    @Nullable
+    TextRange map(@NotNull TextRange range) {
+      if (range.getEndOffset() <= myStart) {
+        return range;
+      }
+      int delta = myNewEnd - myOldEnd;
+      if (range.getStartOffset() >= myOldEnd) {
+        return range.shiftRight(delta);
+      }
+      if (range.getStartOffset() <= myStart && range.getEndOffset() >= myOldEnd) {
+        return new TextRange(range.getStartOffset(), range.getEndOffset() + delta);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * What is remembered of the content of an XML file: the hash and end offset of each line, and how many times each element name,
+   * attribute name and global markup appears in the lines. The names in the lines that were replaced by an edit are found by
+   * comparing these counts with those of the new content, which is the old content with the replaced lines only.
+   */
+  @VisibleForTesting
+  static class XmlSummary {
+    @NotNull private final long[] myLineHashes;
+    @NotNull private final int[] myLineEnds;
+    @NotNull private final Multiset<String> myElements = HashMultiset.create();
+    @NotNull private final Multiset<String> myAttributes = HashMultiset.create();
+    @NotNull private final Multiset<String> myMarkup = HashMultiset.create();
+
+    @VisibleForTesting
+    XmlSummary(@NotNull String content) {
+      int lineCount = 1;
+      for (int i = 0; i < content.length(); i++) {
+        if (content.charAt(i) == '\n') {
+          lineCount++;
+        }
+      }
+      myLineHashes = new long[lineCount];
+      myLineEnds = new int[lineCount];
+
+      int start = 0;
+      for (int line = 0; line < lineCount; line++) {
+        int newline = content.indexOf('\n', start);
+        int end = newline < 0 ? content.length() : newline + 1;
+        String text = content.substring(start, end);
+        myLineHashes[line] = HASH_FUNCTION.hashUnencodedChars(text).asLong();
+        myLineEnds[line] = end;
+
+        Matcher matcher = ELEMENT_NAME.matcher(text);
+        while (matcher.find()) {
+          myElements.add(matcher.group(1));
+        }
+        matcher = ATTRIBUTE_NAME.matcher(text);
+        while (matcher.find()) {
+          myAttributes.add(localName(matcher.group(1)));
+        }
+        for (String markup : GLOBAL_MARKUP) {
+          for (int index = text.indexOf(markup); index >= 0; index = text.indexOf(markup, index + 1)) {
+            myMarkup.add(markup);
+          }
+        }
+        start = end;
+      }
+    }
+
+    int getLineCount() {
+      return myLineHashes.length;
+    }
+
+    int getLineStart(int line) {
+      return line == 0 ? 0 : myLineEnds[line - 1];
+    }
+
+    boolean isSameLine(int line, @NotNull XmlSummary other, int otherLine) {
+      return myLineHashes[line] == other.myLineHashes[otherLine] &&
+             myLineEnds[line] - getLineStart(line) == other.myLineEnds[otherLine] - other.getLineStart(otherLine);
+    }
+
+    /**
+     * Adds the names which appear more often in this content than in {@code newContent}, and so were in the lines replaced by the
+     * edit. Returns false if global markup was in those lines.
+     */
+    boolean collectRemovedNames(@NotNull XmlSummary newContent, @NotNull Set<String> elements, @NotNull Set<String> attributes) {
+      for (String markup : myMarkup.elementSet()) {
+        if (myMarkup.count(markup) > newContent.myMarkup.count(markup)) {
+          return false;
+        }
+      }
+      for (String element : myElements.elementSet()) {
+        if (myElements.count(element) > newContent.myElements.count(element)) {
+          elements.add(element);
+        }
+      }
+      for (String attribute : myAttributes.elementSet()) {
+        if (myAttributes.count(attribute) > newContent.myAttributes.count(attribute)) {
+          attributes.add(attribute);
+        }
+      }
+      return true;
+    }
+  }
+
+  @VisibleForTesting
+  static class Snapshot {
+    private final long myContentHash;
+    @Nullable private final XmlSummary myXmlSummary;
+    @NotNull private final Set<Issue> myIssues;
+    private final long myModificationCount;
+    private final long myResourceModificationCount;
+    @NotNull private final List<ProblemData> myProblems;
+
+    private Snapshot(long contentHash, @Nullable XmlSummary xmlSummary, @NotNull Set<Issue> issues, long modificationCount,
+                     long resourceModificationCount, @NotNull List<ProblemData> problems) {
+      myContentHash = contentHash;
+      myXmlSummary = xmlSummary;
+      myIssues = issues;
+      myModificationCount = modificationCount;
+      myResourceModificationCount = resourceModificationCount;
+      myProblems = problems;
+    }
+
+    @VisibleForTesting
+    @NotNull
+    static Snapshot create(@NotNull String content, @NotNull Set<Issue> issues, long modificationCount, long resourceModificationCount,
+                           boolean xml) {
+      return new Snapshot(HASH_FUNCTION.hashUnencodedChars(content).asLong(), xml ? new XmlSummary(content) : null, issues,
+                          modificationCount, resourceModificationCount, ImmutableList.of());
+    }
+
+    @VisibleForTesting
+    @NotNull
+    Snapshot withProblems(@NotNull List<ProblemData> problems) {
+      return new Snapshot(myContentHash, myXmlSummary, myIssues, myModificationCount, myResourceModificationCount, problems);
+    }
+  }
+}
@@ -19,6 +19,7 @@ public class State {
   private final String myMainFileContent;
   private final List<ProblemData> myProblems = new ArrayList<ProblemData>();
   private final Set<Issue> myIssues;
+  private final long myModificationCount;
 
   private volatile boolean myDirty;
 
@@ -26,10 +27,19 @@ public class State {
         @NotNull VirtualFile mainFile,
         @NotNull String mainFileContent,
         @NotNull Set<Issue> issues) {
+    this(module, mainFile, mainFileContent, issues, -1);
+  }
+
+  State(@NotNull Module module,
+        @NotNull VirtualFile mainFile,
+        @NotNull String mainFileContent,
+        @NotNull Set<Issue> issues,
+        long modificationCount) {
     myModule = module;
     myMainFile = mainFile;
     myMainFileContent = mainFileContent;
     myIssues = issues;
+    myModificationCount = modificationCount;
   }
 
   @NotNull
@@ -64,4 +74,11 @@ public class State {
   public Set<Issue> getIssues() {
     return myIssues;
   }
+
+  /**
+   * Returns the PSI modification count at the time the file content was captured, or -1 if unknown.
+   */
+  public long getModificationCount() {
+    return myModificationCount;
+  }
 }
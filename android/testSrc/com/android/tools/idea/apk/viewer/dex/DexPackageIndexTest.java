@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.intellij.ui.treeStructure.Tree;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.junit.Test;
+
+import javax.swing.tree.TreePath;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getDexPath;
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getTestDexFile;
+import static com.google.common.truth.Truth.assertThat;
+
+public class DexPackageIndexTest {
+  @Test
+  public void readsSameClassesAsDexlib() throws IOException {
+    Path path = getDexPath("Test.dex");
+    List<String> descriptors = new ArrayList<>();
+    int methodReferences = DexPackageIndex.readClassDescriptors(path, descriptors::add);
+
+    DexBackedDexFile dexFile = getTestDexFile(path);
+    List<String> expected = new ArrayList<>();
+    for (DexBackedClassDef classDef : dexFile.getClasses()) {
+      expected.add(classDef.getType());
+    }
+    assertThat(descriptors).containsExactlyElementsIn(expected);
+    assertThat(methodReferences).isEqualTo(dexFile.getMethodCount());
+
+    DexPackageIndex index = DexPackageIndex.create(new Path[]{path});
+    assertThat(index.getClassCount()).isEqualTo(expected.size());
+  }
+
+  @Test
+  public void buildsPackageHierarchy() {
+    DexPackageIndex index = new DexPackageIndex();
+    index.addClass("Lcom/example/a/Foo;");
+    index.addClass("Lcom/example/a/Bar;");
+    index.addClass("Lcom/example/b/Baz;");
+    index.addClass("LTop;");
+
+    DexPackageIndex.Package root = index.getRoot();
+    assertThat(root.getClassCount()).isEqualTo(1);
+    assertThat(root.getTotalClassCount()).isEqualTo(4);
+
+    DexPackageIndex.Package example = root.getChild("com").getChild("example");
+    assertThat(example.getQualifiedName()).isEqualTo("com.example");
+    assertThat(example.getTotalClassCount()).isEqualTo(3);
+    assertThat(example.getChild("a").getClassCount()).isEqualTo(2);
+    assertThat(example.getChild("b").getQualifiedName()).isEqualTo("com.example.b");
+  }
+
+  @Test
+  public void lazyModelCreatesNodesOnExpansion() {
+    DexPackageIndex index = new DexPackageIndex();
+    index.addClass("Lcom/example/a/Foo;");
+    index.addClass("Lcom/example/b/Bar;");
+    index.addClass("Lorg/Baz;");
+
+    LazyPackageTreeModel model = new LazyPackageTreeModel(index);
+    // root, com and org
+    assertThat(model.getMaterializedNodeCount()).isEqualTo(3);
+
+    Tree tree = new Tree(model);
+    tree.addTreeWillExpandListener(model);
+    Object com = model.getChild(model.getRoot(), 0);
+    tree.expandPath(new TreePath(new Object[]{model.getRoot(), com}));
+    // + example
+    assertThat(model.getMaterializedNodeCount()).isEqualTo(4);
+
+    Object example = model.getChild(com, 0);
+    tree.expandPath(new TreePath(new Object[]{model.getRoot(), com, example}));
+    // + a and b
+    assertThat(model.getMaterializedNodeCount()).isEqualTo(6);
+  }
+}
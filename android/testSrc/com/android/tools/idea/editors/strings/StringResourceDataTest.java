@@ -18,6 +18,7 @@ package com.android.tools.idea.editors.strings;
 import static com.android.ide.common.rendering.api.ResourceNamespace.RES_AUTO;
 
 import com.android.SdkConstants;
+import com.android.ide.common.resources.ResourceItem;
 import com.android.projectmodel.DynamicResourceValue;
 import com.android.resources.ResourceType;
 import com.android.tools.idea.rendering.Locale;
@@ -31,6 +32,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTag;
+import com.intellij.util.ui.UIUtil;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -95,6 +97,59 @@ public class StringResourceDataTest extends AndroidTestCase {
     assertEquals("Key 2 hi", data.getStringResource(newStringResourceKey("key2")).getTranslationAsString(Locale.create("hi")));
   }
 
+  public void testResourcesAreLoadedOnDemand() {
+    assertEquals(ImmutableSet.of("en", "en-GB", "en-IN", "fr", "hi"),
+                 data.getLocaleList().stream().map(Locale::toLocaleId).collect(Collectors.toSet()));
+    assertFalse(data.isLoaded(newStringResourceKey("key1")));
+    assertFalse(data.isLoaded(newStringResourceKey("key2")));
+
+    data.getStringResource(newStringResourceKey("key2"));
+    assertFalse(data.isLoaded(newStringResourceKey("key1")));
+    assertTrue(data.isLoaded(newStringResourceKey("key2")));
+  }
+
+  public void testPaintedResourcesAreLoadedInTheBackground() {
+    data.setUpdateExecutor(Runnable::run);
+    StringResourceKey key = newStringResourceKey("key2");
+
+    assertNull(data.getLoadedStringResource(key));
+    UIUtil.dispatchAllInvocationEvents();
+
+    StringResource resource = data.getLoadedStringResource(key);
+    assertNotNull(resource);
+    assertEquals("Key 2 default", resource.getDefaultValueAsString());
+    assertFalse(data.isLoaded(newStringResourceKey("key1")));
+  }
+
+  public void testUpdateReloadsOnlyChangedKeys() {
+    data.setUpdateExecutor(Runnable::run);
+    StringResource key1 = data.getStringResource(newStringResourceKey("key1"));
+    StringResource key2 = data.getStringResource(newStringResourceKey("key2"));
+    UIUtil.dispatchAllInvocationEvents();
+
+    // key1 has no Hindi translation, so editing the Hindi strings does not touch its items
+    ResourceItem item = key2.getTranslationAsResourceItem(Locale.create("hi"));
+    assertNotNull(item);
+    assertTrue(StringsWriteUtils.setItemText(getProject(), item, "Key 2 edited"));
+
+    data.getLoadedStringResource(newStringResourceKey("key1"));
+    UIUtil.dispatchAllInvocationEvents();
+
+    assertSame(key1, data.getLoadedStringResource(newStringResourceKey("key1")));
+    assertNotSame(key2, data.getLoadedStringResource(newStringResourceKey("key2")));
+    assertEquals("Key 2 edited", data.getStringResource(newStringResourceKey("key2")).getTranslationAsString(Locale.create("hi")));
+    assertTrue(data.containsText(newStringResourceKey("key2"), "Key 2 edited"));
+    assertFalse(data.isLoaded(newStringResourceKey("key3")));
+  }
+
+  public void testContainsText() {
+    assertTrue(data.containsText(newStringResourceKey("key2"), "Key 2 hi"));
+    assertTrue(data.containsText(newStringResourceKey("key2"), "key2"));
+    assertTrue(data.containsText(new StringResourceKey("dynamic_key1", null), "Étranger"));
+    assertFalse(data.containsText(newStringResourceKey("key1"), "Key 2"));
+    assertFalse(data.isLoaded(newStringResourceKey("key2")));
+  }
+
   public void testResourceToStringPsi() {
     Locale locale = Locale.create("fr");
 
@@ -15,6 +15,8 @@
  */
 package com.android.tools.idea.gradle.dsl.model
 
+import com.android.tools.idea.gradle.dsl.TestFileName.EXT_MODEL_RESOLVE_VARIABLE_IN_SUBMODULE_PROPERTIES_FILE
+import com.android.tools.idea.gradle.dsl.TestFileName.EXT_MODEL_RESOLVE_VARIABLE_IN_SUBMODULE_PROPERTIES_FILE_SUB
 import com.android.tools.idea.gradle.dsl.TestFileName.PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED
 import com.android.tools.idea.gradle.dsl.TestFileName.PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED_APPLIED
 import com.android.tools.idea.gradle.dsl.TestFileName.PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED_SUB
@@ -45,11 +47,16 @@ import com.android.tools.idea.gradle.dsl.api.ext.GradlePropertyModel.ValueType.I
 import com.android.tools.idea.gradle.dsl.api.ext.GradlePropertyModel.ValueType.STRING
 import com.android.tools.idea.gradle.dsl.api.ext.PropertyType.REGULAR
 import com.android.tools.idea.gradle.dsl.model.GradleFileModelTestCase.runWriteAction
+import com.intellij.openapi.application.ex.ApplicationManagerEx
+import com.intellij.openapi.util.Computable
 import org.gradle.internal.impldep.org.hamcrest.CoreMatchers.hasItems
 import org.gradle.internal.impldep.org.hamcrest.MatcherAssert.assertThat
 import org.junit.Test
 import java.io.File
 import java.io.IOException
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class ProjectBuildModelTest : GradleFileModelTestCase() {
   @Test
@@ -167,6 +174,70 @@ class ProjectBuildModelTest : GradleFileModelTestCase() {
     }
   }
 
+  @Test
+  fun testReparseOnlyChangedFiles() {
+    writeToNewProjectFile("b", PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED_APPLIED)
+    writeToBuildFile(PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED)
+    writeToSubModuleBuildFile(PROJECT_BUILD_MODEL_APPLIED_FILES_SHARED_SUB)
+    writeToSettingsFile(subModuleSettingsText)
+
+    val projectModel = ProjectBuildModel.get(myProject)
+    val parentBuildModel = projectModel.projectBuildModel!!
+    val childBuildModel = projectModel.getModuleBuildModel(mySubModule)!!
+    val parentFile = (parentBuildModel as GradleBuildModelImpl).dslFile
+    val childFile = (childBuildModel as GradleBuildModelImpl).dslFile
+    val appliedFile = parentFile.applyDslElement[0]
+    val files = listOf(parentFile, childFile, appliedFile)
+
+    // Nothing changed
+    assertEmpty(ProjectBuildModelImpl.findFilesToReparse(files))
+
+    // Only the changed module file is parsed again
+    childBuildModel.ext().findProperty("childProperty").rename("dodgy")
+    assertEquals(listOf(childFile), ProjectBuildModelImpl.findFilesToReparse(files))
+    applyChangesAndReparse(projectModel)
+    assertEmpty(ProjectBuildModelImpl.findFilesToReparse(files))
+    verifyPropertyModel(childBuildModel.ext().findProperty("dodgy").resolve(), STRING_TYPE, "hello", STRING, REGULAR, 1, "dodgy")
+
+    // Both files applying a changed file are parsed again, after it
+    childBuildModel.ext().findProperty("dodgy").dependencies[0].setValue("goodbye")
+    applyChanges(projectModel)
+    val filesToReparse = ProjectBuildModelImpl.findFilesToReparse(files)
+    assertSameElements(filesToReparse, files)
+    assertEquals(appliedFile, filesToReparse[0])
+
+    projectModel.reparse()
+    assertEmpty(ProjectBuildModelImpl.findFilesToReparse(files))
+    verifyPropertyModel(parentBuildModel.ext().findProperty("property").resolve(), STRING_TYPE, "goodbye", STRING, REGULAR, 1, "property")
+    verifyPropertyModel(childBuildModel.ext().findProperty("dodgy").resolve(), STRING_TYPE, "goodbye", STRING, REGULAR, 1, "dodgy")
+  }
+
+  @Test
+  fun testReparseBuildFileOfChangedPropertiesFile() {
+    writeToSettingsFile(subModuleSettingsText)
+    writeToBuildFile(EXT_MODEL_RESOLVE_VARIABLE_IN_SUBMODULE_PROPERTIES_FILE)
+    writeToSubModulePropertiesFile("xyz=value_from_sub_module_properties_file")
+    writeToSubModuleBuildFile(EXT_MODEL_RESOLVE_VARIABLE_IN_SUBMODULE_PROPERTIES_FILE_SUB)
+
+    val projectModel = ProjectBuildModel.get(myProject)
+    val childBuildModel = projectModel.getModuleBuildModel(mySubModule)!!
+    verifyPropertyModel(childBuildModel.ext().findProperty("test").resolve(), STRING_TYPE, "value_from_sub_module_properties_file", STRING,
+                        REGULAR, 1)
+    val childFile = (childBuildModel as GradleBuildModelImpl).dslFile
+    val propertiesFile = childFile.siblingDslFile!!
+    val files = listOf(childFile, propertiesFile)
+    assertEmpty(ProjectBuildModelImpl.findFilesToReparse(files))
+
+    // The properties file is read again before the build file using it is parsed again
+    writeToSubModulePropertiesFile("xyz=edited_value_from_sub_module_properties_file")
+    assertEquals(listOf(propertiesFile, childFile), ProjectBuildModelImpl.findFilesToReparse(files))
+
+    projectModel.reparse()
+    assertEmpty(ProjectBuildModelImpl.findFilesToReparse(files))
+    verifyPropertyModel(childBuildModel.ext().findProperty("test").resolve(), STRING_TYPE, "edited_value_from_sub_module_properties_file",
+                        STRING, REGULAR, 1)
+  }
+
   @Test
   fun testApplyResolvesCorrectFile() {
     // The sub-module applies a sub-module Gradle file which in turn applies a Gradle file from the root project directory.
@@ -230,6 +301,35 @@ class ProjectBuildModelTest : GradleFileModelTestCase() {
     }
   }
 
+  @Test
+  fun testGetAllIncludedBuildModelsInBackgroundReadAction() {
+    writeToBuildFile(PROJECT_BUILD_MODEL_SETTINGS_FILE_UPDATES_CORRECTLY)
+    writeToSubModuleBuildFile(PROJECT_BUILD_MODEL_SETTINGS_FILE_UPDATES_CORRECTLY_SUB)
+    writeToSettingsFile(subModuleSettingsText)
+    writeToNewSubModule("lib", PROJECT_BUILD_MODEL_SETTINGS_FILE_UPDATES_CORRECTLY_OTHER_SUB, "")
+    val settingsProjectModel = ProjectBuildModel.get(myProject)
+    settingsProjectModel.projectSettingsModel!!.addModulePath(":lib")
+    applyChanges(settingsProjectModel)
+
+    // The models are loaded on a background thread holding a read lock, while a write action is pending.
+    val projectModel = ProjectBuildModel.get(myProject)
+    val application = ApplicationManagerEx.getApplicationEx()
+    val readLockHeld = CountDownLatch(1)
+    val models = application.executeOnPooledThread(Callable {
+      application.runReadAction(Computable {
+        readLockHeld.countDown()
+        while (!application.isWriteActionPending) {
+          Thread.sleep(10)
+        }
+        projectModel.allIncludedBuildModels
+      })
+    })
+    readLockHeld.await()
+    // Waits for the read action to finish.
+    runWriteAction<Unit, IOException> { }
+    assertSize(3, models.get(1, TimeUnit.MINUTES))
+  }
+
   @Test
   fun testProjectModelSavesFiles() {
     writeToSubModuleBuildFile(PROJECT_BUILD_MODEL_PROJECT_MODELS_SAVES_FILES_SUB)
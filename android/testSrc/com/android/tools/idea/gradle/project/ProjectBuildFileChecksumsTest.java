@@ -21,11 +21,16 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import static com.android.tools.idea.Projects.getBaseDirPath;
 import static com.android.tools.idea.testing.TestProjectPaths.PROJECT_WITH_APPAND_LIB;
 import static com.google.common.truth.Truth.assertThat;
+import static com.intellij.openapi.util.io.FileUtil.createTempDirectory;
 import static com.intellij.openapi.util.io.FileUtil.toSystemDependentName;
+import static com.intellij.openapi.util.io.FileUtil.writeToFile;
 
 public class ProjectBuildFileChecksumsTest extends AndroidGradleTestCase {
   public void testEndToEnd() throws Exception {
@@ -40,22 +45,57 @@ public class ProjectBuildFileChecksumsTest extends AndroidGradleTestCase {
 
     ProjectBuildFileChecksums newData;
     try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-      try (ObjectOutputStream oos = new ObjectOutputStream(outputStream)) {
-        oos.writeObject(data);
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray())) {
-          try (ObjectInputStream ois = new ObjectInputStream(inputStream)) {
-            newData = (ProjectBuildFileChecksums)ois.readObject();
-          }
-        }
+      try (DataOutputStream out = new DataOutputStream(outputStream)) {
+        data.writeTo(out);
+      }
+      try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+        newData = ProjectBuildFileChecksums.readFrom(in, getBaseDirPath(project));
       }
     }
     verifyGradleProjectSyncData(newData, previousSyncTime);
+    assertTrue(newData.canUseCachedData());
+  }
+
+  public void testDetectsChanges() throws Exception {
+    File root = createTempDirectory("checksums", null);
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      File file = new File(root, "module" + i + "/build.gradle");
+      writeToFile(file, "apply plugin: 'com.android.library' // " + i);
+      // Old enough that the timestamps can be trusted.
+      assertTrue(file.setLastModified(1000000000000L));
+      files.add(file);
+    }
+    files.add(new File(root, "missing.gradle"));
+    File file = files.get(3);
+
+    ProjectBuildFileChecksums data = ProjectBuildFileChecksums.createFrom(root, files);
+    assertTrue(data.canUseCachedData());
+
+    // Touched, but with the same contents
+    assertTrue(file.setLastModified(1000000010000L));
+    assertTrue(data.canUseCachedData());
+
+    // Same size, different contents
+    writeToFile(file, "apply plugin: 'com.android.library' // x");
+    assertFalse(data.canUseCachedData());
+
+    // Different size
+    writeToFile(file, "apply plugin: 'com.android.application'");
+    assertFalse(data.canUseCachedData());
+
+    writeToFile(file, "apply plugin: 'com.android.library' // 3");
+    assertTrue(data.canUseCachedData());
+
+    // A file which didn't exist is created
+    writeToFile(files.get(20), "");
+    assertFalse(data.canUseCachedData());
   }
 
   private static void verifyGradleProjectSyncData(@NotNull ProjectBuildFileChecksums data, long previousSyncTime) {
     assertNotNull(data);
 
-    Map<String, byte[]> checksums = data.getFileChecksums();
+    Map<String, ProjectBuildFileChecksums.FileChecksum> checksums = data.getFileChecksums();
     assertEquals(7, checksums.size());
     assertThat(checksums.keySet()).containsAllOf("gradle.properties", "local.properties", "build.gradle", "settings.gradle",
                                                  toSystemDependentName("app/build.gradle"), toSystemDependentName("lib/build.gradle"));
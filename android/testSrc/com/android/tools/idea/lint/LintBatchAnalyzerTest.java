@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import static com.android.builder.model.AndroidProject.PROJECT_TYPE_LIBRARY;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.lint.checks.HardcodedValuesDetector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.intellij.util.PathUtil;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.android.inspections.lint.ProblemData;
+import org.jetbrains.annotations.NotNull;
+
+public class LintBatchAnalyzerTest extends AndroidTestCase {
+  private static final String LAYOUT = "<TextView xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_width=\"wrap_content\"\n" +
+                                       "    android:layout_height=\"wrap_content\"\n" +
+                                       "    android:text=\"%1$s\" />\n";
+
+  private LintBatchResultCache myCache;
+  private VirtualFile myAppLayout;
+  private VirtualFile myLibLayout;
+  private VirtualFile myJavaFile;
+
+  @Override
+  protected void configureAdditionalModules(@NotNull TestFixtureBuilder<IdeaProjectTestFixture> projectBuilder,
+                                            @NotNull List<MyAdditionalModuleData> modules) {
+    addModuleWithAndroidFacet(projectBuilder, modules, "lib", PROJECT_TYPE_LIBRARY);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new LintBatchResultCache();
+    myAppLayout = myFixture.addFileToProject("res/layout/app.xml", String.format(LAYOUT, "App")).getVirtualFile();
+    myLibLayout =
+      myFixture.addFileToProject(getAdditionalModulePath("lib") + "/res/layout/lib.xml", String.format(LAYOUT, "Library")).getVirtualFile();
+    myJavaFile = myFixture.addFileToProject("src/p1/p2/Util.java", "package p1.p2;\nclass Util {}\n").getVirtualFile();
+    FileDocumentManager.getInstance().saveAllDocuments();
+  }
+
+  public void testModulesAreAnalyzedInParallelAndMerged() {
+    LintBatchAnalyzer analyzer = newAnalyzer();
+    Map<Issue, Map<File, List<ProblemData>>> problems = new HashMap<>();
+    analyzer.analyze(getModules(), problems);
+
+    // Each module is analyzed by its own lint driver, and the problems of both end up in the one map
+    assertThat(problems.get(HardcodedValuesDetector.ISSUE).keySet()).containsAllOf(toLintFile(myAppLayout), toLintFile(myLibLayout));
+    assertThat(analyzer.getAnalyzedFileCount()).isAtLeast(2);
+    assertThat(analyzer.getCachedFileCount()).isEqualTo(0);
+  }
+
+  public void testUnchangedFilesAreReused() throws IOException {
+    Map<Issue, Map<File, List<ProblemData>>> firstProblems = new HashMap<>();
+    newAnalyzer().analyze(getModules(), firstProblems);
+
+    LintBatchAnalyzer analyzer = newAnalyzer();
+    Map<Issue, Map<File, List<ProblemData>>> problems = new HashMap<>();
+    analyzer.analyze(getModules(), problems);
+    assertThat(analyzer.getAnalyzedFileCount()).isEqualTo(0);
+    assertThat(problems.get(HardcodedValuesDetector.ISSUE).keySet())
+      .containsExactlyElementsIn(firstProblems.get(HardcodedValuesDetector.ISSUE).keySet());
+
+    // Editing a source file only analyzes that file again. Layouts are resources, so editing one would invalidate everything.
+    WriteAction.run(() -> VfsUtil.saveText(myJavaFile, "package p1.p2;\nclass Util { int i; }\n"));
+    analyzer = newAnalyzer();
+    analyzer.analyze(getModules(), new HashMap<>());
+    assertThat(analyzer.getAnalyzedFileCount()).isEqualTo(1);
+    assertThat(analyzer.getCachedFileCount()).isAtLeast(2);
+  }
+
+  public void testResourceChangeInvalidatesResults() throws IOException {
+    newAnalyzer().analyze(getModules(), new HashMap<>());
+
+    // A new string may change what the resource checks of other files report, so nothing is reused
+    myFixture.addFileToProject(getAdditionalModulePath("lib") + "/res/values/strings.xml",
+                               "<resources><string name=\"library\">Library</string></resources>");
+    FileDocumentManager.getInstance().saveAllDocuments();
+
+    LintBatchAnalyzer analyzer = newAnalyzer();
+    analyzer.analyze(getModules(), new HashMap<>());
+    assertThat(analyzer.getCachedFileCount()).isEqualTo(0);
+  }
+
+  public void testMerge() {
+    File file = new File("/p/layout.xml");
+    ProblemData first = new ProblemData(HardcodedValuesDetector.ISSUE, "First", new TextRange(1, 5), null, null);
+    ProblemData second = new ProblemData(HardcodedValuesDetector.ISSUE, "Second", new TextRange(6, 9), null, null);
+
+    Map<Issue, Map<File, List<ProblemData>>> to = new HashMap<>();
+    to.computeIfAbsent(HardcodedValuesDetector.ISSUE, issue -> new HashMap<>()).put(file, new ArrayList<>(ImmutableList.of(first)));
+    LintBatchAnalyzer.merge(ImmutableMap.of(HardcodedValuesDetector.ISSUE, ImmutableMap.of(file, ImmutableList.of(second))), to);
+
+    assertThat(to.get(HardcodedValuesDetector.ISSUE).get(file)).containsExactly(first, second).inOrder();
+  }
+
+  @NotNull
+  private LintBatchAnalyzer newAnalyzer() {
+    return new LintBatchAnalyzer(getProject(), new AnalysisScope(getProject()), ImmutableSet.of(HardcodedValuesDetector.ISSUE), myCache,
+                                 EnumSet.of(Scope.RESOURCE_FILE, Scope.ALL_RESOURCE_FILES));
+  }
+
+  @NotNull
+  private List<Module> getModules() {
+    return ImmutableList.of(myModule, getAdditionalModuleByName("lib"));
+  }
+
+  @NotNull
+  private static File toLintFile(@NotNull VirtualFile file) {
+    return new File(PathUtil.getCanonicalPath(file.getPath()));
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.lint.checks.HardcodedValuesDetector;
+import com.android.tools.lint.checks.UnusedResourceDetector;
+import com.android.tools.lint.detector.api.Issue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.util.TextRange;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.android.inspections.lint.ProblemData;
+import org.junit.Test;
+
+public class LintBatchResultCacheTest {
+  private static final String CONFIGURATION =
+    LintBatchResultCache.computeConfigurationKey("1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE), 1, 0);
+
+  @Test
+  public void reusesResultsForUnchangedContent() {
+    LintBatchResultCache cache = new LintBatchResultCache();
+    long hash = LintBatchResultCache.hashContent("<LinearLayout/>".getBytes(StandardCharsets.UTF_8));
+    assertThat(cache.get("/p/layout.xml", hash, CONFIGURATION)).isNull();
+
+    ProblemData problem = new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", new TextRange(1, 5), null, null);
+    Map<Issue, List<ProblemData>> problems = ImmutableMap.of(HardcodedValuesDetector.ISSUE, ImmutableList.of(problem));
+    cache.put("/p/layout.xml", hash, CONFIGURATION, problems);
+
+    assertThat(cache.get("/p/layout.xml", hash, CONFIGURATION)).isEqualTo(problems);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void changedContentIsAMiss() {
+    LintBatchResultCache cache = new LintBatchResultCache();
+    long hash = LintBatchResultCache.hashContent("<LinearLayout/>".getBytes(StandardCharsets.UTF_8));
+    long newHash = LintBatchResultCache.hashContent("<FrameLayout/>".getBytes(StandardCharsets.UTF_8));
+    cache.put("/p/layout.xml", hash, CONFIGURATION, ImmutableMap.of());
+
+    assertThat(newHash).isNotEqualTo(hash);
+    assertThat(cache.get("/p/layout.xml", newHash, CONFIGURATION)).isNull();
+    assertThat(cache.get("/p/layout.xml", hash, CONFIGURATION)).isEmpty();
+  }
+
+  @Test
+  public void newConfigurationDropsAllEntries() {
+    LintBatchResultCache cache = new LintBatchResultCache();
+    cache.put("/p/a.xml", 1, CONFIGURATION, ImmutableMap.of());
+    cache.put("/p/b.xml", 2, CONFIGURATION, ImmutableMap.of());
+    assertThat(cache.size()).isEqualTo(2);
+
+    String newLintVersion = LintBatchResultCache.computeConfigurationKey("2.0", ImmutableList.of(HardcodedValuesDetector.ISSUE), 1, 0);
+    assertThat(cache.get("/p/a.xml", 1, newLintVersion)).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void configurationKey() {
+    String key = LintBatchResultCache.computeConfigurationKey(
+      "1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE, UnusedResourceDetector.ISSUE), 1, 0);
+    assertThat(LintBatchResultCache.computeConfigurationKey(
+      "1.0", ImmutableList.of(UnusedResourceDetector.ISSUE, HardcodedValuesDetector.ISSUE), 1, 0)).isEqualTo(key);
+    assertThat(LintBatchResultCache.computeConfigurationKey(
+      "1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE), 1, 0)).isNotEqualTo(key);
+    assertThat(LintBatchResultCache.computeConfigurationKey(
+      "1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE, UnusedResourceDetector.ISSUE), 2, 0)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void configurationKeyIncludesSourceStamp() {
+    String key = LintBatchResultCache.computeConfigurationKey("1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE), 1, 0);
+    assertThat(LintBatchResultCache.computeConfigurationKey("1.0", ImmutableList.of(HardcodedValuesDetector.ISSUE), 1, 1))
+      .isNotEqualTo(key);
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreDropped() {
+    LintBatchResultCache cache = new LintBatchResultCache();
+    for (int i = 0; i < LintBatchResultCache.MAX_ENTRIES + 100; i++) {
+      cache.put("/p/" + i + ".xml", i, CONFIGURATION, ImmutableMap.of());
+    }
+    assertThat(cache.size()).isAtMost(LintBatchResultCache.MAX_ENTRIES);
+  }
+
+  @Test
+  public void singleFileIssues() {
+    assertThat(LintBatchAnalyzer.getSingleFileIssues(ImmutableList.of(HardcodedValuesDetector.ISSUE, UnusedResourceDetector.ISSUE)))
+      .containsExactly(HardcodedValuesDetector.ISSUE);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.model
+
+import com.android.SdkConstants.FN_ANDROID_MANIFEST_XML
+import com.android.builder.model.AndroidProject.PROJECT_TYPE_LIBRARY
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.SettableFuture
+import com.intellij.openapi.application.runWriteAction
+import com.intellij.openapi.module.Module
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture
+import com.intellij.testFramework.fixtures.TestFixtureBuilder
+import org.jetbrains.android.AndroidTestCase
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class MergedManifestPrecomputerTest : AndroidTestCase() {
+  private lateinit var libModule: Module
+
+  override fun configureAdditionalModules(projectBuilder: TestFixtureBuilder<IdeaProjectTestFixture>,
+                                          modules: MutableList<MyAdditionalModuleData>) {
+    addModuleWithAndroidFacet(projectBuilder, modules, "lib", PROJECT_TYPE_LIBRARY)
+  }
+
+  override fun setUp() {
+    super.setUp()
+    libModule = getAdditionalModuleByName("lib")!!
+  }
+
+  private fun createPrecomputer(requestManifest: (Module) -> ListenableFuture<*>): MergedManifestPrecomputer {
+    return MergedManifestPrecomputer(project, requestManifest).also { Disposer.register(testRootDisposable, it) }
+  }
+
+  fun testLibraryManifestIsComputedBeforeDependentManifest() {
+    val requests = LinkedBlockingQueue<Module>()
+    val libManifest = SettableFuture.create<Any>()
+    val precomputer = createPrecomputer { module ->
+      requests.add(module)
+      if (module == libModule) libManifest else Futures.immediateFuture(null)
+    }
+
+    val allManifests = precomputer.precomputeAll()
+    assertThat(requests.poll(1, TimeUnit.MINUTES)).isEqualTo(libModule)
+
+    // The app's manifest includes the library's, so it isn't requested until the library's is ready.
+    assertThat(requests.poll(100, TimeUnit.MILLISECONDS)).isNull()
+    libManifest.set(null)
+    assertThat(requests.poll(1, TimeUnit.MINUTES)).isEqualTo(myModule)
+
+    allManifests.get(1, TimeUnit.MINUTES)
+    assertThat(requests).isEmpty()
+  }
+
+  fun testPrecomputingAgainCancelsPendingManifests() {
+    val requests = LinkedBlockingQueue<Module>()
+    val libManifests = LinkedBlockingQueue<SettableFuture<Any>>()
+    val precomputer = createPrecomputer { module ->
+      requests.add(module)
+      if (module == libModule) SettableFuture.create<Any>().also { libManifests.add(it) } else Futures.immediateFuture(null)
+    }
+
+    val firstManifests = precomputer.precomputeAll()
+    assertThat(requests.poll(1, TimeUnit.MINUTES)).isEqualTo(libModule)
+
+    // A new sync schedules the manifests again while the library's manifest from the previous one is still being computed.
+    val secondManifests = precomputer.precomputeAll()
+    firstManifests.get(1, TimeUnit.MINUTES)
+    assertThat(requests.poll(1, TimeUnit.MINUTES)).isEqualTo(libModule)
+
+    libManifests.forEach { it.set(null) }
+    secondManifests.get(1, TimeUnit.MINUTES)
+
+    // The app's manifest is only requested by the second schedule, since the first one was canceled.
+    assertThat(requests).containsExactly(myModule)
+  }
+
+  fun testUnchangedLibraryManifestIsReused() {
+    val precomputer = MergedManifestPrecomputer(project).also { Disposer.register(testRootDisposable, it) }
+    precomputer.precomputeAll().get(1, TimeUnit.MINUTES)
+    assertThat(precomputer.computedManifestCount).isEqualTo(2)
+
+    val libraryManifestCount = MergedManifestInfo.getLibraryManifestCount()
+    val libraryManifestReuseCount = MergedManifestInfo.getLibraryManifestReuseCount()
+
+    // Editing the app's manifest makes its merged manifest stale, but not the library's.
+    val appManifest = myFixture.findFileInTempDir(FN_ANDROID_MANIFEST_XML)
+    runWriteAction {
+      VfsUtil.saveText(appManifest, VfsUtil.loadText(appManifest).replace("</manifest>", "<!-- edited --></manifest>"))
+    }
+
+    precomputer.precomputeAll().get(1, TimeUnit.MINUTES)
+    assertThat(precomputer.computedManifestCount).isEqualTo(3)
+    assertThat(precomputer.upToDateManifestCount).isEqualTo(1)
+
+    // The library's manifest is merged into the app's again, but its serialized XML from the first merge is reused.
+    assertThat(MergedManifestInfo.getLibraryManifestCount()).isEqualTo(libraryManifestCount + 1)
+    assertThat(MergedManifestInfo.getLibraryManifestReuseCount()).isEqualTo(libraryManifestReuseCount + 1)
+  }
+}
@@ -26,6 +26,10 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Icon;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -99,4 +103,50 @@ public class GutterIconCacheTest extends AndroidTestCase {
     // Modifying the image should have invalidated the cache entry.
     assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile)).isFalse();
   }
+
+  public void testGetIconOrPlaceholder_rendersInBackground() {
+    List<Runnable> tasks = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(tasks::add, 1024 * 1024);
+
+    Icon placeholder = cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet);
+    assertThat(placeholder.getIconWidth()).isEqualTo(GutterIconCache.MAX_WIDTH);
+    assertThat(cache.getPlaceholderCount()).isEqualTo(1);
+    // Asking again while the icon is being rendered doesn't schedule it twice.
+    cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet);
+    assertThat(tasks).hasSize(1);
+    assertThat(cache.getRenderCount()).isEqualTo(0);
+
+    tasks.get(0).run();
+    assertThat(cache.getRenderCount()).isEqualTo(1);
+    assertThat(cache.isIconUpToDate(mySampleSvgFile)).isTrue();
+    assertThat(cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet))
+      .isSameAs(cache.getIcon(mySampleSvgFile, null, myFacet));
+    assertThat(cache.getRenderCount()).isEqualTo(1);
+  }
+
+  public void testGetIconOrPlaceholder_skipsIconRenderedInTheMeantime() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(tasks::add, 1024 * 1024);
+
+    cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet);
+    cache.getIcon(mySampleSvgFile, null, myFacet);
+    assertThat(cache.getRenderCount()).isEqualTo(1);
+
+    // The background task finds the icon up to date in its read action, and doesn't render it again.
+    ApplicationManager.getApplication().executeOnPooledThread(tasks.get(0)).get(1, TimeUnit.MINUTES);
+    assertThat(cache.getRenderCount()).isEqualTo(1);
+    assertThat(cache.isIconUpToDate(mySampleSvgFile)).isTrue();
+  }
+
+  public void testCacheIsBounded() throws Exception {
+    // Room for a single 16x16 thumbnail.
+    GutterIconCache cache = new GutterIconCache(Runnable::run, GutterIconCache.MAX_WIDTH * GutterIconCache.MAX_HEIGHT * 4);
+    for (int i = 0; i < 5; i++) {
+      Path path = mySampleSvgPath.resolveSibling("GutterIconCacheTest_sample" + i + ".xml");
+      VirtualFile file = TestFileUtils.writeFileAndRefreshVfs(path, "<svg viewBox=\"0 0 50 50\"><rect width=\"50\" height=\"50\"/></svg>");
+      assertThat(cache.getIcon(file, null, myFacet)).isNotNull();
+    }
+    assertThat(cache.getCachedIconCount()).isAtMost(2L);
+    assertThat(cache.getStats()).contains("5 rendered");
+  }
 }
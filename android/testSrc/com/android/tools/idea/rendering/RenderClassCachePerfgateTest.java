@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Measures the time spent rewriting classes when a render class loader loads a large number of classes for the first
+ * time, as happens for the first render after a build, with and without {@link RenderClassCache}.
+ */
+public class RenderClassCachePerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 5;
+
+  private static final Benchmark ourBenchmark = new Benchmark.Builder("DesignTools Class Loading Benchmark")
+    .setDescription("Time (ms) to rewrite the classes of a large library for rendering, after a rebuild.")
+    .build();
+
+  private static List<byte[]> ourClasses;
+
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void loadClasses() throws IOException {
+    // Guava is large enough (~2000 classes) to be representative of the libraries of an app.
+    File jar = new File(ImmutableList.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+    ourClasses = new ArrayList<>();
+    try (JarFile jarFile = new JarFile(jar)) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(".class")) {
+          try (InputStream stream = jarFile.getInputStream(entry)) {
+            ourClasses.add(ByteStreams.toByteArray(stream));
+          }
+        }
+      }
+    }
+    assertThat(ourClasses).isNotEmpty();
+  }
+
+  @Test
+  public void firstLoadAfterRebuild() throws IOException {
+    Path directory = myTemporaryFolder.newFolder("render-classes").toPath();
+
+    Metric uncached = new Metric("render_class_rewrite_uncached");
+    Metric diskCached = new Metric("render_class_rewrite_disk_cache");
+    Metric memoryCached = new Metric("render_class_rewrite_memory_cache");
+    for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+      long start = System.nanoTime();
+      for (byte[] data : ourClasses) {
+        ClassConverter.rewriteClass(data);
+      }
+      uncached.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(), (System.nanoTime() - start) / 1000000));
+
+      // A new cache instance for each sample simulates an IDE restart, so only the disk cache helps (except on the first
+      // sample, which populates it).
+      RenderClassCache cache = new RenderClassCache(directory, Runnable::run, Long.MAX_VALUE, Long.MAX_VALUE);
+      long diskTime = convertAll(cache);
+      if (i > 0) {
+        diskCached.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(), diskTime));
+        assertThat(cache.getMissCount()).isEqualTo(0);
+      }
+
+      // A new class loader in the same session, e.g. after a build, finds the classes in memory.
+      memoryCached.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(), convertAll(cache)));
+    }
+    uncached.commit();
+    diskCached.commit();
+    memoryCached.commit();
+  }
+
+  private static long convertAll(@NotNull RenderClassCache cache) {
+    long start = System.nanoTime();
+    for (byte[] data : ourClasses) {
+      cache.convert(data, ClassConverter::rewriteClass);
+    }
+    return (System.nanoTime() - start) / 1000000;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RenderClassCacheTest {
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger myConversions = new AtomicInteger();
+  private final Function<byte[], byte[]> myConverter = data -> {
+    myConversions.incrementAndGet();
+    byte[] result = data.clone();
+    result[0]++;
+    return result;
+  };
+
+  @Test
+  public void cachesInMemoryAndOnDisk() throws IOException {
+    Path directory = myTemporaryFolder.newFolder("v1").toPath();
+    RenderClassCache cache = new RenderClassCache(directory, Runnable::run, 1024, 1024);
+    byte[] data = {1, 2, 3};
+
+    assertThat(cache.convert(data, myConverter)).isEqualTo(new byte[]{2, 2, 3});
+    assertThat(cache.convert(data.clone(), myConverter)).isEqualTo(new byte[]{2, 2, 3});
+    assertThat(myConversions.get()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getMemoryHitCount()).isEqualTo(1);
+
+    // A new cache, e.g. after restarting the IDE, finds the class on disk
+    RenderClassCache newCache = new RenderClassCache(directory, Runnable::run, 1024, 1024);
+    assertThat(newCache.convert(data, myConverter)).isEqualTo(new byte[]{2, 2, 3});
+    assertThat(newCache.getDiskHitCount()).isEqualTo(1);
+    assertThat(myConversions.get()).isEqualTo(1);
+
+    // Different contents are converted again
+    assertThat(newCache.convert(new byte[]{1, 2, 4}, myConverter)).isEqualTo(new byte[]{2, 2, 4});
+    assertThat(myConversions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void memoryOnly() {
+    RenderClassCache cache = new RenderClassCache(null, Runnable::run, 1024, 0);
+    byte[] data = {1, 2, 3};
+    cache.convert(data, myConverter);
+    cache.clearMemoryCache();
+    cache.convert(data, myConverter);
+    assertThat(myConversions.get()).isEqualTo(2);
+    assertThat(cache.getDiskHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void trim() throws IOException {
+    Path root = myTemporaryFolder.getRoot().toPath();
+    Path oldVersion = myTemporaryFolder.newFolder("v0").toPath();
+    Files.write(oldVersion.resolve("stale.class"), new byte[10]);
+    Path directory = myTemporaryFolder.newFolder("v1").toPath();
+
+    RenderClassCache cache = new RenderClassCache(directory, Runnable::run, 1024, 100);
+    for (int i = 0; i < 10; i++) {
+      cache.convert(new byte[]{(byte)i, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, myConverter);
+    }
+    cache.trim(root);
+
+    assertThat(Files.exists(oldVersion)).isFalse();
+    try (Stream<Path> files = Files.walk(directory)) {
+      long total = files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+      assertThat(total).isAtMost(75L);
+      assertThat(total).isGreaterThan(0L);
+    }
+  }
+}
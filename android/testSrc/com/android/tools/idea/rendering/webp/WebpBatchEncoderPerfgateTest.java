@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.webp;
+
+import static org.junit.Assume.assumeTrue;
+
+import com.android.tools.adtui.webp.WebpNativeLibHelper;
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Measures encoding a generated corpus of images to WebP on a single thread (as the conversion action used to) and with
+ * {@link WebpBatchEncoder} on one worker per core.
+ */
+public class WebpBatchEncoderPerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 3;
+  private static final int IMAGE_COUNT = 500;
+
+  private static final Benchmark ourBenchmark = new Benchmark.Builder("WebP Conversion Benchmark")
+    .setDescription("Time (ms) to encode " + IMAGE_COUNT + " images to WebP.")
+    .build();
+
+  @Test
+  public void encodeCorpus() throws Exception {
+    assumeTrue("WebP is not available", WebpNativeLibHelper.loadNativeLibraryIfNeeded());
+
+    WebpConversionSettings settings = new WebpConversionSettings();
+    settings.skipTransparentImages = false;
+    settings.quality = 75;
+
+    Metric sequential = new Metric("webp_encode_sequential");
+    Metric parallel = new Metric("webp_encode_parallel");
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+        List<WebpConvertedFile> files = WebpBatchEncoderTest.createImages(IMAGE_COUNT);
+        WebpBatchEncoder.Report report = new WebpBatchEncoder(Runnable::run, WebpBatchEncoder.DEFAULT_BATCH_SIZE)
+          .encode(files, settings, null, false, batch -> {});
+        sequential.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(), report.getWallMillis()));
+
+        files = WebpBatchEncoderTest.createImages(IMAGE_COUNT);
+        report = new WebpBatchEncoder(executor, WebpBatchEncoder.DEFAULT_BATCH_SIZE).encode(files, settings, null, false, batch -> {});
+        parallel.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(), report.getWallMillis()));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    sequential.commit();
+    parallel.commit();
+  }
+}
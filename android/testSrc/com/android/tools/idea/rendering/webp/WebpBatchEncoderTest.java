@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.webp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.android.tools.adtui.webp.WebpNativeLibHelper;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.BinaryLightVirtualFile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+public class WebpBatchEncoderTest extends AndroidTestCase {
+  public void testEncodeInBatches() throws Exception {
+    assumeTrue("WebP is not available", WebpNativeLibHelper.loadNativeLibraryIfNeeded());
+
+    WebpConversionSettings settings = new WebpConversionSettings();
+    settings.skipTransparentImages = false;
+    settings.quality = 75;
+
+    List<WebpConvertedFile> files = createImages(25);
+    List<List<WebpConvertedFile>> batches = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      WebpBatchEncoder.Report report = new WebpBatchEncoder(executor, 10).encode(files, settings, null, false, batches::add);
+
+      assertThat(report.getConvertedCount() + report.getSkippedCount()).isEqualTo(25);
+      assertThat(report.getFailedCount()).isEqualTo(0);
+      assertThat(report.getConvertedCount()).isGreaterThan(0);
+      assertThat(report.getSavedBytes()).isGreaterThan(0L);
+
+      int batched = 0;
+      long sourceBytes = 0;
+      for (List<WebpConvertedFile> batch : batches) {
+        assertThat(batch.size()).isAtMost(10);
+        for (WebpConvertedFile file : batch) {
+          // Only files which get smaller are handed out to be written
+          assertThat(file.saved).isGreaterThan(0L);
+          sourceBytes += file.sourceFileSize;
+        }
+        batched += batch.size();
+      }
+      assertThat(batched).isEqualTo(report.getConvertedCount());
+      assertThat(sourceBytes).isEqualTo(report.getSourceBytes());
+
+      // Files which were already encoded (e.g. in the preview) are not encoded again
+      byte[] encoded = files.get(0).encoded;
+      WebpBatchEncoder.Report again = new WebpBatchEncoder(executor, 10).encode(files, settings, null, true, null);
+      assertThat(files.get(0).encoded).isSameAs(encoded);
+      assertThat(again.getConvertedCount()).isEqualTo(report.getConvertedCount());
+      assertThat(again.getEncodeMillis()).isEqualTo(0L);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Creates in-memory PNG files of noisy photo-like images, which WebP encodes to a fraction of their size. */
+  @NotNull
+  static List<WebpConvertedFile> createImages(int count) throws IOException {
+    Random random = new Random(1);
+    List<WebpConvertedFile> files = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      BufferedImage image = new BufferedImage(96, 96, BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          int base = (x + y + i) * 2 & 0xff;
+          int noise = random.nextInt(16);
+          image.setRGB(x, y, (base + noise) << 16 | (255 - base) << 8 | noise * 8);
+        }
+      }
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      ImageIO.write(image, "PNG", stream);
+      VirtualFile file = new BinaryLightVirtualFile("image" + i + ".png", stream.toByteArray());
+      files.add(new WebpConvertedFile(file, file.getLength()));
+    }
+    return files;
+  }
+}
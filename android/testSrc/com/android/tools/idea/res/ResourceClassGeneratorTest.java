@@ -30,6 +30,7 @@ import com.android.tools.idea.resources.aar.AarSourceResourceRepository;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.nio.file.Path;
@@ -309,14 +310,83 @@ public class ResourceClassGeneratorTest extends AndroidTestCase {
     assertEquals(1000, iArray.length);
   }
 
+  public void testIncrementalRegeneration() throws Exception {
+    LocalResourceRepositoryDelegate resources = new LocalResourceRepositoryDelegate("test", createStringsAndAttrs("first"));
+    ResourceClassGenerator generator = ResourceClassGenerator.create(ResourceIdManager.get(myModule), resources, RES_AUTO);
+
+    byte[] strings = generator.generate("my.test.pkg.R$string");
+    byte[] attrs = generator.generate("my.test.pkg.R$attr");
+    byte[] otherStrings = generator.generate("other.test.pkg.R$string");
+    assertNotNull(strings);
+    assertNotNull(attrs);
+    assertNotNull(otherStrings);
+    assertEquals(3, generator.getGeneratedClassCount());
+    assertSame(strings, generator.generate("my.test.pkg.R$string"));
+    assertEquals(1, generator.getReusedClassCount());
+
+    // A change that doesn't affect the strings keeps their bytecode.
+    resources.setDelegate(createStringsAndAttrs("first"));
+    assertSame(strings, generator.generate("my.test.pkg.R$string"));
+    assertSame(otherStrings, generator.generate("other.test.pkg.R$string"));
+    assertEquals(1, generator.getUnchangedTypeCount());
+
+    // Adding a string regenerates the string classes, but not the attr class.
+    resources.setDelegate(createStringsAndAttrs("first", "second"));
+    assertNotSame(strings, generator.generate("my.test.pkg.R$string"));
+    assertSame(attrs, generator.generate("my.test.pkg.R$attr"));
+    Class<?> clz = generateClass(generator, "other.test.pkg.R$string");
+    assertNotNull(clz);
+    assertEquals(2, clz.getFields().length);
+    assertNotNull(clz.getField("second"));
+    assertTrue(generator.getGeneratedBytes() > 0);
+  }
+
+  public void testGeneratorsShareBytecodeCache() throws Exception {
+    ResourceClassGenerator.BytecodeCache cache = new ResourceClassGenerator.BytecodeCache();
+    ResourceIdManager idManager = ResourceIdManager.get(myModule);
+    ResourceClassGenerator first = ResourceClassGenerator.create(
+      idManager, new LocalResourceRepositoryDelegate("first", createStringsAndAttrs("first")), RES_AUTO, cache);
+    ResourceClassGenerator second = ResourceClassGenerator.create(
+      idManager, new LocalResourceRepositoryDelegate("second", createStringsAndAttrs("first", "second")), RES_AUTO, cache);
+
+    byte[] firstStrings = first.generate("my.test.pkg.R$string");
+    byte[] secondStrings = second.generate("my.test.pkg.R$string");
+    assertNotNull(firstStrings);
+    assertNotNull(secondStrings);
+    // Classes with the same name are cached separately for each generator, and bounded together.
+    assertNotSame(firstStrings, secondStrings);
+    assertSame(firstStrings, first.generate("my.test.pkg.R$string"));
+    assertEquals(firstStrings.length + secondStrings.length, cache.getSize());
+
+    cache.clear();
+    assertEquals(0, cache.getSize());
+    assertNotSame(firstStrings, first.generate("my.test.pkg.R$string"));
+  }
+
+  @NotNull
+  private TestResourceRepository createStringsAndAttrs(@NotNull String... stringNames) throws IOException {
+    StringBuilder values = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+    values.append("    <attr name=\"some_attr\" format=\"integer\" />\n");
+    for (String name : stringNames) {
+      values.append("    <string name=\"").append(name).append("\">").append(name).append("</string>\n");
+    }
+    values.append("</resources>\n");
+    return resourceFixture.createTestResources(RES_AUTO, new Object[] {"values/values.xml", values.toString()});
+  }
+
   private static class LocalResourceRepositoryDelegate extends LocalResourceRepository implements SingleNamespaceResourceRepository {
-    private final TestResourceRepository myDelegate;
+    private TestResourceRepository myDelegate;
 
     protected LocalResourceRepositoryDelegate(@NotNull String displayName, TestResourceRepository delegate) {
       super(displayName);
       myDelegate = delegate;
     }
 
+    void setDelegate(@NotNull TestResourceRepository delegate) {
+      myDelegate = delegate;
+      setModificationCount(ourModificationCounter.incrementAndGet());
+    }
+
     @Override
     @NotNull
     protected ResourceTable getFullTable() {
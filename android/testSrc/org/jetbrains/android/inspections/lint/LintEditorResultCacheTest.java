@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.lint.checks.HardcodedValuesDetector;
+import com.android.tools.lint.checks.UnusedResourceDetector;
+import com.android.tools.lint.detector.api.Issue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.util.TextRange;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+public class LintEditorResultCacheTest {
+  private static final String LAYOUT =
+    "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n" +
+    "    <Button android:text=\"Hello\" />\n" +
+    "    <View android:layout_width=\"1dp\" />\n" +
+    "</LinearLayout>\n";
+
+  @Test
+  public void changedRegion() {
+    LintEditorResultCache.ChangedRegion region =
+      LintEditorResultCache.ChangedRegion.compute(summarize("a\nb\nc\n"), summarize("a\nXY\nc\n"));
+    assertThat(region.myStart).isEqualTo(2);
+    assertThat(region.myOldEnd).isEqualTo(4);
+    assertThat(region.myNewEnd).isEqualTo(5);
+
+    assertThat(region.map(new TextRange(0, 2))).isEqualTo(new TextRange(0, 2));
+    assertThat(region.map(new TextRange(4, 6))).isEqualTo(new TextRange(5, 7));
+    assertThat(region.map(new TextRange(1, 5))).isEqualTo(new TextRange(1, 6));
+    assertThat(region.map(new TextRange(3, 5))).isNull();
+
+    assertThat(LintEditorResultCache.ChangedRegion.compute(summarize("same\n"), summarize("same\n"))).isNull();
+  }
+
+  @Test
+  public void removedNamesAreFoundWithoutTheOldText() {
+    String content = LAYOUT.replace("    <View android:layout_width=\"1dp\" />\n", "");
+    Set<String> elements = new HashSet<>();
+    Set<String> attributes = new HashSet<>();
+    assertThat(summarize(LAYOUT).collectRemovedNames(summarize(content), elements, attributes)).isTrue();
+    assertThat(elements).containsExactly("View");
+    assertThat(attributes).containsExactly("layout_width");
+
+    // Removing a comment can change the meaning of the whole file
+    String commented = LAYOUT.replace("<View", "<!-- --><View");
+    assertThat(summarize(commented).collectRemovedNames(summarize(LAYOUT), new HashSet<>(), new HashSet<>())).isFalse();
+  }
+
+  @Test
+  public void collectNamesIncludesEnclosingElements() {
+    int start = LAYOUT.indexOf("1dp");
+    Set<String> elements = new HashSet<>();
+    Set<String> attributes = new HashSet<>();
+    assertThat(LintEditorResultCache.collectNames(LAYOUT, start, start + 1, elements, attributes)).isTrue();
+    assertThat(elements).containsExactly("View", "LinearLayout");
+    assertThat(attributes).containsExactly("layout_width", "android");
+  }
+
+  @Test
+  public void collectNamesRejectsComments() {
+    String content = LAYOUT.replace("<View", "<!-- <View");
+    int start = content.indexOf("<!--");
+    assertThat(LintEditorResultCache.collectNames(content, start, start + 4, new HashSet<>(), new HashSet<>())).isFalse();
+  }
+
+  @Test
+  public void skipsUnaffectedDetectors() {
+    Set<Issue> issues = ImmutableSet.of(HardcodedValuesDetector.ISSUE);
+    int textStart = LAYOUT.indexOf("android:text");
+    TextRange textRange = new TextRange(textStart, textStart + "android:text=\"Hello\"".length());
+    List<ProblemData> problems =
+      ImmutableList.of(new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", textRange, null, null));
+
+    LintEditorResultCache.Plan plan = planXml(LAYOUT, LAYOUT.replace("1dp", "20dp"), issues, problems);
+    assertThat(plan).isNotNull();
+    assertThat(plan.getIssuesToRun()).isEmpty();
+    assertThat(plan.getReusedProblems()).hasSize(1);
+    assertThat(plan.getReusedProblems().get(0).getTextRange()).isEqualTo(textRange);
+
+    plan = planXml(LAYOUT, LAYOUT.replace("Hello", "Hi"), issues, problems);
+    assertThat(plan).isNotNull();
+    assertThat(plan.getIssuesToRun()).containsExactly(HardcodedValuesDetector.ISSUE);
+    assertThat(plan.getReusedProblems()).isEmpty();
+  }
+
+  @Test
+  public void rerunsCrossFileDetectorsWhenAnotherFileChanged() {
+    Set<Issue> issues = ImmutableSet.of(HardcodedValuesDetector.ISSUE, UnusedResourceDetector.ISSUE);
+    int textStart = LAYOUT.indexOf("android:text");
+    ProblemData hardcoded =
+      new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", new TextRange(textStart, textStart + 12), null, null);
+    ProblemData unused = new ProblemData(UnusedResourceDetector.ISSUE, "Unused resource", new TextRange(0, 13), null, null);
+    LintEditorResultCache.Snapshot snapshot =
+      LintEditorResultCache.Snapshot.create(LAYOUT, issues, 1, 1, true).withProblems(ImmutableList.of(hardcoded, unused));
+
+    // Nothing changed at all.
+    LintEditorResultCache.Plan plan = LintEditorResultCache.plan(snapshot, LAYOUT, issues, 1, 1, true);
+    assertThat(plan.getIssuesToRun()).isEmpty();
+    assertThat(plan.getReusedProblems()).containsExactly(hardcoded, unused);
+
+    // Another file changed: the file itself is the same, but the unused resource may now be used elsewhere.
+    plan = LintEditorResultCache.plan(snapshot, LAYOUT, issues, 2, 1, true);
+    assertThat(plan.getIssuesToRun()).containsExactly(UnusedResourceDetector.ISSUE);
+    assertThat(plan.getReusedProblems()).hasSize(1);
+    assertThat(plan.getReusedProblems().get(0).getIssue()).isEqualTo(HardcodedValuesDetector.ISSUE);
+    assertThat(plan.getReusedProblems().get(0).getTextRange()).isEqualTo(hardcoded.getTextRange());
+
+    // A resource changed: detectors of the file itself may look up resources, so they are all run again.
+    plan = LintEditorResultCache.plan(snapshot, LAYOUT, issues, 2, 2, true);
+    assertThat(plan.getIssuesToRun()).containsExactlyElementsIn(issues);
+    assertThat(plan.getReusedProblems()).isEmpty();
+  }
+
+  @NotNull
+  private static LintEditorResultCache.XmlSummary summarize(@NotNull String content) {
+    return new LintEditorResultCache.XmlSummary(content);
+  }
+
+  @Nullable
+  private static LintEditorResultCache.Plan planXml(@NotNull String oldContent, @NotNull String newContent, @NotNull Set<Issue> issues,
+                                                    @NotNull List<ProblemData> oldProblems) {
+    LintEditorResultCache.Snapshot snapshot = LintEditorResultCache.Snapshot.create(newContent, issues, 2, 1, true);
+    return LintEditorResultCache.planXml(summarize(oldContent), newContent, summarize(newContent), issues, oldProblems, snapshot);
+  }
+}
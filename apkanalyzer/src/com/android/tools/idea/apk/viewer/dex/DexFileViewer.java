@@ -83,6 +83,8 @@ public class DexFileViewer implements ApkFileEditorComponent {
   @Nullable private ProguardMappings myProguardMappings;
   private boolean myDeobfuscateNames;
   private ListenableFuture<DexReferences> myDexReferences;
+  @Nullable private ListenableFuture<Map<Path, DexBackedDexFile>> myDexFilesFuture;
+  @Nullable private LazyPackageTreeModel myPackageIndexModel;
 
   @NotNull public static final NotificationGroup LOGGING_NOTIFICATION = NotificationGroup.logOnlyGroup("APK Analyzer (Info)");
   @NotNull public static final NotificationGroup BALLOON_NOTIFICATION = NotificationGroup.balloonGroup("APK Analyzer (Important)");
@@ -186,9 +188,64 @@ public class DexFileViewer implements ApkFileEditorComponent {
     PopupHandler
       .installPopupHandler(myTree, group, ActionPlaces.UNKNOWN, ActionManager.getInstance());
 
+    showPackageIndex();
     initDex();
   }
 
+  /**
+   * Shows the packages defined in the dex files, which can be read much faster than the full tree computed
+   * by {@link #initDex()}, so that large multi-dex APKs can be browsed right away.
+   */
+  private void showPackageIndex() {
+    ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+    ListenableFuture<DexPackageIndex> indexFuture = pooledThreadExecutor.submit(() -> DexPackageIndex.create(myDexFiles));
+    Futures.addCallback(indexFuture, new FutureCallback<DexPackageIndex>() {
+      @Override
+      public void onSuccess(DexPackageIndex result) {
+        if (myTree.getModel().getRoot() instanceof LoadingNode) { // the full tree isn't available yet
+          myLoadingPanel.stopLoading();
+          myTree.setRootVisible(false);
+          myPackageIndexModel = new LazyPackageTreeModel(result);
+          myTree.addTreeWillExpandListener(myPackageIndexModel);
+          myTree.setModel(myPackageIndexModel);
+        }
+      }
+
+      @Override
+      public void onFailure(@NotNull Throwable t) {
+        // Not a problem, we'll just wait for the full tree
+      }
+    }, EdtExecutorService.getInstance());
+  }
+
+  /**
+   * Returns the parsed dex files, which are loaded in parallel the first time this is called and shared by the
+   * package tree, the dex stats and the references.
+   */
+  @NotNull
+  private ListenableFuture<Map<Path, DexBackedDexFile>> getDexFiles() {
+    if (myDexFilesFuture == null) {
+      ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+      List<ListenableFuture<DexBackedDexFile>> futures = new ArrayList<>(myDexFiles.length);
+      for (Path dexFile : myDexFiles) {
+        futures.add(pooledThreadExecutor.submit(() -> DexFiles.getDexFile(dexFile)));
+      }
+      myDexFilesFuture = Futures.transform(Futures.allAsList(futures), new Function<List<DexBackedDexFile>, Map<Path, DexBackedDexFile>>() {
+        @NotNull
+        @Override
+        public Map<Path, DexBackedDexFile> apply(@Nullable List<DexBackedDexFile> input) {
+          assert input != null;
+          Map<Path, DexBackedDexFile> dexFiles = Maps.newLinkedHashMapWithExpectedSize(myDexFiles.length);
+          for (int i = 0; i < myDexFiles.length; i++) {
+            dexFiles.put(myDexFiles[i], input.get(i));
+          }
+          return dexFiles;
+        }
+      }, MoreExecutors.directExecutor());
+    }
+    return myDexFilesFuture;
+  }
+
   @NotNull
   private ActionGroup createPopupActionGroup(@NotNull Tree tree) {
     final DefaultActionGroup group = new DefaultActionGroup();
@@ -283,13 +340,7 @@ public class DexFileViewer implements ApkFileEditorComponent {
 
   public void initDex() {
     ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = pooledThreadExecutor.submit(() -> {
-      Map<Path, DexBackedDexFile> dexFiles = Maps.newHashMapWithExpectedSize(myDexFiles.length);
-      for (int i = 0; i < myDexFiles.length; i++) {
-        dexFiles.put(myDexFiles[i], DexFiles.getDexFile(myDexFiles[i]));
-      }
-      return dexFiles;
-    });
+    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = getDexFiles();
 
     ListenableFuture<DexPackageNode> treeNodeFuture =
       Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexPackageNode>() {
@@ -307,8 +358,20 @@ public class DexFileViewer implements ApkFileEditorComponent {
       public void onSuccess(DexPackageNode result) {
         myLoadingPanel.stopLoading();
         myTree.setRootVisible(false);
+        List<List<String>> expandedPackages = Collections.emptyList();
+        if (myPackageIndexModel != null) {
+          expandedPackages = getExpandedPaths();
+          myTree.removeTreeWillExpandListener(myPackageIndexModel);
+          myPackageIndexModel = null;
+        }
         TreeModel treeModel = new FilteredTreeModel<>(result, myDexFilters);
         myTree.setModel(treeModel);
+        for (List<String> names : expandedPackages) {
+          TreePath path = findPath(treeModel, names);
+          if (path != null) {
+            myTree.expandPath(path);
+          }
+        }
 
         //this has to be added AFTER the Model is added to the Tree because change events are sent to listeners in order from last to first
         //otherwise, any root change event would wipe out the expandedDescendants list before we have a chance to read it
@@ -378,6 +441,46 @@ public class DexFileViewer implements ApkFileEditorComponent {
     }
   }
 
+  /** Returns the names of the nodes along each expanded path of the tree, excluding the root. */
+  @NotNull
+  private List<List<String>> getExpandedPaths() {
+    Enumeration<TreePath> expanded = myTree.getExpandedDescendants(new TreePath(myTree.getModel().getRoot()));
+    if (expanded == null) {
+      return Collections.emptyList();
+    }
+    List<List<String>> result = new ArrayList<>();
+    for (TreePath path : Collections.list(expanded)) {
+      List<String> names = new ArrayList<>(path.getPathCount() - 1);
+      for (int i = 1; i < path.getPathCount(); i++) {
+        names.add(((DexElementNode)path.getPathComponent(i)).getName());
+      }
+      result.add(names);
+    }
+    return result;
+  }
+
+  @Nullable
+  private static TreePath findPath(@NotNull TreeModel model, @NotNull List<String> names) {
+    Object node = model.getRoot();
+    TreePath path = new TreePath(node);
+    for (String name : names) {
+      Object next = null;
+      for (int i = 0, n = model.getChildCount(node); i < n; i++) {
+        Object child = model.getChild(node, i);
+        if (child instanceof DexElementNode && name.equals(((DexElementNode)child).getName())) {
+          next = child;
+          break;
+        }
+      }
+      if (next == null) {
+        return null;
+      }
+      node = next;
+      path = path.pathByAddingChild(node);
+    }
+    return path;
+  }
+
   @NotNull
   @Override
   public JComponent getComponent() {
@@ -402,18 +505,11 @@ public class DexFileViewer implements ApkFileEditorComponent {
   ListenableFuture<DexReferences> getDexReferences() {
     if (myDexReferences == null) {
       ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-      ListenableFuture<DexBackedDexFile[]> dexFileFuture = pooledThreadExecutor.submit(() -> {
-        DexBackedDexFile[] files = new DexBackedDexFile[myDexFiles.length];
-        for (int i = 0; i < files.length; i++) {
-          files[i] = DexFiles.getDexFile(myDexFiles[i]);
-        }
-        return files;
-      });
-      myDexReferences = Futures.transform(dexFileFuture, new Function<DexBackedDexFile[], DexReferences>() {
+      myDexReferences = Futures.transform(getDexFiles(), new Function<Map<Path, DexBackedDexFile>, DexReferences>() {
         @Override
-        public DexReferences apply(@Nullable DexBackedDexFile[] inputs) {
+        public DexReferences apply(@Nullable Map<Path, DexBackedDexFile> inputs) {
           assert inputs != null;
-          return new DexReferences(inputs);
+          return new DexReferences(inputs.values().toArray(new DexBackedDexFile[0]));
         }
       }, pooledThreadExecutor);
     }
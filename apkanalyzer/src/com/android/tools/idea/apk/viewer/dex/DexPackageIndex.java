@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A lightweight index of the packages defined in a set of dex files, read directly from the memory-mapped
+ * class_defs section of each file. Building it only decodes one string per class, so it is available long
+ * before the full {@link com.android.tools.apk.analyzer.dex.PackageTreeCreator} tree, which also needs to
+ * decode every method, field and reference.
+ */
+public class DexPackageIndex {
+  private static final int HEADER_SIZE = 0x70;
+  private static final int STRING_IDS_OFF = 0x3C;
+  private static final int TYPE_IDS_OFF = 0x44;
+  private static final int METHOD_IDS_SIZE = 0x58;
+  private static final int CLASS_DEFS_SIZE = 0x60;
+  private static final int CLASS_DEFS_OFF = 0x64;
+  private static final int CLASS_DEF_ITEM_SIZE = 32;
+
+  @NotNull private final Package myRoot = new Package("root", null, null);
+  private int myClassCount;
+  private int myReferencedMethodCount;
+
+  @NotNull
+  public static DexPackageIndex create(@NotNull Path[] dexFiles) throws IOException {
+    DexPackageIndex index = new DexPackageIndex();
+    for (Path dexFile : dexFiles) {
+      index.myReferencedMethodCount += readClassDescriptors(dexFile, index::addClass);
+    }
+    return index;
+  }
+
+  /** Returns the root (default) package. */
+  @NotNull
+  public Package getRoot() {
+    return myRoot;
+  }
+
+  /** Returns the number of classes defined in all the dex files. */
+  public int getClassCount() {
+    return myClassCount;
+  }
+
+  /** Returns the sum of the sizes of the method_ids sections of all the dex files. */
+  public int getReferencedMethodCount() {
+    return myReferencedMethodCount;
+  }
+
+  void addClass(@NotNull String descriptor) {
+    myClassCount++;
+    Package current = myRoot;
+    int start = descriptor.startsWith("L") ? 1 : 0;
+    int end = descriptor.indexOf('/', start);
+    while (end != -1) {
+      String name = descriptor.substring(start, end);
+      Package parent = current;
+      current = parent.myChildren.computeIfAbsent(name, n -> new Package(n, parent.getQualifiedName(n), parent));
+      start = end + 1;
+      end = descriptor.indexOf('/', start);
+    }
+    for (Package p = current; p != null; p = p.myParent) {
+      p.myTotalClassCount++;
+    }
+    current.myClassCount++;
+  }
+
+  /**
+   * Passes the descriptor of each class defined in the given dex file (e.g. "Lcom/example/Foo;") to consumer,
+   * and returns the number of method references in the file.
+   */
+  static int readClassDescriptors(@NotNull Path dexFile, @NotNull Consumer<String> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(dexFile, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return readClassDescriptors(buffer, consumer);
+    }
+  }
+
+  static int readClassDescriptors(@NotNull ByteBuffer buffer, @NotNull Consumer<String> consumer) throws IOException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.limit() < HEADER_SIZE || buffer.get(0) != 'd' || buffer.get(1) != 'e' || buffer.get(2) != 'x' || buffer.get(3) != '\n') {
+      throw new IOException("Not a dex file");
+    }
+    int stringIdsOff = buffer.getInt(STRING_IDS_OFF);
+    int typeIdsOff = buffer.getInt(TYPE_IDS_OFF);
+    int classDefsSize = buffer.getInt(CLASS_DEFS_SIZE);
+    int classDefsOff = buffer.getInt(CLASS_DEFS_OFF);
+    StringBuilder sb = new StringBuilder();
+    try {
+      for (int i = 0; i < classDefsSize; i++) {
+        int typeIdx = buffer.getInt(classDefsOff + i * CLASS_DEF_ITEM_SIZE);
+        int descriptorIdx = buffer.getInt(typeIdsOff + typeIdx * 4);
+        int stringDataOff = buffer.getInt(stringIdsOff + descriptorIdx * 4);
+        consumer.accept(readString(buffer, stringDataOff, sb));
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new IOException("Malformed dex file", e);
+    }
+    return buffer.getInt(METHOD_IDS_SIZE);
+  }
+
+  /** Decodes the MUTF-8 string_data_item at the given offset. */
+  @NotNull
+  private static String readString(@NotNull ByteBuffer buffer, int offset, @NotNull StringBuilder sb) {
+    // Skip the utf16_size uleb128 prefix
+    while ((buffer.get(offset++) & 0x80) != 0) {
+    }
+    sb.setLength(0);
+    while (true) {
+      int a = buffer.get(offset++) & 0xFF;
+      if (a == 0) {
+        break;
+      }
+      if (a < 0x80) {
+        sb.append((char)a);
+      }
+      else if ((a & 0xE0) == 0xC0) {
+        int b = buffer.get(offset++) & 0x3F;
+        sb.append((char)(((a & 0x1F) << 6) | b));
+      }
+      else {
+        int b = buffer.get(offset++) & 0x3F;
+        int c = buffer.get(offset++) & 0x3F;
+        sb.append((char)(((a & 0x0F) << 12) | (b << 6) | c));
+      }
+    }
+    return sb.toString();
+  }
+
+  /** A package in the index. */
+  public static class Package {
+    @NotNull private final String myName;
+    @Nullable private final String myQualifiedName;
+    @Nullable private final Package myParent;
+    @NotNull private final TreeMap<String, Package> myChildren = new TreeMap<>();
+    private int myClassCount;
+    private int myTotalClassCount;
+
+    private Package(@NotNull String name, @Nullable String qualifiedName, @Nullable Package parent) {
+      myName = name;
+      myQualifiedName = qualifiedName;
+      myParent = parent;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    /** Returns the fully qualified name of the package, or null for the default package. */
+    @Nullable
+    public String getQualifiedName() {
+      return myQualifiedName;
+    }
+
+    /** Returns the sub-packages, sorted by name. */
+    @NotNull
+    public Collection<Package> getChildren() {
+      return Collections.unmodifiableCollection(myChildren.values());
+    }
+
+    @Nullable
+    public Package getChild(@NotNull String name) {
+      return myChildren.get(name);
+    }
+
+    /** Returns the number of classes directly in this package. */
+    public int getClassCount() {
+      return myClassCount;
+    }
+
+    /** Returns the number of classes in this package and all its sub-packages. */
+    public int getTotalClassCount() {
+      return myTotalClassCount;
+    }
+
+    @NotNull
+    private String getQualifiedName(@NotNull String childName) {
+      return myQualifiedName == null ? childName : myQualifiedName + "." + childName;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.android.tools.apk.analyzer.dex.tree.DexPackageNode;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Package-only tree model over a {@link DexPackageIndex}, shown by {@link DexFileViewer} while the full
+ * class/method tree is still being computed. The nodes for the sub-packages of a package are only created
+ * when the package is first expanded.
+ */
+class LazyPackageTreeModel extends DefaultTreeModel implements TreeWillExpandListener {
+  private static final String PLACEHOLDER_NAME = "Loading...";
+
+  private final Map<DefaultMutableTreeNode, DexPackageIndex.Package> myUnexpanded = new HashMap<>();
+
+  LazyPackageTreeModel(@NotNull DexPackageIndex index) {
+    super(new DexPackageNode("root", null));
+    addChildren((DefaultMutableTreeNode)getRoot(), index.getRoot());
+  }
+
+  @Override
+  public void treeWillExpand(@NotNull TreeExpansionEvent event) {
+    Object node = event.getPath().getLastPathComponent();
+    DexPackageIndex.Package pkg = myUnexpanded.remove(node);
+    if (pkg != null) {
+      DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode)node;
+      treeNode.removeAllChildren();
+      addChildren(treeNode, pkg);
+      nodeStructureChanged(treeNode);
+    }
+  }
+
+  @Override
+  public void treeWillCollapse(@NotNull TreeExpansionEvent event) {
+  }
+
+  /** Returns the number of package nodes that have been created so far, including the root. */
+  int getMaterializedNodeCount() {
+    return count((DefaultMutableTreeNode)getRoot());
+  }
+
+  private void addChildren(@NotNull DefaultMutableTreeNode node, @NotNull DexPackageIndex.Package pkg) {
+    for (DexPackageIndex.Package child : pkg.getChildren()) {
+      DexPackageNode childNode = new DexPackageNode(child.getName(), child.getQualifiedName());
+      if (!child.getChildren().isEmpty()) {
+        // Placeholder so that the node can be expanded; replaced by the real children in treeWillExpand
+        childNode.add(new DexPackageNode(PLACEHOLDER_NAME, null));
+        myUnexpanded.put(childNode, child);
+      }
+      node.add(childNode);
+    }
+  }
+
+  private int count(@NotNull DefaultMutableTreeNode node) {
+    int count = 1;
+    if (!myUnexpanded.containsKey(node)) {
+      for (int i = 0; i < node.getChildCount(); i++) {
+        count += count((DefaultMutableTreeNode)node.getChildAt(i));
+      }
+    }
+    return count;
+  }
+}
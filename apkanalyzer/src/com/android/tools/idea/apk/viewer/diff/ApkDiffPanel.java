@@ -24,17 +24,24 @@ import com.android.tools.apk.analyzer.internal.ApkDiffParser;
 import com.android.tools.apk.analyzer.internal.ApkEntry;
 import com.android.tools.apk.analyzer.internal.ApkFileByFileDiffParser;
 import com.android.tools.idea.apk.viewer.ApkViewPanel.FutureCallBackAdapter;
+import com.android.tools.idea.flags.StudioFlags;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.LoadingNode;
 import com.intellij.ui.TreeSpeedSearch;
 import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.Function;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.concurrency.EdtExecutorService;
 import com.intellij.util.containers.Convertor;
 import org.jetbrains.annotations.NotNull;
@@ -46,17 +53,28 @@ import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import static com.android.tools.idea.apk.viewer.ApkViewPanel.getHumanizedSize;
 
 public class ApkDiffPanel {
 
   private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+  private static final ExecutorService ourDiffExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("APK Diff", Runtime.getRuntime().availableProcessors());
   private ListenableFuture<DefaultMutableTreeNode> myFbfTreeStructureFuture;
+  private ListenableFuture<List<ApkZipDiff.Entry>> myStreamingDiffFuture;
+  private ListenableFuture<List<ApkZipDiff.Entry>> myReportDiffFuture;
 
   private JPanel myContainer;
   private JComponent myColumnTreePane;
   private JCheckBox myCalculateFileByFileCheckBox;
+  private JButton myExportReportButton;
 
   @NonNull private final VirtualFile myOldApk;
   @NonNull private final VirtualFile myNewApk;
@@ -80,10 +98,83 @@ public class ApkDiffPanel {
       }
     });
 
+    // The report is only available with the streaming diff.
+    myExportReportButton.setVisible(StudioFlags.APK_DIFF_STREAMING.get());
+    myExportReportButton.addActionListener(e -> exportReport());
+
     constructDiffTree();
 
   }
 
+  /**
+   * Returns the streaming comparison of the two archives shown in the tree, computing it the first time this is called. The tree only
+   * shows sizes, so the contents of modified entries aren't inflated.
+   */
+  @NotNull
+  private ListenableFuture<List<ApkZipDiff.Entry>> getStreamingDiff() {
+    if (myStreamingDiffFuture == null) {
+      myStreamingDiffFuture = compare(false);
+    }
+    return myStreamingDiffFuture;
+  }
+
+  /**
+   * Returns the streaming comparison of the two archives written to reports, which also has the changed bytes of modified entries,
+   * computing it the first time this is called.
+   */
+  @NotNull
+  private ListenableFuture<List<ApkZipDiff.Entry>> getReportDiff() {
+    if (myReportDiffFuture == null) {
+      myReportDiffFuture = compare(true);
+    }
+    return myReportDiffFuture;
+  }
+
+  @NotNull
+  private ListenableFuture<List<ApkZipDiff.Entry>> compare(boolean inflateChanged) {
+    return ourExecutorService.submit(() -> {
+      long start = System.currentTimeMillis();
+      List<ApkZipDiff.Entry> entries = ApkZipDiff.compare(VfsUtilCore.virtualToIoFile(myOldApk).toPath(),
+                                                          VfsUtilCore.virtualToIoFile(myNewApk).toPath(), ourDiffExecutor, inflateChanged);
+      Logger.getInstance(ApkDiffPanel.class).info(
+        String.format("Compared %1$d entries of %2$s and %3$s in %4$d ms", entries.size(), myOldApk.getName(), myNewApk.getName(),
+                      System.currentTimeMillis() - start));
+      return entries;
+    });
+  }
+
+  private void exportReport() {
+    FileSaverDescriptor descriptor = new FileSaverDescriptor("Export APK Diff Report", "Save the differences between the APKs as JSON",
+                                                             "json");
+    VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, myContainer)
+      .save(null, myOldApk.getNameWithoutExtension() + "-" + myNewApk.getNameWithoutExtension() + "-diff.json");
+    if (wrapper == null) {
+      return;
+    }
+    myExportReportButton.setEnabled(false);
+    ListenableFuture<Void> written = Futures.transform(getReportDiff(), entries -> {
+      try (Writer writer = Files.newBufferedWriter(wrapper.getFile().toPath(), StandardCharsets.UTF_8)) {
+        ApkZipDiff.writeReport(entries, writer);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return null;
+    }, ourExecutorService);
+    Futures.addCallback(written, new FutureCallBackAdapter<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+        myExportReportButton.setEnabled(true);
+      }
+
+      @Override
+      public void onFailure(@NotNull Throwable t) {
+        myExportReportButton.setEnabled(true);
+        Messages.showErrorDialog(myContainer, "Unable to export the diff report: " + t.getMessage(), "Export APK Diff Report");
+      }
+    }, EdtExecutorService.getInstance());
+  }
+
   private void constructFbfTree(){
     if (myFbfTreeStructureFuture == null) {
       myFbfTreeStructureFuture = ourExecutorService.submit(() -> {
@@ -105,6 +196,19 @@ public class ApkDiffPanel {
   }
 
   private void constructDiffTree(){
+    if (StudioFlags.APK_DIFF_STREAMING.get()) {
+      ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = Futures.transform(
+        getStreamingDiff(), entries -> ApkZipDiff.createTreeNode(myNewApk.getName(), entries), ourExecutorService);
+      Futures.addCallback(treeStructureFuture, new FutureCallBackAdapter<DefaultMutableTreeNode>() {
+        @Override
+        public void onSuccess(DefaultMutableTreeNode result) {
+          setRootNode(result);
+          myCalculateFileByFileCheckBox.setEnabled(true);
+        }
+      }, EdtExecutorService.getInstance());
+      return;
+    }
+
     // construct the main tree
     ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = ourExecutorService.submit(() -> {
       try (ArchiveContext archiveContext1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
@@ -132,6 +236,11 @@ public class ApkDiffPanel {
     Convertor<TreePath, String> convertor = new Convertor<TreePath, String>() {
       @Override
       public String convert(TreePath path) {
+        ApkZipDiff.Entry streamingEntry = ApkZipDiff.fromNode(path.getLastPathComponent());
+        if (streamingEntry != null) {
+          return streamingEntry.getPath();
+        }
+
         ApkEntry e = ApkEntry.fromNode(path.getLastPathComponent());
         if (e == null) {
           return null;
@@ -153,17 +262,17 @@ public class ApkDiffPanel {
                    .setName("Old Size")
                    .setPreferredWidth(150)
                    .setHeaderAlignment(SwingConstants.TRAILING)
-                   .setRenderer(new SizeRenderer(ApkDiffEntry::getOldSize)))
+                   .setRenderer(new SizeRenderer(ApkDiffEntry::getOldSize, ApkZipDiff.Entry::getOldSize)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
                    .setName("New Size")
                    .setPreferredWidth(150)
                    .setHeaderAlignment(SwingConstants.TRAILING)
-                   .setRenderer(new SizeRenderer(ApkDiffEntry::getNewSize)))
+                   .setRenderer(new SizeRenderer(ApkDiffEntry::getNewSize, ApkZipDiff.Entry::getNewSize)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
                    .setName("Diff Size")
                    .setPreferredWidth(150)
                    .setHeaderAlignment(SwingConstants.TRAILING)
-                   .setRenderer(new SizeRenderer(ApkEntry::getSize)));
+                   .setRenderer(new SizeRenderer(ApkEntry::getSize, ApkZipDiff.Entry::getSizeDifference)));
     myColumnTreePane = builder.build();
   }
 
@@ -180,8 +289,7 @@ public class ApkDiffPanel {
   private void setRootNode(@NotNull DefaultMutableTreeNode root) {
     myTreeModel = new DefaultTreeModel(root);
 
-    ApkEntry entry = ApkEntry.fromNode(root);
-    assert entry != null;
+    assert ApkEntry.fromNode(root) != null || ApkZipDiff.fromNode(root) != null;
 
     myTree.setPaintBusy(false);
     myTree.setRootVisible(true);
@@ -192,9 +300,11 @@ public class ApkDiffPanel {
   // Duplicated from ApkViewPanel.SizeRenderer until the diff entries are unified into the ArchiveEntry data class.
   public static class SizeRenderer extends ColoredTreeCellRenderer {
     private Function<ApkEntry, Long> mySizeMapper;
+    private Function<ApkZipDiff.Entry, Long> myStreamingSizeMapper;
 
-    public SizeRenderer(Function<ApkEntry, Long> sizeMapper) {
+    public SizeRenderer(Function<ApkEntry, Long> sizeMapper, Function<ApkZipDiff.Entry, Long> streamingSizeMapper) {
       mySizeMapper = sizeMapper;
+      myStreamingSizeMapper = streamingSizeMapper;
       setTextAlign(SwingConstants.RIGHT);
     }
 
@@ -206,6 +316,12 @@ public class ApkDiffPanel {
                                       boolean leaf,
                                       int row,
                                       boolean hasFocus) {
+      ApkZipDiff.Entry streamingEntry = ApkZipDiff.fromNode(value);
+      if (streamingEntry != null) {
+        append(getHumanizedSize(myStreamingSizeMapper.fun(streamingEntry)));
+        return;
+      }
+
       ApkEntry entry = ApkEntry.fromNode(value);
       ApkEntry root = ApkEntry.fromNode(tree.getModel().getRoot());
 
@@ -229,6 +345,12 @@ public class ApkDiffPanel {
                                       boolean leaf,
                                       int row,
                                       boolean hasFocus) {
+      ApkZipDiff.Entry streamingEntry = ApkZipDiff.fromNode(value);
+      if (streamingEntry != null) {
+        append(streamingEntry.getName());
+        return;
+      }
+
       ApkEntry entry = ApkEntry.fromNode(value);
       ApkEntry root = ApkEntry.fromNode(tree.getModel().getRoot());
 
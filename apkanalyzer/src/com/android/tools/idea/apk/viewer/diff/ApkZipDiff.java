@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares two archives entry by entry, using only the zip central directories where possible.
+ * <p>
+ * Entries with the same CRC and uncompressed size are considered unchanged without being read. Only entries that
+ * differ are inflated, and only when asked to, to count how many bytes of their contents actually changed. Entries
+ * are compared in parallel in batches on the given executor.
+ */
+public final class ApkZipDiff {
+  /** Size of the blocks compared when counting the changed bytes of an entry. */
+  static final int BLOCK_SIZE = 4096;
+  private static final int BATCH_SIZE = 64;
+
+  public enum Status {
+    ADDED,
+    REMOVED,
+    MODIFIED,
+    UNCHANGED
+  }
+
+  /** The result of comparing one entry, or, for directories in the tree from {@link #createTreeNode}, all the entries under it. */
+  public static final class Entry {
+    @NotNull private final String myPath;
+    @NotNull private Status myStatus;
+    private long myOldSize;
+    private long myNewSize;
+    private long myOldCompressedSize;
+    private long myNewCompressedSize;
+    private long myChangedBytes;
+
+    Entry(@NotNull String path, @NotNull Status status, long oldSize, long newSize, long oldCompressedSize, long newCompressedSize,
+          long changedBytes) {
+      myPath = path;
+      myStatus = status;
+      myOldSize = oldSize;
+      myNewSize = newSize;
+      myOldCompressedSize = oldCompressedSize;
+      myNewCompressedSize = newCompressedSize;
+      myChangedBytes = changedBytes;
+    }
+
+    /** Returns the path of the entry in the archive, e.g. "res/layout/main.xml", or "" for the root. */
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    @NotNull
+    public String getName() {
+      String path = myPath.endsWith("/") ? myPath.substring(0, myPath.length() - 1) : myPath;
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @NotNull
+    public Status getStatus() {
+      return myStatus;
+    }
+
+    /** Returns the uncompressed size of the entry in the old archive, or 0 if it was added. */
+    public long getOldSize() {
+      return myOldSize;
+    }
+
+    /** Returns the uncompressed size of the entry in the new archive, or 0 if it was removed. */
+    public long getNewSize() {
+      return myNewSize;
+    }
+
+    public long getSizeDifference() {
+      return myNewSize - myOldSize;
+    }
+
+    public long getOldCompressedSize() {
+      return myOldCompressedSize;
+    }
+
+    public long getNewCompressedSize() {
+      return myNewCompressedSize;
+    }
+
+    /**
+     * Returns the number of bytes in the {@link #BLOCK_SIZE} blocks that differ between the old and new contents, or -1
+     * if the contents were not compared.
+     */
+    public long getChangedBytes() {
+      return myChangedBytes;
+    }
+
+    private void add(@NotNull Entry child) {
+      myOldSize += child.myOldSize;
+      myNewSize += child.myNewSize;
+      myOldCompressedSize += child.myOldCompressedSize;
+      myNewCompressedSize += child.myNewCompressedSize;
+      if (myChangedBytes >= 0) {
+        myChangedBytes = child.myChangedBytes >= 0 ? myChangedBytes + child.myChangedBytes : -1;
+      }
+      if (child.myStatus != Status.UNCHANGED) {
+        myStatus = Status.MODIFIED;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return myPath + " " + myStatus;
+    }
+  }
+
+  private ApkZipDiff() {
+  }
+
+  /**
+   * Compares the two archives, and returns the results for all the entries, sorted by path.
+   *
+   * @param inflateChanged whether to read the contents of modified entries to compute {@link Entry#getChangedBytes()}
+   */
+  @NotNull
+  public static List<Entry> compare(@NotNull Path oldArchive, @NotNull Path newArchive, @NotNull ExecutorService executor,
+                                    boolean inflateChanged) throws IOException {
+    try (ZipFile oldZip = new ZipFile(oldArchive.toFile());
+         ZipFile newZip = new ZipFile(newArchive.toFile())) {
+      TreeSet<String> names = new TreeSet<>();
+      addFileNames(oldZip, names);
+      addFileNames(newZip, names);
+
+      List<Callable<List<Entry>>> batches = new ArrayList<>();
+      List<String> batch = new ArrayList<>(BATCH_SIZE);
+      for (String name : names) {
+        batch.add(name);
+        if (batch.size() == BATCH_SIZE) {
+          batches.add(createBatch(oldZip, newZip, batch, inflateChanged));
+          batch = new ArrayList<>(BATCH_SIZE);
+        }
+      }
+      if (!batch.isEmpty()) {
+        batches.add(createBatch(oldZip, newZip, batch, inflateChanged));
+      }
+
+      List<Entry> result = new ArrayList<>(names.size());
+      try {
+        for (Future<List<Entry>> future : executor.invokeAll(batches)) {
+          result.addAll(future.get());
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while comparing archives", e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException)cause;
+        }
+        throw new IOException(cause);
+      }
+      return result;
+    }
+  }
+
+  private static void addFileNames(@NotNull ZipFile zip, @NotNull TreeSet<String> names) {
+    Enumeration<? extends ZipEntry> entries = zip.entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      if (!entry.isDirectory()) {
+        names.add(entry.getName());
+      }
+    }
+  }
+
+  @NotNull
+  private static Callable<List<Entry>> createBatch(@NotNull ZipFile oldZip, @NotNull ZipFile newZip, @NotNull List<String> names,
+                                                   boolean inflateChanged) {
+    return () -> {
+      List<Entry> result = new ArrayList<>(names.size());
+      for (String name : names) {
+        result.add(compareEntry(oldZip, newZip, name, inflateChanged));
+      }
+      return result;
+    };
+  }
+
+  @NotNull
+  private static Entry compareEntry(@NotNull ZipFile oldZip, @NotNull ZipFile newZip, @NotNull String name, boolean inflateChanged)
+    throws IOException {
+    ZipEntry oldEntry = oldZip.getEntry(name);
+    ZipEntry newEntry = newZip.getEntry(name);
+    if (oldEntry == null) {
+      return new Entry(name, Status.ADDED, 0, newEntry.getSize(), 0, newEntry.getCompressedSize(), newEntry.getSize());
+    }
+    if (newEntry == null) {
+      return new Entry(name, Status.REMOVED, oldEntry.getSize(), 0, oldEntry.getCompressedSize(), 0, oldEntry.getSize());
+    }
+    if (oldEntry.getCrc() == newEntry.getCrc() && oldEntry.getSize() == newEntry.getSize()) {
+      return new Entry(name, Status.UNCHANGED, oldEntry.getSize(), newEntry.getSize(), oldEntry.getCompressedSize(),
+                       newEntry.getCompressedSize(), 0);
+    }
+    long changedBytes = -1;
+    if (inflateChanged) {
+      try (InputStream oldStream = oldZip.getInputStream(oldEntry);
+           InputStream newStream = newZip.getInputStream(newEntry)) {
+        changedBytes = countChangedBytes(oldStream, newStream);
+      }
+    }
+    return new Entry(name, Status.MODIFIED, oldEntry.getSize(), newEntry.getSize(), oldEntry.getCompressedSize(),
+                     newEntry.getCompressedSize(), changedBytes);
+  }
+
+  /**
+   * Returns the number of bytes in the {@link #BLOCK_SIZE} blocks that differ between the two streams, where the bytes
+   * past the end of the shorter stream all count as changed.
+   */
+  static long countChangedBytes(@NotNull InputStream oldStream, @NotNull InputStream newStream) throws IOException {
+    byte[] oldBlock = new byte[BLOCK_SIZE];
+    byte[] newBlock = new byte[BLOCK_SIZE];
+    InputStream oldInput = new BufferedInputStream(oldStream);
+    InputStream newInput = new BufferedInputStream(newStream);
+    long changed = 0;
+    while (true) {
+      int oldRead = readBlock(oldInput, oldBlock);
+      int newRead = readBlock(newInput, newBlock);
+      if (oldRead == 0 && newRead == 0) {
+        return changed;
+      }
+      if (oldRead != newRead) {
+        changed += Math.max(oldRead, newRead);
+      }
+      else {
+        for (int i = 0; i < oldRead; i++) {
+          if (oldBlock[i] != newBlock[i]) {
+            changed += oldRead;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private static int readBlock(@NotNull InputStream input, @NotNull byte[] block) throws IOException {
+    int total = 0;
+    while (total < block.length) {
+      int read = input.read(block, total, block.length - total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  /**
+   * Creates a tree of the entries, whose nodes have {@link Entry} user objects. Directory entries summarize the sizes of
+   * all the entries below them, and the children of each directory are sorted by decreasing size difference.
+   */
+  @NotNull
+  public static DefaultMutableTreeNode createTreeNode(@NotNull String rootName, @NotNull List<Entry> entries) {
+    Entry rootEntry = new Entry(rootName, Status.UNCHANGED, 0, 0, 0, 0, 0);
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(rootEntry);
+    Map<String, DefaultMutableTreeNode> directories = new HashMap<>();
+    for (Entry entry : entries) {
+      DefaultMutableTreeNode parent = root;
+      List<Entry> ancestors = new ArrayList<>();
+      ancestors.add(rootEntry);
+      int end = entry.myPath.indexOf('/');
+      while (end != -1) {
+        String directory = entry.myPath.substring(0, end + 1);
+        DefaultMutableTreeNode node = directories.get(directory);
+        if (node == null) {
+          node = new DefaultMutableTreeNode(new Entry(directory, Status.UNCHANGED, 0, 0, 0, 0, 0));
+          directories.put(directory, node);
+          parent.add(node);
+        }
+        ancestors.add((Entry)node.getUserObject());
+        parent = node;
+        end = entry.myPath.indexOf('/', end + 1);
+      }
+      parent.add(new DefaultMutableTreeNode(entry, false));
+      for (Entry ancestor : ancestors) {
+        ancestor.add(entry);
+      }
+    }
+    sort(root);
+    return root;
+  }
+
+  private static void sort(@NotNull DefaultMutableTreeNode node) {
+    if (node.getChildCount() == 0) {
+      return;
+    }
+    List<DefaultMutableTreeNode> children = new ArrayList<>(node.getChildCount());
+    for (int i = 0; i < node.getChildCount(); i++) {
+      children.add((DefaultMutableTreeNode)node.getChildAt(i));
+    }
+    children.sort(Comparator.comparingLong((DefaultMutableTreeNode child) -> Math.abs(getEntry(child).getSizeDifference())).reversed()
+                    .thenComparing(child -> getEntry(child).getPath()));
+    node.removeAllChildren();
+    for (DefaultMutableTreeNode child : children) {
+      node.add(child);
+      sort(child);
+    }
+  }
+
+  /** Returns the entry of a node created by {@link #createTreeNode}, or null for other nodes. */
+  @Nullable
+  public static Entry fromNode(@Nullable Object node) {
+    if (node instanceof DefaultMutableTreeNode && ((DefaultMutableTreeNode)node).getUserObject() instanceof Entry) {
+      return (Entry)((DefaultMutableTreeNode)node).getUserObject();
+    }
+    return null;
+  }
+
+  @NotNull
+  private static Entry getEntry(@NotNull DefaultMutableTreeNode node) {
+    return (Entry)node.getUserObject();
+  }
+
+  /**
+   * Writes a JSON report of the entries which are not {@link Status#UNCHANGED}, with totals for the whole archive.
+   */
+  public static void writeReport(@NotNull List<Entry> entries, @NotNull Writer writer) throws IOException {
+    Entry total = new Entry("", Status.UNCHANGED, 0, 0, 0, 0, 0);
+    JsonWriter json = new JsonWriter(writer);
+    json.setIndent("  ");
+    json.beginObject();
+    json.name("entries").beginArray();
+    for (Entry entry : entries) {
+      total.add(entry);
+      if (entry.getStatus() == Status.UNCHANGED) {
+        continue;
+      }
+      json.beginObject();
+      json.name("path").value(entry.getPath());
+      json.name("status").value(entry.getStatus().name());
+      writeSizes(json, entry);
+      json.endObject();
+    }
+    json.endArray();
+    json.name("total").beginObject();
+    json.name("entryCount").value(entries.size());
+    writeSizes(json, total);
+    json.endObject();
+    json.endObject();
+    json.flush();
+  }
+
+  private static void writeSizes(@NotNull JsonWriter json, @NotNull Entry entry) throws IOException {
+    json.name("oldSize").value(entry.getOldSize());
+    json.name("newSize").value(entry.getNewSize());
+    json.name("oldCompressedSize").value(entry.getOldCompressedSize());
+    json.name("newCompressedSize").value(entry.getNewCompressedSize());
+    if (entry.getChangedBytes() >= 0) {
+      json.name("changedBytes").value(entry.getChangedBytes());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ApkZipDiffTest {
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  private ExecutorService myExecutor;
+
+  @Before
+  public void setUp() {
+    myExecutor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    myExecutor.shutdownNow();
+  }
+
+  @Test
+  public void comparesEntries() throws IOException {
+    Map<String, byte[]> oldEntries = new LinkedHashMap<>();
+    oldEntries.put("AndroidManifest.xml", bytes("manifest"));
+    oldEntries.put("classes.dex", new byte[3 * ApkZipDiff.BLOCK_SIZE]);
+    oldEntries.put("res/layout/removed.xml", bytes("removed"));
+    Map<String, byte[]> newEntries = new LinkedHashMap<>();
+    newEntries.put("AndroidManifest.xml", bytes("manifest"));
+    byte[] dex = new byte[3 * ApkZipDiff.BLOCK_SIZE];
+    dex[ApkZipDiff.BLOCK_SIZE + 1] = 1;
+    newEntries.put("classes.dex", dex);
+    newEntries.put("res/layout/added.xml", bytes("added!"));
+
+    List<ApkZipDiff.Entry> entries = ApkZipDiff.compare(createZip("old.apk", oldEntries), createZip("new.apk", newEntries), myExecutor, true);
+    assertThat(entries).hasSize(4);
+    assertThat(entries.get(0).getPath()).isEqualTo("AndroidManifest.xml");
+    assertThat(entries.get(0).getStatus()).isEqualTo(ApkZipDiff.Status.UNCHANGED);
+    assertThat(entries.get(1).getStatus()).isEqualTo(ApkZipDiff.Status.MODIFIED);
+    assertThat(entries.get(1).getChangedBytes()).isEqualTo(ApkZipDiff.BLOCK_SIZE);
+    assertThat(entries.get(2).getPath()).isEqualTo("res/layout/added.xml");
+    assertThat(entries.get(2).getStatus()).isEqualTo(ApkZipDiff.Status.ADDED);
+    assertThat(entries.get(2).getNewSize()).isEqualTo(6);
+    assertThat(entries.get(3).getStatus()).isEqualTo(ApkZipDiff.Status.REMOVED);
+    assertThat(entries.get(3).getOldSize()).isEqualTo(7);
+
+    DefaultMutableTreeNode root = ApkZipDiff.createTreeNode("new.apk", entries);
+    ApkZipDiff.Entry rootEntry = ApkZipDiff.fromNode(root);
+    assertThat(rootEntry.getSizeDifference()).isEqualTo(-1);
+    assertThat(rootEntry.getStatus()).isEqualTo(ApkZipDiff.Status.MODIFIED);
+    assertThat(root.getChildCount()).isEqualTo(3);
+    DefaultMutableTreeNode res = (DefaultMutableTreeNode)root.getChildAt(0);
+    assertThat(ApkZipDiff.fromNode(res).getName()).isEqualTo("res");
+
+    StringWriter report = new StringWriter();
+    ApkZipDiff.writeReport(entries, report);
+    assertThat(report.toString()).contains("\"path\": \"res/layout/added.xml\"");
+    assertThat(report.toString()).doesNotContain("AndroidManifest.xml");
+    assertThat(report.toString()).contains("\"entryCount\": 4");
+  }
+
+  @Test
+  public void countChangedBytes() throws IOException {
+    byte[] a = new byte[2 * ApkZipDiff.BLOCK_SIZE + 10];
+    byte[] b = a.clone();
+    assertThat(ApkZipDiff.countChangedBytes(new ByteArrayInputStream(a), new ByteArrayInputStream(b))).isEqualTo(0);
+
+    b[b.length - 1] = 1;
+    assertThat(ApkZipDiff.countChangedBytes(new ByteArrayInputStream(a), new ByteArrayInputStream(b))).isEqualTo(10);
+
+    byte[] shorter = new byte[ApkZipDiff.BLOCK_SIZE];
+    assertThat(ApkZipDiff.countChangedBytes(new ByteArrayInputStream(a), new ByteArrayInputStream(shorter)))
+      .isEqualTo(ApkZipDiff.BLOCK_SIZE + 10);
+  }
+
+  @NotNull
+  private Path createZip(@NotNull String name, @NotNull Map<String, byte[]> entries) throws IOException {
+    Path path = myTemporaryFolder.getRoot().toPath().resolve(name);
+    try (OutputStream out = Files.newOutputStream(path);
+         ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        zip.putNextEntry(new ZipEntry(entry.getKey()));
+        zip.write(entry.getValue());
+        zip.closeEntry();
+      }
+    }
+    return path;
+  }
+
+  @NotNull
+  private static byte[] bytes(@NotNull String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
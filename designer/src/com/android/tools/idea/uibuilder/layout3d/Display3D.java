@@ -25,7 +25,6 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -37,6 +36,7 @@ public class Display3D extends JPanel {
   float[] myZBuffer = new float[1];
   TriData mTriData = new Cube();
   TriData myTransFormCache;
+  final TileRasterizer myRasterizer = new TileRasterizer();
   ViewMatrix myViewMatrix = new ViewMatrix();
   Matrix myInvMatrix;
   boolean isImageInvalid = true;
@@ -148,16 +148,9 @@ public class Display3D extends JPanel {
         mTriData.transform (myInvMatrix, myTransFormCache);
       }
 
-      Arrays.fill(myZBuffer, Float.MAX_VALUE);
-      Arrays.fill(rgbData, 0xFF000000);
-
-      if (mTriData.myTexture != null) {
-        Rasterize.toZBuff(myZBuffer, rgbData, w, h, myTransFormCache,
+      // clears the buffers and runs a simple render if no myTexture
+      myRasterizer.render(myZBuffer, rgbData, w, h, myTransFormCache,
                           mTriData.myTexture, mTriData.myTextureWidth, mTriData.myTextureHeight, myViewMatrix.m);
-      }
-      else { // run a simple render if no myTexture
-        Rasterize.simple(myZBuffer, rgbData, w, h, myTransFormCache);
-      }
 
       isImageInvalid = false;
     }
@@ -212,16 +205,9 @@ public class Display3D extends JPanel {
         mTriData.transform (myInvMatrix, myTransFormCache);
       }
 
-      Arrays.fill(myZBuffer, Float.MAX_VALUE);
-      Arrays.fill(rgbData, 0xFF000000);
-
-      if (mTriData.myTexture != null) {
-        Rasterize.toZBuff(myZBuffer, rgbData, w, h, myTransFormCache,
+      // clears the buffers and runs a simple render if no myTexture
+      myRasterizer.render(myZBuffer, rgbData, w, h, myTransFormCache,
                           mTriData.myTexture, mTriData.myTextureWidth, mTriData.myTextureHeight, myViewMatrix.m);
-      }
-      else { // run a simple render if no myTexture
-        Rasterize.simple(myZBuffer, rgbData, w, h, myTransFormCache);
-      }
 
       isImageInvalid = false;
     }
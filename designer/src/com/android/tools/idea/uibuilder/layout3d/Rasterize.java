@@ -261,6 +261,25 @@ public class Rasterize {
    * Render a myTexture including use of zbuffer
    */
   public static void render_perspectiveAffine(float[] zbuff, int[] rgb, int w, int h,
+                                              float fx1, float fy1, float fz1,
+                                              float fx2, float fy2, float fz2,
+                                              float fx3, float fy3, float fz3,
+                                              float tx1, float ty1,
+                                              float tx2, float ty2,
+                                              float tx3, float ty3,
+                                              int[] texture, int tWidth, int tHeight, double[] matrix) {
+    render_perspectiveAffine(zbuff, rgb, w, h, 0, 0, w, h,
+                             fx1, fy1, fz1, fx2, fy2, fz2, fx3, fy3, fz3,
+                             tx1, ty1, tx2, ty2, tx3, ty3,
+                             texture, tWidth, tHeight, matrix);
+  }
+
+  /**
+   * Render a myTexture including use of zbuffer, only touching pixels inside the clip rectangle
+   * [clipMinX, clipMaxX) x [clipMinY, clipMaxY). The buffers still use the full image stride {@code w}.
+   */
+  public static void render_perspectiveAffine(float[] zbuff, int[] rgb, int w, int h,
+                                              int clipMinX, int clipMinY, int clipMaxX, int clipMaxY,
                                               float fx1, float fy1, float fz1,
                                               float fx2, float fy2, float fz2,
                                               float fx3, float fy3, float fz3,
@@ -376,17 +395,17 @@ public class Rasterize {
     int miny = (min(Y1, Y2, Y3) + 0xF) >> 4;
     int maxy = (max(Y1, Y2, Y3) + 0xF) >> 4;
 
-    if (miny < 0) {
-      miny = 0;
+    if (miny < clipMinY) {
+      miny = clipMinY;
     }
-    if (minx < 0) {
-      minx = 0;
+    if (minx < clipMinX) {
+      minx = clipMinX;
     }
-    if (maxx > w) {
-      maxx = w;
+    if (maxx > clipMaxX) {
+      maxx = clipMaxX;
     }
-    if (maxy > h) {
-      maxy = h;
+    if (maxy > clipMaxY) {
+      maxy = clipMaxY;
     }
     int off = miny * w;
 
@@ -825,6 +844,19 @@ public class Rasterize {
    * Render a myTexture including use of zbuffer
    */
   public static void flat(float[] zbuff, int[] rgb, int w, int h,
+                          float fx1, float fy1, float fz1,
+                          float fx2, float fy2, float fz2,
+                          float fx3, float fy3, float fz3,
+                          int color) {
+    flat(zbuff, rgb, w, h, 0, 0, w, h, fx1, fy1, fz1, fx2, fy2, fz2, fx3, fy3, fz3, color);
+  }
+
+  /**
+   * Flat shaded rendering including use of zbuffer, only touching pixels inside the clip rectangle
+   * [clipMinX, clipMaxX) x [clipMinY, clipMaxY). The buffers still use the full image stride {@code w}.
+   */
+  public static void flat(float[] zbuff, int[] rgb, int w, int h,
+                          int clipMinX, int clipMinY, int clipMaxX, int clipMaxY,
                           float fx1, float fy1, float fz1,
                           float fx2, float fy2, float fz2,
                           float fx3, float fy3, float fz3,
@@ -908,17 +940,17 @@ public class Rasterize {
     int miny = (min(Y1, Y2, Y3) + 0xF) >> 4;
     int maxy = (max(Y1, Y2, Y3) + 0xF) >> 4;
 
-    if (miny < 0) {
-      miny = 0;
+    if (miny < clipMinY) {
+      miny = clipMinY;
     }
-    if (minx < 0) {
-      minx = 0;
+    if (minx < clipMinX) {
+      minx = clipMinX;
     }
-    if (maxx > w) {
-      maxx = w;
+    if (maxx > clipMaxX) {
+      maxx = clipMaxX;
     }
-    if (maxy > h) {
-      maxy = h;
+    if (maxy > clipMaxY) {
+      maxy = clipMaxY;
     }
     int off = miny * w;
 
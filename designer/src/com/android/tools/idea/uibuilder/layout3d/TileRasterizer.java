@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.layout3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tile based parallel version of {@link Rasterize#toZBuff(float[], int[], int, int, TriData, int[], int, int, double[])}
+ * and {@link Rasterize#simple(float[], int[], int, int, TriData)}.
+ * <p>
+ * The frame is split into square tiles. Triangles are first binned into every tile their screen bounding box touches
+ * (in index order, so z ties resolve exactly as in the single threaded renderer), then each tile is cleared and
+ * rasterized by a fork-join worker clipped to the tile bounds. Since tiles never share pixels the workers need no
+ * synchronization. The bins are kept between frames and only grow, so rendering a frame of the same size does not allocate.
+ */
+public class TileRasterizer {
+  public static final int DEFAULT_TILE_SIZE = 64;
+  private static final int INITIAL_BIN_SIZE = 16;
+  private static final int CLEAR_RGB = 0xFF000000;
+
+  private final int myTileSize;
+  private final ForkJoinPool myPool;
+
+  private int myTilesX;
+  private int myTilesY;
+  private int[][] myBins = new int[0][];
+  private int[] myBinCounts = new int[0];
+
+  public TileRasterizer() {
+    this(DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+  }
+
+  public TileRasterizer(int tileSize, ForkJoinPool pool) {
+    if (tileSize <= 0) {
+      throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+    }
+    myTileSize = tileSize;
+    myPool = pool;
+  }
+
+  public int getTileSize() {
+    return myTileSize;
+  }
+
+  /**
+   * Clears the buffers and renders the triangles. If texture is null a simple flat shaded rendering is used.
+   *
+   * @param zbuff   used to provide the z-buffer
+   * @param rgb     the image is output here
+   * @param w       the width of the image
+   * @param h       the height of the image
+   * @param tri     the data set it contains triangles indexes etc
+   * @param texture the myTexture use to render the triangles with, or null
+   * @param tWidth  the width of the myTexture
+   * @param tHeight the height of the myTexture
+   * @param matrix  the matrix that define the transform
+   */
+  public void render(float[] zbuff, int[] rgb, int w, int h, TriData tri, int[] texture,
+                     int tWidth, int tHeight, double[] matrix) {
+    bin(w, h, tri);
+    myPool.invoke(new TileTask(0, myTilesX * myTilesY, zbuff, rgb, w, h, tri, texture, tWidth, tHeight, matrix));
+  }
+
+  /**
+   * Sorts the triangles of tri into per tile bins based on their screen space bounding box.
+   */
+  private void bin(int w, int h, TriData tri) {
+    myTilesX = (w + myTileSize - 1) / myTileSize;
+    myTilesY = (h + myTileSize - 1) / myTileSize;
+    int tiles = myTilesX * myTilesY;
+    if (myBins.length < tiles) {
+      int[][] bins = Arrays.copyOf(myBins, tiles);
+      for (int i = myBins.length; i < tiles; i++) {
+        bins[i] = new int[INITIAL_BIN_SIZE];
+      }
+      myBins = bins;
+      myBinCounts = new int[tiles];
+    }
+    else {
+      Arrays.fill(myBinCounts, 0, tiles, 0);
+    }
+
+    float[] vert = tri.myVert;
+    int[] index = tri.myIndex;
+    for (int i = 0; i < index.length; i += 3) {
+      int p1 = index[i];
+      int p2 = index[i + 1];
+      int p3 = index[i + 2];
+      float minX = Math.min(vert[p1], Math.min(vert[p2], vert[p3]));
+      float maxX = Math.max(vert[p1], Math.max(vert[p2], vert[p3]));
+      float minY = Math.min(vert[p1 + 1], Math.min(vert[p2 + 1], vert[p3 + 1]));
+      float maxY = Math.max(vert[p1 + 1], Math.max(vert[p2 + 1], vert[p3 + 1]));
+      if (!(maxX >= 0 && maxY >= 0 && minX < w && minY < h)) {
+        continue; // off screen (or NaN)
+      }
+      // Conservative: the exact coverage is decided by the clipped rasterizer.
+      int tx0 = Math.max(0, (int)minX / myTileSize);
+      int ty0 = Math.max(0, (int)minY / myTileSize);
+      int tx1 = (int)Math.min(maxX + 1, w - 1) / myTileSize;
+      int ty1 = (int)Math.min(maxY + 1, h - 1) / myTileSize;
+      for (int ty = ty0; ty <= ty1; ty++) {
+        for (int tx = tx0; tx <= tx1; tx++) {
+          add(ty * myTilesX + tx, i);
+        }
+      }
+    }
+  }
+
+  private void add(int tile, int triangle) {
+    int count = myBinCounts[tile];
+    int[] bin = myBins[tile];
+    if (count == bin.length) {
+      bin = Arrays.copyOf(bin, count * 2);
+      myBins[tile] = bin;
+    }
+    bin[count] = triangle;
+    myBinCounts[tile] = count + 1;
+  }
+
+  private void renderTile(int tile, float[] zbuff, int[] rgb, int w, int h, TriData tri, int[] texture,
+                          int tWidth, int tHeight, double[] matrix) {
+    int minX = (tile % myTilesX) * myTileSize;
+    int minY = (tile / myTilesX) * myTileSize;
+    int maxX = Math.min(w, minX + myTileSize);
+    int maxY = Math.min(h, minY + myTileSize);
+    for (int y = minY; y < maxY; y++) {
+      int off = y * w;
+      Arrays.fill(zbuff, off + minX, off + maxX, Float.MAX_VALUE);
+      Arrays.fill(rgb, off + minX, off + maxX, CLEAR_RGB);
+    }
+
+    float[] v = tri.myVert;
+    float[] uv = tri.myTexture_uv;
+    int[] bin = myBins[tile];
+    int count = myBinCounts[tile];
+    for (int k = 0; k < count; k++) {
+      int i = bin[k];
+      int p1 = tri.myIndex[i];
+      int p2 = tri.myIndex[i + 1];
+      int p3 = tri.myIndex[i + 2];
+      int type = (tri.mySurfaceType != null) ? tri.mySurfaceType[i / 3] : 0;
+      if (texture != null && type == 1) {
+        Rasterize.render_perspectiveAffine(zbuff, rgb, w, h, minX, minY, maxX, maxY,
+                                           v[p1], v[p1 + 1], v[p1 + 2],
+                                           v[p2], v[p2 + 1], v[p2 + 2],
+                                           v[p3], v[p3 + 1], v[p3 + 2],
+                                           uv[p1], uv[p1 + 1],
+                                           uv[p2], uv[p2 + 1],
+                                           uv[p3], uv[p3 + 1],
+                                           texture, tWidth, tHeight, matrix);
+      }
+      else {
+        Rasterize.flat(zbuff, rgb, w, h, minX, minY, maxX, maxY,
+                       v[p1], v[p1 + 1], v[p1 + 2],
+                       v[p2], v[p2 + 1], v[p2 + 2],
+                       v[p3], v[p3 + 1], v[p3 + 2],
+                       (type == 0) ? Rasterize.BLUE : Rasterize.GRAY);
+      }
+    }
+  }
+
+  /**
+   * Renders the tiles [myStart, myEnd) splitting the range in half until a single tile is left.
+   */
+  private class TileTask extends RecursiveAction {
+    private final int myStart;
+    private final int myEnd;
+    private final float[] myZBuff;
+    private final int[] myRgb;
+    private final int myWidth;
+    private final int myHeight;
+    private final TriData myTri;
+    private final int[] myTexture;
+    private final int myTextureWidth;
+    private final int myTextureHeight;
+    private final double[] myMatrix;
+
+    TileTask(int start, int end, float[] zbuff, int[] rgb, int w, int h, TriData tri, int[] texture,
+             int tWidth, int tHeight, double[] matrix) {
+      myStart = start;
+      myEnd = end;
+      myZBuff = zbuff;
+      myRgb = rgb;
+      myWidth = w;
+      myHeight = h;
+      myTri = tri;
+      myTexture = texture;
+      myTextureWidth = tWidth;
+      myTextureHeight = tHeight;
+      myMatrix = matrix;
+    }
+
+    @Override
+    protected void compute() {
+      if (myEnd - myStart <= 1) {
+        if (myEnd > myStart) {
+          renderTile(myStart, myZBuff, myRgb, myWidth, myHeight, myTri, myTexture, myTextureWidth, myTextureHeight, myMatrix);
+        }
+        return;
+      }
+      int mid = (myStart + myEnd) >>> 1;
+      invokeAll(split(myStart, mid), split(mid, myEnd));
+    }
+
+    private TileTask split(int start, int end) {
+      return new TileTask(start, end, myZBuff, myRgb, myWidth, myHeight, myTri, myTexture, myTextureWidth, myTextureHeight, myMatrix);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.layout3d;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileRasterizerTest {
+  private static final int WIDTH = 301;
+  private static final int HEIGHT = 203;
+
+  private ForkJoinPool myPool;
+  private Layout myLayout;
+
+  @Before
+  public void setUp() {
+    myPool = new ForkJoinPool(4);
+    BufferedImage img = createTexture(108, 192);
+    myLayout = new Layout(img, createDeepHierarchy(8, 3, img.getWidth(), img.getHeight()));
+  }
+
+  @After
+  public void tearDown() {
+    myPool.shutdownNow();
+  }
+
+  @Test
+  public void textureRenderMatchesSingleThreaded() {
+    TriData transformed = transform(myLayout);
+    double[] matrix = new double[16];
+    matrix[0] = 0.25;
+    matrix[5] = 0.5;
+
+    float[] expectedZ = new float[WIDTH * HEIGHT];
+    int[] expectedRgb = new int[WIDTH * HEIGHT];
+    Arrays.fill(expectedZ, Float.MAX_VALUE);
+    Arrays.fill(expectedRgb, 0xFF000000);
+    Rasterize.toZBuff(expectedZ, expectedRgb, WIDTH, HEIGHT, transformed,
+                      myLayout.myTexture, myLayout.myTextureWidth, myLayout.myTextureHeight, matrix);
+
+    for (int tileSize : new int[]{1, 7, 16, TileRasterizer.DEFAULT_TILE_SIZE, 1024}) {
+      float[] z = new float[WIDTH * HEIGHT];
+      int[] rgb = new int[WIDTH * HEIGHT];
+      new TileRasterizer(tileSize, myPool).render(z, rgb, WIDTH, HEIGHT, transformed,
+                                                  myLayout.myTexture, myLayout.myTextureWidth, myLayout.myTextureHeight, matrix);
+      assertArrayEquals("tile size " + tileSize, expectedRgb, rgb);
+      assertArrayEquals("tile size " + tileSize, expectedZ, z, 0f);
+    }
+  }
+
+  @Test
+  public void simpleRenderMatchesSingleThreaded() {
+    TriData transformed = transform(myLayout);
+
+    float[] expectedZ = new float[WIDTH * HEIGHT];
+    int[] expectedRgb = new int[WIDTH * HEIGHT];
+    Arrays.fill(expectedZ, Float.MAX_VALUE);
+    Arrays.fill(expectedRgb, 0xFF000000);
+    Rasterize.simple(expectedZ, expectedRgb, WIDTH, HEIGHT, transformed);
+
+    float[] z = new float[WIDTH * HEIGHT];
+    int[] rgb = new int[WIDTH * HEIGHT];
+    new TileRasterizer(16, myPool).render(z, rgb, WIDTH, HEIGHT, transformed, null, 0, 0, null);
+    assertArrayEquals(expectedRgb, rgb);
+  }
+
+  @Test
+  public void buffersAreReusedBetweenFrames() {
+    TriData transformed = transform(myLayout);
+    TileRasterizer rasterizer = new TileRasterizer(32, myPool);
+    float[] z = new float[WIDTH * HEIGHT];
+    int[] first = new int[WIDTH * HEIGHT];
+    int[] second = new int[WIDTH * HEIGHT];
+    Arrays.fill(second, 0x12345678);
+
+    rasterizer.render(z, first, WIDTH, HEIGHT, transformed, null, 0, 0, null);
+    // Rendering again must clear the stale content of the buffers and produce the same frame.
+    rasterizer.render(z, second, WIDTH, HEIGHT, transformed, null, 0, 0, null);
+    assertArrayEquals(first, second);
+  }
+
+  /**
+   * Builds a hierarchy where each level contains childrenPerLevel views, and the first one is nested one level deeper.
+   */
+  private static Layout.View createDeepHierarchy(int depth, int childrenPerLevel, float width, float height) {
+    Layout.View root = new Layout.View(0, 0, width, height);
+    Layout.View parent = root;
+    for (int level = 1; level < depth; level++) {
+      float inset = Math.min(parent.width, parent.height) / 16;
+      float childWidth = (parent.width - inset * 2) / childrenPerLevel;
+      Layout.View[] children = new Layout.View[childrenPerLevel];
+      for (int i = 0; i < childrenPerLevel; i++) {
+        children[i] = new Layout.View(parent.x + inset + childWidth * i, parent.y + inset, childWidth, parent.height - inset * 2);
+      }
+      parent.addChild(children);
+      parent = children[0];
+    }
+    return root;
+  }
+
+  private static BufferedImage createTexture(int width, int height) {
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        img.setRGB(x, y, 0xFF000000 | ((x * 255 / width) << 16) | ((y * 255 / height) << 8));
+      }
+    }
+    return img;
+  }
+
+  /**
+   * Scales the layout down into the test frame and tilts it so the sides of the cubes are visible.
+   */
+  private static TriData transform(TriData data) {
+    TriData out = new TriData(data);
+    for (int i = 0; i < out.myVert.length; i += 3) {
+      float x = data.myVert[i] / 2 + 20;
+      float y = data.myVert[i + 1] / 2 + 10;
+      float z = data.myVert[i + 2];
+      out.myVert[i] = x + z * 0.3f;
+      out.myVert[i + 1] = y + z * 0.2f;
+      out.myVert[i + 2] = -z;
+    }
+    return out;
+  }
+}
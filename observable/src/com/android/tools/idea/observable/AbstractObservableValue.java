@@ -30,6 +30,13 @@ public abstract class AbstractObservableValue<T> implements ObservableValue<T> {
   private final List<WeakReference<InvalidationListener>> myWeakListeners = new ArrayList<>(0);
   private boolean myNotificationsEnabled = true;
 
+  /**
+   * The length of the longest chain of values this value is derived from, or 0 if it isn't derived
+   * from any other value. Used to notify derived values after the values they depend on when a
+   * {@link BatchInvoker#batch(Runnable) batch} ends.
+   */
+  private int myDepth;
+
   @Override
   public final void addListener(@NotNull InvalidationListener listener) {
     myListeners.add(listener);
@@ -61,6 +68,18 @@ public abstract class AbstractObservableValue<T> implements ObservableValue<T> {
       return;
     }
 
+    if (BatchInvoker.deferInvalidation(this)) {
+      return;
+    }
+
+    fireInvalidated();
+  }
+
+  /**
+   * Notifies our listeners right away, even inside a {@link BatchInvoker#batch(Runnable) batch}.
+   */
+  final void fireInvalidated() {
+    BatchInvoker.countNotification();
     ImmutableList<InvalidationListener> listenersSnapshot = ImmutableList.copyOf(myListeners);
     ImmutableList<WeakReference<InvalidationListener>> weakListenersSnapshot = ImmutableList.copyOf(myWeakListeners);
 
@@ -84,6 +103,21 @@ public abstract class AbstractObservableValue<T> implements ObservableValue<T> {
     }
   }
 
+  /**
+   * Child classes which derive their value from other observable values should call this for each
+   * of them, so that when a {@link BatchInvoker#batch(Runnable) batch} ends, this value's
+   * listeners are notified after the listeners of the values it depends on (and only once).
+   */
+  protected final void dependOn(@NotNull ObservableValue<?> source) {
+    if (source instanceof AbstractObservableValue) {
+      myDepth = Math.max(myDepth, ((AbstractObservableValue<?>)source).myDepth + 1);
+    }
+  }
+
+  final int getDepth() {
+    return myDepth;
+  }
+
   /**
    * Call to enable / disable the firing of listeners. Child classes may use this (with caution!)
    * to prevent multiple listeners being fired for the same invalidation event.
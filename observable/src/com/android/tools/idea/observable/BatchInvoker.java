@@ -21,7 +21,14 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A utility class which invokes some logic and, if multiple invocation requests come in at the
@@ -33,6 +40,10 @@ import java.util.Queue;
  * Doing this will allow us to avoid doing expensive updates on redundant, intermediate changes,
  * e.g. if you have five values in a complex mathematical calculation, and all values change in
  * the same frame, you only want to run the calculation once.
+ *
+ * Changes which are known to happen together can also be wrapped in {@link #batch(Runnable)}, in
+ * which case the listeners of each value modified in the batch are notified only once, when the
+ * batch ends, and values derived from other values are notified after the values they depend on.
  */
 public final class BatchInvoker {
   /**
@@ -55,6 +66,14 @@ public final class BatchInvoker {
 
   private static Strategy ourOverrideStrategy = null;
 
+  /**
+   * The batch being run by the current thread, if any.
+   */
+  private static final ThreadLocal<Batch> ourBatch = new ThreadLocal<>();
+
+  private static final AtomicLong ourNotificationCount = new AtomicLong();
+  private static final AtomicLong ourCoalescedNotificationCount = new AtomicLong();
+
 
   private final Strategy myStrategy;
 
@@ -71,6 +90,9 @@ public final class BatchInvoker {
 
   private boolean myUpdateInProgress;
 
+  private long myInvocationCount;
+  private long myCoalescedCount;
+
   public BatchInvoker() {
     this(ourOverrideStrategy != null ? ourOverrideStrategy : SWING_INVOKE_LATER_STRATEGY);
   }
@@ -89,6 +111,9 @@ public final class BatchInvoker {
       if (!myDeferredRunnables.contains(runnable)) {
         myDeferredRunnables.add(runnable);
       }
+      else {
+        myCoalescedCount++;
+      }
       return;
     }
 
@@ -98,12 +123,109 @@ public final class BatchInvoker {
     if (!myRunnables.contains(runnable)) {
       myRunnables.add(runnable);
     }
+    else {
+      myCoalescedCount++;
+    }
 
     if (shouldInvoke) {
-      enqueueInvoke();
+      Batch batch = ourBatch.get();
+      if (batch != null) {
+        // Even with an immediate strategy, wait for the end of the batch so that all its changes are lumped together.
+        batch.myInvokers.add(this);
+      }
+      else {
+        enqueueInvoke();
+      }
+    }
+  }
+
+  /**
+   * Runs the given changes, deferring the notifications they cause until they are all done. The
+   * listeners of each modified value are then notified once, in dependency order (a value derived
+   * from others, e.g. an expression, is notified after the values it depends on), and finally the
+   * runnables enqueued in any {@link BatchInvoker} are invoked as a single batch.
+   * <p/>
+   * Nested calls are part of the outermost batch. Like the rest of this class, batches are meant
+   * to be run on the dispatch thread; a batch only affects notifications sent by its own thread.
+   */
+  public static void batch(@NotNull Runnable changes) {
+    if (ourBatch.get() != null) {
+      changes.run();
+      return;
+    }
+
+    Batch batch = new Batch();
+    ourBatch.set(batch);
+    try {
+      changes.run();
+    }
+    finally {
+      try {
+        batch.flushNotifications();
+      }
+      finally {
+        ourBatch.remove();
+        for (BatchInvoker invoker : batch.myInvokers) {
+          invoker.enqueueInvoke();
+        }
+      }
     }
   }
 
+  /**
+   * Returns true if the current thread is running a {@link #batch(Runnable)}.
+   */
+  public static boolean isBatching() {
+    return ourBatch.get() != null;
+  }
+
+  /**
+   * Called when the given value is invalidated; if this happens within a {@link #batch(Runnable)},
+   * records the value so its listeners are notified at the end of the batch, and returns true.
+   */
+  static boolean deferInvalidation(@NotNull AbstractObservableValue<?> value) {
+    Batch batch = ourBatch.get();
+    if (batch == null) {
+      return false;
+    }
+    batch.add(value);
+    return true;
+  }
+
+  static void countNotification() {
+    ourNotificationCount.incrementAndGet();
+  }
+
+  /**
+   * The number of times the listeners of an observable value were notified of a change, across
+   * all values.
+   */
+  public static long getNotificationCount() {
+    return ourNotificationCount.get();
+  }
+
+  /**
+   * The number of invalidations made redundant by another invalidation of the same value within a
+   * {@link #batch(Runnable)}, across all values.
+   */
+  public static long getCoalescedNotificationCount() {
+    return ourCoalescedNotificationCount.get();
+  }
+
+  /**
+   * The number of runnables this invoker has run.
+   */
+  public long getInvocationCount() {
+    return myInvocationCount;
+  }
+
+  /**
+   * The number of runnables this invoker dropped because they were already waiting to run.
+   */
+  public long getCoalescedCount() {
+    return myCoalescedCount;
+  }
+
   private void enqueueInvoke() {
     myStrategy.invoke(() -> {
       int cycleCount = 0;
@@ -112,6 +234,7 @@ public final class BatchInvoker {
         myUpdateInProgress = true;
         for (Runnable runnable : myRunnables) {
           try {
+            myInvocationCount++;
             runnable.run();
           }
           catch (RuntimeException ex) {
@@ -179,6 +302,65 @@ public final class BatchInvoker {
     }
   }
 
+  /**
+   * The values invalidated, and the invokers which received runnables, during a {@link #batch(Runnable)}.
+   */
+  private static final class Batch {
+    private final PriorityQueue<PendingValue> myPendingValues =
+      new PriorityQueue<>(Comparator.<PendingValue>comparingInt(pending -> pending.myDepth).thenComparingLong(pending -> pending.myOrder));
+    private final Map<AbstractObservableValue<?>, Boolean> myPendingSet = new IdentityHashMap<>();
+    private final Map<AbstractObservableValue<?>, Integer> myNotifiedCounts = new IdentityHashMap<>();
+    private final List<BatchInvoker> myInvokers = new ArrayList<>();
+    private long myOrder;
+
+    void add(@NotNull AbstractObservableValue<?> value) {
+      if (myPendingSet.put(value, Boolean.TRUE) != null) {
+        ourCoalescedNotificationCount.incrementAndGet();
+        return;
+      }
+      myPendingValues.add(new PendingValue(value, value.getDepth(), myOrder++));
+    }
+
+    /**
+     * Notifies the listeners of the pending values, lowest depth first. Values invalidated by those
+     * listeners are added to the queue, so dependent values pending at the same time are notified once.
+     */
+    void flushNotifications() {
+      RuntimeException exceptionChain = null;
+      PendingValue pending;
+      while ((pending = myPendingValues.poll()) != null) {
+        AbstractObservableValue<?> value = pending.myValue;
+        myPendingSet.remove(value);
+        if (myNotifiedCounts.merge(value, 1, Integer::sum) > MAX_CYCLE_COUNT) {
+          myPendingValues.clear();
+          myPendingSet.clear();
+          throw new InfiniteCycleException(exceptionChain);
+        }
+        try {
+          value.fireInvalidated();
+        }
+        catch (RuntimeException ex) {
+          exceptionChain = addExceptionCause(ex, exceptionChain);
+        }
+      }
+      if (exceptionChain != null) {
+        throw exceptionChain;
+      }
+    }
+  }
+
+  private static final class PendingValue {
+    @NotNull private final AbstractObservableValue<?> myValue;
+    private final int myDepth;
+    private final long myOrder;
+
+    PendingValue(@NotNull AbstractObservableValue<?> value, int depth, long order) {
+      myValue = value;
+      myDepth = depth;
+      myOrder = order;
+    }
+  }
+
   private static RuntimeException addExceptionCause(@NotNull RuntimeException ex, @Nullable RuntimeException cause) {
     if (cause != null) {
       Throwable tail = ex;
@@ -54,6 +54,7 @@ public abstract class AdapterProperty<S, D> extends AbstractProperty<D> implemen
     myLastValue = initialValue;
     myWrappedProperty = wrappedProperty;
     myWrappedProperty.addWeakListener(this);
+    dependOn(myWrappedProperty);
   }
 
   @Override
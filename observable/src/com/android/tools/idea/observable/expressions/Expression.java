@@ -39,6 +39,7 @@ public abstract class Expression<T> extends AbstractObservableValue<T> implement
 
     for (ObservableValue value : values) {
       value.addWeakListener(myListener);
+      dependOn(value);
     }
   }
 
@@ -15,6 +15,8 @@
  */
 package com.android.tools.idea.observable;
 
+import com.android.tools.idea.observable.core.IntValueProperty;
+import com.android.tools.idea.observable.expressions.Expression;
 import com.google.common.base.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -143,6 +145,86 @@ public final class BatchInvokerTest {
     assertThat(invokeResult.get()).isFalse();
   }
 
+  @Test
+  public void batchNotifiesEachValueOnce() throws Exception {
+    IntValueProperty value = new IntValueProperty();
+    CountListener listener = new CountListener();
+    value.addListener(listener);
+
+    long coalescedCount = BatchInvoker.getCoalescedNotificationCount();
+    BatchInvoker.batch(() -> {
+      value.set(1);
+      value.set(2);
+      value.set(3);
+      assertThat(BatchInvoker.isBatching()).isTrue();
+      assertThat(listener.getCount()).isEqualTo(0);
+    });
+    assertThat(BatchInvoker.isBatching()).isFalse();
+    assertThat(listener.getCount()).isEqualTo(1);
+    assertThat(value.get()).isEqualTo(3);
+    assertThat(BatchInvoker.getCoalescedNotificationCount() - coalescedCount).isEqualTo(2);
+  }
+
+  @Test
+  public void batchNotifiesDerivedValuesAfterTheirDependencies() throws Exception {
+    IntValueProperty value = new IntValueProperty();
+    Expression<Integer> plusOne = Expression.create(() -> value.get() + 1, value);
+    Expression<Integer> plusTwo = Expression.create(() -> plusOne.get() + 1, plusOne);
+    // Depends on the value both directly and through a chain of expressions
+    Expression<Integer> sum = Expression.create(() -> value.get() + plusTwo.get(), value, plusTwo);
+    CountListener listener = new CountListener();
+    sum.addListener(listener);
+
+    value.set(1);
+    assertThat(listener.getCount()).isEqualTo(2);
+
+    BatchInvoker.batch(() -> {
+      value.set(2);
+      value.set(3);
+    });
+    assertThat(listener.getCount()).isEqualTo(3);
+    assertThat(sum.get()).isEqualTo(8);
+  }
+
+  @Test
+  public void batchDefersInvokersUntilItEnds() throws Exception {
+    BatchInvoker invoker = new BatchInvoker(BatchInvoker.INVOKE_IMMEDIATELY_STRATEGY);
+    IntWrapper intWrapper = new IntWrapper();
+    AddToValue addToValue = new AddToValue(0, intWrapper, 10);
+
+    BatchInvoker.batch(() -> {
+      invoker.enqueue(addToValue);
+      invoker.enqueue(addToValue);
+      assertThat(intWrapper.value).isEqualTo(0);
+    });
+    assertThat(intWrapper.value).isEqualTo(10);
+    assertThat(invoker.getInvocationCount()).isEqualTo(1);
+    assertThat(invoker.getCoalescedCount()).isEqualTo(1);
+
+    // The invoker runs immediately again once the batch is over
+    invoker.enqueue(addToValue);
+    assertThat(intWrapper.value).isEqualTo(20);
+  }
+
+  @Test
+  public void batchNotifiesListenersEvenIfItThrows() throws Exception {
+    IntValueProperty value = new IntValueProperty();
+    CountListener listener = new CountListener();
+    value.addListener(listener);
+
+    try {
+      BatchInvoker.batch(() -> {
+        value.set(1);
+        throw new IllegalStateException();
+      });
+      fail();
+    }
+    catch (IllegalStateException ignored) {
+    }
+    assertThat(listener.getCount()).isEqualTo(1);
+    assertThat(BatchInvoker.isBatching()).isFalse();
+  }
+
   private static final class IntWrapper {
     int value;
   }
@@ -31,11 +31,14 @@ import com.android.tools.profilers.cpu.ProfilingConfiguration;
 import com.android.tools.profilers.dataviewer.DataViewer;
 import com.android.tools.profilers.stacktrace.LoadingPanel;
 import com.android.tools.profilers.stacktrace.StackTraceGroup;
+import com.google.common.io.ByteStreams;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.components.JBLoadingPanel;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.function.Consumer;
 import javax.swing.JComponent;
 import org.jetbrains.annotations.NotNull;
@@ -137,6 +140,22 @@ public class IntellijProfilerComponents implements IdeProfilerComponents {
     }
   }
 
+  @NotNull
+  @Override
+  public DataViewer createDataViewer(@NotNull InputStream stream, @NotNull ContentType contentType, @NotNull DataViewer.Style styleHint)
+    throws IOException {
+    if (!contentType.isSupportedImageType()) {
+      return createDataViewer(ByteStreams.toByteArray(stream), contentType, styleHint);
+    }
+
+    // Images are decoded straight from the stream, without copying all of their bytes first
+    DataViewer viewer = IntellijImageDataViewer.createImageViewer(stream);
+    if (viewer == null) {
+      viewer = IntellijDataViewer.createInvalidViewer();
+    }
+    return viewer;
+  }
+
   @NotNull
   @Override
   public JComponent createResizableImageComponent(@NotNull BufferedImage image) {
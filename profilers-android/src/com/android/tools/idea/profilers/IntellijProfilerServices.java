@@ -236,6 +236,11 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_CPU_API_TRACING.get();
       }
 
+      @Override
+      public boolean isCpuCaptureArchiveEnabled() {
+        return StudioFlags.PROFILER_CPU_CAPTURE_ARCHIVE.get();
+      }
+
       @Override
       public boolean isCpuCaptureStageEnabled() { return StudioFlags.PROFILER_CPU_CAPTURE_STAGE.get(); }
 
@@ -264,6 +269,11 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_TRACK_JNI_REFS.get();
       }
 
+      @Override
+      public boolean isLazyHeapDumpLoadingEnabled() {
+        return StudioFlags.PROFILER_LAZY_HEAP_DUMP_LOADING.get();
+      }
+
       @Override
       public boolean isLiveAllocationsEnabled() {
         return StudioFlags.PROFILER_USE_LIVE_ALLOCATIONS.get();
@@ -287,6 +297,11 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
       @Override
       public boolean isPerfettoEnabled() { return StudioFlags.PROFILER_USE_PERFETTO.get(); }
 
+      @Override
+      public boolean isPerfettoDirectImportEnabled() {
+        return StudioFlags.PROFILER_PERFETTO_DIRECT_IMPORT.get();
+      }
+
       @Override
       public boolean isPerformanceMonitoringEnabled() {
         return StudioFlags.PROFILER_PERFORMANCE_MONITORING.get();
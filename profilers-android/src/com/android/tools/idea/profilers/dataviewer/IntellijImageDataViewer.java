@@ -20,6 +20,7 @@ import com.android.tools.profilers.dataviewer.ImageDataViewer;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import javax.imageio.ImageIO;
 import javax.swing.JComponent;
 import org.jetbrains.annotations.NotNull;
@@ -37,8 +38,16 @@ public class IntellijImageDataViewer implements ImageDataViewer {
    */
   @Nullable
   public static IntellijImageDataViewer createImageViewer(@NotNull byte[] content) {
-    try (ByteArrayInputStream inputStream = new ByteArrayInputStream(content)) {
-      BufferedImage image = ImageIO.read(inputStream);
+    return createImageViewer(new ByteArrayInputStream(content));
+  }
+
+  /**
+   * Like {@link #createImageViewer(byte[])}, but decodes the image as it is read from the {@code stream}, which is not closed.
+   */
+  @Nullable
+  public static IntellijImageDataViewer createImageViewer(@NotNull InputStream stream) {
+    try {
+      BufferedImage image = ImageIO.read(stream);
       if (image == null) {
         return null;
       }
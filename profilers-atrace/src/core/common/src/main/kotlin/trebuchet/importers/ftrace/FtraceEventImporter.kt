@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package trebuchet.importers.ftrace
+
+import trebuchet.importers.ImportFeedback
+import trebuchet.model.InvalidId
+import trebuchet.model.SchedulingState
+import trebuchet.model.fragments.ModelFragment
+
+/**
+ * Builds a model from ftrace events which have already been decoded, e.g. from a binary trace, handling them the same way
+ * [SchedParser] and [TracingMarkerWrite] handle the lines of a text trace, without formatting and parsing text.
+ *
+ * Events must be added in timestamp order. Timestamps are in seconds, as in text traces. Each event comes with the thread
+ * which emitted it, as in the prefix of a text line: its [pid], its [tgid] (or [InvalidId] if unknown) and its [task] name.
+ */
+class FtraceEventImporter(private val feedback: ImportFeedback) {
+    private val state = FtraceImporterState(feedback)
+
+    fun finish(): ModelFragment = state.finish()
+
+    /**
+     * Records the clock sync markers of a trace: the [bootTime] of the sync, and the corresponding [parentTimestamp]
+     * (clock monotonic time, in seconds) and [realtimeTimestamp] (in milliseconds).
+     */
+    fun clockSync(bootTime: Double, parentTimestamp: Double, realtimeTimestamp: Long) {
+        importEvent(bootTime, 0, InvalidId, null)
+        state.modelFragment.parentTimestamp = parentTimestamp
+        state.modelFragment.parentTimestampBootTime = bootTime
+        state.modelFragment.realtimeTimestamp = realtimeTimestamp
+    }
+
+    fun schedSwitch(timestamp: Double, cpu: Int, pid: Int, tgid: Int, task: String?,
+                    prevPid: Int, prevComm: String?, prevState: SchedulingState, nextPid: Int, nextComm: String?) {
+        importEvent(timestamp, pid, tgid, task)
+        val prevThread = state.threadFor(prevPid)
+        if (prevThread.name == null) {
+            prevThread.hint(name = prevComm)
+        }
+        val nextThread = state.threadFor(nextPid)
+        if (nextThread.name == null) {
+            nextThread.hint(name = nextComm)
+        }
+        prevThread.schedulingStateBuilder.switchState(prevState, timestamp)
+        nextThread.schedulingStateBuilder.switchState(SchedulingState.RUNNING, timestamp)
+        state.cpuFor(cpu).schedulingProcessBuilder.switchProcess(nextThread.process, nextThread, timestamp)
+    }
+
+    /**
+     * Handles both sched_wakeup and sched_waking events, as [SchedParser] does.
+     */
+    fun schedWakeup(timestamp: Double, pid: Int, tgid: Int, task: String?, wakeePid: Int, wakeeComm: String?) {
+        importEvent(timestamp, pid, tgid, task)
+        val thread = state.threadFor(wakeePid)
+        if (thread.name == null) {
+            thread.hint(name = wakeeComm)
+        }
+        thread.schedulingStateBuilder.switchState(SchedulingState.WAKING, timestamp)
+    }
+
+    /**
+     * Handles the [buffer] written to trace_marker by user space: B|tgid|name, E or C|tgid|name|value.
+     */
+    fun tracingMarkWrite(timestamp: Double, pid: Int, tgid: Int, task: String?, buffer: String) {
+        importEvent(timestamp, pid, tgid, task)
+        if (buffer.isEmpty()) {
+            return
+        }
+        when (buffer[0].toByte()) {
+            TracingMarkerWrite.Begin -> {
+                val tgidEnd = buffer.indexOf('|', 2)
+                val markerTgid = readTgid(buffer, tgidEnd, tgid) ?: return
+                val name = if (tgidEnd < 0) "" else buffer.substring(tgidEnd + 1)
+                state.threadFor(pid, markerTgid, task).slicesBuilder.beginSlice {
+                    it.startTime = timestamp
+                    it.name = name
+                }
+            }
+            TracingMarkerWrite.End -> {
+                val thread = state.threadFor(pid, tgid, task)
+                thread.slicesBuilder.endSlice {
+                    it.endTime = timestamp
+                    it.populateScheduledSlices(thread.schedulingStateBuilder.slices)
+                }
+            }
+            TracingMarkerWrite.Counter -> {
+                val tgidEnd = buffer.indexOf('|', 2)
+                val nameEnd = if (tgidEnd < 0) -1 else buffer.indexOf('|', tgidEnd + 1)
+                val markerTgid = readTgid(buffer, tgidEnd, tgid) ?: return
+                val value = if (nameEnd < 0) null else buffer.substring(nameEnd + 1).trim().toIntOrNull()
+                if (value == null) {
+                    feedback.reportImportWarning("Failed to parse: '$buffer'")
+                    return
+                }
+                state.threadFor(pid, markerTgid, task).process.addCounterSample(buffer.substring(tgidEnd + 1, nameEnd), timestamp, value)
+            }
+        }
+    }
+
+    /**
+     * Reads the tgid of a B or C marker, which must match the tgid of the thread writing it when known.
+     */
+    private fun readTgid(buffer: String, tgidEnd: Int, tgid: Int): Int? {
+        if (buffer.length < 3 || buffer[1] != '|') {
+            feedback.reportImportWarning("Failed to parse: '$buffer'")
+            return null
+        }
+        val markerTgid = (if (tgidEnd < 0) buffer.substring(2) else buffer.substring(2, tgidEnd)).toIntOrNull()
+        if (markerTgid == null || (tgid != InvalidId && tgid != markerTgid)) {
+            feedback.reportImportWarning("Failed to parse: '$buffer'")
+            return null
+        }
+        return markerTgid
+    }
+
+    private fun importEvent(timestamp: Double, pid: Int, tgid: Int, task: String?) {
+        val modelFragment = state.modelFragment
+        if (modelFragment.globalStartTime == 0.0) {
+            modelFragment.globalStartTime = timestamp
+        }
+        modelFragment.globalEndTime = timestamp
+
+        if (tgid != InvalidId) state.threadFor(pid, tgid, task)
+    }
+}
@@ -19,10 +19,13 @@ import com.android.tools.profilers.cpu.CpuProfilerConfigModel;
 import com.android.tools.profilers.cpu.ProfilingConfiguration;
 import com.android.tools.profilers.dataviewer.DataViewer;
 import com.android.tools.profilers.stacktrace.*;
+import com.google.common.io.ByteStreams;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.function.Consumer;
 
 /**
@@ -69,6 +72,16 @@ public interface IdeProfilerComponents {
   @NotNull
   DataViewer createDataViewer(@NotNull byte[] bytes, @NotNull ContentType contentType, @NotNull DataViewer.Style styleHint);
 
+  /**
+   * Like {@link #createDataViewer(byte[], ContentType, DataViewer.Style)}, but reads the data from a stream, so that viewers which can
+   * decode it as it is read, e.g. of images, don't need all of it in memory at once. The stream is not closed.
+   */
+  @NotNull
+  default DataViewer createDataViewer(@NotNull InputStream stream, @NotNull ContentType contentType, @NotNull DataViewer.Style styleHint)
+    throws IOException {
+    return createDataViewer(ByteStreams.toByteArray(stream), contentType, styleHint);
+  }
+
   @NotNull
   JComponent createResizableImageComponent(@NotNull BufferedImage image);
 
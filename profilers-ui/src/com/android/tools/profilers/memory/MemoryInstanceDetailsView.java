@@ -100,7 +100,8 @@ final class MemoryInstanceDetailsView extends AspectObserver {
     myAllocationStackTraceView = ideProfilerComponents.createStackView(stage.getAllocationStackTraceModel());
     myDeallocationStackTraceView = ideProfilerComponents.createStackView(stage.getDeallocationStackTraceModel());
 
-    myInstanceViewers.add(new BitmapViewer());
+    myInstanceViewers.add(new BitmapViewer(stage.getStudioProfilers().getIdeServices().getPoolExecutor(),
+                                           stage.getStudioProfilers().getIdeServices().getMainExecutor()));
 
     myAttributeColumns.put(
       InstanceAttribute.LABEL,
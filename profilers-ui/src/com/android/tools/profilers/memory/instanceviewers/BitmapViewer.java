@@ -18,6 +18,7 @@ package com.android.tools.profilers.memory.instanceviewers;
 import com.android.tools.profilers.IdeProfilerComponents;
 import com.android.tools.profilers.memory.adapters.AndroidBitmapDataProvider;
 import com.android.tools.profilers.memory.adapters.BitmapDecoder;
+import com.android.tools.profilers.memory.adapters.BitmapThumbnailCache;
 import com.android.tools.profilers.memory.adapters.CaptureObject;
 import com.android.tools.profilers.memory.adapters.InstanceObject;
 import com.intellij.ui.components.JBScrollPane;
@@ -26,12 +27,28 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.util.concurrent.Executor;
 
 import static javax.swing.ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED;
 import static javax.swing.ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED;
 
 public class BitmapViewer implements InstanceViewer {
+  // Bitmaps larger than this are previewed downscaled.
+  private static final int PREVIEW_MAX_SIZE = 1024;
+  private static final long MAX_CACHED_PIXELS = 16 * 1024 * 1024;
+
+  @NotNull private final BitmapThumbnailCache myThumbnailCache;
+  @NotNull private final Executor myMainExecutor;
+
+  /**
+   * @param poolExecutor decodes the previews
+   * @param mainExecutor shows the previews once decoded
+   */
+  public BitmapViewer(@NotNull Executor poolExecutor, @NotNull Executor mainExecutor) {
+    myThumbnailCache = new BitmapThumbnailCache(poolExecutor, PREVIEW_MAX_SIZE, MAX_CACHED_PIXELS);
+    myMainExecutor = mainExecutor;
+  }
+
   @NotNull
   @Override
   public String getTitle() {
@@ -44,18 +61,24 @@ public class BitmapViewer implements InstanceViewer {
                                     @NotNull CaptureObject captureObject,
                                     @NotNull InstanceObject instanceObject) {
     AndroidBitmapDataProvider bitmapDataProvider = AndroidBitmapDataProvider.createDecoder(instanceObject);
-    if (bitmapDataProvider == null) {
-      return null;
-    }
-    BufferedImage image = BitmapDecoder.getBitmap(bitmapDataProvider);
-    if (image == null) {
+    if (bitmapDataProvider == null || !BitmapDecoder.canDecode(bitmapDataProvider)) {
       return null;
     }
-    JComponent viewer = ideProfilerComponents.createResizableImageComponent(image);
 
     JPanel panel = new JPanel(new BorderLayout());
     panel.setName("Bitmap Preview");
-    panel.add(viewer, BorderLayout.CENTER);
+    panel.add(new JLabel("Loading...", SwingConstants.CENTER), BorderLayout.CENTER);
+    myThumbnailCache.getThumbnail(captureObject, instanceObject).whenCompleteAsync((image, throwable) -> {
+      panel.removeAll();
+      if (image != null) {
+        panel.add(ideProfilerComponents.createResizableImageComponent(image), BorderLayout.CENTER);
+      }
+      else {
+        panel.add(new JLabel("Bitmap could not be decoded", SwingConstants.CENTER), BorderLayout.CENTER);
+      }
+      panel.revalidate();
+      panel.repaint();
+    }, myMainExecutor);
     return new JBScrollPane(panel, VERTICAL_SCROLLBAR_AS_NEEDED, HORIZONTAL_SCROLLBAR_AS_NEEDED);
   }
 }
@@ -34,8 +34,10 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.ProfilerLayout.ROW_HEIGHT_PADDING;
@@ -239,12 +241,70 @@ final class ConnectionsView {
     @NotNull private List<HttpData> myDataList = new ArrayList<>();
 
     private ConnectionsTableModel(HttpDataFetcher httpDataFetcher) {
-      httpDataFetcher.addListener(httpDataList -> {
-        myDataList = httpDataList;
-        fireTableDataChanged();
+      httpDataFetcher.addListener(new HttpDataFetcher.Listener() {
+        @Override
+        public void onUpdated(@NotNull List<HttpData> httpDataList) {
+          myDataList = httpDataList;
+          fireTableDataChanged();
+        }
+
+        @Override
+        public void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull HttpDataFetcher.Delta delta) {
+          updateRows(httpDataList, delta);
+        }
       });
     }
 
+    /**
+     * Only fires events for the rows which changed, so that scrubbing the timeline over many connections doesn't rebuild the table.
+     * Rows are removed then inserted in runs, so that the model is consistent with each event.
+     */
+    private void updateRows(@NotNull List<HttpData> httpDataList, @NotNull HttpDataFetcher.Delta delta) {
+      List<HttpData> rows = new ArrayList<>(myDataList);
+      myDataList = rows;
+
+      Set<HttpData> removed = new HashSet<>(delta.getRemoved());
+      int end = rows.size();
+      while (end > 0) {
+        if (!removed.contains(rows.get(end - 1))) {
+          --end;
+          continue;
+        }
+        int start = end - 1;
+        while (start > 0 && removed.contains(rows.get(start - 1))) {
+          --start;
+        }
+        rows.subList(start, end).clear();
+        fireTableRowsDeleted(start, end - 1);
+        end = start;
+      }
+
+      // Both lists are ordered by request start time, so inserting the added rows at their new index gives the new list.
+      Set<HttpData> added = new HashSet<>(delta.getAdded());
+      int start = 0;
+      while (start < httpDataList.size()) {
+        if (!added.contains(httpDataList.get(start))) {
+          ++start;
+          continue;
+        }
+        end = start + 1;
+        while (end < httpDataList.size() && added.contains(httpDataList.get(end))) {
+          ++end;
+        }
+        rows.addAll(start, httpDataList.subList(start, end));
+        fireTableRowsInserted(start, end - 1);
+        start = end;
+      }
+
+      myDataList = httpDataList;
+      Set<HttpData> updated = new HashSet<>(delta.getUpdated());
+      for (int i = 0; i < httpDataList.size() && !updated.isEmpty(); ++i) {
+        if (updated.remove(httpDataList.get(i))) {
+          fireTableRowsUpdated(i, i);
+        }
+      }
+    }
+
     @Override
     public int getRowCount() {
       return myDataList.size();
@@ -27,6 +27,7 @@ import com.android.tools.profilers.network.NetworkConnectionsModel;
 import com.android.tools.profilers.network.httpdata.HttpData;
 import com.android.tools.profilers.network.httpdata.Payload;
 import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ui.JBEmptyBorder;
 import java.awt.CardLayout;
@@ -37,6 +38,8 @@ import java.awt.Dimension;
 import java.awt.LayoutManager2;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -113,7 +116,7 @@ final class HttpDataComponentFactory {
   @NotNull
   public JComponent createBodyComponent(@NotNull IdeProfilerComponents components, @NotNull ConnectionType type) {
     Payload payload = type.getPayload(myModel, myHttpData);
-    if (payload.getBytes().isEmpty()) {
+    if (payload.getSize() == 0) {
       return TabUiUtils.createHideablePanel(getBodyTitle(type), new JLabel("Not available"), null);
     }
     JComponent rawDataComponent = createRawDataComponent(payload, components);
@@ -161,6 +164,24 @@ final class HttpDataComponentFactory {
     return TabUiUtils.createHideablePanel(getBodyTitle(type), bodyComponent, northEastComponent);
   }
 
+  /**
+   * Creates a viewer which reads the payload through {@link Payload#openStream()}, so that a stored payload is decompressed as the
+   * viewer reads it, or from its bytes if the stream can't be read.
+   */
+  @NotNull
+  static DataViewer createDataViewer(@NotNull Payload payload,
+                                     @NotNull IdeProfilerComponents components,
+                                     @NotNull ContentType contentType,
+                                     @NotNull DataViewer.Style styleHint) {
+    try (InputStream stream = payload.openStream()) {
+      return components.createDataViewer(stream, contentType, styleHint);
+    }
+    catch (IOException e) {
+      Logger.getInstance(HttpDataComponentFactory.class).warn("Failed to read the network payload", e);
+      return components.createDataViewer(payload.getBytes().toByteArray(), contentType, styleHint);
+    }
+  }
+
   /**
    * Creates the raw data view of given {@link Payload}.
    * <p>
@@ -169,7 +190,7 @@ final class HttpDataComponentFactory {
   @NotNull
   private static JComponent createRawDataComponent(@NotNull Payload payload, @NotNull IdeProfilerComponents components) {
     ContentType contentType = ContentType.fromMimeType(payload.getContentType().getMimeType());
-    DataViewer viewer = components.createDataViewer(payload.getBytes().toByteArray(), contentType, DataViewer.Style.RAW);
+    DataViewer viewer = createDataViewer(payload, components, contentType, DataViewer.Style.RAW);
     JComponent viewerComponent = viewer.getComponent();
     viewerComponent.setName(ID_PAYLOAD_VIEWER);
     viewerComponent.setBorder(PAYLOAD_BORDER);
@@ -194,7 +215,7 @@ final class HttpDataComponentFactory {
     }
 
     ContentType contentType = ContentType.fromMimeType(payload.getContentType().getMimeType());
-    DataViewer viewer = components.createDataViewer(payload.getBytes().toByteArray(), contentType, DataViewer.Style.PRETTY);
+    DataViewer viewer = createDataViewer(payload, components, contentType, DataViewer.Style.PRETTY);
 
     // Just because we request a "pretty" viewer doesn't mean we'll actually get one. If we didn't,
     // that means formatting support is not provided, so return null as a way to indicate this
@@ -273,8 +273,8 @@ final class OverviewTabContent extends TabContent {
 
     Payload payload = Payload.newResponsePayload(myModel, data);
     String mimeType = payload.getContentType().getMimeType();
-    DataViewer payloadViewer = myComponents.createDataViewer(payload.getBytes().toByteArray(), ContentType.fromMimeType(mimeType),
-                                                             DataViewer.Style.PRETTY);
+    DataViewer payloadViewer = HttpDataComponentFactory.createDataViewer(payload, myComponents, ContentType.fromMimeType(mimeType),
+                                                                         DataViewer.Style.PRETTY);
     JComponent responsePayloadComponent = payloadViewer.getComponent();
     responsePayloadComponent.setName(ID_RESPONSE_PAYLOAD_VIEWER);
 
@@ -22,6 +22,7 @@ package com.android.tools.profilers;
 public interface FeatureConfig {
   boolean isAtraceEnabled();
   boolean isCpuApiTracingEnabled();
+  boolean isCpuCaptureArchiveEnabled();
   boolean isCpuCaptureStageEnabled();
   boolean isCpuNewRecordingWorkflowEnabled();
   boolean isEnergyProfilerEnabled();
@@ -29,11 +30,13 @@ public interface FeatureConfig {
   boolean isFragmentsEnabled();
   boolean isImportCpuTraceEnabled();
   boolean isJniReferenceTrackingEnabled();
+  boolean isLazyHeapDumpLoadingEnabled();
   boolean isLiveAllocationsEnabled();
   boolean isLiveAllocationsSamplingEnabled();
   boolean isMemoryCaptureFilterEnabled();
   boolean isMemorySnapshotEnabled();
   boolean isPerfettoEnabled();
+  boolean isPerfettoDirectImportEnabled();
   boolean isPerformanceMonitoringEnabled();
   boolean isAuditsEnabled();
   boolean isCustomEventVisualizationEnabled();
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.proto.Cpu;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.CppFunctionModel;
+import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
+import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import com.android.tools.profilers.cpu.nodemodel.SyscallModel;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads a {@link CpuCapture} from the archive saved for its trace file by {@link #write(CpuCapture, File)}, which is much faster than
+ * parsing the trace again.
+ * <p>
+ * Archives are kept in the system directory of the IDE rather than next to the traces, which may be in directories the user doesn't
+ * expect to be written to. They are named after the canonical path, size and modification time of their trace, so that a modified trace
+ * gets a new archive, and the least recently used archives are deleted once the directory exceeds {@link #MAX_DIRECTORY_SIZE}.
+ * <p>
+ * The archive contains the capture trees of the trace, in pre-order, with the names of their nodes in a table so that each name is stored
+ * and read once. It is memory-mapped when read. Archives of a different {@link #VERSION}, or saved before their trace file was modified,
+ * are not read, so that the trace is parsed instead.
+ * <p>
+ * Only the captures of ART and simpleperf traces are archived, as the captures of atrace and perfetto traces also have data series which
+ * are computed from their trace model.
+ */
+public final class CpuCaptureArchive implements TraceParser {
+  @VisibleForTesting static final String EXTENSION = ".archive";
+  private static final String DIRECTORY_NAME = "cpu-capture-archives";
+  @VisibleForTesting static final long MAX_DIRECTORY_SIZE = 512L << 20;
+
+  private static final int MAGIC = 0x43505541; // "CPUA"
+  @VisibleForTesting static final int VERSION = 1;
+
+  // Tags of the node models.
+  private static final byte SINGLE_NAME_MODEL = 0;
+  private static final byte JAVA_METHOD_MODEL = 1;
+  private static final byte CPP_FUNCTION_MODEL = 2;
+  private static final byte NO_SYMBOL_MODEL = 3;
+  private static final byte SYSCALL_MODEL = 4;
+
+  // Index of the strings which are null.
+  private static final int NULL_STRING = -1;
+
+  @NotNull private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees = new LinkedHashMap<>();
+  @NotNull private final Range myRange = new Range();
+  private boolean myIsDualClock;
+  @NotNull private final File myDirectory;
+
+  public CpuCaptureArchive() {
+    this(getDefaultDirectory());
+  }
+
+  @VisibleForTesting
+  CpuCaptureArchive(@NotNull File directory) {
+    myDirectory = directory;
+  }
+
+  @NotNull
+  private static File getDefaultDirectory() {
+    return new File(PathManager.getSystemPath(), DIRECTORY_NAME);
+  }
+
+  /**
+   * @return the archive of the current contents of {@code traceFile}, which may not exist.
+   */
+  @NotNull
+  public static File getArchiveFile(@NotNull File traceFile) throws IOException {
+    return getArchiveFile(traceFile, getDefaultDirectory());
+  }
+
+  @VisibleForTesting
+  @NotNull
+  static File getArchiveFile(@NotNull File traceFile, @NotNull File directory) throws IOException {
+    String key = Hashing.sha256().newHasher()
+      .putString(traceFile.getCanonicalPath(), StandardCharsets.UTF_8)
+      .putLong(traceFile.length())
+      .putLong(traceFile.lastModified())
+      .hash()
+      .toString();
+    return new File(directory, key + EXTENSION);
+  }
+
+  /**
+   * Saves the archive of a capture parsed from {@code traceFile}, then deletes the least recently used archives if there are too many.
+   *
+   * @return false if the capture can't be archived, as it is not an ART or simpleperf capture.
+   */
+  public static boolean write(@NotNull CpuCapture capture, @NotNull File traceFile) throws IOException {
+    return write(capture, traceFile, getDefaultDirectory(), MAX_DIRECTORY_SIZE);
+  }
+
+  @VisibleForTesting
+  static boolean write(@NotNull CpuCapture capture, @NotNull File traceFile, @NotNull File directory, long maxDirectorySize)
+    throws IOException {
+    if (capture.getType() != Cpu.CpuTraceType.ART && capture.getType() != Cpu.CpuTraceType.SIMPLEPERF) {
+      return false;
+    }
+
+    // Collects the strings and the size of each tree first, as they are written before the trees.
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    Map<CpuThreadInfo, CaptureNode> trees = new LinkedHashMap<>();
+    Map<CpuThreadInfo, Integer> nodeCounts = new LinkedHashMap<>();
+    for (CpuThreadInfo thread : capture.getThreads()) {
+      CaptureNode tree = capture.getCaptureNode(thread.getId());
+      if (tree == null) {
+        continue;
+      }
+      indexString(strings, thread.getName());
+      int nodeCount = 0;
+      for (CaptureNode node : preOrder(tree)) {
+        if (!indexStrings(strings, node.getData())) {
+          return false;
+        }
+        nodeCount++;
+      }
+      trees.put(thread, tree);
+      nodeCounts.put(thread, nodeCount);
+    }
+
+    // Writes a temporary file which then replaces the archive, so that an archive is either whole or missing.
+    File archiveFile = getArchiveFile(traceFile, directory);
+    Files.createDirectories(directory.toPath());
+    File temporaryFile = File.createTempFile(archiveFile.getName(), ".tmp", directory);
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(traceFile.length());
+      output.writeLong(traceFile.lastModified());
+      output.writeInt(capture.getType().getNumber());
+      output.writeBoolean(capture.isDualClock());
+      output.writeDouble(capture.getRange().getMin());
+      output.writeDouble(capture.getRange().getMax());
+
+      output.writeInt(strings.size());
+      for (String string : strings.keySet()) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+      }
+
+      output.writeInt(trees.size());
+      for (Map.Entry<CpuThreadInfo, CaptureNode> entry : trees.entrySet()) {
+        CpuThreadInfo thread = entry.getKey();
+        output.writeInt(thread.getId());
+        output.writeInt(strings.get(thread.getName()));
+        output.writeBoolean(thread.isMainThread());
+        output.writeInt(nodeCounts.get(thread));
+        for (CaptureNode node : preOrder(entry.getValue())) {
+          writeNode(output, strings, node);
+        }
+      }
+    }
+    catch (IOException e) {
+      Files.deleteIfExists(temporaryFile.toPath());
+      throw e;
+    }
+    Files.move(temporaryFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    deleteLeastRecentlyUsed(directory, maxDirectorySize);
+    return true;
+  }
+
+  /**
+   * Deletes the least recently used archives of {@code directory} until the others fit in {@code maxSize} bytes. Reading an archive
+   * updates its modification time, which orders them.
+   */
+  private static void deleteLeastRecentlyUsed(@NotNull File directory, long maxSize) {
+    File[] archives = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (archives == null) {
+      return;
+    }
+    Map<File, Long> lastModified = new HashMap<>();
+    for (File archive : archives) {
+      lastModified.put(archive, archive.lastModified());
+    }
+    Arrays.sort(archives, Comparator.comparing(lastModified::get, Comparator.reverseOrder()));
+    long size = 0;
+    for (File archive : archives) {
+      size += archive.length();
+      if (size > maxSize) {
+        FileUtil.delete(archive);
+      }
+    }
+  }
+
+  /**
+   * Reads the capture archived for {@code traceFile}.
+   *
+   * @throws IOException if there is no archive which can be read, e.g. the trace wasn't archived or was modified since.
+   */
+  @Override
+  @NotNull
+  public CpuCapture parse(@NotNull File traceFile, long traceId) throws IOException {
+    File archiveFile = getArchiveFile(traceFile, myDirectory);
+    if (!archiveFile.isFile()) {
+      throw new IOException("No archive of " + traceFile.getPath());
+    }
+    // Marks the archive as recently used, so that it is kept over the others when the directory is too large.
+    archiveFile.setLastModified(System.currentTimeMillis());
+
+    Cpu.CpuTraceType type;
+    try (FileChannel channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Archive too large to be mapped: " + archiveFile.getPath());
+      }
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Unsupported archive: " + archiveFile.getPath());
+      }
+      if (buffer.getLong() != traceFile.length() || buffer.getLong() != traceFile.lastModified()) {
+        throw new IOException("Trace modified since it was archived: " + traceFile.getPath());
+      }
+      type = Cpu.CpuTraceType.forNumber(buffer.getInt());
+      if (type == null) {
+        throw new IOException("Unsupported trace type in archive: " + archiveFile.getPath());
+      }
+      myIsDualClock = buffer.get() != 0;
+      myRange.set(buffer.getDouble(), buffer.getDouble());
+
+      String[] strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      int threadCount = buffer.getInt();
+      for (int i = 0; i < threadCount; i++) {
+        CpuThreadInfo thread = new CpuThreadInfo(buffer.getInt(), strings[buffer.getInt()], buffer.get() != 0);
+        myCaptureTrees.put(thread, readTree(buffer, strings, buffer.getInt()));
+      }
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Corrupted archive: " + archiveFile.getPath(), e);
+    }
+    return new CpuCapture(this, traceId, type);
+  }
+
+  @Override
+  public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
+    return myCaptureTrees;
+  }
+
+  @Override
+  public Range getRange() {
+    return myRange;
+  }
+
+  @Override
+  public boolean supportsDualClock() {
+    return myIsDualClock;
+  }
+
+  private static void writeNode(@NotNull DataOutputStream output, @NotNull Map<String, Integer> strings, @NotNull CaptureNode node)
+    throws IOException {
+    CaptureNodeModel model = node.getData();
+    if (model.getClass() == JavaMethodModel.class) {
+      JavaMethodModel method = (JavaMethodModel)model;
+      output.writeByte(JAVA_METHOD_MODEL);
+      output.writeInt(strings.get(method.getName()));
+      output.writeInt(strings.get(method.getClassName()));
+      output.writeInt(strings.get(method.getSignature()));
+    }
+    else if (model.getClass() == CppFunctionModel.class) {
+      CppFunctionModel function = (CppFunctionModel)model;
+      output.writeByte(CPP_FUNCTION_MODEL);
+      output.writeInt(strings.get(function.getName()));
+      output.writeInt(strings.get(function.getClassOrNamespace()));
+      output.writeInt(strings.get(getParameters(function)));
+      output.writeInt(function.getFileName() == null ? NULL_STRING : strings.get(function.getFileName()));
+      output.writeBoolean(function.isUserCode());
+      output.writeLong(function.getVAddress());
+    }
+    else {
+      output.writeByte(model.getClass() == NoSymbolModel.class ? NO_SYMBOL_MODEL :
+                       model.getClass() == SyscallModel.class ? SYSCALL_MODEL : SINGLE_NAME_MODEL);
+      output.writeInt(strings.get(model.getName()));
+    }
+    output.writeLong(node.getStartGlobal());
+    output.writeLong(node.getEndGlobal());
+    output.writeLong(node.getStartThread());
+    output.writeLong(node.getEndThread());
+    output.writeInt(node.getChildCount());
+  }
+
+  /**
+   * Reads a tree of {@code nodeCount} nodes in pre-order, which is rebuilt with a stack rather than recursively as call stacks can be deep.
+   */
+  @NotNull
+  private static CaptureNode readTree(@NotNull ByteBuffer buffer, @NotNull String[] strings, int nodeCount) throws IOException {
+    CaptureNode root = null;
+    // The nodes whose children are being read, with the number of children left to read.
+    List<CaptureNode> parents = new ArrayList<>();
+    List<Integer> childrenLeft = new ArrayList<>();
+    for (int i = 0; i < nodeCount; i++) {
+      CaptureNode node = readNode(buffer, strings);
+      int childCount = buffer.getInt();
+      if (parents.isEmpty()) {
+        if (root != null) {
+          throw new IOException("Corrupted archive tree");
+        }
+        root = node;
+        node.setDepth(0);
+      }
+      else {
+        int top = parents.size() - 1;
+        CaptureNode parent = parents.get(top);
+        parent.addChild(node);
+        node.setDepth(parent.getDepth() + 1);
+        if (childrenLeft.get(top) == 1) {
+          parents.remove(top);
+          childrenLeft.remove(top);
+        }
+        else {
+          childrenLeft.set(top, childrenLeft.get(top) - 1);
+        }
+      }
+      if (childCount > 0) {
+        parents.add(node);
+        childrenLeft.add(childCount);
+      }
+    }
+    if (root == null || !parents.isEmpty()) {
+      throw new IOException("Corrupted archive tree");
+    }
+    return root;
+  }
+
+  @NotNull
+  private static CaptureNode readNode(@NotNull ByteBuffer buffer, @NotNull String[] strings) throws IOException {
+    CaptureNodeModel model;
+    byte tag = buffer.get();
+    switch (tag) {
+      case JAVA_METHOD_MODEL:
+        model = new JavaMethodModel(strings[buffer.getInt()], strings[buffer.getInt()], strings[buffer.getInt()]);
+        break;
+      case CPP_FUNCTION_MODEL:
+        CppFunctionModel.Builder builder = new CppFunctionModel.Builder(strings[buffer.getInt()])
+          .setClassOrNamespace(strings[buffer.getInt()])
+          .setParameters(strings[buffer.getInt()]);
+        int fileName = buffer.getInt();
+        model = builder
+          .setFileName(fileName == NULL_STRING ? null : strings[fileName])
+          .setIsUserCode(buffer.get() != 0)
+          .setVAddress(buffer.getLong())
+          .build();
+        break;
+      case NO_SYMBOL_MODEL:
+        model = new NoSymbolModel(strings[buffer.getInt()]);
+        break;
+      case SYSCALL_MODEL:
+        model = new SyscallModel(strings[buffer.getInt()]);
+        break;
+      case SINGLE_NAME_MODEL:
+        model = new SingleNameModel(strings[buffer.getInt()]);
+        break;
+      default:
+        throw new IOException("Unknown node model in archive: " + tag);
+    }
+    CaptureNode node = new CaptureNode(model);
+    node.setStartGlobal(buffer.getLong());
+    node.setEndGlobal(buffer.getLong());
+    node.setStartThread(buffer.getLong());
+    node.setEndThread(buffer.getLong());
+    return node;
+  }
+
+  /**
+   * Adds the strings of a node model to the string table.
+   *
+   * @return false if the node model can't be archived.
+   */
+  private static boolean indexStrings(@NotNull Map<String, Integer> strings, @NotNull CaptureNodeModel model) {
+    if (model.getClass() == JavaMethodModel.class) {
+      JavaMethodModel method = (JavaMethodModel)model;
+      indexString(strings, method.getClassName());
+      indexString(strings, method.getSignature());
+    }
+    else if (model.getClass() == CppFunctionModel.class) {
+      CppFunctionModel function = (CppFunctionModel)model;
+      indexString(strings, function.getClassOrNamespace());
+      indexString(strings, getParameters(function));
+      indexString(strings, function.getFileName());
+    }
+    else if (model.getClass() != NoSymbolModel.class && model.getClass() != SyscallModel.class &&
+             model.getClass() != SingleNameModel.class) {
+      // Other models, e.g. the atrace ones, aren't archived.
+      return false;
+    }
+    indexString(strings, model.getName());
+    return true;
+  }
+
+  private static void indexString(@NotNull Map<String, Integer> strings, @Nullable String string) {
+    if (string != null) {
+      strings.putIfAbsent(string, strings.size());
+    }
+  }
+
+  /**
+   * @return the parameters of a function, in the form parsed by {@link CppFunctionModel.Builder#setParameters(String)}.
+   */
+  @NotNull
+  private static String getParameters(@NotNull CppFunctionModel function) {
+    return String.join(", ", function.getParameters());
+  }
+
+  /**
+   * @return the nodes of a tree in pre-order, visited lazily.
+   */
+  @NotNull
+  private static Iterable<CaptureNode> preOrder(@NotNull CaptureNode root) {
+    return () -> new Iterator<CaptureNode>() {
+      @NotNull private final Deque<CaptureNode> myStack = new ArrayDeque<>(Collections.singleton(root));
+
+      @Override
+      public boolean hasNext() {
+        return !myStack.isEmpty();
+      }
+
+      @Override
+      public CaptureNode next() {
+        CaptureNode node = myStack.pop();
+        List<CaptureNode> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+          myStack.push(children.get(i));
+        }
+        return node;
+      }
+    };
+  }
+}
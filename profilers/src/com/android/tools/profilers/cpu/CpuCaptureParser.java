@@ -232,15 +232,26 @@ public class CpuCaptureParser {
   }
 
   /**
-   * Try parsing a given {@link File} into a {@link CpuCapture} using {@link ArtTraceParser}, then {@link SimpleperfTraceParser}
+   * Try reading the {@link CpuCaptureArchive} of a given {@link File} (if archives are enabled), otherwise try parsing the file into a
+   * {@link CpuCapture} using {@link ArtTraceParser}, then {@link SimpleperfTraceParser}
    * (if simpleperf flag is enabled), then {@link AtraceParser} (if atrace flag is enabled). Return null if the file can't be parsed by any
    * of them.
    */
   private CpuCapture tryParsingFileWithDifferentParsers(File traceFile) {
+    if (myServices.getFeatureConfig().isCpuCaptureArchiveEnabled()) {
+      try {
+        // If the trace was parsed before, read its archive rather than parsing it again.
+        return new CpuCaptureArchive().parse(traceFile, IMPORTED_TRACE_ID);
+      }
+      catch (Exception ignored) {
+        // There is no archive of the trace which can be read, so it needs to be parsed.
+      }
+    }
+
     try {
       // First try parsing the trace file as an ART trace.
       ArtTraceParser artTraceParser = new ArtTraceParser();
-      return artTraceParser.parse(traceFile, IMPORTED_TRACE_ID);
+      return archive(artTraceParser.parse(traceFile, IMPORTED_TRACE_ID), traceFile);
     }
     catch (Exception ignored) {
       // We should go on and try parsing the file as a simpleperf or atrace trace.
@@ -249,7 +260,7 @@ public class CpuCaptureParser {
     try {
       // Then, try parsing the file as a simpleperf trace.
       SimpleperfTraceParser simpleperfParser = new SimpleperfTraceParser();
-      return simpleperfParser.parse(traceFile, IMPORTED_TRACE_ID);
+      return archive(simpleperfParser.parse(traceFile, IMPORTED_TRACE_ID), traceFile);
     }
     catch (Exception ignored) {
       // We should go on and try parsing the file as an atrace trace.
@@ -264,7 +275,7 @@ public class CpuCaptureParser {
           // session that can tell us which process the user is interested in. So for all imported
           // trace files we ask the user to select a process. The list of processes the user can
           // choose from is parsed from the Atrace file.
-          AtraceParser parser = new AtraceParser(traceFile);
+          AtraceParser parser = new AtraceParser(traceFile, myServices.getFeatureConfig().isPerfettoDirectImportEnabled());
           // Any process matching the application id of the current project will be sorted to
           // the top of our process list.
           CpuThreadSliceInfo[] processList = parser.getProcessList(myServices.getApplicationId());
@@ -298,6 +309,23 @@ public class CpuCaptureParser {
     return null;
   }
 
+  /**
+   * Saves the archive of a capture parsed from a trace file, if archives are enabled, so that importing the trace again is faster.
+   * Failing to save it doesn't fail the import.
+   */
+  @NotNull
+  private CpuCapture archive(@NotNull CpuCapture capture, @NotNull File traceFile) {
+    if (myServices.getFeatureConfig().isCpuCaptureArchiveEnabled()) {
+      try {
+        CpuCaptureArchive.write(capture, traceFile);
+      }
+      catch (IOException e) {
+        getLogger().warn(String.format("Failed to archive %s.", traceFile.getPath()), e);
+      }
+    }
+    return capture;
+  }
+
   /**
    * Creates a {@link CompletableFuture<CpuCapture>} from given trace bytes and the profiler type used to obtain the trace.
    * Uses {@link IdeProfilerServices#getPoolExecutor()} to create the actual {@link CpuCapture} object. Adds it to the captures map using
@@ -438,7 +466,7 @@ public class CpuCaptureParser {
         parser = new SimpleperfTraceParser();
       }
       else if (profilerType == CpuTraceType.ATRACE) {
-        parser = new AtraceParser(session.getPid());
+        parser = new AtraceParser(session.getPid(), myServices.getFeatureConfig().isPerfettoDirectImportEnabled());
       }
       else {
         throw new IllegalStateException("Trace file cannot be parsed. Profiler type (ART, simpleperf, or atrace) needs to be set.");
@@ -18,13 +18,14 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Implementers of this class should implement {@link #inMemoryDataList}, which should return all the {@link DataSeries} that would be
- * returned if {@link #getDataForRange(Range)} receives a range with maximum length.
+ * returned if {@link #getDataForRange(Range)} receives a range with maximum length, sorted by x.
  */
 abstract class InMemoryDataSeries<T> implements DataSeries<T> {
 
@@ -37,7 +38,9 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     if (seriesDataList.isEmpty()) {
       return series;
     }
-    for (int i = 0; i < seriesDataList.size() - 1; i++) {
+    // The series is sorted, so the elements before the range are skipped with a binary search, for the first element followed by an
+    // element greater than our min.
+    for (int i = Math.max(0, firstGreaterThan(seriesDataList, min) - 1); i < seriesDataList.size() - 1; i++) {
       SeriesData<T> data = seriesDataList.get(i);
       SeriesData<T> nextData = seriesDataList.get(i + 1);
       // If our series overlaps with the start of the range upto excluding the end. We add the series.
@@ -60,6 +63,24 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     return series;
   }
 
+  /**
+   * @return the index of the first element of the series greater than {@code x}, or the size of the series if there is none.
+   */
+  private static <T> int firstGreaterThan(@NotNull List<SeriesData<T>> seriesDataList, long x) {
+    int low = 0;
+    int high = seriesDataList.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (seriesDataList.get(middle).x > x) {
+        high = middle;
+      }
+      else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Returns all the {@link SeriesData} stored in memory, to be filtered by range in {@link #getDataForRange(Range)}
    */
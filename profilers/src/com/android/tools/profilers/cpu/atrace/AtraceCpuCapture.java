@@ -84,6 +84,14 @@ public class AtraceCpuCapture extends CpuCapture {
     return myParser.getFrames(filter);
   }
 
+  /**
+   * @return Index of the frames matching the filter, to look them up by time and summarize them.
+   */
+  @NotNull
+  public AtraceFrameIndex getFrameIndex(@NotNull AtraceFrameFilterConfig filter) {
+    return myParser.getFrameIndex(filter);
+  }
+
   /**
    * @return thread id of thread matching name of the render thread.
    */
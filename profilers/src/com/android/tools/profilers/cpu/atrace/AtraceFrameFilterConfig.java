@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers.cpu.atrace;
 
+import java.util.Objects;
+
 /**
  * This class defines a set of properties that are used to filter frames.
  */
@@ -56,4 +58,23 @@ public class AtraceFrameFilterConfig {
   public long getLongFrameTimingUs() {
     return myLongFrameTimingUs;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof AtraceFrameFilterConfig)) {
+      return false;
+    }
+    AtraceFrameFilterConfig other = (AtraceFrameFilterConfig)o;
+    return myThreadId == other.myThreadId &&
+           myLongFrameTimingUs == other.myLongFrameTimingUs &&
+           Objects.equals(myIdentifierRegEx, other.myIdentifierRegEx);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(myIdentifierRegEx, myThreadId, myLongFrameTimingUs);
+  }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.profilers.cpu.audits.RenderStage;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import trebuchet.model.base.SliceGroup;
+
+/**
+ * The frames of a thread matching an {@link AtraceFrameFilterConfig}, indexed in one pass when they are built by
+ * {@link AtraceFrameManager}, so that they can be looked up by time in O(log n) and summarized without going through their slices again.
+ * <p>
+ * The frames of a thread don't overlap, so both their start and end times are in ascending order.
+ */
+public final class AtraceFrameIndex {
+  private static final double SECONDS_TO_US = TimeUnit.SECONDS.toMicros(1);
+
+  /**
+   * Render stages of the slices below a frame, by slice name. Slices which are not listed here are looked into, e.g. "traversal" for its
+   * "measure", "layout" and "draw" slices, and the time of the frame which is not in any stage is {@link RenderStage#MISC_TIME}.
+   */
+  private static final Map<String, RenderStage> RENDER_STAGES = ImmutableMap.<String, RenderStage>builder()
+    .put("input", RenderStage.INPUT)
+    .put("animation", RenderStage.ANIMATION)
+    .put("measure", RenderStage.MEASURE_LAYOUT)
+    .put("layout", RenderStage.MEASURE_LAYOUT)
+    .put("draw", RenderStage.DRAW)
+    .put("Record View#draw()", RenderStage.DRAW)
+    .put("syncFrameState", RenderStage.SYNC_UPLOAD)
+    .put("flush commands", RenderStage.COMMAND_ISSUE)
+    .put("eglSwapBuffers", RenderStage.SWAP_BUFFERS)
+    .put("eglSwapBuffersWithDamageKHR", RenderStage.SWAP_BUFFERS)
+    .put("swapBuffers", RenderStage.SWAP_BUFFERS)
+    .put("queueBuffer", RenderStage.SWAP_BUFFERS)
+    .build();
+
+  private static final RenderStage[] STAGES = RenderStage.values();
+
+  @NotNull private final List<AtraceFrame> myFrames;
+  @NotNull private final List<SeriesData<AtraceFrame>> mySeries;
+  @NotNull private final long[] myStartsUs;
+  @NotNull private final long[] myEndsUs;
+  @NotNull private final long[] mySortedDurationsUs;
+  // Time spent by each frame in each render stage, indexed by stage ordinal then by frame.
+  @NotNull private final long[][] myStageDurationsUs;
+
+  AtraceFrameIndex(@NotNull List<AtraceFrame> frames) {
+    myFrames = Collections.unmodifiableList(frames);
+    List<SeriesData<AtraceFrame>> series = new ArrayList<>(frames.size() * 2);
+    myStartsUs = new long[frames.size()];
+    myEndsUs = new long[frames.size()];
+    mySortedDurationsUs = new long[frames.size()];
+    myStageDurationsUs = new long[STAGES.length][frames.size()];
+
+    for (int i = 0; i < frames.size(); i++) {
+      AtraceFrame frame = frames.get(i);
+      myStartsUs[i] = frame.getStartUs();
+      myEndsUs[i] = frame.getEndUs();
+      mySortedDurationsUs[i] = frame.getDurationUs();
+      indexRenderStages(frame, i);
+
+      // Gaps between frames are filled with empty frames, so that the UI knows where frames end.
+      series.add(new SeriesData<>(myStartsUs[i], frame));
+      if (i + 1 == frames.size() || frame.getTotalRangeSeconds().getMax() < frames.get(i + 1).getTotalRangeSeconds().getMin()) {
+        series.add(new SeriesData<>(myEndsUs[i], AtraceFrame.EMPTY));
+      }
+    }
+    mySeries = Collections.unmodifiableList(series);
+    Arrays.sort(mySortedDurationsUs);
+  }
+
+  /**
+   * @return the frames, in ascending start time order.
+   */
+  @NotNull
+  public List<AtraceFrame> getFrames() {
+    return myFrames;
+  }
+
+  /**
+   * @return the frames as a series sorted by start time, where each frame which isn't immediately followed by another is followed by an
+   * {@link AtraceFrame#EMPTY} frame at its end time.
+   */
+  @NotNull
+  public List<SeriesData<AtraceFrame>> getSeries() {
+    return mySeries;
+  }
+
+  /**
+   * @return the index of the frame which contains {@code timeUs}, or -1 if there is none.
+   */
+  public int findFrame(long timeUs) {
+    // The last frame which starts at or before the time.
+    int index = upperBound(myStartsUs, timeUs) - 1;
+    return index >= 0 && myEndsUs[index] >= timeUs ? index : -1;
+  }
+
+  /**
+   * @return the frames which intersect [minUs..maxUs], in ascending start time order.
+   */
+  @NotNull
+  public List<AtraceFrame> getFrames(long minUs, long maxUs) {
+    int from = lowerBound(myEndsUs, minUs);
+    int to = upperBound(myStartsUs, maxUs);
+    return from < to ? myFrames.subList(from, to) : Collections.emptyList();
+  }
+
+  /**
+   * @return the duration which {@code percentile} percent of the frames don't exceed, e.g. the median for 50, or 0 if there are no frames.
+   */
+  public long getDurationPercentileUs(double percentile) {
+    if (mySortedDurationsUs.length == 0) {
+      return 0;
+    }
+    int rank = (int)Math.ceil(percentile / 100 * mySortedDurationsUs.length);
+    return mySortedDurationsUs[Math.max(0, Math.min(mySortedDurationsUs.length - 1, rank - 1))];
+  }
+
+  /**
+   * @return the number of frames which are longer than {@code durationUs}.
+   */
+  public int countFramesLongerThan(long durationUs) {
+    return mySortedDurationsUs.length - upperBound(mySortedDurationsUs, durationUs);
+  }
+
+  /**
+   * @return the time spent by the frame at {@code frameIndex} in each render stage.
+   */
+  @NotNull
+  public Map<RenderStage, Long> getRenderStageDurationsUs(int frameIndex) {
+    Map<RenderStage, Long> durations = new EnumMap<>(RenderStage.class);
+    for (RenderStage stage : STAGES) {
+      durations.put(stage, myStageDurationsUs[stage.ordinal()][frameIndex]);
+    }
+    return durations;
+  }
+
+  private void indexRenderStages(@NotNull AtraceFrame frame, int frameIndex) {
+    List<SliceGroup> slices = new ArrayList<>();
+    for (SliceGroup slice : frame.getSlices()) {
+      slices.addAll(slice.getChildren());
+    }
+    long stagesUs = 0;
+    while (!slices.isEmpty()) {
+      SliceGroup slice = slices.remove(slices.size() - 1);
+      RenderStage stage = RENDER_STAGES.get(slice.getName());
+      if (stage == null) {
+        slices.addAll(slice.getChildren());
+      }
+      else {
+        long durationUs = (long)(SECONDS_TO_US * (slice.getEndTime() - slice.getStartTime()));
+        myStageDurationsUs[stage.ordinal()][frameIndex] += durationUs;
+        stagesUs += durationUs;
+      }
+    }
+    myStageDurationsUs[RenderStage.MISC_TIME.ordinal()][frameIndex] = Math.max(0, frame.getDurationUs() - stagesUs);
+  }
+
+  /**
+   * @return the index of the first value which is greater or equal to {@code key}, or the length of {@code values} if there is none.
+   */
+  private static int lowerBound(@NotNull long[] values, long key) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (values[middle] < key) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first value which is greater than {@code key}, or the length of {@code values} if there is none.
+   */
+  private static int upperBound(@NotNull long[] values, long key) {
+    return key == Long.MAX_VALUE ? values.length : lowerBound(values, key + 1);
+  }
+}
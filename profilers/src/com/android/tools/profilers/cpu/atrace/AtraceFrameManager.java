@@ -23,12 +23,15 @@ import trebuchet.model.ProcessModel;
 import trebuchet.model.ThreadModel;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
 
 /**
- * This class builds {@link AtraceFrame} using a {@link AtraceFrameFilterConfig}
+ * This class builds {@link AtraceFrame} using a {@link AtraceFrameFilterConfig}, and keeps an {@link AtraceFrameIndex} of the frames of
+ * each filter.
  */
 public class AtraceFrameManager {
 
@@ -43,8 +46,10 @@ public class AtraceFrameManager {
 
   private final int myRenderThreadId;
 
-  private final List<AtraceFrame> myMainThreadFrames;
-  private final List<AtraceFrame> myRenderThreadFrames;
+  /**
+   * Index of the frames matching each filter which was requested, starting with the frames of the main and render threads.
+   */
+  private final Map<AtraceFrameFilterConfig, AtraceFrameIndex> myFrameIndexes = new HashMap<>();
 
   /**
    * Constructs a default manager, the constructor finds the main thread and will assert if one is not found.
@@ -57,24 +62,28 @@ public class AtraceFrameManager {
     myBootClockSecondsToMonoUs = bootClockSecondsToMonoUs;
     myProcessModel = process;
     myRenderThreadId = renderThreadId;
-    myMainThreadFrames =
+    List<AtraceFrame> mainThreadFrames =
       getFramesList(AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS, myProcessModel.getId(), CpuFramesModel.SLOW_FRAME_RATE_US,
                     AtraceFrame.FrameThread.MAIN);
-    myRenderThreadFrames =
+    List<AtraceFrame> renderThreadFrames =
       getFramesList(AtraceFrameFilterConfig.APP_RENDER_THREAD_FRAME_ID_MPLUS, myRenderThreadId, CpuFramesModel.SLOW_FRAME_RATE_US,
                     AtraceFrame.FrameThread.RENDER);
-    findAssociatedFrames();
+    findAssociatedFrames(mainThreadFrames, renderThreadFrames);
+    myFrameIndexes.put(new AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS, myProcessModel.getId(),
+                                                   CpuFramesModel.SLOW_FRAME_RATE_US), new AtraceFrameIndex(mainThreadFrames));
+    myFrameIndexes.put(new AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_RENDER_THREAD_FRAME_ID_MPLUS, myRenderThreadId,
+                                                   CpuFramesModel.SLOW_FRAME_RATE_US), new AtraceFrameIndex(renderThreadFrames));
   }
 
   /**
    * Finds main thread and render thread frames that are associated with each other and adds a link to each one in the other.
    */
-  private void findAssociatedFrames() {
+  private static void findAssociatedFrames(@NotNull List<AtraceFrame> mainThreadFrames, @NotNull List<AtraceFrame> renderThreadFrames) {
     int mainFramesIterator = 0, renderFramesIterator = 0;
 
-    while (mainFramesIterator < myMainThreadFrames.size() && renderFramesIterator < myRenderThreadFrames.size()) {
-      AtraceFrame mainThreadFrame = myMainThreadFrames.get(mainFramesIterator);
-      AtraceFrame renderThreadFrame = myRenderThreadFrames.get(renderFramesIterator);
+    while (mainFramesIterator < mainThreadFrames.size() && renderFramesIterator < renderThreadFrames.size()) {
+      AtraceFrame mainThreadFrame = mainThreadFrames.get(mainFramesIterator);
+      AtraceFrame renderThreadFrame = renderThreadFrames.get(renderFramesIterator);
       if (renderThreadFrame == AtraceFrame.EMPTY || renderThreadFrame.getEndUs() < mainThreadFrame.getEndUs()) {
         renderFramesIterator++;
       }
@@ -118,21 +127,18 @@ public class AtraceFrameManager {
    */
   @NotNull
   public List<AtraceFrame> buildFramesList(@NotNull AtraceFrameFilterConfig filter) {
-    if (filter.getThreadId() == myProcessModel.getId() &&
-        filter.getIdentifierRegEx() == AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS &&
-        filter.getLongFrameTimingUs() ==
-        CpuFramesModel.SLOW_FRAME_RATE_US) {
-      return myMainThreadFrames;
-    }
-    if (filter.getThreadId() == myRenderThreadId &&
-        filter.getIdentifierRegEx() == AtraceFrameFilterConfig.APP_RENDER_THREAD_FRAME_ID_MPLUS &&
-        filter.getLongFrameTimingUs() ==
-        CpuFramesModel.SLOW_FRAME_RATE_US) {
-      return myRenderThreadFrames;
-    }
-    return getFramesList(filter.getIdentifierRegEx(), filter.getThreadId(), filter.getLongFrameTimingUs(),
-                         filter.getThreadId() == myProcessModel.getId()
-                         ? AtraceFrame.FrameThread.MAIN
-                         : (filter.getThreadId() == myRenderThreadId ? AtraceFrame.FrameThread.RENDER : AtraceFrame.FrameThread.OTHER));
+    return getFrameIndex(filter).getFrames();
+  }
+
+  /**
+   * @return the index of the frames that match the given filter, which is built the first time the filter is used.
+   */
+  @NotNull
+  public synchronized AtraceFrameIndex getFrameIndex(@NotNull AtraceFrameFilterConfig filter) {
+    return myFrameIndexes.computeIfAbsent(filter, key -> new AtraceFrameIndex(
+      getFramesList(key.getIdentifierRegEx(), key.getThreadId(), key.getLongFrameTimingUs(),
+                    key.getThreadId() == myProcessModel.getId()
+                    ? AtraceFrame.FrameThread.MAIN
+                    : (key.getThreadId() == myRenderThreadId ? AtraceFrame.FrameThread.RENDER : AtraceFrame.FrameThread.OTHER))));
   }
 }
@@ -96,6 +96,10 @@ public class AtraceParser implements TraceParser {
   private final List<SeriesData<Long>> myCpuUtilizationSeries;
 
   private int myProcessId;
+  /**
+   * Whether perfetto traces are imported with {@link PerfettoModelImporter} rather than through their systrace lines.
+   */
+  private final boolean myImportPerfettoDirectly;
   /**
    * The device boot time captured at the beginning of the trace.
    */
@@ -112,7 +116,15 @@ public class AtraceParser implements TraceParser {
    * to be called before parse.
    */
   public AtraceParser(@NotNull File file) throws IOException {
-    this(INVALID_PROCESS);
+    this(file, false);
+  }
+
+  /**
+   * @see #AtraceParser(File)
+   * @param importPerfettoDirectly whether perfetto traces are imported with {@link PerfettoModelImporter}
+   */
+  public AtraceParser(@NotNull File file, boolean importPerfettoDirectly) throws IOException {
+    this(INVALID_PROCESS, importPerfettoDirectly);
     parseModelIfNeeded(file);
   }
 
@@ -121,7 +133,16 @@ public class AtraceParser implements TraceParser {
    * and expects parse with the proper file to be called.
    */
   public AtraceParser(int processId) {
+    this(processId, false);
+  }
+
+  /**
+   * @see #AtraceParser(int)
+   * @param importPerfettoDirectly whether perfetto traces are imported with {@link PerfettoModelImporter}
+   */
+  public AtraceParser(int processId, boolean importPerfettoDirectly) {
     myProcessId = processId;
+    myImportPerfettoDirectly = importPerfettoDirectly;
     myCaptureTreeNodes = new HashMap<>();
     myThreadStateData = new HashMap<>();
     myCpuSchedulingToCpuData = new HashMap<>();
@@ -152,19 +173,19 @@ public class AtraceParser implements TraceParser {
    */
   private void parseModelIfNeeded(@NotNull File file) throws IOException {
     if (myModel == null) {
-      TrebuchetBufferProducer producer;
-      if (AtraceProducer.verifyFileHasAtraceHeader(file)) {
-        producer = new AtraceProducer();
+      boolean isAtrace = AtraceProducer.verifyFileHasAtraceHeader(file);
+      if (!isAtrace && myImportPerfettoDirectly) {
+        // Perfetto traces are imported directly, without converting them to systrace lines first.
+        myModel = PerfettoModelImporter.importModel(file, new PrintlnImportFeedback());
       }
       else {
-        producer = new PerfettoProducer();
-      }
-      if (!producer.parseFile(file)) {
-        throw new IOException("Failed to parse file: " + file.getAbsolutePath());
+        TrebuchetBufferProducer producer = isAtrace ? new AtraceProducer() : new PerfettoProducer();
+        if (!producer.parseFile(file)) {
+          throw new IOException("Failed to parse file: " + file.getAbsolutePath());
+        }
+        ImportTask task = new ImportTask(new PrintlnImportFeedback());
+        myModel = task.importBuffer(producer);
       }
-
-      ImportTask task = new ImportTask(new PrintlnImportFeedback());
-      myModel = task.importBuffer(producer);
       // We check if we have a parent timestamp. If not this could be from an imported trace.
       // In the case it is 0, we use the first timestamp of our capture as a reference point.
       if (Double.compare(myModel.getParentTimestamp(), 0.0) == 0) {
@@ -305,30 +326,15 @@ public class AtraceParser implements TraceParser {
    */
   @NotNull
   public List<SeriesData<AtraceFrame>> getFrames(AtraceFrameFilterConfig filter) {
-    List<SeriesData<AtraceFrame>> framesSeries = new ArrayList<>();
-    List<AtraceFrame> framesList = myFrameInfo.buildFramesList(filter);
-    // Look at each frame converting them to series data.
-    // The last frame is handled outside the for loop as we need to add an entry for the frame as well as an entry for the frame ending.
-    // Single frames are handled in the last frame case.
-    for (int i = 1; i < framesList.size(); i++) {
-      AtraceFrame current = framesList.get(i);
-      AtraceFrame past = framesList.get(i - 1);
-      framesSeries.add(new SeriesData<>(convertToUserTimeUs(past.getTotalRangeSeconds().getMin()), past));
-
-      // Need to get the time delta between two frames.
-      // If we have a gap then we add an empty frame to signify to the UI that nothing should be rendered.
-      if (past.getTotalRangeSeconds().getMax() < current.getTotalRangeSeconds().getMin()) {
-        framesSeries.add(new SeriesData<>(convertToUserTimeUs(past.getTotalRangeSeconds().getMax()), AtraceFrame.EMPTY));
-      }
-    }
+    return myFrameInfo.getFrameIndex(filter).getSeries();
+  }
 
-    // Always add the last frame, and a null frame following to properly setup the series for the UI.
-    if (!framesList.isEmpty()) {
-      AtraceFrame lastFrame = framesList.get(framesList.size() - 1);
-      framesSeries.add(new SeriesData<>(convertToUserTimeUs(lastFrame.getTotalRangeSeconds().getMin()), lastFrame));
-      framesSeries.add(new SeriesData<>(convertToUserTimeUs(lastFrame.getTotalRangeSeconds().getMax()), AtraceFrame.EMPTY));
-    }
-    return framesSeries;
+  /**
+   * @return the index of the frames matching the given filter.
+   */
+  @NotNull
+  public AtraceFrameIndex getFrameIndex(@NotNull AtraceFrameFilterConfig filter) {
+    return myFrameInfo.getFrameIndex(filter);
   }
 
   /**
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import static com.android.tools.profilers.cpu.atrace.PerfettoProducer.nanosToSeconds;
+import static trebuchet.model.ConstantsKt.InvalidId;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.protobuf.CodedInputStream;
+import com.android.tools.idea.protobuf.ExtensionRegistryLite;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import perfetto.protos.PerfettoTrace;
+import trebuchet.importers.ImportFeedback;
+import trebuchet.importers.ftrace.FtraceEventImporter;
+import trebuchet.model.Model;
+import trebuchet.model.SchedulingState;
+
+/**
+ * Builds a trebuchet {@link Model} directly from a perfetto trace. Unlike {@link PerfettoProducer}, which formats each ftrace event as a
+ * systrace line, sorts the lines in a database and parses them back, the decoded events are handed to a {@link FtraceEventImporter}.
+ *
+ * Trebuchet requires events in timestamp order. Perfetto records the ftrace events of each CPU in bundles which are already in timestamp
+ * order, so instead of sorting all the events of the trace, consecutive bundles of each CPU are appended to sorted runs, and the runs are
+ * merged while importing. The file is read once: thread names and thread groups, which are only known at the end, are looked up when the
+ * merged events are imported. The clock sync of the trace is imported among the events, at its boot time, as systrace lines would be.
+ *
+ * The runs don't keep a String per event: the thread names of sched events, which repeat a lot, are indices in a table shared by the
+ * runs, and the buffers of print events are kept as the UTF-8 bytes they are recorded in, until their event is imported.
+ */
+public final class PerfettoModelImporter {
+  private static final byte SCHED_SWITCH = 0;
+  private static final byte SCHED_WAKEUP = 1;
+  private static final byte PRINT = 2;
+
+  // Bits of the kernel task state recorded as the prev_state of sched_switch events. These are the bits the kernel prints as letters in
+  // text traces, which SchedParser maps to scheduling states.
+  private static final long TASK_INTERRUPTIBLE = 1;
+  private static final long TASK_UNINTERRUPTIBLE = 2;
+  private static final long TASK_STOPPED = 4;
+  private static final long TASK_TRACED = 8;
+  private static final long EXIT_DEAD = 16;
+  private static final long EXIT_ZOMBIE = 32;
+  private static final long TASK_DEAD = 64;
+  private static final long TASK_WAKEKILL = 128;
+  private static final long TASK_WAKING = 256;
+  // Set instead of a state when the task was preempted while running.
+  private static final long TASK_STATE_MAX = 2048;
+
+  private PerfettoModelImporter() {
+  }
+
+  /**
+   * Reads the perfetto trace in the given file into a trebuchet model.
+   */
+  @NotNull
+  public static Model importModel(@NotNull File file, @NotNull ImportFeedback feedback) throws IOException {
+    ExtensionRegistryLite packetRegistry = PerfettoProducer.createPacketRegistry();
+    PerfettoProducer.TraceMetadata metadata = new PerfettoProducer.TraceMetadata();
+    RunCollector runs = new RunCollector();
+    try (FileInputStream fileStream = new FileInputStream(file)) {
+      CodedInputStream inputStream = CodedInputStream.newInstance(fileStream);
+      PerfettoTrace.TracePacket packet;
+      while ((packet = PerfettoProducer.readOnePacket(inputStream, packetRegistry)) != null) {
+        metadata.addPacket(packet);
+        if (packet.hasFtraceEvents()) {
+          runs.addBundle(packet.getFtraceEvents());
+        }
+      }
+    }
+
+    FtraceEventImporter importer = new FtraceEventImporter(feedback);
+    PerfettoTrace.ClockSnapshot clockSnapshot = metadata.clockSyncPacket != null ? metadata.clockSyncPacket.getClockSnapshot() : null;
+    importEvents(runs.finish(), metadata, clockSnapshot, importer);
+    return new Model(Collections.singletonList(importer.finish()));
+  }
+
+  /**
+   * Imports the mono and real time clocks of the snapshot, which are used to align the ftrace timestamps with timestamps from studio.
+   */
+  private static void importClockSync(@NotNull PerfettoTrace.ClockSnapshot snapshot, @NotNull FtraceEventImporter importer) {
+    PerfettoTrace.ClockSnapshot.Clock monotonicClock = findClock(snapshot, PerfettoTrace.ClockSnapshot.Clock.Type.MONOTONIC);
+    PerfettoTrace.ClockSnapshot.Clock realtimeClock = findClock(snapshot, PerfettoTrace.ClockSnapshot.Clock.Type.REALTIME);
+    PerfettoTrace.ClockSnapshot.Clock boottimeClock = findClock(snapshot, PerfettoTrace.ClockSnapshot.Clock.Type.BOOTTIME);
+    if (monotonicClock == null || realtimeClock == null || boottimeClock == null) {
+      return;
+    }
+    importer.clockSync(nanosToSeconds(boottimeClock.getTimestamp()),
+                       nanosToSeconds(monotonicClock.getTimestamp()),
+                       TimeUnit.NANOSECONDS.toMillis(realtimeClock.getTimestamp()));
+  }
+
+  /**
+   * Returns the last clock of the given type in the snapshot, or null if it has none.
+   */
+  @Nullable
+  private static PerfettoTrace.ClockSnapshot.Clock findClock(@NotNull PerfettoTrace.ClockSnapshot snapshot,
+                                                             @NotNull PerfettoTrace.ClockSnapshot.Clock.Type type) {
+    PerfettoTrace.ClockSnapshot.Clock result = null;
+    for (PerfettoTrace.ClockSnapshot.Clock clock : snapshot.getClocksList()) {
+      if (clock.getType() == type) {
+        result = clock;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Merges the sorted runs and imports their events in timestamp order. Events with the same timestamp are imported in the order they
+   * were recorded. The clock sync, if any, is imported after the events up to its boot time, as trebuchet requires all its events in
+   * timestamp order.
+   */
+  private static void importEvents(@NotNull List<EventRun> runs,
+                                   @NotNull PerfettoProducer.TraceMetadata metadata,
+                                   @Nullable PerfettoTrace.ClockSnapshot clockSnapshot,
+                                   @NotNull FtraceEventImporter importer) {
+    PerfettoTrace.ClockSnapshot.Clock boottimeClock =
+      clockSnapshot != null ? findClock(clockSnapshot, PerfettoTrace.ClockSnapshot.Clock.Type.BOOTTIME) : null;
+    boolean clockSyncPending = boottimeClock != null;
+    long clockSyncTimestamp = clockSyncPending ? boottimeClock.getTimestamp() : Long.MAX_VALUE;
+
+    PriorityQueue<EventRun> queue = new PriorityQueue<>(
+      Math.max(1, runs.size()),
+      Comparator.comparingLong(EventRun::peekTimestamp).thenComparingInt(run -> run.myOrder));
+    for (EventRun run : runs) {
+      if (run.hasNext()) {
+        queue.add(run);
+      }
+    }
+    while (!queue.isEmpty()) {
+      EventRun run = queue.poll();
+      if (clockSyncPending && run.peekTimestamp() > clockSyncTimestamp) {
+        importClockSync(clockSnapshot, importer);
+        clockSyncPending = false;
+      }
+      // Keep importing from the same run while it stays ahead of the others and of the clock sync, which avoids a queue operation per
+      // event.
+      EventRun other = queue.peek();
+      long end = clockSyncPending ? clockSyncTimestamp : Long.MAX_VALUE;
+      do {
+        run.importNext(metadata, importer);
+      }
+      while (run.hasNext() && (other == null || run.peekTimestamp() < other.peekTimestamp()) && run.peekTimestamp() <= end);
+      if (run.hasNext()) {
+        queue.add(run);
+      }
+    }
+    if (clockSyncPending) {
+      importClockSync(clockSnapshot, importer);
+    }
+  }
+
+  /**
+   * Returns the scheduling state of a thread switched out with the given prev_state, as SchedParser does for text traces.
+   */
+  @NotNull
+  static SchedulingState toSchedulingState(long prevState) {
+    if (prevState == 0 || (prevState & TASK_STATE_MAX) != 0) {
+      return SchedulingState.RUNNABLE;
+    }
+    if ((prevState & TASK_INTERRUPTIBLE) != 0) {
+      return SchedulingState.SLEEPING;
+    }
+    if ((prevState & TASK_UNINTERRUPTIBLE) != 0) {
+      if ((prevState & TASK_WAKEKILL) != 0) {
+        return SchedulingState.UNINTR_SLEEP_WAKE_KILL;
+      }
+      if ((prevState & TASK_WAKING) != 0) {
+        return SchedulingState.UNINTR_SLEEP_WAKING;
+      }
+      return SchedulingState.UNINTR_SLEEP;
+    }
+    if ((prevState & TASK_STOPPED) != 0) {
+      return SchedulingState.STOPPED;
+    }
+    if ((prevState & TASK_TRACED) != 0) {
+      return SchedulingState.DEBUG;
+    }
+    if ((prevState & EXIT_DEAD) != 0) {
+      return SchedulingState.EXIT_DEAD;
+    }
+    if ((prevState & EXIT_ZOMBIE) != 0) {
+      return SchedulingState.ZOMBIE;
+    }
+    if ((prevState & TASK_DEAD) != 0) {
+      return SchedulingState.TASK_DEAD;
+    }
+    if ((prevState & TASK_WAKEKILL) != 0) {
+      return SchedulingState.WAKE_KILL;
+    }
+    if ((prevState & TASK_WAKING) != 0) {
+      return SchedulingState.WAKING;
+    }
+    return SchedulingState.UNKNOWN;
+  }
+
+  /**
+   * Appends the supported events of each CPU to sorted runs, starting a new run when a bundle starts before the end of the current run of
+   * its CPU.
+   */
+  private static final class RunCollector {
+    private final Map<Integer, EventRun> myCurrentRuns = new HashMap<>();
+    private final List<EventRun> myRuns = new ArrayList<>();
+    private final NameTable myNames = new NameTable();
+
+    void addBundle(@NotNull PerfettoTrace.FtraceEventBundle bundle) {
+      List<PerfettoTrace.FtraceEvent> events = new ArrayList<>(bundle.getEventCount());
+      for (PerfettoTrace.FtraceEvent event : bundle.getEventList()) {
+        if (PerfettoProducer.IS_SUPPORTED_EVENT.apply(event)) {
+          events.add(event);
+        }
+      }
+      if (events.isEmpty()) {
+        return;
+      }
+      if (!isSorted(events)) {
+        // List.sort is stable, so events with the same timestamp stay in the order they were recorded.
+        events.sort(Comparator.comparingLong(PerfettoTrace.FtraceEvent::getTimestamp));
+      }
+
+      EventRun run = myCurrentRuns.get(bundle.getCpu());
+      if (run == null || run.lastTimestamp() > events.get(0).getTimestamp()) {
+        run = new EventRun(bundle.getCpu(), myRuns.size(), myNames);
+        myRuns.add(run);
+        myCurrentRuns.put(bundle.getCpu(), run);
+      }
+      for (PerfettoTrace.FtraceEvent event : events) {
+        run.add(event);
+      }
+    }
+
+    @NotNull
+    List<EventRun> finish() {
+      myCurrentRuns.clear();
+      return myRuns;
+    }
+
+    private static boolean isSorted(@NotNull List<PerfettoTrace.FtraceEvent> events) {
+      for (int i = 1; i < events.size(); i++) {
+        if (events.get(i - 1).getTimestamp() > events.get(i).getTimestamp()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The distinct thread names of the sched events of a trace, which events refer to by index.
+   */
+  private static final class NameTable {
+    private final Map<String, Integer> myIndices = new HashMap<>();
+    private final List<String> myNames = new ArrayList<>();
+
+    int indexOf(@NotNull String name) {
+      return myIndices.computeIfAbsent(name, key -> {
+        myNames.add(key);
+        return myNames.size() - 1;
+      });
+    }
+
+    @NotNull
+    String get(int index) {
+      return myNames.get(index);
+    }
+  }
+
+  /**
+   * Events of a CPU in timestamp order. Only the fields trebuchet uses are kept, in parallel arrays, as there can be millions of events.
+   */
+  private static final class EventRun {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int myCpu;
+    /**
+     * The position of the run in the trace, used to keep the order events were recorded in when they have the same timestamp.
+     */
+    private final int myOrder;
+    @NotNull private final NameTable myNames;
+
+    private long[] myTimestamps = new long[INITIAL_CAPACITY];
+    private byte[] myTypes = new byte[INITIAL_CAPACITY];
+    private int[] myPids = new int[INITIAL_CAPACITY];
+    // Previous pid of sched_switch events, pid of the woken up thread of sched_wakeup events, offset of the buffer of print events in
+    // myPrintBuffers.
+    private int[] myFirstPids = new int[INITIAL_CAPACITY];
+    // Next pid of sched_switch events, length of the buffer of print events.
+    private int[] mySecondPids = new int[INITIAL_CAPACITY];
+    private long[] myPrevStates = new long[INITIAL_CAPACITY];
+    // Index in myNames of the previous comm of sched_switch events, and of the comm of the woken up thread of sched_wakeup events.
+    private int[] myFirstNames = new int[INITIAL_CAPACITY];
+    // Index in myNames of the next comm of sched_switch events.
+    private int[] mySecondNames = new int[INITIAL_CAPACITY];
+    // The UTF-8 buffers of the print events, one after the other.
+    private byte[] myPrintBuffers = new byte[INITIAL_CAPACITY * 16];
+    private int myPrintBuffersSize;
+    private int mySize;
+    private int myNext;
+
+    EventRun(int cpu, int order, @NotNull NameTable names) {
+      myCpu = cpu;
+      myOrder = order;
+      myNames = names;
+    }
+
+    void add(@NotNull PerfettoTrace.FtraceEvent event) {
+      if (mySize == myTimestamps.length) {
+        int capacity = mySize * 2;
+        myTimestamps = Arrays.copyOf(myTimestamps, capacity);
+        myTypes = Arrays.copyOf(myTypes, capacity);
+        myPids = Arrays.copyOf(myPids, capacity);
+        myFirstPids = Arrays.copyOf(myFirstPids, capacity);
+        mySecondPids = Arrays.copyOf(mySecondPids, capacity);
+        myPrevStates = Arrays.copyOf(myPrevStates, capacity);
+        myFirstNames = Arrays.copyOf(myFirstNames, capacity);
+        mySecondNames = Arrays.copyOf(mySecondNames, capacity);
+      }
+      int i = mySize++;
+      myTimestamps[i] = event.getTimestamp();
+      myPids[i] = event.getPid();
+      if (event.hasSchedSwitch()) {
+        PerfettoTrace.SchedSwitchFtraceEvent schedSwitch = event.getSchedSwitch();
+        myTypes[i] = SCHED_SWITCH;
+        myFirstPids[i] = schedSwitch.getPrevPid();
+        mySecondPids[i] = schedSwitch.getNextPid();
+        myPrevStates[i] = schedSwitch.getPrevState();
+        myFirstNames[i] = myNames.indexOf(schedSwitch.getPrevComm());
+        mySecondNames[i] = myNames.indexOf(schedSwitch.getNextComm());
+      }
+      else if (event.hasSchedWakeup()) {
+        myTypes[i] = SCHED_WAKEUP;
+        myFirstPids[i] = event.getSchedWakeup().getPid();
+        myFirstNames[i] = myNames.indexOf(event.getSchedWakeup().getComm());
+      }
+      else if (event.hasSchedWaking()) {
+        myTypes[i] = SCHED_WAKEUP;
+        myFirstPids[i] = event.getSchedWaking().getPid();
+        myFirstNames[i] = myNames.indexOf(event.getSchedWaking().getComm());
+      }
+      else {
+        myTypes[i] = PRINT;
+        ByteString buffer = event.getPrint().getBufBytes();
+        if (myPrintBuffersSize + buffer.size() > myPrintBuffers.length) {
+          myPrintBuffers = Arrays.copyOf(myPrintBuffers, Math.max(myPrintBuffers.length * 2, myPrintBuffersSize + buffer.size()));
+        }
+        buffer.copyTo(myPrintBuffers, 0, myPrintBuffersSize, buffer.size());
+        myFirstPids[i] = myPrintBuffersSize;
+        mySecondPids[i] = buffer.size();
+        myPrintBuffersSize += buffer.size();
+      }
+    }
+
+    long lastTimestamp() {
+      return myTimestamps[mySize - 1];
+    }
+
+    boolean hasNext() {
+      return myNext < mySize;
+    }
+
+    long peekTimestamp() {
+      return myTimestamps[myNext];
+    }
+
+    void importNext(@NotNull PerfettoProducer.TraceMetadata metadata, @NotNull FtraceEventImporter importer) {
+      int i = myNext++;
+      double timestamp = nanosToSeconds(myTimestamps[i]);
+      int pid = myPids[i];
+      int tgid = metadata.tidToTgid.getOrDefault(pid, InvalidId);
+      String task = metadata.tidToName.get(pid);
+      switch (myTypes[i]) {
+        case SCHED_SWITCH:
+          importer.schedSwitch(timestamp, myCpu, pid, tgid, task, myFirstPids[i], myNames.get(myFirstNames[i]),
+                               toSchedulingState(myPrevStates[i]), mySecondPids[i], myNames.get(mySecondNames[i]));
+          break;
+        case SCHED_WAKEUP:
+          importer.schedWakeup(timestamp, pid, tgid, task, myFirstPids[i], myNames.get(myFirstNames[i]));
+          break;
+        default:
+          String buffer = new String(myPrintBuffers, myFirstPids[i], mySecondPids[i], StandardCharsets.UTF_8);
+          importer.tracingMarkWrite(timestamp, pid, tgid, task, buffer.replace("\n", ""));
+          break;
+      }
+      if (myNext == mySize) {
+        // Release the buffers of the run once it is imported, the model only keeps the strings it needs.
+        myPrintBuffers = new byte[0];
+      }
+    }
+  }
+}
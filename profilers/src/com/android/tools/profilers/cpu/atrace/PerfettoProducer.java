@@ -43,7 +43,7 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
   private static final String FTRACE_HEADER = "# tracer: nop";
   // Supported events are events that we know how to convert from perfetto format to systrace format.
   // The current set of supported events are the only events that we need as they are the only events that trebuchet supports.
-  private static final Predicate<PerfettoTrace.FtraceEvent> IS_SUPPORTED_EVENT = event ->
+  static final Predicate<PerfettoTrace.FtraceEvent> IS_SUPPORTED_EVENT = event ->
     event.hasSchedSwitch() ||
     event.hasSchedWakeup() ||
     event.hasSchedWaking() ||
@@ -53,12 +53,12 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
   private final ArrayDeque<String> myGeneratedTrebuchetLines = new ArrayDeque<>();
   private final PerfettoPacketDBSorter mySorter = new PerfettoPacketDBSorter();
 
-  private static double nanosToSeconds(double nanos) {
+  static double nanosToSeconds(double nanos) {
     return nanos / TimeUnit.SECONDS.toNanos(1);
 
   }
 
-  private static double nanosToMillis(double nanos) {
+  static double nanosToMillis(double nanos) {
     return nanos / TimeUnit.MILLISECONDS.toNanos(1);
   }
 
@@ -92,7 +92,8 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
    *
    * @return Null is returned for end of stream, otherwise a trace packet is returned.
    */
-  private static PerfettoTrace.TracePacket readOnePacket(CodedInputStream stream, ExtensionRegistryLite packetRegistry) {
+  @Nullable
+  static PerfettoTrace.TracePacket readOnePacket(CodedInputStream stream, ExtensionRegistryLite packetRegistry) {
     try {
       // Coded Input Streams by default only let you read in 64KB of data from one proto message. Because our root level proto message is
       // greater than this we need to reset the size counter each time we read a new packet.
@@ -135,25 +136,24 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
     }
   }
 
-  private void convertToTraceLines(File file) throws IOException {
-    Map<Integer, Integer> myTidToTgid = new HashMap<>();
-    Map<Integer, String> myTidToName = new HashMap<>();
-
-    // Add a special case name for thread id 0.
-    // Thread id 0 is used for events that are generated by the system not associated with any process.
-    // In systrace and perfetto they use <idle> as the name for events generated with this thread id.
-    myTidToName.put(0, "<idle>");
+  /**
+   * The thread names, thread groups and clock sync packet of a trace, which are needed before its events can be converted.
+   */
+  static final class TraceMetadata {
+    // Maps thread id to thread group id. A tgid is the thread id at the root of the tree. This is also known as the PID in user space.
+    final Map<Integer, Integer> tidToTgid = new HashMap<>();
+    final Map<Integer, String> tidToName = new HashMap<>();
     // The clock sync packet is set to the first packet encountered with a clock snapshot.
-    PerfettoTrace.TracePacket clockSyncPacket = null;
+    @Nullable PerfettoTrace.TracePacket clockSyncPacket = null;
 
-    // Do a first pass on the file in order to collect all thread names, and thread group names mapped to id.
-    // This allows us to properly build the list of threads / events required by trebuchet for it to
-    // map threads to processes.
-    ExtensionRegistryLite packetRegistry = ExtensionRegistryLite.newInstance();
-    PerfettoTrace.registerAllExtensions(packetRegistry);
-    CodedInputStream inputStream = CodedInputStream.newInstance(new FileInputStream(file));
-    PerfettoTrace.TracePacket packet;
-    while ((packet = readOnePacket(inputStream, packetRegistry)) != null) {
+    TraceMetadata() {
+      // Add a special case name for thread id 0.
+      // Thread id 0 is used for events that are generated by the system not associated with any process.
+      // In systrace and perfetto they use <idle> as the name for events generated with this thread id.
+      tidToName.put(0, "<idle>");
+    }
+
+    void addPacket(@NotNull PerfettoTrace.TracePacket packet) {
       if (packet.hasFtraceEvents()) {
         PerfettoTrace.FtraceEventBundle bundle = packet.getFtraceEvents();
         for (PerfettoTrace.FtraceEvent event : bundle.getEventList()) {
@@ -161,20 +161,20 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
             continue;
           }
           PerfettoTrace.SchedSwitchFtraceEvent schedSwitch = event.getSchedSwitch();
-          myTidToName.putIfAbsent(schedSwitch.getPrevPid(), schedSwitch.getPrevComm());
-          myTidToName.putIfAbsent(schedSwitch.getNextPid(), schedSwitch.getNextComm());
+          tidToName.putIfAbsent(schedSwitch.getPrevPid(), schedSwitch.getPrevComm());
+          tidToName.putIfAbsent(schedSwitch.getNextPid(), schedSwitch.getNextComm());
         }
       }
       else if (packet.hasProcessTree()) {
         PerfettoTrace.ProcessTree processTree = packet.getProcessTree();
         for (PerfettoTrace.ProcessTree.Process process : processTree.getProcessesList()) {
           // Main threads will have the same pid as tgid.
-          myTidToTgid.putIfAbsent(process.getPid(), process.getPid());
+          tidToTgid.putIfAbsent(process.getPid(), process.getPid());
         }
         for (PerfettoTrace.ProcessTree.Thread thread : processTree.getThreadsList()) {
-          myTidToTgid.putIfAbsent(thread.getTid(), thread.getTgid());
+          tidToTgid.putIfAbsent(thread.getTid(), thread.getTgid());
           if (thread.hasName()) {
-            myTidToName.putIfAbsent(thread.getTid(), thread.getName());
+            tidToName.putIfAbsent(thread.getTid(), thread.getName());
           }
         }
       }
@@ -183,8 +183,29 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
         clockSyncPacket = packet;
       }
     }
+  }
+
+  @NotNull
+  static ExtensionRegistryLite createPacketRegistry() {
+    ExtensionRegistryLite packetRegistry = ExtensionRegistryLite.newInstance();
+    PerfettoTrace.registerAllExtensions(packetRegistry);
+    return packetRegistry;
+  }
+
+  private void convertToTraceLines(File file) throws IOException {
+    // Do a first pass on the file in order to collect all thread names, and thread group names mapped to id.
+    // This allows us to properly build the list of threads / events required by trebuchet for it to
+    // map threads to processes.
+    ExtensionRegistryLite packetRegistry = createPacketRegistry();
+    TraceMetadata metadata = new TraceMetadata();
+    CodedInputStream inputStream = CodedInputStream.newInstance(new FileInputStream(file));
+    PerfettoTrace.TracePacket packet;
+    while ((packet = readOnePacket(inputStream, packetRegistry)) != null) {
+      metadata.addPacket(packet);
+    }
+    PerfettoTrace.TracePacket clockSyncPacket = metadata.clockSyncPacket;
 
-    LineFormatter formatter = new LineFormatter(myTidToTgid, myTidToName);
+    LineFormatter formatter = new LineFormatter(metadata.tidToTgid, metadata.tidToName);
 
     // Do a second pass on the file now that we have all thread names do a second pass on the file to generate the lines for trebuchet.
     inputStream = CodedInputStream.newInstance(new FileInputStream(file));
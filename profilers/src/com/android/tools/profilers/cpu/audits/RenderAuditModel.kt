@@ -16,22 +16,36 @@
 package com.android.tools.profilers.cpu.audits
 
 import com.android.tools.adtui.model.Range
+import com.android.tools.profilers.cpu.CpuFramesModel
 import com.android.tools.profilers.cpu.atrace.AtraceCpuCapture
+import com.android.tools.profilers.cpu.atrace.AtraceFrame
+import com.android.tools.profilers.cpu.atrace.AtraceFrameFilterConfig
+import com.android.tools.profilers.cpu.atrace.AtraceFrameIndex
 
 /**
  * Model for the RenderAudit UI Component. Holds state and dispatches events to other models.
  */
 class RenderAuditModel(capture: AtraceCpuCapture) {
 
+  private val mainThreadId: Int = capture.mainThreadId
+  private val renderThreadId: Int = capture.renderThreadId
+
+  // Indexes of the main and render thread frames, which are built when the capture is parsed
+  private val mainThreadFrames: AtraceFrameIndex = capture.getFrameIndex(
+    AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS, mainThreadId, CpuFramesModel.SLOW_FRAME_RATE_US))
+  private val renderThreadFrames: AtraceFrameIndex = capture.getFrameIndex(
+    AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_RENDER_THREAD_FRAME_ID_MPLUS, renderThreadId, CpuFramesModel.SLOW_FRAME_RATE_US))
+
   // Render Audit Data
   val tripleBuffers: List<TripleBuffer> = listOf()
-  val longFrames: List<LongFrame> = listOf()
+  val longFrames: List<LongFrame> = mainThreadFrames.frames
+    .filter { it.totalPerfClass == AtraceFrame.PerfClass.BAD }
+    .map { LongFrame(it.startUs, it.endUs) }
   val skippedFrames: List<SkippedFrame> = listOf()
-  val auditFrames: List<AuditFrame> = listOf()
-  val renderStageStats: Map<RenderStage, RenderStageStats> = mapOf()
-
-  private val mainThreadId: Int = capture.mainThreadId
-  private val renderThreadId: Int = capture.renderThreadId
+  val auditFrames: List<AuditFrame> = mainThreadFrames.frames.indices.map { buildAuditFrame(it) }
+  val renderStageStats: Map<RenderStage, RenderStageStats> = RenderStage.values().associate { stage ->
+    stage to buildRenderStageStats(auditFrames.map { it.renderStageDurations.getValue(stage) })
+  }
 
   // The timeline range for a frame in Us. Used to inspect the frame under other tabs in the capture pane
   private val frameRange = Range(Double.MAX_VALUE, Double.MIN_VALUE)
@@ -55,6 +69,40 @@ class RenderAuditModel(capture: AtraceCpuCapture) {
     return Range(frameRange)
   }
 
+  /**
+   * Returns the duration which the given percentage of the main thread frames don't exceed, e.g. the median duration for 50
+   */
+  fun getFrameDurationPercentileUs(percentile: Double): Long = mainThreadFrames.getDurationPercentileUs(percentile)
+
+  /**
+   * Builds the audit of a main thread frame, whose render stages include the ones of the render thread frame it created
+   */
+  private fun buildAuditFrame(frameIndex: Int): AuditFrame {
+    val frame = mainThreadFrames.frames[frameIndex]
+    val stageDurations = mainThreadFrames.getRenderStageDurationsUs(frameIndex)
+    var durationUs = frame.durationUs
+    val renderFrame = frame.associatedFrame
+    if (renderFrame != null) {
+      val renderFrameIndex = renderThreadFrames.findFrame(renderFrame.startUs)
+      if (renderFrameIndex >= 0) {
+        renderThreadFrames.getRenderStageDurationsUs(renderFrameIndex).forEach { (stage, us) ->
+          stageDurations.merge(stage, us) { a, b -> a + b }
+        }
+        durationUs += renderFrame.durationUs
+      }
+    }
+    return AuditFrame(frame.startUs, frame.endUs, durationUs.toInt(), stageDurations.mapValues { it.value.toInt() })
+  }
+
+  private fun buildRenderStageStats(durationsUs: List<Int>): RenderStageStats {
+    if (durationsUs.isEmpty()) {
+      return RenderStageStats(0, 0)
+    }
+    val mean = durationsUs.average()
+    val variance = durationsUs.sumByDouble { (it - mean) * (it - mean) } / durationsUs.size
+    return RenderStageStats(mean.toInt(), Math.sqrt(variance).toInt())
+  }
+
   enum class FrameThread {
     MAIN,
     RENDER
@@ -28,7 +28,10 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
 
   public static final String BITMAP_DRAWABLE_FQCN = "android.graphics.drawable.BitmapDrawable";
 
-  private byte[] myBuffer = null;
+  // The pixels are read from the array when needed, as copying them all is only needed for full size images.
+  @NotNull private final ArrayObject myBuffer;
+
+  private final int myBufferLength;
 
   private boolean myIsMutable = false;
 
@@ -46,7 +49,7 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
     Integer width = null;
     Integer height = null;
     Boolean isMutable = null;
-    byte[] dataBuffer = null;
+    ArrayObject dataBuffer = null;
 
     for (FieldObject field : instance.getFields()) {
       Object fieldValue = field.getValue();
@@ -61,7 +64,7 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
           continue;
         }
 
-        dataBuffer = arrayObject.getAsByteArray();
+        dataBuffer = arrayObject;
       }
       else if ("mIsMutable".equals(field.getFieldName()) && (fieldValue instanceof Boolean)) {
         isMutable = (Boolean)fieldValue;
@@ -84,8 +87,9 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
     return new AndroidBitmapDataProvider(dataBuffer, isMutable, width, height);
   }
 
-  private AndroidBitmapDataProvider(@NotNull byte[] buffer, boolean isMutable, int width, int height) {
+  private AndroidBitmapDataProvider(@NotNull ArrayObject buffer, boolean isMutable, int width, int height) {
     myBuffer = buffer;
+    myBufferLength = buffer.getArrayLength();
     myIsMutable = isMutable;
     myWidth = width;
     myHeight = height;
@@ -95,10 +99,10 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
   @Override
   public BitmapDecoder.PixelFormat getBitmapConfigName() {
     int area = myWidth * myHeight;
-    int pixelSize = myBuffer.length / area;
+    int pixelSize = myBufferLength / area;
 
-    if ((!myIsMutable && ((myBuffer.length % area) != 0)) ||
-        (myIsMutable && area > myBuffer.length)) {
+    if ((!myIsMutable && ((myBufferLength % area) != 0)) ||
+        (myIsMutable && area > myBufferLength)) {
       return null;
     }
 
@@ -121,7 +125,13 @@ public final class AndroidBitmapDataProvider implements BitmapDecoder.BitmapData
   @Nullable
   @Override
   public byte[] getPixelBytes(@NotNull Dimension size) {
-    return myBuffer;
+    return myBuffer.getAsByteArray();
+  }
+
+  @Nullable
+  @Override
+  public byte[] getPixelBytes(@NotNull Dimension size, int offset, int length) {
+    return myBuffer.getAsByteArray(offset, length);
   }
 
   @Nullable
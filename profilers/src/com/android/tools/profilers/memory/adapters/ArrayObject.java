@@ -16,6 +16,7 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.profilers.memory.adapters.ValueObject.ValueType;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -26,6 +27,20 @@ public interface ArrayObject {
   @Nullable
   byte[] getAsByteArray();
 
+  /**
+   * @return {@code length} bytes of a byte array from {@code offset}, or fewer at the end of the array. Implementations which can read
+   * part of the array without copying all of it should override this.
+   */
+  @Nullable
+  default byte[] getAsByteArray(int offset, int length) {
+    byte[] bytes = getAsByteArray();
+    if (bytes == null) {
+      return null;
+    }
+    int from = Math.min(Math.max(offset, 0), bytes.length);
+    return Arrays.copyOfRange(bytes, from, from + Math.max(0, Math.min(length, bytes.length - from)));
+  }
+
   @Nullable
   char[] getAsCharArray();
 
@@ -21,6 +21,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.Map;
 
 public class BitmapDecoder {
@@ -39,10 +41,28 @@ public class BitmapDecoder {
 
     @Nullable
     byte[] getPixelBytes(@NotNull Dimension size);
+
+    /**
+     * @return {@code length} bytes of the pixels from {@code offset}, or fewer at the end of the pixels. Thumbnails only read the rows
+     * they sample, so providers which can read part of the pixels without copying all of them should override this.
+     */
+    @Nullable
+    default byte[] getPixelBytes(@NotNull Dimension size, int offset, int length) {
+      byte[] bytes = getPixelBytes(size);
+      if (bytes == null || offset >= bytes.length) {
+        return null;
+      }
+      return Arrays.copyOfRange(bytes, offset, offset + Math.min(length, bytes.length - offset));
+    }
   }
 
   private interface BitmapExtractor {
-    BufferedImage getImage(int w, int h, byte[] data);
+    int getBytesPerPixel();
+
+    /**
+     * @return the pixel at {@code index} in {@code data}, as ARGB.
+     */
+    int getArgb(@NotNull byte[] data, int index);
   }
 
   protected static final Map<PixelFormat, BitmapExtractor> SUPPORTED_FORMATS = ImmutableMap.of(
@@ -50,91 +70,172 @@ public class BitmapDecoder {
     PixelFormat.RGB_565, new RGB565_BitmapExtractor(),
     PixelFormat.ALPHA_8, new ALPHA8_BitmapExtractor());
 
+  /**
+   * @return whether the format and size of the bitmap are known, which doesn't read its pixels.
+   */
+  public static boolean canDecode(@NotNull BitmapDataProvider dataProvider) {
+    return getExtractor(dataProvider) != null && dataProvider.getDimension() != null;
+  }
+
   @Nullable
   public static BufferedImage getBitmap(@NotNull BitmapDataProvider dataProvider) {
-    PixelFormat config = dataProvider.getBitmapConfigName();
-    if (config == null) {
+    BitmapExtractor bitmapExtractor = getExtractor(dataProvider);
+    Dimension size = dataProvider.getDimension();
+    if (bitmapExtractor == null || size == null) {
       return null;
     }
 
-    BitmapExtractor bitmapExtractor = SUPPORTED_FORMATS.get(config);
-    if (bitmapExtractor == null) {
+    byte[] data = dataProvider.getPixelBytes(size);
+    if (data == null || data.length < size.width * size.height * bitmapExtractor.getBytesPerPixel()) {
       return null;
     }
 
+    BufferedImage image = createImage(size.width, size.height);
+    int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    int bytesPerPixel = bitmapExtractor.getBytesPerPixel();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = bitmapExtractor.getArgb(data, i * bytesPerPixel);
+    }
+    return image;
+  }
+
+  /**
+   * Decodes a preview of the bitmap which fits in {@code maxSize} x {@code maxSize}, by sampling its pixels. Only the sampled rows are
+   * read, so large bitmaps don't need to be copied. Bitmaps which already fit are decoded as they are.
+   */
+  @Nullable
+  public static BufferedImage getThumbnail(@NotNull BitmapDataProvider dataProvider, int maxSize) {
+    PixelSample sample = samplePixels(dataProvider, maxSize);
+    return sample == null ? null : sample.decode();
+  }
+
+  /**
+   * Copies the pixels of the preview of the bitmap which fits in {@code maxSize} x {@code maxSize}, see
+   * {@link #getThumbnail(BitmapDataProvider, int)}. The copy doesn't refer to the data provider any more, so it can be decoded on another
+   * thread than the one reading the pixels.
+   */
+  @Nullable
+  public static PixelSample samplePixels(@NotNull BitmapDataProvider dataProvider, int maxSize) {
+    BitmapExtractor bitmapExtractor = getExtractor(dataProvider);
     Dimension size = dataProvider.getDimension();
-    if (size == null) {
+    if (bitmapExtractor == null || size == null) {
       return null;
     }
 
-    return bitmapExtractor.getImage(size.width, size.height, dataProvider.getPixelBytes(size));
+    int bytesPerPixel = bitmapExtractor.getBytesPerPixel();
+    int step = (Math.max(size.width, size.height) + maxSize - 1) / maxSize;
+    if (step <= 1) {
+      byte[] data = dataProvider.getPixelBytes(size);
+      if (data == null || data.length < size.width * size.height * bytesPerPixel) {
+        return null;
+      }
+      // Providers may hand out their own array.
+      return new PixelSample(bitmapExtractor, size.width, size.height, Arrays.copyOf(data, size.width * size.height * bytesPerPixel));
+    }
+
+    int width = (size.width + step - 1) / step;
+    int height = (size.height + step - 1) / step;
+    int rowSize = size.width * bytesPerPixel;
+    byte[] data = new byte[width * height * bytesPerPixel];
+    for (int y = 0; y < height; y++) {
+      byte[] row = dataProvider.getPixelBytes(size, y * step * rowSize, rowSize);
+      if (row == null || row.length < rowSize) {
+        return null;
+      }
+      int stride = y * width * bytesPerPixel;
+      for (int x = 0; x < width; x++) {
+        System.arraycopy(row, x * step * bytesPerPixel, data, stride + x * bytesPerPixel, bytesPerPixel);
+      }
+    }
+    return new PixelSample(bitmapExtractor, width, height, data);
+  }
+
+  /**
+   * A copy of the pixels of a bitmap, or of the pixels sampled for its preview, in their original format.
+   */
+  public static final class PixelSample {
+    @NotNull private final BitmapExtractor myExtractor;
+    private final int myWidth;
+    private final int myHeight;
+    @NotNull private final byte[] myData;
+
+    private PixelSample(@NotNull BitmapExtractor extractor, int width, int height, @NotNull byte[] data) {
+      myExtractor = extractor;
+      myWidth = width;
+      myHeight = height;
+      myData = data;
+    }
+
+    @NotNull
+    public BufferedImage decode() {
+      BufferedImage image = createImage(myWidth, myHeight);
+      int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+      int bytesPerPixel = myExtractor.getBytesPerPixel();
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = myExtractor.getArgb(myData, i * bytesPerPixel);
+      }
+      return image;
+    }
+  }
+
+  @Nullable
+  private static BitmapExtractor getExtractor(@NotNull BitmapDataProvider dataProvider) {
+    PixelFormat config = dataProvider.getBitmapConfigName();
+    return config == null ? null : SUPPORTED_FORMATS.get(config);
+  }
+
+  @NotNull
+  private static BufferedImage createImage(int width, int height) {
+    //noinspection UndesirableClassUsage
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
   }
 
   private static class ARGB8888_BitmapExtractor implements BitmapExtractor {
     @Override
-    public BufferedImage getImage(int width, int height, byte[] rgba) {
-      @SuppressWarnings("UndesirableClassUsage")
-      BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-      for (int y = 0; y < height; y++) {
-        int stride = y * width;
-        for (int x = 0; x < width; x++) {
-          int i = (stride + x) * 4;
-          long argb = 0;
-          argb |= ((long) rgba[i    ] & 0xff) << 16; // r
-          argb |= ((long) rgba[i + 1] & 0xff) << 8;  // g
-          argb |= ((long) rgba[i + 2] & 0xff);       // b
-          argb |= ((long) rgba[i + 3] & 0xff) << 24; // a
-          bufferedImage.setRGB(x, y, (int) (argb & 0xffffffffL));
-        }
-      }
+    public int getBytesPerPixel() {
+      return 4;
+    }
 
-      return bufferedImage;
+    @Override
+    public int getArgb(@NotNull byte[] rgba, int i) {
+      long argb = 0;
+      argb |= ((long) rgba[i    ] & 0xff) << 16; // r
+      argb |= ((long) rgba[i + 1] & 0xff) << 8;  // g
+      argb |= ((long) rgba[i + 2] & 0xff);       // b
+      argb |= ((long) rgba[i + 3] & 0xff) << 24; // a
+      return (int) (argb & 0xffffffffL);
     }
   }
 
   private static class RGB565_BitmapExtractor implements BitmapExtractor {
     @Override
-    public BufferedImage getImage(int width, int height, byte[] rgb) {
-      int bytesPerPixel = 2;
-
-      @SuppressWarnings("UndesirableClassUsage")
-      BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-      for (int y = 0; y < height; y++) {
-        int stride = y * width;
-        for (int x = 0; x < width; x++) {
-          int index = (stride + x) * bytesPerPixel;
-          int value = (rgb[index] & 0x00ff) | (rgb[index + 1] << 8) & 0xff00;
-          // RGB565 to RGB888
-          // Multiply by 255/31 to convert from 5 bits (31 max) to 8 bits (255)
-          int r = ((value >>> 11) & 0x1f) * 255 / 31;
-          int g = ((value >>> 5) & 0x3f) * 255 / 63;
-          int b = ((value) & 0x1f) * 255 / 31;
-          int a = 0xFF;
-          int argb = a << 24 | r << 16 | g << 8 | b;
-          bufferedImage.setRGB(x, y, argb);
-        }
-      }
+    public int getBytesPerPixel() {
+      return 2;
+    }
 
-      return bufferedImage;
+    @Override
+    public int getArgb(@NotNull byte[] rgb, int index) {
+      int value = (rgb[index] & 0x00ff) | (rgb[index + 1] << 8) & 0xff00;
+      // RGB565 to RGB888
+      // Multiply by 255/31 to convert from 5 bits (31 max) to 8 bits (255)
+      int r = ((value >>> 11) & 0x1f) * 255 / 31;
+      int g = ((value >>> 5) & 0x3f) * 255 / 63;
+      int b = ((value) & 0x1f) * 255 / 31;
+      int a = 0xFF;
+      return a << 24 | r << 16 | g << 8 | b;
     }
   }
 
   private static class ALPHA8_BitmapExtractor implements BitmapExtractor {
     @Override
-    public BufferedImage getImage(int width, int height, byte[] rgb) {
-      //noinspection UndesirableClassUsage
-      BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-      for (int y = 0; y < height; y++) {
-        int stride = y * width;
-        for (int x = 0; x < width; x++) {
-          int index = stride + x;
-          int value = rgb[index];
-          int argb = value << 24 | 0xff << 16 | 0xff << 8 | 0xff;
-          bufferedImage.setRGB(x, y, argb);
-        }
-      }
+    public int getBytesPerPixel() {
+      return 1;
+    }
 
-      return bufferedImage;
+    @Override
+    public int getArgb(@NotNull byte[] rgb, int index) {
+      int value = rgb[index];
+      return value << 24 | 0xff << 16 | 0xff << 8 | 0xff;
     }
   }
 }
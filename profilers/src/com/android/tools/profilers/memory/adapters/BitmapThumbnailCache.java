@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decodes previews of the bitmap instances of a capture on a background executor, and keeps the most recently used ones until their
+ * pixels exceed a budget. Previews are downscaled with {@link BitmapDecoder#getThumbnail(BitmapDecoder.BitmapDataProvider, int)}, so
+ * browsing through large bitmaps neither copies nor keeps their full pixels.
+ * <p>
+ * The fields and pixels of the instances are read on the executor too. Each thread reads heap dumps through its own position in the
+ * {@link HeapDumpBuffer} of the capture, so the executor doesn't move the position of the thread browsing the capture.
+ */
+public final class BitmapThumbnailCache {
+  @NotNull private final Executor myExecutor;
+  private final int myMaxSize;
+  private final long myMaxCachedPixels;
+
+  // In access order, so the least recently used thumbnails are evicted first.
+  @NotNull private final Map<InstanceObject, Thumbnail> myThumbnails = new LinkedHashMap<>(16, 0.75f, true);
+  // The capture of the cached thumbnails, which are dropped when another capture is browsed, so that they don't retain it.
+  @Nullable private CaptureObject myCaptureObject;
+  private long myCachedPixels;
+
+  /**
+   * @param executor        decodes the thumbnails
+   * @param maxSize         the maximum width and height of the thumbnails
+   * @param maxCachedPixels the number of pixels of the decoded thumbnails to keep
+   */
+  public BitmapThumbnailCache(@NotNull Executor executor, int maxSize, long maxCachedPixels) {
+    myExecutor = executor;
+    myMaxSize = maxSize;
+    myMaxCachedPixels = maxCachedPixels;
+  }
+
+  /**
+   * @return the thumbnail of a bitmap instance, which completes with null if the instance is not a bitmap which can be decoded.
+   */
+  @NotNull
+  public synchronized CompletableFuture<BufferedImage> getThumbnail(@NotNull CaptureObject captureObject,
+                                                                    @NotNull InstanceObject instance) {
+    if (captureObject != myCaptureObject) {
+      myThumbnails.clear();
+      myCachedPixels = 0;
+      myCaptureObject = captureObject;
+    }
+
+    Thumbnail thumbnail = myThumbnails.get(instance);
+    if (thumbnail == null) {
+      thumbnail = new Thumbnail(CompletableFuture.supplyAsync(() -> decode(instance), myExecutor));
+      myThumbnails.put(instance, thumbnail);
+      Thumbnail decodedThumbnail = thumbnail;
+      thumbnail.myImage.whenComplete((image, throwable) -> thumbnailDecoded(instance, decodedThumbnail, image));
+    }
+    return thumbnail.myImage;
+  }
+
+  @VisibleForTesting
+  synchronized int getCachedCount() {
+    return myThumbnails.size();
+  }
+
+  @VisibleForTesting
+  synchronized long getCachedPixels() {
+    return myCachedPixels;
+  }
+
+  @Nullable
+  private BufferedImage decode(@NotNull InstanceObject instance) {
+    AndroidBitmapDataProvider dataProvider = AndroidBitmapDataProvider.createDecoder(instance);
+    return dataProvider == null ? null : BitmapDecoder.getThumbnail(dataProvider, myMaxSize);
+  }
+
+  private synchronized void thumbnailDecoded(@NotNull InstanceObject instance,
+                                             @NotNull Thumbnail thumbnail,
+                                             @Nullable BufferedImage image) {
+    // The thumbnail may have been dropped while it was decoded.
+    if (myThumbnails.get(instance) != thumbnail) {
+      return;
+    }
+    thumbnail.myPixels = image == null ? 0 : (long)image.getWidth() * image.getHeight();
+    myCachedPixels += thumbnail.myPixels;
+
+    // Evicts the least recently used thumbnails which are decoded, but not the one which was just decoded.
+    Iterator<Thumbnail> iterator = myThumbnails.values().iterator();
+    while (myCachedPixels > myMaxCachedPixels && iterator.hasNext()) {
+      Thumbnail cached = iterator.next();
+      if (cached != thumbnail && cached.myPixels >= 0) {
+        myCachedPixels -= cached.myPixels;
+        iterator.remove();
+      }
+    }
+  }
+
+  private static final class Thumbnail {
+    @NotNull private final CompletableFuture<BufferedImage> myImage;
+    // The pixels counted in myCachedPixels once decoded, or -1 while decoding.
+    private long myPixels = -1;
+
+    private Thumbnail(@NotNull CompletableFuture<BufferedImage> image) {
+      myImage = image;
+    }
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.profilers.memory.adapters;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.filter.Filter;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -53,6 +54,8 @@ public abstract class ClassifierSet implements MemoryObject {
   private long myTotalShallowSize = 0L;
   private long myTotalRetainedSize = 0L;
   private int myInstancesWithStackInfoCount = 0;
+  // Incremented whenever instances are added or removed, so that partitions of them can tell whether they are stale.
+  private int myModificationCount = 0;
 
   // Number of ClassifierSet that match the filter.
   protected int myFilterMatchCount = 0;
@@ -122,6 +125,10 @@ public abstract class ClassifierSet implements MemoryObject {
     return myFilterMatchCount;
   }
 
+  protected int getModificationCount() {
+    return myModificationCount;
+  }
+
   /**
    * Add an instance to the baseline snapshot and update the accounting of the "total" values.
    * Note that instances at the baseline must be an allocation event.
@@ -142,6 +149,7 @@ public abstract class ClassifierSet implements MemoryObject {
     if (instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount++;
     }
+    myModificationCount++;
     myNeedsRefiltering = true;
   }
 
@@ -166,6 +174,7 @@ public abstract class ClassifierSet implements MemoryObject {
     if (instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount--;
     }
+    myModificationCount++;
     myNeedsRefiltering = true;
   }
 
@@ -229,6 +238,7 @@ public abstract class ClassifierSet implements MemoryObject {
       myInstancesWithStackInfoCount++;
       myNeedsRefiltering = true;
     }
+    myModificationCount++;
 
     return instanceAdded;
   }
@@ -267,6 +277,7 @@ public abstract class ClassifierSet implements MemoryObject {
       myInstancesWithStackInfoCount--;
       myNeedsRefiltering = true;
     }
+    myModificationCount++;
 
     return instanceRemoved;
   }
@@ -285,6 +296,7 @@ public abstract class ClassifierSet implements MemoryObject {
     myObjectSetCount = 0;
     myFilteredObjectSetCount = 0;
     myFilterMatchCount = 0;
+    myModificationCount++;
   }
 
   public int getInstancesCount() {
@@ -480,6 +492,11 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @VisibleForTesting
   public static abstract class Classifier {
+    private static final byte ALLOCATION = 1;
+    private static final byte DEALLOCATION = 2;
+    // Below this number of instances, partitioning isn't worth spreading across threads.
+    private static final int PARALLEL_PARTITION_THRESHOLD = 100_000;
+
     public static final Classifier IDENTITY_CLASSIFIER = new Classifier() {
       @Override
       public boolean isTerminalClassifier() {
@@ -533,30 +550,77 @@ public abstract class ClassifierSet implements MemoryObject {
     /**
      * Partitions {@link InstanceObject}s in {@code snapshotInstances} and {@code myDeltaInstances} according to the current
      * {@link ClassifierSet}'s strategy. This will consume the instances from the input.
+     * <p>
+     * The instances are bucketed by child in a single pass first, as classifiers aren't thread safe. Large inputs then fill the children
+     * from their buckets in parallel, each child getting all of its instances from one thread, in the order of the input.
      */
     public final void partition(@NotNull Collection<InstanceObject> snapshotInstances, @NotNull Collection<InstanceObject> deltaInstances) {
       if (isTerminalClassifier()) {
         return;
       }
 
-      snapshotInstances.forEach(instance -> getClassifierSet(instance, true).addSnapshotInstanceObject(instance));
-      deltaInstances.forEach(instance -> {
+      Map<ClassifierSet, Bucket> buckets = new IdentityHashMap<>();
+      InstanceObject[] snapshot = snapshotInstances.toArray(new InstanceObject[0]);
+      for (int i = 0; i < snapshot.length; i++) {
+        buckets.computeIfAbsent(getClassifierSet(snapshot[i], true), Bucket::new).mySnapshotIndices.add(i);
+      }
+      InstanceObject[] delta = deltaInstances.toArray(new InstanceObject[0]);
+      byte[] deltaEvents = new byte[delta.length];
+      for (int i = 0; i < delta.length; i++) {
+        InstanceObject instance = delta[i];
         if (instance.hasTimeData()) {
           // Note - we only add the instance allocation to our delta set if it is not already accounted for in the baseline snapshot.
           // Otherwise we would be double counting allocations.
           if (instance.hasAllocTime() && !snapshotInstances.contains(instance)) {
-            getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+            deltaEvents[i] |= ALLOCATION;
           }
           if (instance.hasDeallocTime()) {
-            getClassifierSet(instance, true).freeDeltaInstanceObject(instance);
+            deltaEvents[i] |= DEALLOCATION;
           }
         }
         else {
-          getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+          deltaEvents[i] = ALLOCATION;
+        }
+        if (deltaEvents[i] != 0) {
+          buckets.computeIfAbsent(getClassifierSet(instance, true), Bucket::new).myDeltaIndices.add(i);
         }
-      });
+      }
       snapshotInstances.clear();
       deltaInstances.clear();
+
+      Stream<Bucket> stream = buckets.values().stream();
+      if (snapshot.length + delta.length >= PARALLEL_PARTITION_THRESHOLD) {
+        stream = stream.parallel();
+      }
+      stream.forEach(bucket -> bucket.fill(snapshot, delta, deltaEvents));
+    }
+
+    /**
+     * The indices of the instances of the input of {@link #partition(Collection, Collection)} that go into one child.
+     */
+    private static final class Bucket {
+      @NotNull private final ClassifierSet myTarget;
+      @NotNull private final TIntArrayList mySnapshotIndices = new TIntArrayList();
+      @NotNull private final TIntArrayList myDeltaIndices = new TIntArrayList();
+
+      private Bucket(@NotNull ClassifierSet target) {
+        myTarget = target;
+      }
+
+      private void fill(@NotNull InstanceObject[] snapshot, @NotNull InstanceObject[] delta, @NotNull byte[] deltaEvents) {
+        for (int i = 0; i < mySnapshotIndices.size(); i++) {
+          myTarget.addSnapshotInstanceObject(snapshot[mySnapshotIndices.get(i)]);
+        }
+        for (int i = 0; i < myDeltaIndices.size(); i++) {
+          int index = myDeltaIndices.get(i);
+          if ((deltaEvents[index] & ALLOCATION) != 0) {
+            myTarget.addDeltaInstanceObject(delta[index]);
+          }
+          if ((deltaEvents[index] & DEALLOCATION) != 0) {
+            myTarget.freeDeltaInstanceObject(delta[index]);
+          }
+        }
+      }
     }
   }
 }
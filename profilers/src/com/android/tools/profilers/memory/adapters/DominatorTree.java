@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The dominator tree of an object graph, with the retained size and the depth of each object.
+ * <p>
+ * Objects are identified by their index in [0, nodeCount), and the graph is given as arrays of predecessors, which is what heap dumps
+ * record (the reverse references of each instance). Everything is stored in primitive arrays, as heap dumps can have tens of millions of
+ * objects.
+ * <p>
+ * Dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy, numbering objects in breadth first order from the
+ * roots: the immediate dominator of each object is the nearest common ancestor, in the tree computed so far, of its predecessors, until
+ * nothing changes. The first pass follows the order so that every object gets a dominator, then the following passes, which only refine
+ * the tree, run on chunks of objects in parallel. The tree only points from objects to objects earlier in the order, so concurrent updates
+ * can't create cycles, and a pass in which no thread changes anything means the tree is final.
+ */
+final class DominatorTree {
+  /**
+   * The immediate dominator of roots and unreachable objects.
+   */
+  static final int NO_DOMINATOR = -1;
+
+  /**
+   * The depth of unreachable objects, as perflib reports it.
+   */
+  static final int UNREACHABLE_DEPTH = Integer.MAX_VALUE;
+
+  private static final int MIN_CHUNK_SIZE = 4096;
+
+  @NotNull private final int[] myImmediateDominators;
+  @NotNull private final long[] myRetainedSizes;
+  @NotNull private final int[] myDepths;
+  private final int myReachableCount;
+  private final int myPassCount;
+
+  private DominatorTree(@NotNull int[] immediateDominators,
+                        @NotNull long[] retainedSizes,
+                        @NotNull int[] depths,
+                        int reachableCount,
+                        int passCount) {
+    myImmediateDominators = immediateDominators;
+    myRetainedSizes = retainedSizes;
+    myDepths = depths;
+    myReachableCount = reachableCount;
+    myPassCount = passCount;
+  }
+
+  /**
+   * Computes the dominator tree of a graph.
+   *
+   * @param predecessorOffsets the predecessors of node i are at [predecessorOffsets[i], predecessorOffsets[i + 1]) in predecessors
+   * @param predecessors       the predecessors of all nodes, negative values are ignored
+   * @param roots              the nodes which are dominated by nothing but themselves
+   * @param sizes              the shallow size of each node, which also gives the node count
+   * @param executor           runs the refinement passes, a direct executor computes everything on the calling thread
+   * @throws InterruptedException if the calling thread is interrupted, which is checked between passes
+   */
+  @NotNull
+  static DominatorTree compute(@NotNull int[] predecessorOffsets,
+                               @NotNull int[] predecessors,
+                               @NotNull int[] roots,
+                               @NotNull long[] sizes,
+                               @NotNull ExecutorService executor) throws InterruptedException {
+    int nodeCount = sizes.length;
+    boolean[] isRoot = new boolean[nodeCount];
+    for (int root : roots) {
+      isRoot[root] = true;
+    }
+
+    // Reverse the predecessors, as the search from the roots follows references.
+    int[] successorOffsets = new int[nodeCount + 1];
+    for (int predecessor : predecessors) {
+      if (predecessor >= 0) {
+        successorOffsets[predecessor + 1]++;
+      }
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      successorOffsets[i + 1] += successorOffsets[i];
+    }
+    int[] successors = new int[successorOffsets[nodeCount]];
+    int[] cursors = Arrays.copyOf(successorOffsets, nodeCount);
+    for (int node = 0; node < nodeCount; node++) {
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        int predecessor = predecessors[i];
+        if (predecessor >= 0) {
+          successors[cursors[predecessor]++] = node;
+        }
+      }
+    }
+
+    // Number the nodes in breadth first order, from 1 as 0 is a virtual root pointing to all the roots, which also gives their depths.
+    // Dominators are on the shortest paths to the nodes they dominate, so they come first. Unreachable nodes stay at 0.
+    int[] orders = new int[nodeCount];
+    int[] nodes = new int[nodeCount + 1];
+    int[] depths = new int[nodeCount];
+    Arrays.fill(depths, UNREACHABLE_DEPTH);
+    int reachableCount = 0;
+    for (int root : roots) {
+      if (orders[root] == 0) {
+        orders[root] = ++reachableCount;
+        nodes[reachableCount] = root;
+        depths[root] = 0;
+      }
+    }
+    for (int order = 1; order <= reachableCount; order++) {
+      int node = nodes[order];
+      for (int i = successorOffsets[node]; i < successorOffsets[node + 1]; i++) {
+        int successor = successors[i];
+        if (orders[successor] == 0) {
+          orders[successor] = ++reachableCount;
+          nodes[reachableCount] = successor;
+          depths[successor] = depths[node] + 1;
+        }
+      }
+    }
+
+    // The orders of the reachable predecessors of each node, by order, which passes go through sequentially. Roots have the virtual root.
+    int[] orderPredecessorOffsets = new int[reachableCount + 2];
+    for (int order = 1; order <= reachableCount; order++) {
+      int node = nodes[order];
+      int count = isRoot[node] ? 1 : 0;
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        int predecessor = predecessors[i];
+        if (predecessor >= 0 && orders[predecessor] > 0) {
+          count++;
+        }
+      }
+      orderPredecessorOffsets[order + 1] = orderPredecessorOffsets[order] + count;
+    }
+    int[] orderPredecessors = new int[orderPredecessorOffsets[reachableCount + 1]];
+    for (int order = 1; order <= reachableCount; order++) {
+      int node = nodes[order];
+      int offset = orderPredecessorOffsets[order];
+      if (isRoot[node]) {
+        orderPredecessors[offset++] = 0;
+      }
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        int predecessor = predecessors[i];
+        if (predecessor >= 0 && orders[predecessor] > 0) {
+          orderPredecessors[offset++] = orders[predecessor];
+        }
+      }
+    }
+
+    // The immediate dominator of each node, by order, or -1 while unknown.
+    int[] dominators = new int[reachableCount + 1];
+    Arrays.fill(dominators, -1);
+    dominators[0] = 0;
+    Pass firstPass = new Pass(orderPredecessorOffsets, orderPredecessors, dominators, 1, reachableCount + 1);
+    firstPass.call();
+    int passCount = 1;
+    List<Pass> passes = new ArrayList<>();
+    int chunkSize = Math.max(MIN_CHUNK_SIZE, reachableCount / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+    for (int from = 1; from <= reachableCount; from += chunkSize) {
+      passes.add(new Pass(orderPredecessorOffsets, orderPredecessors, dominators, from, Math.min(from + chunkSize, reachableCount + 1)));
+    }
+    boolean changed = true;
+    while (changed) {
+      // Computing the dominators of a large heap dump takes a while, so stop between passes when the capture is unloaded.
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      changed = false;
+      passCount++;
+      try {
+        for (Future<Boolean> result : executor.invokeAll(passes)) {
+          changed |= result.get();
+        }
+      }
+      catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    // Dominators come first in the order, so going backwards adds the retained size of each node to its dominator after all the
+    // nodes it dominates have been added to it.
+    long[] retainedSizes = new long[nodeCount];
+    int[] immediateDominators = new int[nodeCount];
+    Arrays.fill(immediateDominators, NO_DOMINATOR);
+    for (int order = reachableCount; order > 0; order--) {
+      int node = nodes[order];
+      retainedSizes[node] += sizes[node];
+      if (dominators[order] != 0) {
+        int dominator = nodes[dominators[order]];
+        immediateDominators[node] = dominator;
+        retainedSizes[dominator] += retainedSizes[node];
+      }
+    }
+    return new DominatorTree(immediateDominators, retainedSizes, depths, reachableCount, passCount);
+  }
+
+  /**
+   * @return the immediate dominator of the node, or {@link #NO_DOMINATOR} for roots and unreachable nodes.
+   */
+  int getImmediateDominator(int node) {
+    return myImmediateDominators[node];
+  }
+
+  /**
+   * @return the size of the node and of all the nodes it dominates, or 0 for unreachable nodes.
+   */
+  long getRetainedSize(int node) {
+    return myRetainedSizes[node];
+  }
+
+  /**
+   * @return the length of the shortest path from a root to the node, or {@link #UNREACHABLE_DEPTH} for unreachable nodes.
+   */
+  int getDepth(int node) {
+    return myDepths[node];
+  }
+
+  int getReachableCount() {
+    return myReachableCount;
+  }
+
+  /**
+   * @return the number of passes over the nodes it took for the dominators to converge.
+   */
+  int getPassCount() {
+    return myPassCount;
+  }
+
+  /**
+   * Updates the dominators of the nodes whose order is in [from, to).
+   */
+  private static final class Pass implements Callable<Boolean> {
+    @NotNull private final int[] myPredecessorOffsets;
+    @NotNull private final int[] myPredecessors;
+    @NotNull private final int[] myDominators;
+    private final int myFrom;
+    private final int myTo;
+
+    private Pass(@NotNull int[] predecessorOffsets, @NotNull int[] predecessors, @NotNull int[] dominators, int from, int to) {
+      myPredecessorOffsets = predecessorOffsets;
+      myPredecessors = predecessors;
+      myDominators = dominators;
+      myFrom = from;
+      myTo = to;
+    }
+
+    /**
+     * @return true if any dominator changed.
+     */
+    @Override
+    public Boolean call() {
+      boolean changed = false;
+      for (int order = myFrom; order < myTo; order++) {
+        int dominator = -1;
+        for (int i = myPredecessorOffsets[order]; i < myPredecessorOffsets[order + 1] && dominator != 0; i++) {
+          int predecessor = myPredecessors[i];
+          if (myDominators[predecessor] == -1) {
+            // Not processed yet.
+            continue;
+          }
+          dominator = dominator == -1 ? predecessor : intersect(predecessor, dominator);
+        }
+        // Only predecessors later in the order may have been processed yet, leave the node for a later pass.
+        if (dominator != -1 && dominator < order && myDominators[order] != dominator) {
+          myDominators[order] = dominator;
+          changed = true;
+        }
+      }
+      return changed;
+    }
+
+    /**
+     * @return the nearest common ancestor of two nodes in the current tree.
+     */
+    private int intersect(int first, int second) {
+      while (first != second) {
+        while (first > second) {
+          first = myDominators[first];
+        }
+        while (second > first) {
+          second = myDominators[second];
+        }
+      }
+      return first;
+    }
+  }
+}
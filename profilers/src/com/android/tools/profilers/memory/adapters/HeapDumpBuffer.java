@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.captures.DataBuffer;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The contents of a heap dump, which can be read by several threads at once: perflib reads the fields and arrays of the instances by
+ * moving the position of the buffer of the snapshot, so a buffer with a single position can't be read by the thread browsing the capture
+ * while the dominators are computed or bitmap thumbnails are decoded.
+ * <p>
+ * Each thread has its own position. Primitives are read at absolute indices of the contents, and byte sequences through a
+ * {@link ByteBuffer#duplicate()} of the contents made for that read, so the threads never share the state of a {@link ByteBuffer}.
+ */
+final class HeapDumpBuffer implements DataBuffer {
+  private static final int SEGMENT_BITS = 30;
+  // Mapped segments overlap by this many bytes, so that primitives are always read from a single segment.
+  private static final int PADDING = 1024;
+
+  @NotNull private final ByteBuffer[] mySegments;
+  private final int mySegmentBits;
+  private final long myLength;
+  @NotNull private final ThreadLocal<long[]> myPosition = ThreadLocal.withInitial(() -> new long[1]);
+
+  private HeapDumpBuffer(@NotNull ByteBuffer[] segments, int segmentBits, long length) {
+    mySegments = segments;
+    mySegmentBits = segmentBits;
+    myLength = length;
+  }
+
+  /**
+   * @return a buffer reading the remaining bytes of {@code contents}, which must not be read through anything else.
+   */
+  @NotNull
+  static HeapDumpBuffer wrap(@NotNull ByteBuffer contents) {
+    ByteBuffer segment = contents.slice();
+    return new HeapDumpBuffer(new ByteBuffer[]{segment}, Integer.SIZE - 1, segment.remaining());
+  }
+
+  /**
+   * @return a buffer reading the contents of {@code file}, which are mapped in segments.
+   */
+  @NotNull
+  static HeapDumpBuffer map(@NotNull File file) throws IOException {
+    return map(file, SEGMENT_BITS);
+  }
+
+  @VisibleForTesting
+  @NotNull
+  static HeapDumpBuffer map(@NotNull File file, int segmentBits) throws IOException {
+    assert (1 << segmentBits) > PADDING;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      long length = channel.size();
+      ByteBuffer[] segments = new ByteBuffer[(int)Math.max(1, (length + (1L << segmentBits) - 1) >>> segmentBits)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = (long)i << segmentBits;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min((1L << segmentBits) + PADDING, length - start));
+      }
+      // The mappings stay valid once the channel is closed.
+      return new HeapDumpBuffer(segments, segmentBits, length);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    // The segments are unmapped once they are collected.
+  }
+
+  @Override
+  public void append(@NotNull byte[] data) {
+    throw new UnsupportedOperationException("Heap dumps are read only");
+  }
+
+  @Override
+  public void setPosition(long position) {
+    myPosition.get()[0] = position;
+  }
+
+  @Override
+  public long position() {
+    return myPosition.get()[0];
+  }
+
+  @Override
+  public boolean hasRemaining() {
+    return remaining() > 0;
+  }
+
+  @Override
+  public long remaining() {
+    return myLength - position();
+  }
+
+  @Override
+  public byte readByte() {
+    long position = advance(Byte.BYTES);
+    return segment(position).get(offset(position));
+  }
+
+  @Override
+  public void read(@NotNull byte[] b) {
+    readSubSequence(b, 0, b.length);
+  }
+
+  @Override
+  public void readSubSequence(@NotNull byte[] b, int sourceStart, int length) {
+    long[] position = myPosition.get();
+    position[0] += sourceStart;
+    if (position[0] + length > myLength) {
+      throw new BufferUnderflowException();
+    }
+    int read = 0;
+    while (read < length) {
+      ByteBuffer view = segment(position[0]).duplicate();
+      view.position(offset(position[0]));
+      int count = (int)Math.min(length - read, (1L << mySegmentBits) - offset(position[0]));
+      view.get(b, read, count);
+      read += count;
+      position[0] += count;
+    }
+  }
+
+  @Override
+  public char readChar() {
+    long position = advance(Character.BYTES);
+    return segment(position).getChar(offset(position));
+  }
+
+  @Override
+  public short readShort() {
+    long position = advance(Short.BYTES);
+    return segment(position).getShort(offset(position));
+  }
+
+  @Override
+  public int readInt() {
+    long position = advance(Integer.BYTES);
+    return segment(position).getInt(offset(position));
+  }
+
+  @Override
+  public long readLong() {
+    long position = advance(Long.BYTES);
+    return segment(position).getLong(offset(position));
+  }
+
+  @Override
+  public float readFloat() {
+    long position = advance(Float.BYTES);
+    return segment(position).getFloat(offset(position));
+  }
+
+  @Override
+  public double readDouble() {
+    long position = advance(Double.BYTES);
+    return segment(position).getDouble(offset(position));
+  }
+
+  /**
+   * Moves the position of the calling thread past {@code size} bytes.
+   *
+   * @return the position before it was moved.
+   */
+  private long advance(int size) {
+    long[] position = myPosition.get();
+    long start = position[0];
+    position[0] += size;
+    return start;
+  }
+
+  @NotNull
+  private ByteBuffer segment(long position) {
+    return mySegments[(int)(position >>> mySegmentBits)];
+  }
+
+  private int offset(long position) {
+    return (int)(position & ((1L << mySegmentBits) - 1));
+  }
+}
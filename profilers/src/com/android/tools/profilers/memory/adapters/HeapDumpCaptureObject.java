@@ -24,12 +24,13 @@ import static com.android.tools.profilers.memory.adapters.ClassDb.JAVA_LANG_CLAS
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.perflib.captures.DataBuffer;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
-import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profiler.proto.Transport;
@@ -45,8 +46,15 @@ import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import gnu.trove.TLongObjectHashMap;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -55,9 +63,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -78,9 +95,6 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   private final Map<Integer, HeapSet> myHeapSets = new HashMap<>();
 
-  @NotNull
-  private final TLongObjectHashMap<InstanceObject> myInstanceIndex = new TLongObjectHashMap<>();
-
   @NotNull
   private final ClassDb myClassDb = new ClassDb();
 
@@ -93,8 +107,38 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Nullable
   private volatile Snapshot mySnapshot;
 
+  /**
+   * The InstanceObject of java.lang.Class, whose class entry is the class entry of all the class objects.
+   */
+  @Nullable
+  private InstanceObject myJavaLangClassObject;
+
+  /**
+   * The temporary file the heap dump is mapped from, if it is mapped.
+   */
+  @Nullable
+  private File myHeapDumpFile;
+
   private volatile boolean myIsLoadingError = false;
 
+  /**
+   * Whether perflib computed the depths and retained sizes of the instances, which it does when heap dumps are loaded eagerly.
+   */
+  private volatile boolean myHasPerflibRetainedSizes = false;
+
+  /**
+   * The node of each instance in {@link #myDominatorTree} by id, offset by one as ids which aren't in the map get 0. It is filled before
+   * the dominator tree is set, which publishes it.
+   */
+  @NotNull
+  private final TLongIntHashMap myNodeIndex = new TLongIntHashMap();
+
+  /**
+   * The dominator tree of the hard references between instances, which gives their depths and retained sizes, once computed.
+   */
+  @Nullable
+  private volatile DominatorTree myDominatorTree;
+
   private boolean myHasNativeAllocations;
 
   @NotNull
@@ -107,6 +151,12 @@ public class HeapDumpCaptureObject implements CaptureObject {
   private final ExecutorService myExecutorService =
     Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-instancefilters").build());
 
+  /**
+   * Runs the passes of {@link DominatorTree#compute}. It belongs to the capture, instead of being a shared pool, so that unloading the
+   * capture interrupts them, and its threads stop once they are idle.
+   */
+  private final ExecutorService myDominatorExecutorService = createDominatorExecutorService();
+
   public HeapDumpCaptureObject(@NotNull ProfilerClient client,
                                @NotNull Common.Session session,
                                @NotNull HeapDumpInfo heapDumpInfo,
@@ -209,7 +259,14 @@ public class HeapDumpCaptureObject implements CaptureObject {
       return false;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getContents().asReadOnlyByteBuffer());
+    // With lazy loading, the heap dump is mapped from a file instead of being kept on the heap, and the dominators, which are needed for
+    // the depths and retained sizes of the instances, are computed in the background once the heap dump is shown instead of by perflib
+    // while loading. Either way, the heap dump is read through a HeapDumpBuffer, so that the dominators and the bitmap thumbnails can be computed while it is browsed.
+    boolean isLazyLoading = myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isLazyHeapDumpLoadingEnabled();
+    DataBuffer buffer = isLazyLoading ? mapHeapDump(response.getContents()) : null;
+    if (buffer == null) {
+      buffer = HeapDumpBuffer.wrap(response.getContents().asReadOnlyByteBuffer());
+    }
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
     if (myProguardMap != null) {
@@ -218,7 +275,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
     else {
       snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Collections.singletonList(nativeRegistryPostProcessor));
     }
-    snapshot.computeDominators();
+    if (!isLazyLoading) {
+      snapshot.computeDominators();
+      myHasPerflibRetainedSizes = true;
+    }
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
     mySnapshot = snapshot;
 
@@ -235,35 +295,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
         }
       }
     }
+    myJavaLangClassObject = javaLangClassObject;
 
-    InstanceObject finalJavaLangClassObject = javaLangClassObject;
-    for (Heap heap : snapshot.getHeaps()) {
-      HeapSet heapSet = heapSets.get(heap);
-      heap.getClasses().forEach(classObj -> {
-        InstanceObject classObject = createClassObjectInstance(finalJavaLangClassObject, classObj);
-        assert !myInstanceIndex.containsKey(classObj.getId());
-        myInstanceIndex.put(classObj.getId(), classObject);
-        heapSet.addDeltaInstanceObject(classObject);
-      });
-    }
-
-    for (Heap heap : snapshot.getHeaps()) {
-      HeapSet heapSet = heapSets.get(heap);
-      heap.forEachInstance(instance -> {
-        assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
-
-        ClassObj classObj = instance.getClassObj();
-        ClassDb.ClassEntry classEntry =
-          classObj.getSuperClassObj() != null ?
-          myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
-          myClassDb.registerClass(classObj.getId(), classObj.getClassName());
-        InstanceObject instanceObject = new HeapDumpInstanceObject(this, instance, classEntry, null);
-        assert !myInstanceIndex.containsKey(instance.getId());
-        myInstanceIndex.put(instance.getId(), instanceObject);
-        heapSet.addDeltaInstanceObject(instanceObject);
-        return true;
-      });
-    }
+    // InstanceObjects aren't indexed: as they are compared by the instances they wrap, findInstanceObject creates them when needed.
+    forEachInstanceObject(snapshot, (heap, instanceObject) -> heapSets.get(heap).addDeltaInstanceObject(instanceObject));
     heapSets.forEach((key, value) -> {
       if ("default".equals(key.getName())) {
         if (heapSets.size() == 1 || key.getInstancesCount() > 0) {
@@ -277,9 +312,180 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
     myStage.refreshSelectedHeap();
 
+    if (isLazyLoading) {
+      computeRetainedSizes(snapshot, queryJoiner == null ? Runnable::run : queryJoiner);
+    }
     return true;
   }
 
+  /**
+   * Writes the heap dump to a temporary file and maps it.
+   *
+   * @return the mapped heap dump, or null if it could not be written.
+   */
+  @Nullable
+  private DataBuffer mapHeapDump(@NotNull ByteString contents) {
+    try {
+      File file = FileUtil.createTempFile("heap_dump", ".hprof", true);
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        contents.writeTo(out);
+      }
+      myHeapDumpFile = file;
+      return HeapDumpBuffer.map(file);
+    }
+    catch (IOException exception) {
+      getLogger().warn("Failed to map heap dump, loading it in memory:\n" + exception);
+      return null;
+    }
+  }
+
+  /**
+   * Computes the dominators of the snapshot in the background, then updates the sizes of the heap sets, which only account for the
+   * shallow sizes of the instances until then.
+   */
+  private void computeRetainedSizes(@NotNull Snapshot snapshot, @NotNull Executor joiner) {
+    joiner.execute(() -> myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING));
+    // Instance filters are run on the same executor, after the retained sizes are available.
+    myExecutorService.submit(() -> {
+      if (!computeDominatorTree(snapshot)) {
+        // The capture was unloaded.
+        return;
+      }
+      joiner.execute(() -> {
+        for (HeapSet heap : myHeapSets.values()) {
+          List<InstanceObject> instances = heap.getInstancesStream().collect(Collectors.toList());
+          heap.clearClassifierSets();
+          instances.forEach(heap::addDeltaInstanceObject);
+        }
+        myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
+        myStage.refreshSelectedHeap();
+      });
+    });
+  }
+
+  /**
+   * Computes the dominator tree of the hard references between the instances of the snapshot, in parallel. Heap dumps can have tens of
+   * millions of instances, so the graph is flattened to arrays of node indices instead of going through perflib's own computation.
+   *
+   * @return whether the dominator tree was computed, which it isn't if the thread is interrupted or the capture is unloaded.
+   */
+  private boolean computeDominatorTree(@NotNull Snapshot snapshot) {
+    List<Instance> instances = new ArrayList<>();
+    for (Heap heap : snapshot.getHeaps()) {
+      instances.addAll(heap.getClasses());
+      heap.forEachInstance(instance -> {
+        instances.add(instance);
+        return true;
+      });
+    }
+
+    int nodeCount = instances.size();
+    TLongIntHashMap nodeIndex = myNodeIndex;
+    nodeIndex.ensureCapacity(nodeCount);
+    int[] predecessorOffsets = new int[nodeCount + 1];
+    long[] sizes = new long[nodeCount];
+    for (int node = 0; node < nodeCount; node++) {
+      Instance instance = instances.get(node);
+      nodeIndex.put(instance.getId(), node + 1);
+      predecessorOffsets[node + 1] = predecessorOffsets[node] + instance.getHardReverseReferences().size();
+      sizes[node] = instance.getSize();
+    }
+    // References from instances which aren't in any heap are -1, which the dominator tree ignores.
+    int[] predecessors = new int[predecessorOffsets[nodeCount]];
+    List<Callable<Void>> fills = new ArrayList<>();
+    int chunkSize = nodeCount / (Runtime.getRuntime().availableProcessors() * 4) + 1;
+    for (int from = 0; from < nodeCount; from += chunkSize) {
+      int chunkFrom = from;
+      int chunkTo = Math.min(from + chunkSize, nodeCount);
+      fills.add(() -> {
+        for (int node = chunkFrom; node < chunkTo; node++) {
+          int offset = predecessorOffsets[node];
+          for (Instance reference : instances.get(node).getHardReverseReferences()) {
+            predecessors[offset++] = nodeIndex.get(reference.getId()) - 1;
+          }
+        }
+        return null;
+      });
+    }
+    TIntArrayList roots = new TIntArrayList();
+    for (RootObj root : snapshot.getGCRoots()) {
+      Instance instance = root.getReferredInstance();
+      int node = instance == null ? -1 : nodeIndex.get(instance.getId()) - 1;
+      if (node >= 0) {
+        roots.add(node);
+      }
+    }
+
+    try {
+      for (Future<Void> fill : myDominatorExecutorService.invokeAll(fills)) {
+        fill.get();
+      }
+      myDominatorTree = DominatorTree.compute(predecessorOffsets, predecessors, roots.toNativeArray(), sizes, myDominatorExecutorService);
+      return true;
+    }
+    catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    catch (ExecutionException exception) {
+      throw new RuntimeException(exception.getCause());
+    }
+    catch (RejectedExecutionException | CancellationException exception) {
+      // The capture was unloaded while the dominators were computed.
+      return false;
+    }
+  }
+
+  @NotNull
+  private static ExecutorService createDominatorExecutorService() {
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                             new ThreadFactoryBuilder().setNameFormat("memory-heapdump-dominators-%d").build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Whether the depths and retained sizes of the instances are available. Perflib computes them while loading heap dumps eagerly, and
+   * they are only computed in the background when loading heap dumps lazily.
+   */
+  public boolean hasRetainedSizes() {
+    return myHasPerflibRetainedSizes || myDominatorTree != null;
+  }
+
+  /**
+   * @return the length of the shortest path of hard references from a GC root to the instance, {@link DominatorTree#UNREACHABLE_DEPTH}
+   * for instances outside of the dominator tree, or {@link MemoryObject#INVALID_VALUE} until the tree is computed.
+   */
+  int getDepth(@NotNull Instance instance) {
+    if (myHasPerflibRetainedSizes) {
+      return instance.getDistanceToGcRoot();
+    }
+    DominatorTree dominatorTree = myDominatorTree;
+    if (dominatorTree == null) {
+      return INVALID_VALUE;
+    }
+    int node = myNodeIndex.get(instance.getId()) - 1;
+    return node < 0 ? DominatorTree.UNREACHABLE_DEPTH : dominatorTree.getDepth(node);
+  }
+
+  /**
+   * @return the size of the instance and of all the instances it dominates, 0 for instances outside of the dominator tree, or
+   * {@link MemoryObject#INVALID_VALUE} until the tree is computed.
+   */
+  long getRetainedSize(@NotNull Instance instance) {
+    if (myHasPerflibRetainedSizes) {
+      return instance.getTotalRetainedSize();
+    }
+    DominatorTree dominatorTree = myDominatorTree;
+    if (dominatorTree == null) {
+      return INVALID_VALUE;
+    }
+    int node = myNodeIndex.get(instance.getId()) - 1;
+    return node < 0 ? 0 : dominatorTree.getRetainedSize(node);
+  }
+
   @Override
   public boolean isDoneLoading() {
     return mySnapshot != null || myIsLoadingError;
@@ -293,6 +499,11 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Override
   public void unload() {
     myExecutorService.shutdownNow();
+    myDominatorExecutorService.shutdownNow();
+    if (myHeapDumpFile != null) {
+      // The mapped file can't be deleted on Windows, where it is deleted on exit instead.
+      FileUtil.delete(myHeapDumpFile);
+    }
   }
 
   @NotNull
@@ -319,16 +530,46 @@ public class HeapDumpCaptureObject implements CaptureObject {
       return null;
     }
 
-    return myInstanceIndex.get(instance.getId());
+    if (instance instanceof ClassObj) {
+      return createClassObjectInstance(myJavaLangClassObject, (ClassObj)instance);
+    }
+    return createInstanceObject(instance);
+  }
+
+  /**
+   * Creates the InstanceObjects of all the classes and instances of the snapshot, passing them with their heap to the consumer.
+   */
+  private void forEachInstanceObject(@NotNull Snapshot snapshot, @NotNull BiConsumer<Heap, InstanceObject> consumer) {
+    for (Heap heap : snapshot.getHeaps()) {
+      heap.getClasses().forEach(classObj -> consumer.accept(heap, createClassObjectInstance(myJavaLangClassObject, classObj)));
+    }
+
+    for (Heap heap : snapshot.getHeaps()) {
+      heap.forEachInstance(instance -> {
+        assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
+        consumer.accept(heap, createInstanceObject(instance));
+        return true;
+      });
+    }
+  }
+
+  @NotNull
+  private HeapDumpInstanceObject createInstanceObject(@NotNull Instance instance) {
+    ClassObj classObj = instance.getClassObj();
+    ClassDb.ClassEntry classEntry =
+      classObj.getSuperClassObj() != null ?
+      myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
+      myClassDb.registerClass(classObj.getId(), classObj.getClassName());
+    return new HeapDumpInstanceObject(this, instance, classEntry, null);
   }
 
   @NotNull
-  InstanceObject createClassObjectInstance(@Nullable InstanceObject javaLangClass, @NotNull ClassObj classObj) {
+  HeapDumpInstanceObject createClassObjectInstance(@Nullable InstanceObject javaLangClass, @NotNull ClassObj classObj) {
     String className = javaLangClass == null ? JAVA_LANG_CLASS : classObj.getClassName();
     ClassDb.ClassEntry classEntry = classObj.getSuperClassObj() != null ?
                                     myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), className) :
                                     myClassDb.registerClass(classObj.getId(), className);
-    InstanceObject classObject;
+    HeapDumpInstanceObject classObject;
     if (javaLangClass == null) {
       // Handle java.lang.Class which is a special case. All its instances are other classes, so wee need to create an InstanceObject for it
       // first for all classes to reference.
@@ -352,6 +593,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myCurrentInstanceFilters;
   }
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @VisibleForTesting
   ExecutorService getInstanceFilterExecutor() {
     return myExecutorService;
@@ -395,8 +640,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
     myExecutorService.submit(() -> {
       // Run the remaining analyzers on the full instance set, since we don't know the the instances that have been removed from the
       // HeapSets using the filter that we are removing.
-      Set<InstanceObject> allInstances = new HashSet<>(myInstanceIndex.size());
-      myInstanceIndex.forEachValue(instance -> allInstances.add(instance));
+      Snapshot snapshot = mySnapshot;
+      assert snapshot != null;
+      Set<InstanceObject> allInstances = new HashSet<>();
+      forEachInstanceObject(snapshot, (heap, instance) -> allInstances.add(instance));
       Set<InstanceObject> matchedInstances = allInstances;
       for (CaptureObjectInstanceFilter filter : myCurrentInstanceFilters) {
         matchedInstances = filter.filter(matchedInstances, myClassDb);
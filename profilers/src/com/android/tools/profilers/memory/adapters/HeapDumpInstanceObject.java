@@ -33,7 +33,6 @@ import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.
 class HeapDumpInstanceObject implements InstanceObject {
   private static final String NAME_FORMATTER = "%s@%d (0x%x)";
   private static final int MAX_VALUE_TEXT_LENGTH = 1024;
-  private static final Comparator<Instance> DEPTH_COMPARATOR = Comparator.comparingInt(Instance::getDistanceToGcRoot);
   private static final String INVALID_STRING_VALUE = " ...<invalid string value>...";
   private static final Map<Type, ValueType> VALUE_TYPE_MAP = ImmutableMap.<Type, ValueObject.ValueType>builder()
     .put(Type.BOOLEAN, BOOLEAN)
@@ -52,7 +51,8 @@ class HeapDumpInstanceObject implements InstanceObject {
   @NotNull private final HeapDumpCaptureObject myCaptureObject;
   @NotNull private final Instance myInstance;
   @NotNull private final ClassDb.ClassEntry myClassEntry;
-  @NotNull private final String myMemoizedLabel;
+  // Formatted when first shown, as heap dumps can have millions of instances.
+  @Nullable private String myMemoizedLabel;
 
   HeapDumpInstanceObject(@NotNull HeapDumpCaptureObject captureObject,
                          @NotNull Instance instance,
@@ -62,8 +62,6 @@ class HeapDumpInstanceObject implements InstanceObject {
     myInstance = instance;
     myClassEntry = classEntry;
 
-    myMemoizedLabel =
-      String.format(NAME_FORMATTER, myClassEntry.getSimpleClassName(), myInstance.getUniqueId(), myInstance.getUniqueId());
     if (precomputedValueType != null) {
       myValueType = precomputedValueType;
       return;
@@ -109,6 +107,10 @@ class HeapDumpInstanceObject implements InstanceObject {
   @Override
   public String getValueText() {
     // TODO show length of array instance
+    if (myMemoizedLabel == null) {
+      myMemoizedLabel =
+        String.format(NAME_FORMATTER, myClassEntry.getSimpleClassName(), myInstance.getUniqueId(), myInstance.getUniqueId());
+    }
     return myMemoizedLabel;
   }
 
@@ -150,7 +152,7 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public int getDepth() {
-    return myInstance.getDistanceToGcRoot();
+    return myCaptureObject.hasRetainedSizes() ? myCaptureObject.getDepth(myInstance) : INVALID_VALUE;
   }
 
   @Override
@@ -165,7 +167,7 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public long getRetainedSize() {
-    return myInstance.getTotalRetainedSize();
+    return myCaptureObject.hasRetainedSizes() ? myCaptureObject.getRetainedSize(myInstance) : INVALID_VALUE;
   }
 
   @Override
@@ -240,6 +242,17 @@ class HeapDumpInstanceObject implements InstanceObject {
         return null;
       }
 
+      @Nullable
+      @Override
+      public byte[] getAsByteArray(int offset, int length) {
+        if (getArrayElementType() == BYTE) {
+          // Reads from the heap dump buffer directly, instead of copying the whole array.
+          int from = Math.min(Math.max(offset, 0), arrayInstance.getLength());
+          return arrayInstance.asRawByteArray(from, Math.max(0, Math.min(length, arrayInstance.getLength() - from)));
+        }
+        return null;
+      }
+
       @Nullable
       @Override
       public char[] getAsCharArray() {
@@ -303,13 +316,14 @@ class HeapDumpInstanceObject implements InstanceObject {
   @NotNull
   public List<ReferenceObject> extractReferences() {
     // Sort hard referrers to appear first.
+    Comparator<Instance> depthComparator = Comparator.comparingInt(myCaptureObject::getDepth);
     List<Instance> sortedReferences = new ArrayList<>(myInstance.getHardReverseReferences());
-    sortedReferences.sort(DEPTH_COMPARATOR);
+    sortedReferences.sort(depthComparator);
 
     // Sort soft referrers to appear second.
     if (myInstance.getSoftReverseReferences() != null) {
       List<Instance> sortedSoftReferences = new ArrayList<>(myInstance.getSoftReverseReferences());
-      sortedSoftReferences.sort(DEPTH_COMPARATOR);
+      sortedSoftReferences.sort(depthComparator);
       sortedReferences.addAll(sortedSoftReferences);
     }
 
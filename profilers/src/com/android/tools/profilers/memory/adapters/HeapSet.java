@@ -17,9 +17,13 @@ package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping;
+import com.google.common.annotations.VisibleForTesting;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +35,19 @@ public class HeapSet extends ClassifierSet {
   private final int myId;
   @NotNull private Filter myFilter;
 
+  // The partitions of the instances for the other groupings, along with the filter they were last filtered with, which can be switched
+  // back to instead of partitioning all the instances again, as long as no instance was added or removed since.
+  @NotNull private final Map<ClassGrouping, Classifier> myGroupingClassifiers = new EnumMap<>(ClassGrouping.class);
+  @NotNull private final Map<ClassGrouping, Filter> myGroupingFilters = new EnumMap<>(ClassGrouping.class);
+  private int myGroupingModificationCount;
+
+  // Regrouping latency, from setClassGrouping until the instances are partitioned for the new grouping.
+  private long myRegroupingStartNanos = -1;
+  private long myLastRegroupingNanos;
+  private long myTotalRegroupingNanos;
+  private int myRegroupingCount;
+  private int myReusedGroupingCount;
+
   public HeapSet(@NotNull CaptureObject captureObject, @NotNull String heapName, int id) {
     super(heapName);
     myCaptureObject = captureObject;
@@ -43,10 +60,37 @@ public class HeapSet extends ClassifierSet {
     if (myClassGrouping == classGrouping) {
       return;
     }
+    long start = System.nanoTime();
+    if (myGroupingModificationCount != getModificationCount()) {
+      myGroupingClassifiers.clear();
+      myGroupingFilters.clear();
+      myGroupingModificationCount = getModificationCount();
+    }
+    if (myClassifier != null) {
+      myGroupingClassifiers.put(myClassGrouping, myClassifier);
+      myGroupingFilters.put(myClassGrouping, myFilter);
+    }
     myClassGrouping = classGrouping;
 
+    Classifier classifier = myGroupingClassifiers.get(classGrouping);
+    if (classifier != null) {
+      // All the instances are already in the partition, the ones gathered in this node were not partitioned again yet.
+      mySnapshotInstances.clear();
+      myDeltaInstances.clear();
+      myClassifier = classifier;
+      myNeedsRefiltering = true;
+      Filter filter = myGroupingFilters.get(classGrouping);
+      if (!myFilter.equals(filter) || !myFilter.isEmpty()) {
+        applyFilter(myFilter, false, !myFilter.equals(filter));
+      }
+      myReusedGroupingCount++;
+      recordRegrouping(System.nanoTime() - start);
+      return;
+    }
+
     // Gather all the instances from the descendants and add them to the heap node.
     // Subsequent calls to getChildrenClassifierSets will re-partition them to the correct child ClassifierSet.
+    myRegroupingStartNanos = start;
     List<InstanceObject> snapshotStream = getSnapshotInstanceStream().collect(Collectors.toList());
     List<InstanceObject> deltaStream = getDeltaInstanceStream().collect(Collectors.toList());
     myDeltaInstances.clear();
@@ -61,6 +105,40 @@ public class HeapSet extends ClassifierSet {
     return myId;
   }
 
+  @Override
+  protected void ensurePartition() {
+    super.ensurePartition();
+    if (myRegroupingStartNanos >= 0) {
+      recordRegrouping(System.nanoTime() - myRegroupingStartNanos);
+      myRegroupingStartNanos = -1;
+    }
+  }
+
+  private void recordRegrouping(long nanos) {
+    myLastRegroupingNanos = nanos;
+    myTotalRegroupingNanos += nanos;
+    myRegroupingCount++;
+  }
+
+  public long getLastRegroupingTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(myLastRegroupingNanos);
+  }
+
+  /**
+   * @return the number of times the grouping changed, and how many of those reused a previous partition, with their latencies.
+   */
+  @NotNull
+  public String getRegroupingStats() {
+    return String.format("%d regroupings (%d reused), last %d ms, average %d ms", myRegroupingCount, myReusedGroupingCount,
+                         getLastRegroupingTimeMs(),
+                         myRegroupingCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myTotalRegroupingNanos / myRegroupingCount));
+  }
+
+  @VisibleForTesting
+  int getReusedGroupingCount() {
+    return myReusedGroupingCount;
+  }
+
   // Select and apply a filter.
   // When there are content changes in HeapSet, we need to re-select the same filter.
   public void selectFilter(@NotNull Filter filter) {
@@ -18,34 +18,64 @@ package com.android.tools.profilers.network;
 import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class which handles querying for a list of {@link HttpData} requests within a specified range.
  * When the range changes, the list will automatically be updated, and this class will notify any
  * listeners.
+ * <p>
+ * Connections are kept in an {@link HttpDataIntervalTree}, and only the parts of the range which weren't queried before, or which may
+ * still change, are queried from the {@link NetworkConnectionsModel}. Listeners are told which connections entered, left or changed in
+ * the range, so that they don't need to rebuild everything.
  */
 public final class HttpDataFetcher {
+  /**
+   * How long before the end of the data range connections may still be reported, as their events can arrive late.
+   */
+  private static final long UNSETTLED_DATA_US = TimeUnit.SECONDS.toMicros(2);
+
   // myAspectObserver cannot be local to prevent early GC
   @SuppressWarnings("FieldCanBeLocal") private final AspectObserver myAspectObserver = new AspectObserver();
 
   @NotNull private final NetworkConnectionsModel myConnectionsModel;
   @NotNull private final Range myRange;
+  @NotNull private final Range myDataRange;
   @NotNull private final List<Listener> myListeners = new ArrayList<>();
 
+  @NotNull private final HttpDataIntervalTree myConnections = new HttpDataIntervalTree();
+  /**
+   * The time ranges, in microseconds, whose connections are all in {@link #myConnections} and won't change anymore.
+   */
+  @NotNull private final RangeSet<Long> mySettledRanges = TreeRangeSet.create();
+
   /**
    * The last list of requests polled from the user's device. Initialized to {@code null} to
    * distinguish that case from the case where a range returns no requests.
    */
   @Nullable private List<HttpData> myDataList;
 
-  public HttpDataFetcher(@NotNull NetworkConnectionsModel connectionsModel, @NotNull Range range) {
+  /**
+   * @param range     the range to list the connections of
+   * @param dataRange the range of the session's data, whose end tells which connections may still change
+   */
+  public HttpDataFetcher(@NotNull NetworkConnectionsModel connectionsModel, @NotNull Range range, @NotNull Range dataRange) {
     myConnectionsModel = connectionsModel;
     myRange = range;
+    myDataRange = dataRange;
 
     myRange.addDependency(myAspectObserver).onChange(Range.Aspect.RANGE, this::handleRangeUpdated);
     handleRangeUpdated();
@@ -54,27 +84,145 @@ public final class HttpDataFetcher {
   public void addListener(@NotNull Listener listener) {
     myListeners.add(listener);
     if (myDataList != null) {
-      fireListeners(myDataList);
+      listener.onUpdated(myDataList, new Delta(myDataList, Collections.emptyList(), Collections.emptyList()));
     }
   }
 
   private void handleRangeUpdated() {
-    List<HttpData> dataList = !myRange.isEmpty() ? myConnectionsModel.getData(myRange) : new ArrayList<>();
-    if (myDataList != null && myDataList.equals(dataList)) {
+    List<HttpData> dataList;
+    if (myRange.isEmpty()) {
+      dataList = new ArrayList<>();
+    }
+    else {
+      long minUs = (long)Math.floor(myRange.getMin());
+      long maxUs = (long)Math.ceil(myRange.getMax());
+      Set<Long> fetchedIds = fetchUnsettledConnections(minUs, maxUs);
+      dataList = myConnections.query(minUs, maxUs);
+      // Connections which were open when last fetched, and weren't fetched again, have ended before the range. They'll be fetched again
+      // with a range which covers them, as their time range was never settled.
+      dataList.removeIf(data -> data.getConnectionEndTimeUs() == 0 && !fetchedIds.contains(data.getId()) &&
+                                myConnections.remove(data.getId()) != null);
+    }
+
+    Delta delta = Delta.between(myDataList != null ? myDataList : Collections.emptyList(), dataList);
+    if (myDataList != null && delta.isEmpty()) {
       return;
     }
 
     myDataList = dataList;
-    fireListeners(myDataList);
+    for (Listener l : myListeners) {
+      l.onUpdated(myDataList, delta);
+    }
   }
 
-  private void fireListeners(@NotNull List<HttpData> dataList) {
-    for (Listener l : myListeners) {
-      l.onUpdated(dataList);
+  /**
+   * Queries the connections of the parts of [minUs..maxUs] which aren't settled yet, and settles the parts which can't change anymore.
+   * That is the parts before the end of the data range, and before the start of any connection which is still open.
+   *
+   * @return the ids of the fetched connections.
+   */
+  @NotNull
+  private Set<Long> fetchUnsettledConnections(long minUs, long maxUs) {
+    Set<Long> fetchedIds = new HashSet<>();
+    long settledLimitUs = (long)myDataRange.getMax() - UNSETTLED_DATA_US;
+    // A copy, as the view changes while ranges are settled.
+    RangeSet<Long> unsettledRanges =
+      TreeRangeSet.create(mySettledRanges.complement().subRangeSet(com.google.common.collect.Range.closed(minUs, maxUs)));
+    for (com.google.common.collect.Range<Long> unsettledRange : unsettledRanges.asRanges()) {
+      long startUs = unsettledRange.lowerEndpoint();
+      long endUs = unsettledRange.upperEndpoint();
+      // Exclusive, so that consecutive settled ranges merge.
+      long settledEndUs = Math.min(unsettledRange.upperBoundType() == BoundType.CLOSED ? endUs + 1 : endUs, settledLimitUs);
+      for (HttpData data : myConnectionsModel.getData(new Range(startUs, endUs))) {
+        myConnections.put(data);
+        fetchedIds.add(data.getId());
+        if (data.getConnectionEndTimeUs() == 0) {
+          settledEndUs = Math.min(settledEndUs, data.getRequestStartTimeUs());
+        }
+      }
+      if (settledEndUs > startUs) {
+        mySettledRanges.add(com.google.common.collect.Range.closedOpen(startUs, settledEndUs));
+      }
     }
+    return fetchedIds;
   }
 
   public interface Listener {
     void onUpdated(@NotNull List<HttpData> httpDataList);
+
+    /**
+     * Called when the list of requests changes, with what changed since the previous list. By default, listeners only get the new list.
+     */
+    default void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull Delta delta) {
+      onUpdated(httpDataList);
+    }
+  }
+
+  /**
+   * The requests which entered, left, or changed in the list, each in the order of the list they are in.
+   */
+  public static final class Delta {
+    @NotNull private final List<HttpData> myAdded;
+    @NotNull private final List<HttpData> myRemoved;
+    @NotNull private final List<HttpData> myUpdated;
+
+    private Delta(@NotNull List<HttpData> added, @NotNull List<HttpData> removed, @NotNull List<HttpData> updated) {
+      myAdded = added;
+      myRemoved = removed;
+      myUpdated = updated;
+    }
+
+    @NotNull
+    private static Delta between(@NotNull List<HttpData> previousList, @NotNull List<HttpData> dataList) {
+      Map<Long, HttpData> previousById = new HashMap<>();
+      for (HttpData data : previousList) {
+        previousById.put(data.getId(), data);
+      }
+      List<HttpData> added = new ArrayList<>();
+      List<HttpData> updated = new ArrayList<>();
+      for (HttpData data : dataList) {
+        HttpData previous = previousById.remove(data.getId());
+        if (previous == null) {
+          added.add(data);
+        }
+        else if (previous != data && !hasSameTimes(previous, data)) {
+          updated.add(data);
+        }
+      }
+      List<HttpData> removed = new ArrayList<>(previousById.size());
+      for (HttpData data : previousList) {
+        if (previousById.containsKey(data.getId())) {
+          removed.add(data);
+        }
+      }
+      return new Delta(added, removed, updated);
+    }
+
+    private static boolean hasSameTimes(@NotNull HttpData first, @NotNull HttpData second) {
+      return first.getRequestStartTimeUs() == second.getRequestStartTimeUs() &&
+             first.getRequestCompleteTimeUs() == second.getRequestCompleteTimeUs() &&
+             first.getResponseStartTimeUs() == second.getResponseStartTimeUs() &&
+             first.getResponseCompleteTimeUs() == second.getResponseCompleteTimeUs() &&
+             first.getConnectionEndTimeUs() == second.getConnectionEndTimeUs();
+    }
+
+    @NotNull
+    public List<HttpData> getAdded() {
+      return myAdded;
+    }
+
+    @NotNull
+    public List<HttpData> getRemoved() {
+      return myRemoved;
+    }
+
+    @NotNull
+    public List<HttpData> getUpdated() {
+      return myUpdated;
+    }
+
+    public boolean isEmpty() {
+      return myAdded.isEmpty() && myRemoved.isEmpty() && myUpdated.isEmpty();
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import com.android.tools.profilers.network.httpdata.HttpData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An interval tree of {@link HttpData}, over [getRequestStartTimeUs()..getConnectionEndTimeUs()], which can be updated as connections
+ * arrive or progress. Connections which haven't ended yet span to the end of time.
+ * <p>
+ * The tree is a treap ordered by request start time, where each node also keeps the latest end time of its subtree, so that queries skip
+ * the subtrees which end before the queried range.
+ */
+final class HttpDataIntervalTree {
+  @NotNull private final Map<Long, Node> myNodes = new HashMap<>();
+  @NotNull private final Random myRandom = new Random(0);
+  @Nullable private Node myRoot;
+
+  /**
+   * Adds a connection, replacing the connection with the same id if any.
+   *
+   * @return the replaced connection, or null.
+   */
+  @Nullable
+  public HttpData put(@NotNull HttpData data) {
+    HttpData previous = remove(data.getId());
+    Node node = new Node(data, myRandom.nextInt());
+    myNodes.put(data.getId(), node);
+    myRoot = insert(myRoot, node);
+    return previous;
+  }
+
+  /**
+   * @return the removed connection, or null if there was no connection with that id.
+   */
+  @Nullable
+  public HttpData remove(long id) {
+    Node node = myNodes.remove(id);
+    if (node == null) {
+      return null;
+    }
+    myRoot = remove(myRoot, node);
+    return node.myData;
+  }
+
+  @Nullable
+  public HttpData get(long id) {
+    Node node = myNodes.get(id);
+    return node == null ? null : node.myData;
+  }
+
+  public int size() {
+    return myNodes.size();
+  }
+
+  /**
+   * @return the connections which intersect [minUs..maxUs] (all inclusive), ordered by request start time.
+   */
+  @NotNull
+  public List<HttpData> query(long minUs, long maxUs) {
+    List<HttpData> dataList = new ArrayList<>();
+    query(myRoot, minUs, maxUs, dataList);
+    return dataList;
+  }
+
+  private static void query(@Nullable Node node, long minUs, long maxUs, @NotNull List<HttpData> dataList) {
+    while (node != null && node.myMaxEndUs >= minUs) {
+      query(node.myLeft, minUs, maxUs, dataList);
+      if (node.myStartUs > maxUs) {
+        return;
+      }
+      if (node.myEndUs >= minUs) {
+        dataList.add(node.myData);
+      }
+      node = node.myRight;
+    }
+  }
+
+  @NotNull
+  private static Node insert(@Nullable Node root, @NotNull Node node) {
+    if (root == null) {
+      return node;
+    }
+    if (node.myPriority > root.myPriority) {
+      Node[] parts = split(root, node);
+      node.myLeft = parts[0];
+      node.myRight = parts[1];
+      node.update();
+      return node;
+    }
+    if (node.compareTo(root) < 0) {
+      root.myLeft = insert(root.myLeft, node);
+    }
+    else {
+      root.myRight = insert(root.myRight, node);
+    }
+    root.update();
+    return root;
+  }
+
+  @Nullable
+  private static Node remove(@NotNull Node root, @NotNull Node node) {
+    if (root == node) {
+      return merge(root.myLeft, root.myRight);
+    }
+    if (node.compareTo(root) < 0) {
+      root.myLeft = remove(root.myLeft, node);
+    }
+    else {
+      root.myRight = remove(root.myRight, node);
+    }
+    root.update();
+    return root;
+  }
+
+  /**
+   * Splits a tree into the nodes before {@code key} and the nodes after it.
+   */
+  @NotNull
+  private static Node[] split(@Nullable Node root, @NotNull Node key) {
+    if (root == null) {
+      return new Node[2];
+    }
+    Node[] parts;
+    if (root.compareTo(key) < 0) {
+      parts = split(root.myRight, key);
+      root.myRight = parts[0];
+      parts[0] = root;
+    }
+    else {
+      parts = split(root.myLeft, key);
+      root.myLeft = parts[1];
+      parts[1] = root;
+    }
+    root.update();
+    return parts;
+  }
+
+  /**
+   * Merges two trees, where all the nodes of {@code left} are before the nodes of {@code right}.
+   */
+  @Nullable
+  private static Node merge(@Nullable Node left, @Nullable Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.myPriority > right.myPriority) {
+      left.myRight = merge(left.myRight, right);
+      left.update();
+      return left;
+    }
+    right.myLeft = merge(left, right.myLeft);
+    right.update();
+    return right;
+  }
+
+  private static final class Node implements Comparable<Node> {
+    @NotNull private final HttpData myData;
+    private final long myStartUs;
+    private final long myEndUs;
+    private final int myPriority;
+    private long myMaxEndUs;
+    @Nullable private Node myLeft;
+    @Nullable private Node myRight;
+
+    private Node(@NotNull HttpData data, int priority) {
+      myData = data;
+      myStartUs = data.getRequestStartTimeUs();
+      myEndUs = data.getConnectionEndTimeUs() == 0 ? Long.MAX_VALUE : data.getConnectionEndTimeUs();
+      myPriority = priority;
+      myMaxEndUs = myEndUs;
+    }
+
+    private void update() {
+      myMaxEndUs = myEndUs;
+      if (myLeft != null) {
+        myMaxEndUs = Math.max(myMaxEndUs, myLeft.myMaxEndUs);
+      }
+      if (myRight != null) {
+        myMaxEndUs = Math.max(myMaxEndUs, myRight.myMaxEndUs);
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull Node other) {
+      int compare = Long.compare(myStartUs, other.myStartUs);
+      return compare != 0 ? compare : Long.compare(myData.getId(), other.myData.getId());
+    }
+  }
+}
@@ -25,12 +25,14 @@ import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profilers.FeatureConfig;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadStore;
 import com.intellij.openapi.util.text.StringUtil;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A {@link NetworkConnectionsModel} that uses the legacy network RPC mechanism to fetch http connection data originated from an app.
@@ -40,13 +42,22 @@ public class LegacyRpcNetworkConnectionsModel implements NetworkConnectionsModel
   @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myTransportService;
   @NotNull private final NetworkServiceGrpc.NetworkServiceBlockingStub myNetworkService;
   @NotNull private final Common.Session mySession;
+  @Nullable private final PayloadStore myPayloadStore;
 
   public LegacyRpcNetworkConnectionsModel(@NotNull TransportServiceGrpc.TransportServiceBlockingStub transportService,
                                           @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
                                           @NotNull Common.Session session) {
+    this(transportService, networkService, session, null);
+  }
+
+  public LegacyRpcNetworkConnectionsModel(@NotNull TransportServiceGrpc.TransportServiceBlockingStub transportService,
+                                          @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
+                                          @NotNull Common.Session session,
+                                          @Nullable PayloadStore payloadStore) {
     myTransportService = transportService;
     myNetworkService = networkService;
     mySession = session;
+    myPayloadStore = payloadStore;
   }
 
   @NotNull
@@ -132,6 +143,12 @@ public class LegacyRpcNetworkConnectionsModel implements NetworkConnectionsModel
     return response.getContents();
   }
 
+  @Nullable
+  @Override
+  public PayloadStore getPayloadStore() {
+    return myPayloadStore;
+  }
+
   private void requestHttpResponse(long connectionId, @NotNull HttpData.Builder httpBuilder) {
     NetworkProfiler.HttpDetailsResponse response = getDetails(connectionId, NetworkProfiler.HttpDetailsRequest.Type.RESPONSE);
     httpBuilder.setResponseFields(response.getResponse().getFields());
@@ -18,8 +18,10 @@ package com.android.tools.profilers.network;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadStore;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A model class which allows querying captured network data requests.
@@ -44,4 +46,13 @@ public interface NetworkConnectionsModel {
    */
   @NotNull
   ByteString requestBytes(@NotNull String id);
+
+  /**
+   * Returns the store which keeps the payloads fetched by {@link #requestBytes(String)} off the heap, or null if payloads are kept in
+   * memory.
+   */
+  @Nullable
+  default PayloadStore getPayloadStore() {
+    return null;
+  }
 }
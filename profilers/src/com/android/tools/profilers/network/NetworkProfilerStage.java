@@ -39,9 +39,12 @@ import com.android.tools.profilers.Stage;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.event.EventMonitor;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadStore;
 import com.android.tools.profilers.stacktrace.CodeLocation;
 import com.android.tools.profilers.stacktrace.CodeNavigator;
 import com.android.tools.profilers.stacktrace.StackTraceModel;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
 import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -61,6 +64,8 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
   private AspectModel<NetworkProfilerAspect> myAspect = new AspectModel<>();
 
   private final NetworkConnectionsModel myConnectionsModel;
+  // Keeps the payloads of the connections selected in this stage on disk, until the stage exits.
+  private final PayloadStore myPayloadStore = new PayloadStore();
 
   private final DetailedNetworkUsage myDetailedNetworkUsage;
   private final NetworkStageLegends myLegends;
@@ -112,12 +117,13 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
 
     myConnectionsModel =
       profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled() ?
-      new RpcNetworkConnectionsModel(profilers.getClient().getTransportClient(), profilers.getSession()) :
+      new RpcNetworkConnectionsModel(profilers.getClient().getTransportClient(), profilers.getSession(), myPayloadStore) :
       new LegacyRpcNetworkConnectionsModel(profilers.getClient().getTransportClient(),
                                            profilers.getClient().getNetworkClient(),
-                                           profilers.getSession());
+                                           profilers.getSession(),
+                                           myPayloadStore);
 
-    myHttpDataFetcher = new HttpDataFetcher(myConnectionsModel, timeline.getSelectionRange());
+    myHttpDataFetcher = new HttpDataFetcher(myConnectionsModel, timeline.getSelectionRange(), timeline.getDataRange());
     myInstructionsEaseOutModel = new EaseOutModel(profilers.getUpdater(), PROFILING_INSTRUCTIONS_EASE_OUT_NS);
   }
 
@@ -196,6 +202,19 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
     getStudioProfilers().getIdeServices().getCodeNavigator().removeListener(this);
 
     myRangeSelectionModel.clearListeners();
+
+    if (myPayloadStore.getPayloadCount() > 0) {
+      Logger.getInstance(NetworkProfilerStage.class).info(String.format(
+        "Stored %d network payloads of %d bytes in %d bytes", myPayloadStore.getPayloadCount(), myPayloadStore.getPayloadSize(),
+        myPayloadStore.getStoredSize()));
+    }
+
+    try {
+      myPayloadStore.close();
+    }
+    catch (IOException e) {
+      Logger.getInstance(NetworkProfilerStage.class).warn("Failed to delete the network payloads", e);
+    }
   }
 
   @NotNull
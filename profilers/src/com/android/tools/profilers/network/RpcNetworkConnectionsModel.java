@@ -27,6 +27,7 @@ import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadStore;
 import com.intellij.openapi.util.text.StringUtil;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A {@link NetworkConnectionsModel} that uses the new event pipeline to fetch http connection data originated from an app.
@@ -42,11 +44,19 @@ import org.jetbrains.annotations.NotNull;
 public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
   @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myTransportService;
   @NotNull private final Common.Session mySession;
+  @Nullable private final PayloadStore myPayloadStore;
 
   public RpcNetworkConnectionsModel(@NotNull TransportServiceGrpc.TransportServiceBlockingStub transportService,
                                     @NotNull Common.Session session) {
+    this(transportService, session, null);
+  }
+
+  public RpcNetworkConnectionsModel(@NotNull TransportServiceGrpc.TransportServiceBlockingStub transportService,
+                                    @NotNull Common.Session session,
+                                    @Nullable PayloadStore payloadStore) {
     myTransportService = transportService;
     mySession = session;
+    myPayloadStore = payloadStore;
   }
 
   @NotNull
@@ -158,4 +168,10 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
     BytesResponse response = myTransportService.getBytes(request);
     return response.getContents();
   }
+
+  @Nullable
+  @Override
+  public PayloadStore getPayloadStore() {
+    return myPayloadStore;
+  }
 }
@@ -17,6 +17,7 @@ package com.android.tools.profilers.network.httpdata;
 
 import com.android.tools.profilers.network.NetworkConnectionsModel;
 import com.android.tools.idea.protobuf.ByteString;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -24,14 +25,20 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.util.zip.GZIPInputStream;
 
 /**
  * A class for fetching the payload data associated with an {@link HttpData} instance.
+ * <p>
+ * If the model has a {@link PayloadStore}, fetched payloads are kept there and only softly cached in memory, so that large payloads
+ * can be reclaimed and read back, in parts if needed.
  */
 public abstract class Payload {
   @NotNull private final NetworkConnectionsModel myModel;
   @Nullable private ByteString myCachedBytes;
+  @NotNull private SoftReference<ByteString> mySoftCachedBytes = new SoftReference<>(null);
 
   /**
    * Construct this class using {@link #newRequestPayload(NetworkConnectionsModel, HttpData)}
@@ -87,19 +94,84 @@ public abstract class Payload {
       return myCachedBytes;
     }
 
-    myCachedBytes = myModel.requestBytes(getId());
+    PayloadStore store = myModel.getPayloadStore();
+    if (store == null) {
+      myCachedBytes = fetchBytes();
+      return myCachedBytes;
+    }
+
+    ByteString bytes = mySoftCachedBytes.get();
+    if (bytes != null) {
+      return bytes;
+    }
+    try {
+      if (store.contains(getId())) {
+        bytes = store.getBytes(getId());
+      }
+      else {
+        bytes = fetchBytes();
+        store.put(getId(), bytes);
+      }
+      mySoftCachedBytes = new SoftReference<>(bytes);
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to store network payload, keeping it in memory", e);
+      myCachedBytes = bytes != null ? bytes : fetchBytes();
+      bytes = myCachedBytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the size of this payload, fetching it if needed.
+   */
+  public final long getSize() {
+    PayloadStore store = myModel.getPayloadStore();
+    if (myCachedBytes == null && store != null) {
+      long size = store.getSize(getId());
+      if (size >= 0) {
+        return size;
+      }
+    }
+    return getBytes().size();
+  }
+
+  /**
+   * Opens a stream over this payload which, once the payload is stored, only decompresses the parts being read.
+   */
+  @NotNull
+  public final InputStream openStream() {
+    PayloadStore store = myModel.getPayloadStore();
+    if (myCachedBytes == null && store != null) {
+      if (!store.contains(getId())) {
+        getBytes();
+      }
+      if (store.contains(getId())) {
+        return store.openStream(getId());
+      }
+    }
+    return getBytes().newInput();
+  }
+
+  @NotNull
+  private ByteString fetchBytes() {
+    ByteString bytes = myModel.requestBytes(getId());
     String contentEncoding = getHeader().getContentEncoding();
     if (StringUtil.toLowerCase(contentEncoding).contains("gzip")) {
-      try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(myCachedBytes.toByteArray()))) {
-        myCachedBytes = ByteString.copyFrom(FileUtil.loadBytes(inputStream));
+      try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+        bytes = ByteString.copyFrom(FileUtil.loadBytes(inputStream));
       }
       catch (IOException ignored) {
         // If we got here, it means we failed to unzip data that was supposedly zipped. Just
         // fallback and return the content directly.
       }
     }
+    return bytes;
+  }
 
-    return myCachedBytes;
+  @NotNull
+  private static Logger getLogger() {
+    return Logger.getInstance(Payload.class);
   }
 
   @NotNull
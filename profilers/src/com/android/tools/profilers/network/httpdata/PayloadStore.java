@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network.httpdata;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the payloads of a session's http connections compressed in a temporary file instead of in memory.
+ * <p>
+ * Payloads are compressed in blocks, so that parts of large payloads can be read or streamed without decompressing all of them. Blocks
+ * which don't compress, e.g. of images or videos, are stored as they are. Payloads with identical contents are stored once.
+ */
+public final class PayloadStore implements Closeable {
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  // Payloads by id, and by the hash of their contents to store identical payloads once.
+  @NotNull private final Map<String, Blob> myPayloads = new HashMap<>();
+  @NotNull private final Map<HashCode, Blob> myBlobs = new HashMap<>();
+  // Created when the first payload is added.
+  @Nullable private File myFile;
+  @Nullable private FileChannel myChannel;
+  private long myStoredSize;
+  private long myPayloadSize;
+
+  public synchronized boolean contains(@NotNull String id) {
+    return myPayloads.containsKey(id);
+  }
+
+  /**
+   * Adds the payload with the given {@code id}, unless it was already added.
+   */
+  public synchronized void put(@NotNull String id, @NotNull ByteString contents) throws IOException {
+    if (myPayloads.containsKey(id)) {
+      return;
+    }
+    HashCode hash = Hashing.sha256().hashBytes(contents.asReadOnlyByteBuffer());
+    Blob blob = myBlobs.get(hash);
+    if (blob == null) {
+      blob = write(contents);
+      myBlobs.put(hash, blob);
+    }
+    myPayloads.put(id, blob);
+    myPayloadSize += contents.size();
+  }
+
+  /**
+   * @return the size of the payload with the given {@code id}, or -1 if it wasn't added.
+   */
+  public synchronized long getSize(@NotNull String id) {
+    Blob blob = myPayloads.get(id);
+    return blob == null ? -1 : blob.mySize;
+  }
+
+  /**
+   * @return the whole payload with the given {@code id}, or {@link ByteString#EMPTY} if it wasn't added.
+   */
+  @NotNull
+  public ByteString getBytes(@NotNull String id) throws IOException {
+    return read(id, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return up to {@code length} bytes of the payload with the given {@code id} from {@code offset}, only decompressing the blocks which
+   * contain them.
+   */
+  @NotNull
+  public synchronized ByteString read(@NotNull String id, long offset, int length) throws IOException {
+    Blob blob = myPayloads.get(id);
+    if (blob == null || offset >= blob.mySize) {
+      return ByteString.EMPTY;
+    }
+    byte[] bytes = new byte[(int)Math.min(length, blob.mySize - offset)];
+    int copied = 0;
+    while (copied < bytes.length) {
+      long position = offset + copied;
+      int block = (int)(position / BLOCK_SIZE);
+      int blockOffset = (int)(position % BLOCK_SIZE);
+      byte[] blockBytes = readBlock(blob, block);
+      int count = Math.min(bytes.length - copied, blockBytes.length - blockOffset);
+      System.arraycopy(blockBytes, blockOffset, bytes, copied, count);
+      copied += count;
+    }
+    return ByteString.copyFrom(bytes);
+  }
+
+  /**
+   * @return a stream over the payload with the given {@code id}, which decompresses one block at a time, or an empty stream if it wasn't
+   * added.
+   */
+  @NotNull
+  public InputStream openStream(@NotNull String id) {
+    return new PayloadInputStream(id);
+  }
+
+  public synchronized int getPayloadCount() {
+    return myPayloads.size();
+  }
+
+  /**
+   * @return the total size of the payloads, counting identical payloads as many times as they were added.
+   */
+  public synchronized long getPayloadSize() {
+    return myPayloadSize;
+  }
+
+  /**
+   * @return the size of the payloads as stored, compressed and with identical payloads counted once.
+   */
+  public synchronized long getStoredSize() {
+    return myStoredSize;
+  }
+
+  /**
+   * Removes all the payloads and deletes their file. Payloads can still be added afterwards.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    myPayloads.clear();
+    myBlobs.clear();
+    myStoredSize = 0;
+    myPayloadSize = 0;
+    if (myChannel != null) {
+      myChannel.close();
+      myChannel = null;
+    }
+    if (myFile != null) {
+      FileUtil.delete(myFile);
+      myFile = null;
+    }
+  }
+
+  @NotNull
+  private Blob write(@NotNull ByteString contents) throws IOException {
+    FileChannel channel = getChannel();
+    int blockCount = (contents.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    Blob blob = new Blob(contents.size(), blockCount);
+    byte[] block = new byte[BLOCK_SIZE];
+    byte[] compressed = new byte[BLOCK_SIZE];
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      for (int i = 0; i < blockCount; i++) {
+        int length = Math.min(BLOCK_SIZE, contents.size() - i * BLOCK_SIZE);
+        contents.copyTo(block, i * BLOCK_SIZE, 0, length);
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed);
+        ByteBuffer buffer;
+        if (deflater.finished() && compressedLength < length) {
+          buffer = ByteBuffer.wrap(compressed, 0, compressedLength);
+        }
+        else {
+          blob.myUncompressedBlocks.set(i);
+          buffer = ByteBuffer.wrap(block, 0, length);
+        }
+        blob.myBlockOffsets[i] = myStoredSize;
+        while (buffer.hasRemaining()) {
+          myStoredSize += channel.write(buffer, myStoredSize);
+        }
+      }
+    }
+    finally {
+      deflater.end();
+    }
+    blob.myBlockOffsets[blockCount] = myStoredSize;
+    return blob;
+  }
+
+  @NotNull
+  private byte[] readBlock(@NotNull Blob blob, int block) throws IOException {
+    FileChannel channel = getChannel();
+    long start = blob.myBlockOffsets[block];
+    ByteBuffer buffer = ByteBuffer.allocate((int)(blob.myBlockOffsets[block + 1] - start));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    if (blob.myUncompressedBlocks.get(block)) {
+      return buffer.array();
+    }
+
+    byte[] bytes = new byte[(int)Math.min(BLOCK_SIZE, blob.mySize - (long)block * BLOCK_SIZE)];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(buffer.array());
+      int length = inflater.inflate(bytes);
+      if (length != bytes.length) {
+        throw new IOException("Truncated payload block");
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+    finally {
+      inflater.end();
+    }
+    return bytes;
+  }
+
+  @NotNull
+  private FileChannel getChannel() throws IOException {
+    if (myChannel == null) {
+      myFile = FileUtil.createTempFile("network_payloads", ".bin", true);
+      myChannel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    return myChannel;
+  }
+
+  /**
+   * The location of a payload's blocks in the file.
+   */
+  private static final class Blob {
+    private final long mySize;
+    // The file offset of each block, followed by the end of the last block.
+    @NotNull private final long[] myBlockOffsets;
+    @NotNull private final BitSet myUncompressedBlocks = new BitSet();
+
+    private Blob(long size, int blockCount) {
+      mySize = size;
+      myBlockOffsets = new long[blockCount + 1];
+    }
+  }
+
+  private final class PayloadInputStream extends InputStream {
+    @NotNull private final String myId;
+    @NotNull private ByteString myBlock = ByteString.EMPTY;
+    private int myBlockPosition;
+    private long myPosition;
+
+    private PayloadInputStream(@NotNull String id) {
+      myId = id;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] bytes = new byte[1];
+      return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (myBlockPosition == myBlock.size()) {
+        // Reads the rest of the current block, which is a whole block except for the first read of a stream which was skipped.
+        myBlock = PayloadStore.this.read(myId, myPosition, BLOCK_SIZE - (int)(myPosition % BLOCK_SIZE));
+        myBlockPosition = 0;
+        if (myBlock.isEmpty()) {
+          return -1;
+        }
+      }
+      int count = Math.min(length, myBlock.size() - myBlockPosition);
+      myBlock.copyTo(bytes, myBlockPosition, offset, count);
+      myBlockPosition += count;
+      myPosition += count;
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      long skipped = Math.max(0, Math.min(count, getSize(myId) - myPosition));
+      myPosition += skipped;
+      myBlock = ByteString.EMPTY;
+      myBlockPosition = 0;
+      return skipped;
+    }
+  }
+}
@@ -16,7 +16,7 @@
 package com.android.tools.profilers.network.httpdata;
 
 import com.android.tools.profilers.stacktrace.CodeLocation;
-import com.android.tools.profilers.stacktrace.StackFrameParser;
+import com.android.tools.profilers.stacktrace.StackFrameTable;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import org.jetbrains.annotations.NotNull;
@@ -31,14 +31,7 @@ public final class StackTrace {
 
   public StackTrace(@NotNull HttpData httpData) {
     myTrace = httpData.getTrace();
-    ImmutableList.Builder<CodeLocation> builder = new ImmutableList.Builder<>();
-    for (String line : myTrace.split("\\n")) {
-      if (line.trim().isEmpty()) {
-        continue;
-      }
-      builder.add(new StackFrameParser(line).toCodeLocation());
-    }
-    myLocations = builder.build();
+    myLocations = StackFrameTable.getInstance().getCodeLocations(myTrace);
   }
 
   @NotNull
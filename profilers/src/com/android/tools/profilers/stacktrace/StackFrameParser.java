@@ -24,72 +24,111 @@ import static com.android.tools.profilers.stacktrace.CodeLocation.INVALID_LINE_N
  * Class which wraps a single stack frame in a Java stack trace.
  *
  * E.g. "a.b.FooClass.someFunc(FooClass.java:123
+ *
+ * The frame can be a range of a larger {@link CharSequence}, e.g. a line of a whole stack trace. The separators of the frame are found
+ * once, and the line number is read in place, so that only the names which are asked for are copied out of the sequence.
  */
 public final class StackFrameParser {
-  @NotNull private final String myLine;
+  @NotNull private final CharSequence myLine;
+  private final int myStart;
+  private final int myEnd;
+
+  // Indices of the separators, relative to the start of the frame, or -1 if they are missing.
+  private final int myOpenParen;
+  private final int myCloseParen;
+  private final int myLastColon;
+  private final int myLastDot;
 
-  public StackFrameParser(@NotNull String line) {
+  public StackFrameParser(@NotNull CharSequence line) {
+    this(line, 0, line.length());
+  }
+
+  /**
+   * @param start index of the first character of the frame in {@code line}
+   * @param end   index after the last character of the frame in {@code line}
+   */
+  public StackFrameParser(@NotNull CharSequence line, int start, int end) {
     myLine = line;
+    myStart = start;
+    myEnd = end;
+
+    int openParen = -1;
+    int closeParen = -1;
+    int lastColon = -1;
+    int lastDot = -1;
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c == '(' && openParen == -1) {
+        openParen = i - start;
+      }
+      else if (c == ')' && closeParen == -1) {
+        closeParen = i - start;
+      }
+      else if (c == ':') {
+        lastColon = i - start;
+      }
+      else if (c == '.' && openParen == -1) {
+        lastDot = i - start;
+      }
+    }
+    myOpenParen = openParen;
+    myCloseParen = closeParen;
+    myLastColon = lastColon;
+    // The method name is the part which follows the last dot before the open paren, so there is none without the paren.
+    myLastDot = openParen == -1 ? -1 : lastDot;
   }
 
   @Nullable
   public String getClassName() {
-    int lastDot = getLastDot();
-    if (lastDot == -1) {
+    if (myLastDot == -1) {
       return null;
     }
-    return myLine.substring(0, lastDot);
+    return substring(0, myLastDot);
   }
 
   @Nullable
   public String getFileName() {
-    int start = getOpenParen();
-    int end = getLastColon();
+    int start = myOpenParen;
+    int end = myLastColon;
     if (start == -1 || start >= end) {
       return null;
     }
-    return myLine.substring(start + 1, end);
+    return substring(start + 1, end);
   }
 
   @Nullable
   public String getMethodName() {
-    int start = getLastDot();
-    int end = getOpenParen();
+    int start = myLastDot;
+    int end = myOpenParen;
     if (start == -1 || start >= end) {
       return null;
     }
-    return myLine.substring(start + 1, end);
+    return substring(start + 1, end);
   }
 
   public int getLineNumber() {
-    int start = getLastColon();
-    int end = getCloseParen();
+    int start = myLastColon;
+    int end = myCloseParen;
     if (start >= end || start == -1) {
       return INVALID_LINE_NUMBER;
     }
-
-    try {
-      return Integer.parseInt(myLine.substring(start + 1, end));
-    }
-    catch (Exception e) {
-      return INVALID_LINE_NUMBER;
-    }
+    return parseInt(start + 1, end);
   }
 
   public int getLastColon() {
-    return myLine.lastIndexOf(':');
+    return myLastColon;
   }
 
   public int getLastDot() {
-    return myLine.lastIndexOf('.', getOpenParen());
+    return myLastDot;
   }
 
   public int getOpenParen() {
-    return myLine.indexOf('(');
+    return myOpenParen;
   }
 
   public int getCloseParen() {
-    return myLine.indexOf(')');
+    return myCloseParen;
   }
 
   @NotNull
@@ -97,7 +136,8 @@ public final class StackFrameParser {
     String className = getClassName();
     if (className == null) {
       throw new IllegalStateException(
-        String.format("Trying to create CodeLocation from an incomplete StackFrameParser. Line contents: '%s'", myLine));
+        String.format("Trying to create CodeLocation from an incomplete StackFrameParser. Line contents: '%s'",
+                      myLine.subSequence(myStart, myEnd)));
     }
 
     return new CodeLocation.Builder(className).
@@ -105,4 +145,41 @@ public final class StackFrameParser {
       setMethodName(getMethodName()).
       setLineNumber(getLineNumber() - 1).build();
   }
+
+  @NotNull
+  private String substring(int start, int end) {
+    return myLine.subSequence(myStart + start, myStart + end).toString();
+  }
+
+  /**
+   * Reads the decimal number in [start..end) of the frame, made of ASCII digits with an optional sign.
+   *
+   * @return the number, or {@link CodeLocation#INVALID_LINE_NUMBER} if it isn't a valid int.
+   */
+  private int parseInt(int start, int end) {
+    int i = myStart + start;
+    int limit = myStart + end;
+    boolean negative = false;
+    if (i < limit && (myLine.charAt(i) == '-' || myLine.charAt(i) == '+')) {
+      negative = myLine.charAt(i) == '-';
+      i++;
+    }
+    if (i == limit) {
+      return INVALID_LINE_NUMBER;
+    }
+
+    long value = 0;
+    for (; i < limit; i++) {
+      char c = myLine.charAt(i);
+      if (c < '0' || c > '9') {
+        return INVALID_LINE_NUMBER;
+      }
+      value = value * 10 + (c - '0');
+      if (value > (long)Integer.MAX_VALUE + 1) {
+        return INVALID_LINE_NUMBER;
+      }
+    }
+    value = negative ? -value : value;
+    return value > Integer.MAX_VALUE ? INVALID_LINE_NUMBER : (int)value;
+  }
 }
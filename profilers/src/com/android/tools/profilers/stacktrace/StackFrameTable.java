@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.stacktrace;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Table of the Java stack frames seen by the profilers, which gives each distinct frame line an id and parses it into a
+ * {@link CodeLocation} only the first time it is seen. The same stack traces, e.g. of network requests, are displayed again and again and
+ * share most of their frames, so looking a frame up hashes and compares its characters in place, without copying the line out of the
+ * trace it is part of.
+ * <p>
+ * The table is shared by all the sessions of the process, so it is cleared once it holds {@link #MAX_FRAME_COUNT} frames, before adding
+ * the next one. Ids are only valid until then, so they shouldn't be kept, unlike the code locations.
+ */
+public final class StackFrameTable {
+  public static final int INVALID_FRAME_ID = -1;
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  /** Enough for the distinct frames of a large app, which take a few MB. */
+  @VisibleForTesting static final int MAX_FRAME_COUNT = 32 * 1024;
+
+  private static final StackFrameTable ourInstance = new StackFrameTable();
+
+  // Open addressing hash table of the frame ids by frame line, with linear probing. Its capacity is a power of two.
+  @NotNull private int[] mySlots = newSlots(INITIAL_CAPACITY);
+  // Lines, hashes and code locations of the frames, by frame id.
+  @NotNull private final List<String> myLines = new ArrayList<>();
+  @NotNull private int[] myHashes = new int[INITIAL_CAPACITY];
+  @NotNull private final List<CodeLocation> myCodeLocations = new ArrayList<>();
+  private final int myMaxFrameCount;
+
+  @VisibleForTesting
+  StackFrameTable() {
+    this(MAX_FRAME_COUNT);
+  }
+
+  @VisibleForTesting
+  StackFrameTable(int maxFrameCount) {
+    myMaxFrameCount = maxFrameCount;
+  }
+
+  /**
+   * @return the table shared across the profilers.
+   */
+  @NotNull
+  public static StackFrameTable getInstance() {
+    return ourInstance;
+  }
+
+  public synchronized int getFrameCount() {
+    return myLines.size();
+  }
+
+  /**
+   * @return the id of the frame in [start..end) of {@code trace}, which is parsed and added to the table if it wasn't seen before. The
+   * table is cleared first if it is full.
+   * @throws IllegalStateException if the frame has no class name.
+   */
+  public synchronized int intern(@NotNull CharSequence trace, int start, int end) {
+    int hash = hash(trace, start, end);
+    int mask = mySlots.length - 1;
+    int slot = hash & mask;
+    while (mySlots[slot] != INVALID_FRAME_ID) {
+      int id = mySlots[slot];
+      if (myHashes[id] == hash && regionEquals(myLines.get(id), trace, start, end)) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    // The frame is parsed before it is added, so that a malformed frame leaves the table unchanged.
+    CodeLocation codeLocation = new StackFrameParser(trace, start, end).toCodeLocation();
+    if (myLines.size() >= myMaxFrameCount) {
+      clear();
+      slot = hash & (mySlots.length - 1);
+    }
+    int id = myLines.size();
+    myLines.add(trace.subSequence(start, end).toString());
+    myCodeLocations.add(codeLocation);
+    if (id == myHashes.length) {
+      myHashes = Arrays.copyOf(myHashes, id * 2);
+    }
+    myHashes[id] = hash;
+    mySlots[slot] = id;
+    // Keeps the table at most half full, so that probe sequences stay short.
+    if (myLines.size() * 2 > mySlots.length) {
+      rehash(mySlots.length * 2);
+    }
+    return id;
+  }
+
+  /**
+   * @return the id of the frame {@code line}, see {@link #intern(CharSequence, int, int)}.
+   */
+  public int intern(@NotNull CharSequence line) {
+    return intern(line, 0, line.length());
+  }
+
+  @NotNull
+  public synchronized CodeLocation getCodeLocation(int frameId) {
+    return myCodeLocations.get(frameId);
+  }
+
+  @NotNull
+  public synchronized String getLine(int frameId) {
+    return myLines.get(frameId);
+  }
+
+  /**
+   * @return the code locations of the frames of a stack trace with one frame per line. Blank lines are skipped.
+   * @throws IllegalStateException if a frame has no class name.
+   */
+  @NotNull
+  public synchronized ImmutableList<CodeLocation> getCodeLocations(@NotNull CharSequence trace) {
+    ImmutableList.Builder<CodeLocation> builder = new ImmutableList.Builder<>();
+    int length = trace.length();
+    int start = 0;
+    while (start < length) {
+      int end = start;
+      boolean blank = true;
+      for (; end < length && trace.charAt(end) != '\n'; end++) {
+        blank &= trace.charAt(end) <= ' ';
+      }
+      if (!blank) {
+        builder.add(getCodeLocation(intern(trace, start, end)));
+      }
+      start = end + 1;
+    }
+    return builder.build();
+  }
+
+  private void clear() {
+    mySlots = newSlots(INITIAL_CAPACITY);
+    myLines.clear();
+    myHashes = new int[INITIAL_CAPACITY];
+    myCodeLocations.clear();
+  }
+
+  private void rehash(int capacity) {
+    mySlots = newSlots(capacity);
+    int mask = capacity - 1;
+    for (int id = 0; id < myLines.size(); id++) {
+      int slot = myHashes[id] & mask;
+      while (mySlots[slot] != INVALID_FRAME_ID) {
+        slot = (slot + 1) & mask;
+      }
+      mySlots[slot] = id;
+    }
+  }
+
+  @NotNull
+  private static int[] newSlots(int capacity) {
+    int[] slots = new int[capacity];
+    Arrays.fill(slots, INVALID_FRAME_ID);
+    return slots;
+  }
+
+  /**
+   * @return the {@link String#hashCode()} of the region, spread so that the low bits used as slot depend on all of its bits.
+   */
+  private static int hash(@NotNull CharSequence sequence, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + sequence.charAt(i);
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean regionEquals(@NotNull String line, @NotNull CharSequence sequence, int start, int end) {
+    if (line.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) != sequence.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
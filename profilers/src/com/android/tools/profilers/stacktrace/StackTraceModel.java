@@ -19,10 +19,8 @@ import com.android.tools.adtui.model.AspectModel;
 import com.google.common.collect.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static com.android.tools.profilers.stacktrace.ThreadId.INVALID_THREAD_ID;
 
@@ -71,8 +69,7 @@ public final class StackTraceModel extends AspectModel<StackTraceModel.Aspect> {
   }
 
   public void setStackFrames(@NotNull String trace) {
-    updateStackFrames(INVALID_THREAD_ID, Arrays.stream(trace.split("\\n")).map(
-      stackFrame -> new StackFrameParser(stackFrame).toCodeLocation()).collect(Collectors.toList()));
+    updateStackFrames(INVALID_THREAD_ID, StackFrameTable.getInstance().getCodeLocations(trace));
   }
 
   public void clearStackFrames() {
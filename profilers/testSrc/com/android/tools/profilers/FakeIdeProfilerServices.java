@@ -78,6 +78,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myPerfettoEnabled = false;
 
+  /**
+   * Can toggle for tests via {@link #enablePerfettoDirectImport(boolean)}, but each test starts with this defaulted to false.
+   */
+  private boolean myPerfettoDirectImportEnabled = false;
+
   /**
    * Toggle for including an energy profiler in our profiler view.
    */
@@ -108,6 +113,16 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myIsJniReferenceTrackingEnabled = false;
 
+  /**
+   * Whether parsed CPU traces are archived in the system directory and read back from the archive when the trace is imported again.
+   */
+  private boolean myCpuCaptureArchiveEnabled = false;
+
+  /**
+   * Whether heap dumps are mapped from disk and have their retained sizes computed in the background.
+   */
+  private boolean myLazyHeapDumpLoadingEnabled = false;
+
   /**
    * Toggle for faking live allocation tracking support in tests.
    */
@@ -278,6 +293,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return myIsCpuApiTracingEnabled;
       }
 
+      @Override
+      public boolean isCpuCaptureArchiveEnabled() {
+        return myCpuCaptureArchiveEnabled;
+      }
+
       @Override
       public boolean isCpuCaptureStageEnabled() { return myIsCaptureStageEnabled; }
 
@@ -309,6 +329,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
       @Override
       public boolean isJniReferenceTrackingEnabled() { return myIsJniReferenceTrackingEnabled; }
 
+      @Override
+      public boolean isLazyHeapDumpLoadingEnabled() {
+        return myLazyHeapDumpLoadingEnabled;
+      }
+
       @Override
       public boolean isLiveAllocationsEnabled() {
         return myLiveTrackingEnabled;
@@ -332,6 +357,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
       @Override
       public boolean isPerfettoEnabled() { return myPerfettoEnabled; }
 
+      @Override
+      public boolean isPerfettoDirectImportEnabled() {
+        return myPerfettoDirectImportEnabled;
+      }
+
       @Override
       public boolean isPerformanceMonitoringEnabled() {
         return false;
@@ -465,6 +495,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     myPerfettoEnabled = enabled;
   }
 
+  public void enablePerfettoDirectImport(boolean enabled) {
+    myPerfettoDirectImportEnabled = enabled;
+  }
+
   public void enableEnergyProfiler(boolean enabled) {
     myEnergyProfilerEnabled = enabled;
   }
@@ -475,6 +509,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
 
   public void enableJniReferenceTracking(boolean enabled) { myIsJniReferenceTrackingEnabled = enabled; }
 
+  public void enableLazyHeapDumpLoading(boolean enabled) {
+    myLazyHeapDumpLoadingEnabled = enabled;
+  }
+
   public void enableLiveAllocationTracking(boolean enabled) {
     myLiveTrackingEnabled = enabled;
   }
@@ -511,6 +549,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     myLiveAllocationsSamplingEnabled = enabled;
   }
 
+  public void enableCpuCaptureArchive(boolean enabled) {
+    myCpuCaptureArchiveEnabled = enabled;
+  }
+
   public void enableCpuCaptureStage(boolean enabled) { myIsCaptureStageEnabled = enabled; }
 
   public void enableCustomEventVisualization(boolean enabled) { myCustomEventVisualizationEnabled = enabled; }
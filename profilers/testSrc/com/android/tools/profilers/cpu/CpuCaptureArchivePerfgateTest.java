@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.android.tools.profilers.cpu.art.ArtTraceParser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Measures reopening an ART trace by parsing it and by reading its {@link CpuCaptureArchive}.
+ */
+public class CpuCaptureArchivePerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 5;
+
+  private static final Benchmark ourBenchmark = new Benchmark.Builder("CPU Capture Reopening Timings (ms)")
+    .setProject("Android Studio Profilers")
+    .build();
+
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void reopenCapture() throws Exception {
+    File traceFile = CpuProfilerTestUtils.getTraceFile("valid_trace.trace");
+    File directory = myTemporaryFolder.newFolder("archives");
+    assertThat(CpuCaptureArchive.write(new ArtTraceParser().parse(traceFile, 0), traceFile, directory, Long.MAX_VALUE)).isTrue();
+
+    Metric parse = new Metric("cpu_capture_parse");
+    Metric readArchive = new Metric("cpu_capture_read_archive");
+    for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+      long start = System.nanoTime();
+      CpuCapture parsedCapture = new ArtTraceParser().parse(traceFile, 0);
+      parse.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+      start = System.nanoTime();
+      CpuCapture archivedCapture = new CpuCaptureArchive(directory).parse(traceFile, 0);
+      readArchive.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+      assertThat(archivedCapture.getThreads()).hasSize(parsedCapture.getThreads().size());
+    }
+    parse.commit();
+    readArchive.commit();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.android.testutils.TestUtils;
+import com.android.tools.profiler.proto.Cpu;
+import com.android.tools.profilers.FakeIdeProfilerServices;
+import com.android.tools.profilers.cpu.art.ArtTraceParser;
+import com.android.tools.profilers.cpu.nodemodel.CppFunctionModel;
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CpuCaptureArchiveTest {
+  private File myDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    myDirectory = TestUtils.createTempDirDeletedOnExit();
+  }
+
+  @Test
+  public void artCaptureIsReadBackFromArchive() throws Exception {
+    File traceFile = copyTraceFile("valid_trace.trace");
+    CpuCapture capture = new ArtTraceParser().parse(traceFile, 1);
+    assertThat(CpuCaptureArchive.write(capture, traceFile, myDirectory, CpuCaptureArchive.MAX_DIRECTORY_SIZE)).isTrue();
+
+    assertCapturesEqual(new CpuCaptureArchive(myDirectory).parse(traceFile, 1), capture);
+  }
+
+  @Test
+  public void simpleperfCaptureIsReadBackFromArchive() throws Exception {
+    File traceFile = copyTraceFile("simpleperf.trace");
+    CpuCapture capture = new SimpleperfTraceParser().parse(traceFile, 1);
+    assertThat(CpuCaptureArchive.write(capture, traceFile, myDirectory, CpuCaptureArchive.MAX_DIRECTORY_SIZE)).isTrue();
+
+    CpuCapture archivedCapture = new CpuCaptureArchive(myDirectory).parse(traceFile, 1);
+    assertCapturesEqual(archivedCapture, capture);
+    CaptureNode node = archivedCapture.getCaptureNode(archivedCapture.getMainThreadId());
+    while (node.getChildCount() > 0 && !(node.getData() instanceof CppFunctionModel)) {
+      node = node.getChildAt(0);
+    }
+    assertThat(node.getData()).isInstanceOf(CppFunctionModel.class);
+  }
+
+  @Test
+  public void modifiedTraceIsNotReadFromArchive() throws Exception {
+    File traceFile = copyTraceFile("valid_trace.trace");
+    CpuCaptureArchive.write(new ArtTraceParser().parse(traceFile, 1), traceFile, myDirectory, CpuCaptureArchive.MAX_DIRECTORY_SIZE);
+    assertThat(traceFile.setLastModified(traceFile.lastModified() - 10_000)).isTrue();
+
+    try {
+      new CpuCaptureArchive(myDirectory).parse(traceFile, 1);
+      fail();
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void importedTraceIsArchived() throws Exception {
+    File traceFile = copyTraceFile("valid_trace.trace");
+    FakeIdeProfilerServices services = new FakeIdeProfilerServices();
+    services.enableCpuCaptureArchive(true);
+
+    CpuCapture capture = new CpuCaptureParser(services).parse(traceFile).get();
+    File archiveFile = CpuCaptureArchive.getArchiveFile(traceFile);
+    assertThat(archiveFile.isFile()).isTrue();
+    // Archives aren't written next to the traces.
+    assertThat(archiveFile.getParentFile()).isNotEqualTo(traceFile.getParentFile());
+    assertThat(traceFile.getParentFile().list()).asList().containsExactly(traceFile.getName());
+    assertCapturesEqual(new CpuCaptureArchive().parse(traceFile, 1), capture);
+  }
+
+  @Test
+  public void importedTraceIsReadFromArchiveIfEnabled() throws Exception {
+    File traceFile = copyTraceFile("valid_trace.trace");
+    // Archives another capture as the capture of the trace, to tell whether the trace or its archive is read.
+    CpuCapture otherCapture = new SimpleperfTraceParser().parse(copyTraceFile("simpleperf.trace"), 1);
+    CpuCaptureArchive.write(otherCapture, traceFile);
+
+    FakeIdeProfilerServices services = new FakeIdeProfilerServices();
+    assertThat(new CpuCaptureParser(services).parse(traceFile).get().getType()).isEqualTo(Cpu.CpuTraceType.ART);
+    services.enableCpuCaptureArchive(true);
+    assertCapturesEqual(new CpuCaptureParser(services).parse(traceFile).get(), otherCapture);
+  }
+
+  @Test
+  public void leastRecentlyUsedArchivesAreDeleted() throws Exception {
+    File firstTrace = copyTraceFile("valid_trace.trace");
+    File secondTrace = copyTraceFile("valid_trace.trace");
+    File thirdTrace = copyTraceFile("valid_trace.trace");
+    CpuCapture capture = new ArtTraceParser().parse(firstTrace, 1);
+    CpuCaptureArchive.write(capture, firstTrace, myDirectory, Long.MAX_VALUE);
+    File firstArchive = CpuCaptureArchive.getArchiveFile(firstTrace, myDirectory);
+    long archiveSize = firstArchive.length();
+
+    CpuCaptureArchive.write(capture, secondTrace, myDirectory, Long.MAX_VALUE);
+    File secondArchive = CpuCaptureArchive.getArchiveFile(secondTrace, myDirectory);
+    assertThat(firstArchive.setLastModified(System.currentTimeMillis() - 20_000)).isTrue();
+    assertThat(secondArchive.setLastModified(System.currentTimeMillis() - 10_000)).isTrue();
+    // Reading the first archive makes it the most recently used one.
+    new CpuCaptureArchive(myDirectory).parse(firstTrace, 1);
+
+    // The directory only fits two archives, so the second one is deleted.
+    CpuCaptureArchive.write(capture, thirdTrace, myDirectory, archiveSize * 2);
+    assertThat(firstArchive.isFile()).isTrue();
+    assertThat(secondArchive.exists()).isFalse();
+    assertThat(CpuCaptureArchive.getArchiveFile(thirdTrace, myDirectory).isFile()).isTrue();
+  }
+
+  @NotNull
+  private static File copyTraceFile(@NotNull String name) throws IOException {
+    File traceFile = new File(TestUtils.createTempDirDeletedOnExit(), name);
+    FileUtil.copy(CpuProfilerTestUtils.getTraceFile(name), traceFile);
+    return traceFile;
+  }
+
+  private static void assertCapturesEqual(@NotNull CpuCapture actual, @NotNull CpuCapture expected) {
+    assertThat(actual.getType()).isEqualTo(expected.getType());
+    assertThat(actual.getRange().getMin()).isEqualTo(expected.getRange().getMin());
+    assertThat(actual.getRange().getMax()).isEqualTo(expected.getRange().getMax());
+    assertThat(actual.isDualClock()).isEqualTo(expected.isDualClock());
+    assertThat(actual.getMainThreadId()).isEqualTo(expected.getMainThreadId());
+    assertThat(actual.getThreads()).hasSize(expected.getThreads().size());
+    for (CpuThreadInfo thread : expected.getThreads()) {
+      assertTreesEqual(actual.getCaptureNode(thread.getId()), expected.getCaptureNode(thread.getId()));
+    }
+  }
+
+  private static void assertTreesEqual(@NotNull CaptureNode actual, @NotNull CaptureNode expected) {
+    assertThat(actual.getData().getClass()).isEqualTo(expected.getData().getClass());
+    assertThat(actual.getData().getId()).isEqualTo(expected.getData().getId());
+    assertThat(actual.getStartGlobal()).isEqualTo(expected.getStartGlobal());
+    assertThat(actual.getEndGlobal()).isEqualTo(expected.getEndGlobal());
+    assertThat(actual.getStartThread()).isEqualTo(expected.getStartThread());
+    assertThat(actual.getEndThread()).isEqualTo(expected.getEndThread());
+    assertThat(actual.getDepth()).isEqualTo(expected.getDepth());
+    assertThat(actual.getChildCount()).isEqualTo(expected.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertTreesEqual(actual.getChildAt(i), expected.getChildAt(i));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace
+
+import com.android.tools.profilers.cpu.CpuFramesModel
+import com.android.tools.profilers.cpu.atrace.AtraceTestUtils.Companion.TEST_PID
+import com.android.tools.profilers.cpu.atrace.AtraceTestUtils.Companion.TEST_RENDER_ID
+import com.android.tools.profilers.cpu.atrace.AtraceTestUtils.Companion.convertTimeStamps
+import com.android.tools.profilers.cpu.audits.RenderStage
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import trebuchet.model.Model
+import trebuchet.model.fragments.ModelFragment
+import trebuchet.model.fragments.ProcessModelFragment
+import trebuchet.model.fragments.SliceGroupBuilder
+import java.util.concurrent.TimeUnit
+
+class AtraceFrameIndexTest {
+  private val mainThreadFilter = AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS, TEST_PID,
+                                                         CpuFramesModel.SLOW_FRAME_RATE_US)
+  private lateinit var frameManager: AtraceFrameManager
+
+  @Before
+  fun setup() {
+    val fragment = ModelFragment()
+    fragment.processes.add(ProcessModelFragment(TEST_PID, "Test").apply {
+      threadFor(TEST_PID, "Main").apply {
+        hint(TEST_PID, "Main", TEST_PID, "Test")
+        slicesBuilder.slices.apply {
+          add(getSlice(2.0, 5.0, "Choreographer#doFrame",
+                       getSlice(2.0, 2.5, "input"),
+                       getSlice(2.5, 4.5, "traversal",
+                                getSlice(2.5, 3.0, "measure"),
+                                getSlice(3.0, 4.5, "draw"))))
+          add(getSlice(7.0, 11.0, "Choreographer#doFrame"))
+          add(getSlice(20.0, 22.0, "Choreographer#doFrame"))
+          add(getSlice(30.0, 50.0, "Choreographer#doFrame"))
+        }
+      }
+    })
+    frameManager = AtraceFrameManager(Model(fragment).processes[TEST_PID]!!, ::convertTimeStamps, TEST_RENDER_ID)
+  }
+
+  private fun getSlice(startTime: Double, endTime: Double, name: String,
+                       vararg children: SliceGroupBuilder.MutableSliceGroup): SliceGroupBuilder.MutableSliceGroup {
+    return SliceGroupBuilder.MutableSliceGroup(startTime, endTime, false, endTime - startTime, name, children.toMutableList()).apply {
+      validate()
+    }
+  }
+
+  @Test
+  fun indexIsBuiltOncePerFilter() {
+    val index = frameManager.getFrameIndex(mainThreadFilter)
+    assertThat(frameManager.getFrameIndex(AtraceFrameFilterConfig(AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS, TEST_PID,
+                                                                  CpuFramesModel.SLOW_FRAME_RATE_US))).isSameAs(index)
+    assertThat(frameManager.buildFramesList(mainThreadFilter)).isSameAs(index.frames)
+
+    val otherFilter = AtraceFrameFilterConfig("input", TEST_PID, CpuFramesModel.SLOW_FRAME_RATE_US)
+    assertThat(frameManager.getFrameIndex(otherFilter)).isSameAs(frameManager.getFrameIndex(otherFilter))
+    assertThat(frameManager.buildFramesList(otherFilter)).hasSize(1)
+  }
+
+  @Test
+  fun framesAreFoundByTime() {
+    val index = frameManager.getFrameIndex(mainThreadFilter)
+    assertThat(index.findFrame(1)).isEqualTo(-1)
+    assertThat(index.findFrame(2)).isEqualTo(0)
+    assertThat(index.findFrame(5)).isEqualTo(0)
+    assertThat(index.findFrame(6)).isEqualTo(-1)
+    assertThat(index.findFrame(11)).isEqualTo(1)
+    assertThat(index.findFrame(40)).isEqualTo(3)
+    assertThat(index.findFrame(51)).isEqualTo(-1)
+
+    assertThat(index.getFrames(10, 25)).containsExactly(index.frames[1], index.frames[2]).inOrder()
+    assertThat(index.getFrames(12, 19)).isEmpty()
+    assertThat(index.getFrames(0, 100)).isEqualTo(index.frames)
+  }
+
+  @Test
+  fun durationPercentiles() {
+    val index = frameManager.getFrameIndex(mainThreadFilter)
+    // Frames last 3, 4, 2 and 20 seconds.
+    assertThat(index.getDurationPercentileUs(0.0)).isEqualTo(TimeUnit.SECONDS.toMicros(2))
+    assertThat(index.getDurationPercentileUs(50.0)).isEqualTo(TimeUnit.SECONDS.toMicros(3))
+    assertThat(index.getDurationPercentileUs(75.0)).isEqualTo(TimeUnit.SECONDS.toMicros(4))
+    assertThat(index.getDurationPercentileUs(100.0)).isEqualTo(TimeUnit.SECONDS.toMicros(20))
+    assertThat(index.countFramesLongerThan(TimeUnit.SECONDS.toMicros(3))).isEqualTo(2)
+  }
+
+  @Test
+  fun renderStagesOfFrames() {
+    val index = frameManager.getFrameIndex(mainThreadFilter)
+    val stages = index.getRenderStageDurationsUs(0)
+    assertThat(stages[RenderStage.INPUT]).isEqualTo(TimeUnit.MILLISECONDS.toMicros(500))
+    assertThat(stages[RenderStage.MEASURE_LAYOUT]).isEqualTo(TimeUnit.MILLISECONDS.toMicros(500))
+    assertThat(stages[RenderStage.DRAW]).isEqualTo(TimeUnit.MILLISECONDS.toMicros(1500))
+    assertThat(stages[RenderStage.ANIMATION]).isEqualTo(0L)
+    // The time of the frame which isn't in any stage.
+    assertThat(stages[RenderStage.MISC_TIME]).isEqualTo(TimeUnit.MILLISECONDS.toMicros(500))
+
+    assertThat(index.getRenderStageDurationsUs(1)[RenderStage.MISC_TIME]).isEqualTo(TimeUnit.SECONDS.toMicros(4))
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.perfetto;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
+import com.android.tools.profilers.cpu.atrace.PerfettoModelImporter;
+import com.android.tools.profilers.cpu.atrace.PerfettoProducer;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import trebuchet.model.Model;
+import trebuchet.task.ImportTask;
+import trebuchet.util.PrintlnImportFeedback;
+
+/**
+ * Measures importing a recorded perfetto trace by converting it to systrace lines sorted in a database ({@link PerfettoProducer})
+ * and by importing it directly ({@link PerfettoModelImporter}).
+ */
+public class PerfettoImportPerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 5;
+
+  private static final Benchmark ourBenchmark = new Benchmark.Builder("Perfetto Import Timings (ms)")
+    .setProject("Android Studio Profilers")
+    .build();
+
+  @Test
+  public void importTrace() throws Exception {
+    File file = CpuProfilerTestUtils.getTraceFile("perfetto.trace");
+    Metric systraceLines = new Metric("perfetto_import_systrace_lines");
+    Metric direct = new Metric("perfetto_import_direct");
+    for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+      long start = System.nanoTime();
+      Model systraceModel = importThroughSystraceLines(file);
+      systraceLines.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+      start = System.nanoTime();
+      Model directModel = PerfettoModelImporter.importModel(file, new PrintlnImportFeedback());
+      direct.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+      assertThat(directModel.getProcesses().keySet()).containsExactlyElementsIn(systraceModel.getProcesses().keySet());
+    }
+    systraceLines.commit();
+    direct.commit();
+  }
+
+  @NotNull
+  private static Model importThroughSystraceLines(@NotNull File file) throws IOException {
+    PerfettoProducer producer = new PerfettoProducer();
+    if (!producer.parseFile(file)) {
+      throw new IOException("Failed to parse file: " + file.getAbsolutePath());
+    }
+    return new ImportTask(new PrintlnImportFeedback()).importBuffer(producer);
+  }
+}
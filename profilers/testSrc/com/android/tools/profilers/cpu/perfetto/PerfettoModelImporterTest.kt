@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.perfetto
+
+import com.android.tools.idea.protobuf.CodedOutputStream
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils
+import com.android.tools.profilers.cpu.atrace.PerfettoModelImporter
+import com.android.tools.profilers.cpu.atrace.PerfettoProducer
+import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Test
+import perfetto.protos.PerfettoTrace
+import trebuchet.model.Model
+import trebuchet.model.SchedulingState
+import trebuchet.task.ImportTask
+import trebuchet.util.PrintlnImportFeedback
+import java.io.File
+
+class PerfettoModelImporterTest {
+
+  @Test
+  fun modelMatchesSystraceConversion() {
+    val model = PerfettoModelImporter.importModel(CpuProfilerTestUtils.getTraceFile("perfetto.trace"), PrintlnImportFeedback())
+    val expected = importThroughSystraceLines()
+
+    // Timestamps of systrace lines are rounded to the microsecond.
+    assertThat(model.beginTimestamp).isWithin(1e-6).of(expected.beginTimestamp)
+    assertThat(model.endTimestamp).isWithin(1e-6).of(expected.endTimestamp)
+    assertThat(model.parentTimestamp).isWithin(1e-6).of(expected.parentTimestamp)
+    assertThat(model.parentTimestampBootTime).isWithin(1e-6).of(expected.parentTimestampBootTime)
+    assertThat(model.realtimeTimestamp).isGreaterThan(0L)
+    assertThat(model.processes.keys).containsExactlyElementsIn(expected.processes.keys)
+    assertThat(model.cpus.map { it.id }).containsExactlyElementsIn(expected.cpus.map { it.id }).inOrder()
+
+    for (process in expected.processes.values) {
+      val actual = model.processes.getValue(process.id)
+      assertThat(actual.name).isEqualTo(process.name)
+      assertThat(actual.threads.map { it.id }).containsExactlyElementsIn(process.threads.map { it.id })
+      for (thread in process.threads) {
+        val actualThread = actual.threads.first { it.id == thread.id }
+        assertThat(actualThread.name).isEqualTo(thread.name)
+        assertThat(actualThread.slices.size).isEqualTo(thread.slices.size)
+        assertThat(actualThread.slices.map { it.name }).containsExactlyElementsIn(thread.slices.map { it.name }).inOrder()
+        assertThat(actualThread.schedSlices.size).isEqualTo(thread.schedSlices.size)
+      }
+    }
+    for (cpu in expected.cpus) {
+      assertThat(model.cpus.first { it.id == cpu.id }.slices.size).isEqualTo(cpu.slices.size)
+    }
+  }
+
+  @Test
+  fun threadStatesAreDecoded() {
+    val model = PerfettoModelImporter.importModel(CpuProfilerTestUtils.getTraceFile("perfetto.trace"), PrintlnImportFeedback())
+    val states = model.processes.values.flatMap { it.threads }.flatMap { it.schedSlices }.map { it.state }.toSet()
+    // Systrace lines of perfetto traces don't have the state of threads switched out, but the direct import decodes it.
+    assertThat(states).contains(SchedulingState.SLEEPING)
+    assertThat(states).contains(SchedulingState.RUNNING)
+  }
+
+  @Test
+  fun clockSyncIsImportedAtItsBootTime() {
+    // The clock snapshot is recorded before the events, but its boot time is between them.
+    val file = writeTrace(clockSnapshot(bootTimeNs = 2_500_000_000), eventBundle(1_000_000_000, 2_000_000_000, 3_000_000_000))
+    val model = PerfettoModelImporter.importModel(file, PrintlnImportFeedback())
+
+    assertThat(model.beginTimestamp).isWithin(1e-9).of(1.0)
+    assertThat(model.endTimestamp).isWithin(1e-9).of(3.0)
+    assertThat(model.parentTimestampBootTime).isWithin(1e-9).of(2.5)
+    assertThat(model.parentTimestamp).isWithin(1e-9).of(10.0)
+  }
+
+  @Test
+  fun clockSyncAfterEventsEndsTheTrace() {
+    val file = writeTrace(eventBundle(1_000_000_000, 2_000_000_000), clockSnapshot(bootTimeNs = 4_000_000_000))
+    val model = PerfettoModelImporter.importModel(file, PrintlnImportFeedback())
+
+    assertThat(model.beginTimestamp).isWithin(1e-9).of(1.0)
+    assertThat(model.endTimestamp).isWithin(1e-9).of(4.0)
+  }
+
+  @Test
+  fun printBuffersAreDecodedWhenImported() {
+    // The buffers are kept as UTF-8 bytes until their events are imported.
+    val file = writeTrace(printBundle(1_000_000_000 to "B|1|caf\u00e9\n", 2_000_000_000 to "E\n"))
+    val model = PerfettoModelImporter.importModel(file, PrintlnImportFeedback())
+
+    val slices = model.processes.getValue(1).threads.flatMap { it.slices }
+    assertThat(slices.map { it.name }).containsExactly("caf\u00e9")
+  }
+
+  private fun clockSnapshot(bootTimeNs: Long): PerfettoTrace.TracePacket {
+    fun clock(type: PerfettoTrace.ClockSnapshot.Clock.Type, timestamp: Long) =
+      PerfettoTrace.ClockSnapshot.Clock.newBuilder().setType(type).setTimestamp(timestamp)
+    return PerfettoTrace.TracePacket.newBuilder()
+      .setClockSnapshot(PerfettoTrace.ClockSnapshot.newBuilder()
+                          .addClocks(clock(PerfettoTrace.ClockSnapshot.Clock.Type.BOOTTIME, bootTimeNs))
+                          .addClocks(clock(PerfettoTrace.ClockSnapshot.Clock.Type.MONOTONIC, 10_000_000_000))
+                          .addClocks(clock(PerfettoTrace.ClockSnapshot.Clock.Type.REALTIME, 1_500_000_000_000_000_000)))
+      .build()
+  }
+
+  private fun eventBundle(vararg timestampsNs: Long): PerfettoTrace.TracePacket {
+    val bundle = PerfettoTrace.FtraceEventBundle.newBuilder().setCpu(0)
+    timestampsNs.forEachIndexed { i, timestamp ->
+      bundle.addEvent(PerfettoTrace.FtraceEvent.newBuilder()
+                        .setTimestamp(timestamp)
+                        .setPid(i + 1)
+                        .setSchedSwitch(PerfettoTrace.SchedSwitchFtraceEvent.newBuilder()
+                                          .setPrevPid(i + 1).setPrevComm("thread${i + 1}")
+                                          .setNextPid(i + 2).setNextComm("thread${i + 2}")))
+    }
+    return PerfettoTrace.TracePacket.newBuilder().setFtraceEvents(bundle).build()
+  }
+
+  private fun printBundle(vararg buffers: Pair<Long, String>): PerfettoTrace.TracePacket {
+    val bundle = PerfettoTrace.FtraceEventBundle.newBuilder().setCpu(0)
+    buffers.forEach { (timestamp, buffer) ->
+      bundle.addEvent(PerfettoTrace.FtraceEvent.newBuilder()
+                        .setTimestamp(timestamp)
+                        .setPid(1)
+                        .setPrint(PerfettoTrace.PrintFtraceEvent.newBuilder().setBuf(buffer)))
+    }
+    return PerfettoTrace.TracePacket.newBuilder().setFtraceEvents(bundle).build()
+  }
+
+  private fun writeTrace(vararg packets: PerfettoTrace.TracePacket): File {
+    val file = FileUtil.createTempFile("perfetto", ".trace", true)
+    file.outputStream().use { stream ->
+      val output = CodedOutputStream.newInstance(stream)
+      // The packets of the Trace message, which only has this repeated field.
+      packets.forEach { output.writeMessage(1, it) }
+      output.flush()
+    }
+    return file
+  }
+
+  private fun importThroughSystraceLines(): Model {
+    val producer = PerfettoProducer()
+    assertThat(producer.parseFile(CpuProfilerTestUtils.getTraceFile("perfetto.trace"))).isTrue()
+    return ImportTask(PrintlnImportFeedback()).importBuffer(producer)
+  }
+}
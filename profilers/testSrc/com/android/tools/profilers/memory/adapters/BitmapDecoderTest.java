@@ -19,11 +19,15 @@ import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.
 import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.BOOLEAN;
 import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.BYTE;
 import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.INT;
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import com.google.common.collect.ImmutableSet;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 public class BitmapDecoderTest {
@@ -71,4 +75,84 @@ public class BitmapDecoderTest {
     assertNull(AndroidBitmapDataProvider.createDecoder(badBitmapInstance1));
     assertNull(AndroidBitmapDataProvider.createDecoder(badBitmapInstance2));
   }
+
+  @Test
+  public void thumbnailSamplesPixelsAndOnlyReadsSampledRows() {
+    int width = 300;
+    int height = 200;
+    byte[] pixels = new byte[width * height * 4];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte)(i * 31);
+    }
+    RangedDataProvider dataProvider = new RangedDataProvider(pixels, width, height);
+
+    BufferedImage thumbnail = BitmapDecoder.getThumbnail(dataProvider, 100);
+    assertNotNull(thumbnail);
+    assertThat(thumbnail.getWidth()).isEqualTo(100);
+    assertThat(thumbnail.getHeight()).isEqualTo(67);
+    assertThat(dataProvider.myReadBytes).isEqualTo(67 * width * 4);
+
+    BufferedImage bitmap = BitmapDecoder.getBitmap(dataProvider);
+    assertNotNull(bitmap);
+    for (int y = 0; y < thumbnail.getHeight(); y++) {
+      for (int x = 0; x < thumbnail.getWidth(); x++) {
+        assertThat(thumbnail.getRGB(x, y)).isEqualTo(bitmap.getRGB(x * 3, y * 3));
+      }
+    }
+  }
+
+  @Test
+  public void smallBitmapThumbnailIsFullSize() {
+    RangedDataProvider dataProvider = new RangedDataProvider(new byte[8 * 4 * 4], 8, 4);
+    BufferedImage thumbnail = BitmapDecoder.getThumbnail(dataProvider, 100);
+    assertNotNull(thumbnail);
+    assertThat(thumbnail.getWidth()).isEqualTo(8);
+    assertThat(thumbnail.getHeight()).isEqualTo(4);
+  }
+
+  @Test
+  public void truncatedPixelsAreNotDecoded() {
+    RangedDataProvider dataProvider = new RangedDataProvider(new byte[8 * 4 * 4], 8, 5);
+    assertNull(BitmapDecoder.getBitmap(dataProvider));
+    assertNull(BitmapDecoder.getThumbnail(dataProvider, 2));
+  }
+
+  private static final class RangedDataProvider implements BitmapDecoder.BitmapDataProvider {
+    @NotNull private final byte[] myPixels;
+    private final int myWidth;
+    private final int myHeight;
+    private int myReadBytes;
+
+    private RangedDataProvider(@NotNull byte[] pixels, int width, int height) {
+      myPixels = pixels;
+      myWidth = width;
+      myHeight = height;
+    }
+
+    @Override
+    public BitmapDecoder.PixelFormat getBitmapConfigName() {
+      return BitmapDecoder.PixelFormat.ARGB_8888;
+    }
+
+    @Override
+    public Dimension getDimension() {
+      return new Dimension(myWidth, myHeight);
+    }
+
+    @Override
+    public byte[] getPixelBytes(@NotNull Dimension size) {
+      myReadBytes += myPixels.length;
+      return myPixels;
+    }
+
+    @Override
+    public byte[] getPixelBytes(@NotNull Dimension size, int offset, int length) {
+      if (offset >= myPixels.length) {
+        return null;
+      }
+      byte[] bytes = Arrays.copyOfRange(myPixels, offset, Math.min(offset + length, myPixels.length));
+      myReadBytes += bytes.length;
+      return bytes;
+    }
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.ARRAY;
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.BOOLEAN;
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.BYTE;
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.INT;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class BitmapThumbnailCacheTest {
+  private final FakeCaptureObject myCaptureObject = new FakeCaptureObject.Builder().build();
+
+  @Test
+  public void thumbnailsAreDownscaledAndReused() {
+    BitmapThumbnailCache cache = new BitmapThumbnailCache(Runnable::run, 10, 1000);
+    FakeInstanceObject bitmap = createBitmap(40, 20);
+
+    CompletableFuture<BufferedImage> thumbnail = cache.getThumbnail(myCaptureObject, bitmap);
+    BufferedImage image = thumbnail.join();
+    assertThat(image.getWidth()).isEqualTo(10);
+    assertThat(image.getHeight()).isEqualTo(5);
+    assertThat(cache.getThumbnail(myCaptureObject, bitmap)).isSameAs(thumbnail);
+    assertThat(cache.getCachedPixels()).isEqualTo(50);
+  }
+
+  @Test
+  public void leastRecentlyUsedThumbnailsAreEvicted() {
+    BitmapThumbnailCache cache = new BitmapThumbnailCache(Runnable::run, 10, 250);
+    FakeInstanceObject first = createBitmap(10, 10);
+    FakeInstanceObject second = createBitmap(10, 10);
+    FakeInstanceObject third = createBitmap(10, 10);
+    CompletableFuture<BufferedImage> firstThumbnail = cache.getThumbnail(myCaptureObject, first);
+    CompletableFuture<BufferedImage> secondThumbnail = cache.getThumbnail(myCaptureObject, second);
+    // Makes the first thumbnail the most recently used one.
+    cache.getThumbnail(myCaptureObject, first);
+
+    cache.getThumbnail(myCaptureObject, third);
+    assertThat(cache.getCachedCount()).isEqualTo(2);
+    assertThat(cache.getCachedPixels()).isEqualTo(200);
+    assertThat(cache.getThumbnail(myCaptureObject, first)).isSameAs(firstThumbnail);
+    assertThat(cache.getThumbnail(myCaptureObject, second)).isNotSameAs(secondThumbnail);
+  }
+
+  @Test
+  public void changingCaptureDropsThumbnails() {
+    BitmapThumbnailCache cache = new BitmapThumbnailCache(Runnable::run, 10, 1000);
+    cache.getThumbnail(myCaptureObject, createBitmap(10, 10));
+    assertThat(cache.getCachedCount()).isEqualTo(1);
+
+    FakeCaptureObject otherCapture = new FakeCaptureObject.Builder().build();
+    FakeInstanceObject notBitmap = new FakeInstanceObject.Builder(otherCapture, 1, "java.lang.Object").build();
+    assertThat(cache.getThumbnail(otherCapture, notBitmap).join()).isNull();
+    assertThat(cache.getCachedCount()).isEqualTo(1);
+    assertThat(cache.getCachedPixels()).isEqualTo(0);
+  }
+
+  @Test
+  public void pixelsAreReadOnExecutor() {
+    List<Runnable> tasks = new ArrayList<>();
+    BitmapThumbnailCache cache = new BitmapThumbnailCache(tasks::add, 10, 1000);
+    byte[] pixels = new byte[10 * 10 * 4];
+    CompletableFuture<BufferedImage> thumbnail = cache.getThumbnail(myCaptureObject, createBitmap(10, 10, pixels));
+
+    // getThumbnail doesn't read the instance, so the pixels are the ones the executor finds.
+    Arrays.fill(pixels, (byte)0xff);
+    assertThat(tasks).hasSize(1);
+    tasks.get(0).run();
+    assertThat(thumbnail.join().getRGB(0, 0)).isEqualTo(0xffffffff);
+  }
+
+  private FakeInstanceObject createBitmap(int width, int height) {
+    return createBitmap(width, height, new byte[width * height * 4]);
+  }
+
+  private FakeInstanceObject createBitmap(int width, int height, byte[] pixels) {
+    FakeInstanceObject bitmap = new FakeInstanceObject.Builder(myCaptureObject, 1, AndroidBitmapDataProvider.BITMAP_FQCN)
+      .setFields(Arrays.asList("mBuffer", "mIsMutable", "mWidth", "mHeight")).build();
+    bitmap
+      .setFieldValue("mBuffer", ARRAY,
+                     new FakeInstanceObject.Builder(myCaptureObject, 2, "byte[]").setValueType(ARRAY)
+                       .setArray(BYTE, pixels, pixels.length).build())
+      .setFieldValue("mWidth", INT, width)
+      .setFieldValue("mHeight", INT, height)
+      .setFieldValue("mIsMutable", BOOLEAN, false);
+    return bitmap;
+  }
+}
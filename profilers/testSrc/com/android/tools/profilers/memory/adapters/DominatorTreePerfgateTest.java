@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+/**
+ * Measures computing the {@link DominatorTree} of a generated object graph on one thread and in parallel.
+ */
+public class DominatorTreePerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 5;
+  private static final int NODE_COUNT = 1_000_000;
+  private static final int ROOT_COUNT = 10_000;
+
+  private static final Benchmark ourBenchmark = new Benchmark.Builder("Dominator Tree Timings (ms)")
+    .setProject("Android Studio Profilers")
+    .setDescription("Time (ms) to compute the dominators of a graph of " + NODE_COUNT + " nodes.")
+    .build();
+
+  @Test
+  public void computeDominatorTree() throws Exception {
+    Graph graph = new Graph(NODE_COUNT, new Random(1));
+    ExecutorService sequentialExecutor = MoreExecutors.newDirectExecutorService();
+    ExecutorService parallelExecutor = ForkJoinPool.commonPool();
+
+    Metric sequentialMetric = new Metric("dominator_tree_sequential");
+    Metric parallelMetric = new Metric("dominator_tree_parallel");
+    DominatorTree sequential = null;
+    DominatorTree parallel = null;
+    for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+      long start = System.nanoTime();
+      sequential = graph.computeDominatorTree(sequentialExecutor);
+      sequentialMetric.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+      start = System.nanoTime();
+      parallel = graph.computeDominatorTree(parallelExecutor);
+      parallelMetric.addSamples(ourBenchmark, new Metric.MetricSample(System.currentTimeMillis(),
+                                                                      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+    sequentialMetric.commit();
+    parallelMetric.commit();
+
+    for (int node = 0; node < NODE_COUNT; node++) {
+      assertThat(parallel.getImmediateDominator(node)).isEqualTo(sequential.getImmediateDominator(node));
+      assertThat(parallel.getRetainedSize(node)).isEqualTo(sequential.getRetainedSize(node));
+    }
+  }
+
+  /**
+   * A graph where every node is referenced by a node earlier in it, so that everything is reachable from the roots, plus one or two random
+   * references from anywhere, which share and cycle as in the object graphs of heap dumps.
+   */
+  private static final class Graph {
+    @NotNull private final int[] myPredecessorOffsets;
+    @NotNull private final int[] myPredecessors;
+    @NotNull private final int[] myRoots;
+    @NotNull private final long[] mySizes;
+
+    private Graph(int nodeCount, @NotNull Random random) {
+      myPredecessorOffsets = new int[nodeCount + 1];
+      mySizes = new long[nodeCount];
+      int rootCount = Math.min(ROOT_COUNT, nodeCount);
+      for (int node = 0; node < nodeCount; node++) {
+        int count = node < rootCount ? 0 : 1 + random.nextInt(3) / 2;
+        myPredecessorOffsets[node + 1] = myPredecessorOffsets[node] + count;
+        mySizes[node] = 16 + 8 * random.nextInt(8);
+      }
+      myPredecessors = new int[myPredecessorOffsets[nodeCount]];
+      for (int node = rootCount; node < nodeCount; node++) {
+        int offset = myPredecessorOffsets[node];
+        myPredecessors[offset] = random.nextInt(node);
+        for (int i = offset + 1; i < myPredecessorOffsets[node + 1]; i++) {
+          myPredecessors[i] = random.nextInt(nodeCount);
+        }
+      }
+      myRoots = new int[rootCount];
+      for (int i = 0; i < rootCount; i++) {
+        myRoots[i] = i;
+      }
+    }
+
+    @NotNull
+    private DominatorTree computeDominatorTree(@NotNull ExecutorService executor) throws InterruptedException {
+      return DominatorTree.compute(myPredecessorOffsets, myPredecessors, myRoots, mySizes, executor);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class DominatorTreeTest {
+
+  @Test
+  public void testDominatorsAndRetainedSizes() throws Exception {
+    // 0 is the root, 1 and 2 both reference 3, which is in a cycle with 4. 5 references 3 but is unreachable.
+    DominatorTree tree = compute(new int[][]{{}, {0}, {0}, {1, 2, 4, 5}, {3}, {}}, new int[]{0}, new long[]{1, 2, 4, 8, 16, 32},
+                                 MoreExecutors.newDirectExecutorService());
+
+    assertThat(tree.getImmediateDominator(0)).isEqualTo(DominatorTree.NO_DOMINATOR);
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(4)).isEqualTo(3);
+    assertThat(tree.getImmediateDominator(5)).isEqualTo(DominatorTree.NO_DOMINATOR);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(31);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(3)).isEqualTo(24);
+    assertThat(tree.getRetainedSize(5)).isEqualTo(0);
+    assertThat(tree.getReachableCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void testDepths() throws Exception {
+    // Two roots, 0 -> 2 -> 3 and 1 -> 3: 3 is as deep as its shortest path, and dominated by nothing as it is reachable from both roots.
+    DominatorTree tree = compute(new int[][]{{}, {}, {0}, {2, 1}, {}}, new int[]{0, 1}, new long[]{1, 1, 1, 1, 1},
+                                 MoreExecutors.newDirectExecutorService());
+
+    assertThat(tree.getDepth(0)).isEqualTo(0);
+    assertThat(tree.getDepth(1)).isEqualTo(0);
+    assertThat(tree.getDepth(2)).isEqualTo(1);
+    assertThat(tree.getDepth(3)).isEqualTo(1);
+    assertThat(tree.getDepth(4)).isEqualTo(DominatorTree.UNREACHABLE_DEPTH);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(DominatorTree.NO_DOMINATOR);
+  }
+
+  @Test
+  public void testParallelPassesMatchSequentialPasses() throws Exception {
+    int nodeCount = 100_000;
+    Random random = new Random(1);
+    int[][] predecessors = new int[nodeCount][];
+    long[] sizes = new long[nodeCount];
+    predecessors[0] = new int[0];
+    for (int node = 1; node < nodeCount; node++) {
+      // A parent earlier in the graph, plus references from anywhere which create cycles.
+      predecessors[node] = new int[1 + random.nextInt(3)];
+      predecessors[node][0] = random.nextInt(node);
+      for (int i = 1; i < predecessors[node].length; i++) {
+        predecessors[node][i] = random.nextInt(nodeCount);
+      }
+      sizes[node] = 1 + random.nextInt(100);
+    }
+
+    DominatorTree sequential = compute(predecessors, new int[]{0}, sizes, MoreExecutors.newDirectExecutorService());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      DominatorTree parallel = compute(predecessors, new int[]{0}, sizes, executor);
+      for (int node = 0; node < nodeCount; node++) {
+        assertThat(parallel.getImmediateDominator(node)).isEqualTo(sequential.getImmediateDominator(node));
+        assertThat(parallel.getRetainedSize(node)).isEqualTo(sequential.getRetainedSize(node));
+        assertThat(parallel.getDepth(node)).isEqualTo(sequential.getDepth(node));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testInterruptionStopsBetweenPasses() throws Exception {
+    Thread.currentThread().interrupt();
+    try {
+      compute(new int[][]{{}, {0}}, new int[]{0}, new long[]{1, 1}, MoreExecutors.newDirectExecutorService());
+      fail("Interrupted computations should not complete");
+    }
+    catch (InterruptedException expected) {
+      // The interrupted status is consumed by the check.
+      assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+  }
+
+  @NotNull
+  private static DominatorTree compute(@NotNull int[][] predecessors, @NotNull int[] roots, @NotNull long[] sizes,
+                                       @NotNull ExecutorService executor) throws InterruptedException {
+    int[] offsets = new int[predecessors.length + 1];
+    for (int node = 0; node < predecessors.length; node++) {
+      offsets[node + 1] = offsets[node] + predecessors[node].length;
+    }
+    int[] flattened = new int[offsets[predecessors.length]];
+    for (int node = 0; node < predecessors.length; node++) {
+      System.arraycopy(predecessors[node], 0, flattened, offsets[node], predecessors[node].length);
+    }
+    return DominatorTree.compute(offsets, flattened, roots, sizes, executor);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HeapDumpBufferTest {
+  @Rule public final TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void primitivesAreReadInOrder() {
+    ByteBuffer contents = ByteBuffer.allocate(64);
+    contents.put((byte)7).putChar('c').putShort((short)-3).putInt(42).putLong(1L << 40).putFloat(1.5f).putDouble(-2.25);
+    contents.flip();
+
+    HeapDumpBuffer buffer = HeapDumpBuffer.wrap(contents);
+    assertThat(buffer.readByte()).isEqualTo((byte)7);
+    assertThat(buffer.readChar()).isEqualTo('c');
+    assertThat(buffer.readShort()).isEqualTo((short)-3);
+    assertThat(buffer.readInt()).isEqualTo(42);
+    assertThat(buffer.readLong()).isEqualTo(1L << 40);
+    assertThat(buffer.readFloat()).isEqualTo(1.5f);
+    assertThat(buffer.readDouble()).isEqualTo(-2.25);
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test
+  public void threadsHaveTheirOwnPosition() {
+    ByteBuffer contents = ByteBuffer.allocate(16);
+    for (int i = 0; i < 4; i++) {
+      contents.putInt(i);
+    }
+    contents.flip();
+
+    HeapDumpBuffer buffer = HeapDumpBuffer.wrap(contents);
+    buffer.setPosition(8);
+    CompletableFuture.runAsync(() -> {
+      assertThat(buffer.position()).isEqualTo(0);
+      buffer.setPosition(4);
+      assertThat(buffer.readInt()).isEqualTo(1);
+    }).join();
+    assertThat(buffer.readInt()).isEqualTo(2);
+  }
+
+  @Test
+  public void mappedSequencesAreReadAcrossSegments() throws Exception {
+    byte[] bytes = new byte[10_000];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)i;
+    }
+    File file = myTemporaryFolder.newFile("heap.hprof");
+    Files.write(file.toPath(), bytes);
+
+    // 4 KB segments, so that the sequence spans three of them.
+    HeapDumpBuffer buffer = HeapDumpBuffer.map(file, 12);
+    buffer.setPosition(1000);
+    byte[] sequence = new byte[8000];
+    buffer.readSubSequence(sequence, 500, sequence.length);
+    assertThat(sequence).isEqualTo(Arrays.copyOfRange(bytes, 1500, 9500));
+    assertThat(buffer.position()).isEqualTo(9500);
+
+    // Primitives at the end of a segment are read from its padding.
+    buffer.setPosition(4094);
+    assertThat(buffer.readInt()).isEqualTo(ByteBuffer.wrap(bytes, 4094, 4).getInt());
+    assertThat(buffer.remaining()).isEqualTo(bytes.length - 4098);
+  }
+}
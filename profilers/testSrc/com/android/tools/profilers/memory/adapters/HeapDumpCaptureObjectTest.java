@@ -178,6 +178,41 @@ public class HeapDumpCaptureObjectTest {
     assertNotNull(defaultHeap);
   }
 
+  @Test
+  public void testLazyLoadingComputesRetainedSizesInBackground() throws Exception {
+    myIdeProfilerServices.enableLazyHeapDumpLoading(true);
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA, dumpInfo,
+                                null,
+                                myIdeProfilerServices.getFeatureTracker(), myStage);
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(3), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+
+    // Wait for the retained sizes to be computed on the off-main-thread executor.
+    CountDownLatch retainedSizesLatch = new CountDownLatch(1);
+    capture.getInstanceFilterExecutor().submit(retainedSizesLatch::countDown);
+    retainedSizesLatch.await();
+    assertTrue(capture.hasRetainedSizes());
+
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+    Truth.assertThat(testHeap.getTotalRetainedSize()).isGreaterThan(0L);
+
+    InstanceObject instance0 = findChildClassSetWithName(testHeap, "Class0").getInstancesStream().findFirst().orElse(null);
+    InstanceObject instance1 = findChildClassSetWithName(testHeap, "Class1").getInstancesStream().findFirst().orElse(null);
+    verifyInstance(instance0, "Class0@1 (0x1)", 0, 1, 0);
+    verifyInstance(instance1, "Class1@2 (0x2)", 1, 0, 1);
+    capture.unload();
+  }
+
   @Test
   public void testLoadingFailure() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
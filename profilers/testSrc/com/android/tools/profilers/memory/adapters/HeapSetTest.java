@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping.ARRANGE_BY_CLASS;
+import static com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping.ARRANGE_BY_PACKAGE;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class HeapSetTest {
+  private final FakeCaptureObject myCaptureObject = new FakeCaptureObject.Builder().build();
+
+  @Test
+  public void testRegroupingReusesPreviousPartition() {
+    HeapSet heapSet = new HeapSet(myCaptureObject, "default", 0);
+    heapSet.addDeltaInstanceObject(createInstance(1, "com.foo.Foo"));
+    heapSet.addDeltaInstanceObject(createInstance(2, "com.foo.Bar"));
+    heapSet.addDeltaInstanceObject(createInstance(3, "org.Baz"));
+    List<ClassifierSet> classSets = heapSet.getChildrenClassifierSets();
+    assertThat(classSets).hasSize(3);
+
+    heapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertThat(heapSet.getChildrenClassifierSets().stream().map(ClassifierSet::getName).collect(Collectors.toList()))
+      .containsExactly("com", "org").inOrder();
+    assertThat(heapSet.getReusedGroupingCount()).isEqualTo(0);
+
+    // Switching back reuses the ClassSets partitioned before.
+    heapSet.setClassGrouping(ARRANGE_BY_CLASS);
+    assertThat(heapSet.getReusedGroupingCount()).isEqualTo(1);
+    assertThat(heapSet.getChildrenClassifierSets()).containsExactlyElementsIn(classSets).inOrder();
+    assertThat(heapSet.getTotalObjectCount()).isEqualTo(3);
+    assertThat(heapSet.getRegroupingStats()).startsWith("2 regroupings (1 reused)");
+  }
+
+  @Test
+  public void testAddingInstancesInvalidatesPreviousPartitions() {
+    HeapSet heapSet = new HeapSet(myCaptureObject, "default", 0);
+    heapSet.addDeltaInstanceObject(createInstance(1, "com.foo.Foo"));
+    heapSet.getChildrenClassifierSets();
+    heapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    heapSet.getChildrenClassifierSets();
+
+    heapSet.addDeltaInstanceObject(createInstance(2, "org.Baz"));
+    heapSet.setClassGrouping(ARRANGE_BY_CLASS);
+    assertThat(heapSet.getReusedGroupingCount()).isEqualTo(0);
+    assertThat(heapSet.getChildrenClassifierSets()).hasSize(2);
+    assertThat(heapSet.getTotalObjectCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testLargeHeapIsPartitionedLikeSmallHeaps() {
+    int classCount = 50;
+    int instanceCount = 200_000;
+    HeapSet heapSet = new HeapSet(myCaptureObject, "default", 0);
+    List<List<InstanceObject>> instancesByClass = new ArrayList<>();
+    for (int i = 0; i < classCount; i++) {
+      instancesByClass.add(new ArrayList<>());
+    }
+    for (int i = 0; i < instanceCount; i++) {
+      InstanceObject instance = createInstance(i % classCount, "com.foo.Class" + i % classCount);
+      instancesByClass.get(i % classCount).add(instance);
+      heapSet.addDeltaInstanceObject(instance);
+    }
+
+    List<ClassifierSet> classSets = heapSet.getChildrenClassifierSets();
+    assertThat(classSets).hasSize(classCount);
+    for (int i = 0; i < classCount; i++) {
+      ClassSet classSet = (ClassSet)classSets.get(i);
+      assertThat(classSet.getClassEntry().getClassName()).isEqualTo("com.foo.Class" + i);
+      assertThat(classSet.getTotalObjectCount()).isEqualTo(instanceCount / classCount);
+      assertThat(classSet.getTotalShallowSize()).isEqualTo(8L * instanceCount / classCount);
+      assertThat(classSet.getInstancesStream().collect(Collectors.toList())).containsExactlyElementsIn(instancesByClass.get(i)).inOrder();
+    }
+  }
+
+  private InstanceObject createInstance(long classId, String className) {
+    return new FakeInstanceObject.Builder(myCaptureObject, classId, className).setShallowSize(8).build();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profilers.network.httpdata.HttpData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class HttpDataFetcherTest {
+  private final FakeNetworkConnectionsModel myModel = new FakeNetworkConnectionsModel();
+  private final Range mySelectionRange = new Range();
+  private final Range myDataRange = new Range(0, seconds(100));
+  private final List<HttpData> myLastList = new ArrayList<>();
+  private final List<HttpDataFetcher.Delta> myDeltas = new ArrayList<>();
+
+  @Test
+  public void settledRangesAreNotQueriedAgain() {
+    myModel.add(TestHttpData.newBuilder(1, 2, 4).build());
+    myModel.add(TestHttpData.newBuilder(2, 6, 8).build());
+    createFetcher();
+
+    mySelectionRange.set(seconds(1), seconds(5));
+    assertThat(myLastList.stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L);
+    mySelectionRange.set(seconds(3), seconds(7));
+    assertThat(myLastList.stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L, 2L).inOrder();
+    int queryCount = myModel.myQueryCount;
+
+    mySelectionRange.set(seconds(1), seconds(7));
+    assertThat(myModel.myQueryCount).isEqualTo(queryCount);
+    mySelectionRange.set(seconds(5), seconds(6));
+    assertThat(myModel.myQueryCount).isEqualTo(queryCount);
+    assertThat(myLastList.stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(2L);
+  }
+
+  @Test
+  public void listenersGetDeltas() {
+    myModel.add(TestHttpData.newBuilder(1, 2, 4).build());
+    myModel.add(TestHttpData.newBuilder(2, 6, 8).build());
+    myModel.add(TestHttpData.newBuilder(3, 10, 12).build());
+    createFetcher();
+
+    mySelectionRange.set(seconds(1), seconds(7));
+    HttpDataFetcher.Delta delta = myDeltas.get(myDeltas.size() - 1);
+    assertThat(delta.getAdded().stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L, 2L).inOrder();
+    assertThat(delta.getRemoved()).isEmpty();
+
+    mySelectionRange.set(seconds(5), seconds(11));
+    delta = myDeltas.get(myDeltas.size() - 1);
+    assertThat(delta.getAdded().stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(3L);
+    assertThat(delta.getRemoved().stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L);
+    assertThat(delta.getUpdated()).isEmpty();
+
+    // Nothing changes, so listeners aren't notified.
+    int deltaCount = myDeltas.size();
+    mySelectionRange.set(seconds(5), seconds(10));
+    assertThat(myDeltas).hasSize(deltaCount);
+  }
+
+  @Test
+  public void openConnectionsAreQueriedUntilTheyEnd() {
+    myModel.add(TestHttpData.newBuilder(1, 2, 0).build());
+    createFetcher();
+
+    mySelectionRange.set(seconds(1), seconds(5));
+    assertThat(myLastList).hasSize(1);
+    assertThat(myLastList.get(0).getConnectionEndTimeUs()).isEqualTo(0);
+
+    myModel.add(TestHttpData.newBuilder(1, 2, 3).build());
+    mySelectionRange.set(seconds(1), seconds(6));
+    assertThat(myLastList.get(0).getConnectionEndTimeUs()).isEqualTo(seconds(3));
+    HttpDataFetcher.Delta delta = myDeltas.get(myDeltas.size() - 1);
+    assertThat(delta.getUpdated().stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L);
+
+    // Once it ended, the connection is settled.
+    int queryCount = myModel.myQueryCount;
+    mySelectionRange.set(seconds(1), seconds(4));
+    assertThat(myModel.myQueryCount).isEqualTo(queryCount);
+  }
+
+  @Test
+  public void openConnectionWhichEndedBeforeRangeIsDropped() {
+    myModel.add(TestHttpData.newBuilder(1, 2, 0).build());
+    createFetcher();
+    mySelectionRange.set(seconds(1), seconds(5));
+    assertThat(myLastList).hasSize(1);
+
+    myModel.add(TestHttpData.newBuilder(1, 2, 3).build());
+    mySelectionRange.set(seconds(4), seconds(5));
+    assertThat(myLastList).isEmpty();
+    mySelectionRange.set(seconds(1), seconds(5));
+    assertThat(myLastList.get(0).getConnectionEndTimeUs()).isEqualTo(seconds(3));
+  }
+
+  @Test
+  public void recentDataIsQueriedAgain() {
+    createFetcher();
+    mySelectionRange.set(seconds(95), seconds(100));
+    assertThat(myLastList).isEmpty();
+
+    // Connections may be reported late near the end of the data.
+    myModel.add(TestHttpData.newBuilder(1, 99, 99).build());
+    mySelectionRange.set(seconds(96), seconds(100));
+    assertThat(myLastList).hasSize(1);
+  }
+
+  private void createFetcher() {
+    HttpDataFetcher fetcher = new HttpDataFetcher(myModel, mySelectionRange, myDataRange);
+    fetcher.addListener(new HttpDataFetcher.Listener() {
+      @Override
+      public void onUpdated(@NotNull List<HttpData> httpDataList) {
+        throw new AssertionError("Listeners should get deltas");
+      }
+
+      @Override
+      public void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull HttpDataFetcher.Delta delta) {
+        myLastList.clear();
+        myLastList.addAll(httpDataList);
+        myDeltas.add(delta);
+      }
+    });
+  }
+
+  private static long seconds(long seconds) {
+    return TimeUnit.SECONDS.toMicros(seconds);
+  }
+
+  private static final class FakeNetworkConnectionsModel implements NetworkConnectionsModel {
+    private final Map<Long, HttpData> myConnections = new HashMap<>();
+    private int myQueryCount;
+
+    void add(@NotNull HttpData data) {
+      myConnections.put(data.getId(), data);
+    }
+
+    @NotNull
+    @Override
+    public List<HttpData> getData(@NotNull Range timeCurrentRangeUs) {
+      myQueryCount++;
+      return myConnections.values().stream()
+        .filter(data -> data.getRequestStartTimeUs() <= timeCurrentRangeUs.getMax() &&
+                        (data.getConnectionEndTimeUs() == 0 || data.getConnectionEndTimeUs() >= timeCurrentRangeUs.getMin()))
+        .collect(Collectors.toList());
+    }
+
+    @NotNull
+    @Override
+    public ByteString requestBytes(@NotNull String id) {
+      return ByteString.EMPTY;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profilers.network.httpdata.HttpData;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class HttpDataIntervalTreeTest {
+  @Test
+  public void queryReturnsIntersectingConnectionsInStartOrder() {
+    HttpDataIntervalTree tree = new HttpDataIntervalTree();
+    HttpData late = TestHttpData.newBuilder(1, 10, 12).build();
+    HttpData early = TestHttpData.newBuilder(2, 2, 4).build();
+    HttpData open = TestHttpData.newBuilder(3, 5, 0).build();
+    tree.put(late);
+    tree.put(early);
+    tree.put(open);
+
+    assertThat(tree.query(0, seconds(100))).containsExactly(early, open, late).inOrder();
+    assertThat(tree.query(seconds(4), seconds(4))).containsExactly(early);
+    // Connections which haven't ended yet intersect everything after they start.
+    assertThat(tree.query(seconds(50), seconds(60))).containsExactly(open);
+    assertThat(tree.query(0, seconds(1))).isEmpty();
+  }
+
+  @Test
+  public void putReplacesConnectionWithSameId() {
+    HttpDataIntervalTree tree = new HttpDataIntervalTree();
+    HttpData open = TestHttpData.newBuilder(1, 5, 0).build();
+    HttpData ended = TestHttpData.newBuilder(1, 5, 6).build();
+    assertThat(tree.put(open)).isNull();
+    assertThat(tree.put(ended)).isSameAs(open);
+
+    assertThat(tree.size()).isEqualTo(1);
+    assertThat(tree.get(1)).isSameAs(ended);
+    assertThat(tree.query(seconds(10), seconds(20))).isEmpty();
+    assertThat(tree.remove(1)).isSameAs(ended);
+    assertThat(tree.query(0, seconds(20))).isEmpty();
+  }
+
+  @Test
+  public void queryMatchesLinearScan() {
+    Random random = new Random(0);
+    HttpDataIntervalTree tree = new HttpDataIntervalTree();
+    Map<Long, HttpData> connections = new HashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      long id = random.nextInt(500);
+      if (random.nextInt(5) == 0) {
+        assertThat(tree.remove(id)).isEqualTo(connections.remove(id));
+        continue;
+      }
+      long startS = 1 + random.nextInt(1000);
+      HttpData data = TestHttpData.newBuilder(id, startS, random.nextInt(10) == 0 ? 0 : startS + random.nextInt(20)).build();
+      tree.put(data);
+      connections.put(id, data);
+
+      long minUs = seconds(random.nextInt(1000));
+      long maxUs = minUs + seconds(random.nextInt(50));
+      List<HttpData> expected = connections.values().stream()
+        .filter(c -> c.getRequestStartTimeUs() <= maxUs && (c.getConnectionEndTimeUs() == 0 || c.getConnectionEndTimeUs() >= minUs))
+        .sorted(Comparator.comparingLong(HttpData::getRequestStartTimeUs).thenComparingLong(HttpData::getId))
+        .collect(Collectors.toList());
+      assertThat(tree.query(minUs, maxUs)).containsExactlyElementsIn(expected).inOrder();
+    }
+    assertThat(tree.size()).isEqualTo(connections.size());
+  }
+
+  private static long seconds(long seconds) {
+    return TimeUnit.SECONDS.toMicros(seconds);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profilers.network.httpdata.PayloadStore;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+public class PayloadStoreTest {
+  // Spans several blocks of the store, with a last block which is not full.
+  private static final int LARGE_PAYLOAD_SIZE = 300_000;
+
+  private final PayloadStore myStore = new PayloadStore();
+
+  @After
+  public void tearDown() throws IOException {
+    myStore.close();
+  }
+
+  @Test
+  public void payloadsAreReadBackUnchanged() throws IOException {
+    ByteString text = newTextPayload(LARGE_PAYLOAD_SIZE);
+    ByteString random = newRandomPayload(LARGE_PAYLOAD_SIZE);
+    myStore.put("text", text);
+    myStore.put("random", random);
+    myStore.put("empty", ByteString.EMPTY);
+
+    assertThat(myStore.getBytes("text")).isEqualTo(text);
+    assertThat(myStore.getBytes("random")).isEqualTo(random);
+    assertThat(myStore.getBytes("empty")).isEqualTo(ByteString.EMPTY);
+    assertThat(myStore.getSize("text")).isEqualTo(LARGE_PAYLOAD_SIZE);
+    assertThat(myStore.contains("empty")).isTrue();
+    assertThat(myStore.contains("missing")).isFalse();
+    assertThat(myStore.getSize("missing")).isEqualTo(-1);
+    assertThat(myStore.getBytes("missing")).isEqualTo(ByteString.EMPTY);
+  }
+
+  @Test
+  public void rangesAcrossBlocksAreRead() throws IOException {
+    ByteString random = newRandomPayload(LARGE_PAYLOAD_SIZE);
+    myStore.put("random", random);
+
+    assertThat(myStore.read("random", 65_000, 1_000)).isEqualTo(random.substring(65_000, 66_000));
+    assertThat(myStore.read("random", 100_000, 150_000)).isEqualTo(random.substring(100_000, 250_000));
+    assertThat(myStore.read("random", LARGE_PAYLOAD_SIZE - 10, 100)).isEqualTo(random.substring(LARGE_PAYLOAD_SIZE - 10));
+    assertThat(myStore.read("random", LARGE_PAYLOAD_SIZE, 100)).isEqualTo(ByteString.EMPTY);
+  }
+
+  @Test
+  public void payloadsAreStreamed() throws IOException {
+    ByteString text = newTextPayload(LARGE_PAYLOAD_SIZE);
+    myStore.put("text", text);
+
+    try (InputStream stream = myStore.openStream("text")) {
+      assertThat(FileUtil.loadBytes(stream)).isEqualTo(text.toByteArray());
+    }
+    try (InputStream stream = myStore.openStream("text")) {
+      assertThat(stream.skip(100_000)).isEqualTo(100_000);
+      assertThat(stream.read()).isEqualTo(text.byteAt(100_000) & 0xFF);
+      assertThat(FileUtil.loadBytes(stream)).isEqualTo(text.substring(100_001).toByteArray());
+    }
+    try (InputStream stream = myStore.openStream("missing")) {
+      assertThat(stream.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void identicalPayloadsAreStoredOnceAndCompressed() throws IOException {
+    ByteString text = newTextPayload(LARGE_PAYLOAD_SIZE);
+    myStore.put("first", text);
+    long storedSize = myStore.getStoredSize();
+    assertThat(storedSize).isLessThan((long)LARGE_PAYLOAD_SIZE);
+
+    myStore.put("second", ByteString.copyFrom(text.toByteArray()));
+    // Adding an id twice is ignored.
+    myStore.put("second", text);
+    assertThat(myStore.getPayloadCount()).isEqualTo(2);
+    assertThat(myStore.getPayloadSize()).isEqualTo(2L * LARGE_PAYLOAD_SIZE);
+    assertThat(myStore.getStoredSize()).isEqualTo(storedSize);
+    assertThat(myStore.getBytes("second")).isEqualTo(text);
+  }
+
+  @Test
+  public void closeRemovesPayloads() throws IOException {
+    myStore.put("text", newTextPayload(1_000));
+    myStore.close();
+    assertThat(myStore.contains("text")).isFalse();
+    assertThat(myStore.getStoredSize()).isEqualTo(0);
+
+    // The store can still be used afterwards.
+    ByteString text = newTextPayload(2_000);
+    myStore.put("text", text);
+    assertThat(myStore.getBytes("text")).isEqualTo(text);
+  }
+
+  private static ByteString newTextPayload(int size) {
+    StringBuilder builder = new StringBuilder(size);
+    for (int i = 0; builder.length() < size; i++) {
+      builder.append("{\"id\": ").append(i).append(", \"name\": \"item\"}\n");
+    }
+    return ByteString.copyFromUtf8(builder.substring(0, size));
+  }
+
+  private static ByteString newRandomPayload(int size) {
+    byte[] bytes = new byte[size];
+    new Random(0).nextBytes(bytes);
+    return ByteString.copyFrom(bytes);
+  }
+}
@@ -56,4 +56,23 @@ public class StackFrameParserTest {
     String line = "com.example.android.displayingbitmaps.util.AsyncTask$2.call(AsyncTask.java:313)";
     assertEquals("com.example.android.displayingbitmaps.util.AsyncTask$2", new StackFrameParser(line).getClassName());
   }
+
+  @Test
+  public void getOverflowingLineNumber() {
+    String line = "com.example.android.displayingbitmaps.util.ImageFetcher.downloadUrlToStream(ImageFetcher.java:2147483648)";
+    assertEquals(INVALID_LINE_NUMBER, new StackFrameParser(line).getLineNumber());
+  }
+
+  @Test
+  public void parseFrameInTrace() {
+    String trace = "a.b.Foo.bar(Foo.java:12)\n" +
+                   "com.example.android.displayingbitmaps.util.AsyncTask$2.call(AsyncTask.java:313)\n" +
+                   "c.d.Baz.qux(Baz.java)";
+    int start = trace.indexOf('\n') + 1;
+    StackFrameParser parser = new StackFrameParser(trace, start, trace.indexOf('\n', start));
+    assertEquals("com.example.android.displayingbitmaps.util.AsyncTask$2", parser.getClassName());
+    assertEquals("call", parser.getMethodName());
+    assertEquals("AsyncTask.java", parser.getFileName());
+    assertEquals(313, parser.getLineNumber());
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.stacktrace;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures parsing the frames of stack traces one by one with {@link StackFrameParser} and looking them up in a {@link StackFrameTable}.
+ * The traces are built from a fixed set of distinct frames, as the traces of an app share most of their frames.
+ */
+public class StackFrameTablePerfgateTest {
+  private static final int NUMBER_OF_SAMPLES = 5;
+  private static final int FRAME_COUNT = 1_000_000;
+  private static final int DISTINCT_FRAME_COUNT = 10_000;
+  private static final int FRAMES_PER_TRACE = 50;
+
+  private static final Benchmark ourTimeBenchmark = new Benchmark.Builder("Stack Frame Parsing Timings (ms)")
+    .setProject("Android Studio Profilers")
+    .build();
+  private static final Benchmark ourAllocationBenchmark = new Benchmark.Builder("Stack Frame Parsing Allocations (kb)")
+    .setProject("Android Studio Profilers")
+    .build();
+
+  private static String[] ourTraces;
+
+  @BeforeClass
+  public static void createTraces() {
+    ourTraces = new String[(DISTINCT_FRAME_COUNT + FRAMES_PER_TRACE - 1) / FRAMES_PER_TRACE];
+    for (int i = 0; i < ourTraces.length; i++) {
+      StringBuilder trace = new StringBuilder();
+      for (int frame = i * FRAMES_PER_TRACE; frame < Math.min(DISTINCT_FRAME_COUNT, (i + 1) * FRAMES_PER_TRACE); frame++) {
+        trace.append(String.format("com.example.package%d.SomeClass%d$Inner.someMethod%d(SomeClass%d.java:%d)\n",
+                                   frame % 7, frame, frame, frame, frame));
+      }
+      ourTraces[i] = trace.toString();
+    }
+  }
+
+  @Test
+  public void parseFrames() {
+    Metric parseTime = new Metric("stack_frame_parser_time");
+    Metric parseAllocation = new Metric("stack_frame_parser_allocation");
+    Metric tableTime = new Metric("stack_frame_table_time");
+    Metric tableAllocation = new Metric("stack_frame_table_allocation");
+    for (int run = 0; run < NUMBER_OF_SAMPLES; run++) {
+      long allocated = getAllocatedBytes();
+      long start = System.nanoTime();
+      long checksum = 0;
+      int frames = 0;
+      for (int i = 0; frames < FRAME_COUNT; i++) {
+        for (String line : ourTraces[i % ourTraces.length].split("\\n")) {
+          checksum += new StackFrameParser(line).toCodeLocation().getLineNumber();
+          frames++;
+        }
+      }
+      addSample(parseTime, ourTimeBenchmark, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      addSample(parseAllocation, ourAllocationBenchmark, (getAllocatedBytes() - allocated) / 1024);
+
+      StackFrameTable table = new StackFrameTable();
+      allocated = getAllocatedBytes();
+      start = System.nanoTime();
+      long tableChecksum = 0;
+      frames = 0;
+      for (int i = 0; frames < FRAME_COUNT; i++) {
+        for (CodeLocation location : table.getCodeLocations(ourTraces[i % ourTraces.length])) {
+          tableChecksum += location.getLineNumber();
+          frames++;
+        }
+      }
+      addSample(tableTime, ourTimeBenchmark, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      addSample(tableAllocation, ourAllocationBenchmark, (getAllocatedBytes() - allocated) / 1024);
+
+      assertThat(tableChecksum).isEqualTo(checksum);
+      assertThat(table.getFrameCount()).isEqualTo(DISTINCT_FRAME_COUNT);
+    }
+    parseTime.commit();
+    parseAllocation.commit();
+    tableTime.commit();
+    tableAllocation.commit();
+  }
+
+  private static void addSample(@NotNull Metric metric, @NotNull Benchmark benchmark, long value) {
+    metric.addSamples(benchmark, new Metric.MetricSample(System.currentTimeMillis(), value));
+  }
+
+  /**
+   * @return the bytes allocated by the current thread so far, or 0 if the JVM doesn't tell.
+   */
+  private static long getAllocatedBytes() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.stacktrace;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import org.junit.Test;
+
+public class StackFrameTableTest {
+  private static final String FRAME_1 = "com.example.android.displayingbitmaps.util.ImageFetcher.downloadUrlToStream(ImageFetcher.java:274)";
+  private static final String FRAME_2 = "com.example.android.displayingbitmaps.util.AsyncTask$2.call(AsyncTask.java:313)";
+
+  @Test
+  public void framesAreInterned() {
+    StackFrameTable table = new StackFrameTable();
+    int id = table.intern(FRAME_1);
+    assertThat(table.intern(new StringBuilder(FRAME_1))).isEqualTo(id);
+    assertThat(table.intern("x" + FRAME_1 + "x", 1, FRAME_1.length() + 1)).isEqualTo(id);
+    assertThat(table.intern(FRAME_2)).isNotEqualTo(id);
+    assertThat(table.getFrameCount()).isEqualTo(2);
+
+    assertThat(table.getLine(id)).isEqualTo(FRAME_1);
+    assertThat(table.getCodeLocation(id)).isEqualTo(new StackFrameParser(FRAME_1).toCodeLocation());
+  }
+
+  @Test
+  public void tableGrows() {
+    StackFrameTable table = new StackFrameTable();
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(table.intern("a.b.Foo.method" + i + "(Foo.java:" + i + ")")).isEqualTo(i);
+    }
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(table.intern("a.b.Foo.method" + i + "(Foo.java:" + i + ")")).isEqualTo(i);
+      assertThat(table.getCodeLocation(i).getLineNumber()).isEqualTo(i - 1);
+    }
+  }
+
+  @Test
+  public void tableIsClearedWhenFull() {
+    StackFrameTable table = new StackFrameTable(2);
+    table.intern(FRAME_1);
+    table.intern(FRAME_2);
+    assertThat(table.getFrameCount()).isEqualTo(2);
+
+    String frame3 = "a.b.Foo.method(Foo.java:3)";
+    int id = table.intern(frame3);
+    assertThat(table.getFrameCount()).isEqualTo(1);
+    assertThat(table.getLine(id)).isEqualTo(frame3);
+    assertThat(table.intern(frame3)).isEqualTo(id);
+    assertThat(table.intern(FRAME_1)).isNotEqualTo(id);
+    assertThat(table.getFrameCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void traceIsSplitIntoFrames() {
+    StackFrameTable table = new StackFrameTable();
+    List<CodeLocation> locations = table.getCodeLocations(FRAME_1 + "\n \n" + FRAME_2 + "\n" + FRAME_1 + "\n");
+    assertThat(locations).hasSize(3);
+    assertThat(locations.get(0)).isSameAs(locations.get(2));
+    assertThat(locations.get(1).getClassName()).isEqualTo("com.example.android.displayingbitmaps.util.AsyncTask$2");
+    assertThat(table.getFrameCount()).isEqualTo(2);
+    assertThat(table.getCodeLocations("")).isEmpty();
+  }
+
+  @Test
+  public void malformedFrameIsNotAdded() {
+    StackFrameTable table = new StackFrameTable();
+    try {
+      table.intern("not a frame");
+      fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+    assertThat(table.getFrameCount()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.swingp;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low-overhead alternative to the call trees built by {@link ThreadStat}, meant to be left on to catch intermittent jank.
+ * <p>
+ * Each painting thread records its {@link MethodStat}s into a preallocated ring buffer, without building call trees or
+ * allocating anything per event. A frame is a complete call tree, from the outermost instrumented paint call; when a frame
+ * takes longer than the paint time budget, its events are copied out of the ring buffer and kept, in a compact binary
+ * form, in a bounded queue of slow frames. Frames within the budget are simply overwritten.
+ * <p>
+ * Install a recorder with {@link RenderStatsManager#setFrameRecorder(FrameRecorder)}, and dump the slow frames with
+ * {@link #writeTo(OutputStream)}. The dump format is:
+ * <pre>
+ * int magic, int version, long budgetNs
+ * int classCount, classCount * UTF className
+ * int frameCount, frameCount * frame
+ *
+ * frame: UTF threadName, long threadId, long startTimeNs, long durationNs, boolean truncated, int eventCount, eventCount * event
+ * event: short classIndex, short ownerClassIndex (-1 if unknown), byte depth, int startOffsetUs, int durationUs
+ * </pre>
+ */
+public final class FrameRecorder {
+  static final int MAGIC = 0x53575046; // "SWPF"
+  static final int VERSION = 1;
+
+  public static final long DEFAULT_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(16);
+  /** Number of events each thread's ring buffer holds by default. */
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+  public static final int DEFAULT_MAX_FRAMES = 256;
+
+  /** Calls nested deeper than this are not recorded. Paint call trees are much shallower in practice. */
+  private static final int MAX_DEPTH = 127;
+  private static final int UNKNOWN_CLASS = -1;
+
+  private final long myBudgetNs;
+  private final int myBufferSize;
+  private final int myMaxFrames;
+
+  private final ThreadLocal<ThreadBuffer> myBuffers = new ThreadLocal<ThreadBuffer>() {
+    @Override
+    protected ThreadBuffer initialValue() {
+      return new ThreadBuffer(Thread.currentThread(), myBufferSize);
+    }
+  };
+
+  @NotNull private final Map<Class<?>, Integer> myClassIndices = new ConcurrentHashMap<>();
+  @NotNull private final List<String> myClassNames = new ArrayList<>();
+
+  @NotNull private final ArrayDeque<byte[]> mySlowFrames = new ArrayDeque<>();
+  @NotNull private final AtomicLong myFrameCount = new AtomicLong();
+  @NotNull private final AtomicLong mySlowFrameCount = new AtomicLong();
+  @NotNull private final AtomicLong myDroppedFrameCount = new AtomicLong();
+
+  public FrameRecorder() {
+    this(DEFAULT_BUDGET_NS, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAMES);
+  }
+
+  /**
+   * @param budgetNs   frames taking at least this long are kept
+   * @param bufferSize the number of events each thread can record, rounded up to a power of two; frames with more events
+   *                   keep only their last {@code bufferSize} events
+   * @param maxFrames  the number of slow frames kept until the next dump; older frames are dropped first
+   */
+  public FrameRecorder(long budgetNs, int bufferSize, int maxFrames) {
+    myBudgetNs = budgetNs;
+    myBufferSize = Integer.highestOneBit(Math.max(2, bufferSize) * 2 - 1);
+    myMaxFrames = maxFrames;
+  }
+
+  void push(@NotNull MethodStat methodStat) {
+    myBuffers.get().push(methodStat);
+  }
+
+  /**
+   * @return false if the given stat wasn't pushed to this recorder, e.g. if the recorder was installed in the middle of a frame
+   */
+  boolean pop(@NotNull MethodStat methodStat) {
+    return myBuffers.get().pop(methodStat);
+  }
+
+  /** The number of frames recorded, slow or not. */
+  public long getFrameCount() {
+    return myFrameCount.get();
+  }
+
+  /** The number of frames which exceeded the budget. */
+  public long getSlowFrameCount() {
+    return mySlowFrameCount.get();
+  }
+
+  /** The number of slow frames dropped because the queue of slow frames was full. */
+  public long getDroppedFrameCount() {
+    return myDroppedFrameCount.get();
+  }
+
+  /**
+   * Writes the slow frames recorded since the last dump, and removes them from this recorder.
+   */
+  public void writeTo(@NotNull OutputStream outputStream) throws IOException {
+    List<byte[]> frames;
+    synchronized (mySlowFrames) {
+      frames = new ArrayList<>(mySlowFrames);
+      mySlowFrames.clear();
+    }
+    List<String> classNames;
+    synchronized (myClassNames) {
+      classNames = new ArrayList<>(myClassNames);
+    }
+
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(myBudgetNs);
+    out.writeInt(classNames.size());
+    for (String className : classNames) {
+      out.writeUTF(className);
+    }
+    out.writeInt(frames.size());
+    for (byte[] frame : frames) {
+      out.write(frame);
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads frames written by {@link #writeTo(OutputStream)}.
+   */
+  @NotNull
+  public static List<Frame> read(@NotNull InputStream inputStream) throws IOException {
+    DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("Not a swingp frame dump");
+    }
+    in.readLong(); // budget
+    String[] classNames = new String[in.readInt()];
+    for (int i = 0; i < classNames.length; i++) {
+      classNames[i] = in.readUTF();
+    }
+
+    int frameCount = in.readInt();
+    List<Frame> frames = new ArrayList<>(frameCount);
+    for (int i = 0; i < frameCount; i++) {
+      String threadName = in.readUTF();
+      long threadId = in.readLong();
+      long startTimeNs = in.readLong();
+      long durationNs = in.readLong();
+      boolean truncated = in.readBoolean();
+      int eventCount = in.readInt();
+      List<Event> events = new ArrayList<>(eventCount);
+      for (int j = 0; j < eventCount; j++) {
+        short classIndex = in.readShort();
+        short ownerClassIndex = in.readShort();
+        events.add(new Event(classIndex >= 0 ? classNames[classIndex] : null,
+                             ownerClassIndex >= 0 ? classNames[ownerClassIndex] : null,
+                             in.readByte(), in.readInt(), in.readInt()));
+      }
+      frames.add(new Frame(threadName, threadId, startTimeNs, durationNs, truncated, events));
+    }
+    return frames;
+  }
+
+  private int getClassIndex(@NotNull Class<?> clazz) {
+    Integer index = myClassIndices.get(clazz);
+    if (index != null) {
+      return index;
+    }
+    synchronized (myClassNames) {
+      index = myClassIndices.get(clazz);
+      if (index == null) {
+        if (myClassNames.size() >= Short.MAX_VALUE) {
+          return UNKNOWN_CLASS;
+        }
+        index = myClassNames.size();
+        myClassNames.add(clazz.getName());
+        myClassIndices.put(clazz, index);
+      }
+      return index;
+    }
+  }
+
+  private void addSlowFrame(@NotNull byte[] frame) {
+    mySlowFrameCount.incrementAndGet();
+    synchronized (mySlowFrames) {
+      if (mySlowFrames.size() >= myMaxFrames) {
+        mySlowFrames.removeFirst();
+        myDroppedFrameCount.incrementAndGet();
+      }
+      mySlowFrames.addLast(frame);
+    }
+  }
+
+  /**
+   * Per-thread ring buffer of events, stored in parallel arrays allocated up front. Only accessed by its own thread.
+   */
+  private final class ThreadBuffer {
+    @NotNull private final String myThreadName;
+    private final long myThreadId;
+    private final int myMask;
+
+    private final short[] myClasses;
+    private final short[] myOwnerClasses;
+    private final byte[] myDepths;
+    private final long[] myStartTimes;
+    private final long[] myEndTimes;
+
+    /** The stats whose methods haven't ended yet, and the index of their events. */
+    private final MethodStat[] myStack = new MethodStat[MAX_DEPTH];
+    private final long[] myStackIndices = new long[MAX_DEPTH];
+    private int myDepth;
+    /** The number of stats pushed beyond {@link #MAX_DEPTH} which haven't been popped yet. */
+    private int myUnrecordedDepth;
+
+    /** The index of the next event, and of the first event of the current frame; indices wrap around the buffer. */
+    private long myNextIndex;
+    private long myFrameStartIndex;
+
+    private ThreadBuffer(@NotNull Thread thread, int size) {
+      myThreadName = thread.getName();
+      myThreadId = thread.getId();
+      myMask = size - 1;
+      myClasses = new short[size];
+      myOwnerClasses = new short[size];
+      myDepths = new byte[size];
+      myStartTimes = new long[size];
+      myEndTimes = new long[size];
+    }
+
+    private void push(@NotNull MethodStat methodStat) {
+      if (myDepth >= MAX_DEPTH) {
+        myUnrecordedDepth++;
+        return;
+      }
+
+      long index = myNextIndex++;
+      if (myDepth == 0) {
+        myFrameStartIndex = index;
+      }
+      int slot = (int)(index & myMask);
+      Object owner = methodStat.myOwner.get();
+      myClasses[slot] = (short)getClassIndex(methodStat.getClass());
+      myOwnerClasses[slot] = (short)(owner != null ? getClassIndex(owner.getClass()) : UNKNOWN_CLASS);
+      myDepths[slot] = (byte)myDepth;
+      myStartTimes[slot] = methodStat.getStartTime();
+      myEndTimes[slot] = 0;
+      myStack[myDepth] = methodStat;
+      myStackIndices[myDepth] = index;
+      myDepth++;
+    }
+
+    private boolean pop(@NotNull MethodStat methodStat) {
+      if (myDepth == 0 || myStack[myDepth - 1] != methodStat) {
+        if (myUnrecordedDepth > 0) {
+          myUnrecordedDepth--;
+          return true;
+        }
+        return false;
+      }
+
+      myDepth--;
+      myStack[myDepth] = null;
+      myEndTimes[(int)(myStackIndices[myDepth] & myMask)] = methodStat.getEndTime();
+      if (myDepth == 0) {
+        endFrame(methodStat);
+      }
+      return true;
+    }
+
+    private void endFrame(@NotNull MethodStat root) {
+      myFrameCount.incrementAndGet();
+      long frameStartTime = root.getStartTime();
+      long duration = root.getEndTime() - frameStartTime;
+      if (duration < myBudgetNs) {
+        return;
+      }
+
+      // The frame may have more events than the buffer holds, in which case only the last ones are left.
+      long eventCount = myNextIndex - myFrameStartIndex;
+      boolean truncated = eventCount > myMask + 1;
+      long firstIndex = truncated ? myNextIndex - (myMask + 1) : myFrameStartIndex;
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (int)(myNextIndex - firstIndex) * 13);
+      DataOutputStream out = new DataOutputStream(bytes);
+      try {
+        out.writeUTF(myThreadName);
+        out.writeLong(myThreadId);
+        out.writeLong(frameStartTime);
+        out.writeLong(duration);
+        out.writeBoolean(truncated);
+        out.writeInt((int)(myNextIndex - firstIndex));
+        for (long index = firstIndex; index < myNextIndex; index++) {
+          int slot = (int)(index & myMask);
+          out.writeShort(myClasses[slot]);
+          out.writeShort(myOwnerClasses[slot]);
+          out.writeByte(myDepths[slot]);
+          out.writeInt((int)TimeUnit.NANOSECONDS.toMicros(myStartTimes[slot] - frameStartTime));
+          out.writeInt((int)TimeUnit.NANOSECONDS.toMicros(myEndTimes[slot] - myStartTimes[slot]));
+        }
+      }
+      catch (IOException e) {
+        throw new AssertionError(e); // Can't happen with a ByteArrayOutputStream.
+      }
+      addSlowFrame(bytes.toByteArray());
+    }
+  }
+
+  /**
+   * A frame read back from a dump.
+   */
+  public static final class Frame {
+    @NotNull private final String myThreadName;
+    private final long myThreadId;
+    private final long myStartTimeNs;
+    private final long myDurationNs;
+    private final boolean myTruncated;
+    @NotNull private final List<Event> myEvents;
+
+    private Frame(@NotNull String threadName, long threadId, long startTimeNs, long durationNs, boolean truncated,
+                  @NotNull List<Event> events) {
+      myThreadName = threadName;
+      myThreadId = threadId;
+      myStartTimeNs = startTimeNs;
+      myDurationNs = durationNs;
+      myTruncated = truncated;
+      myEvents = Collections.unmodifiableList(events);
+    }
+
+    @NotNull
+    public String getThreadName() {
+      return myThreadName;
+    }
+
+    public long getThreadId() {
+      return myThreadId;
+    }
+
+    public long getStartTimeNs() {
+      return myStartTimeNs;
+    }
+
+    public long getDurationNs() {
+      return myDurationNs;
+    }
+
+    /** Whether the frame had more events than the ring buffer could hold, in which case only its last events are kept. */
+    public boolean isTruncated() {
+      return myTruncated;
+    }
+
+    /** The events of the frame, in the order their methods were called. */
+    @NotNull
+    public List<Event> getEvents() {
+      return myEvents;
+    }
+  }
+
+  /**
+   * A single instrumented method call of a {@link Frame}.
+   */
+  public static final class Event {
+    @Nullable private final String myStatClass;
+    @Nullable private final String myOwnerClass;
+    private final int myDepth;
+    private final int myStartOffsetUs;
+    private final int myDurationUs;
+
+    private Event(@Nullable String statClass, @Nullable String ownerClass, int depth, int startOffsetUs, int durationUs) {
+      myStatClass = statClass;
+      myOwnerClass = ownerClass;
+      myDepth = depth;
+      myStartOffsetUs = startOffsetUs;
+      myDurationUs = durationUs;
+    }
+
+    /** The class of the {@link MethodStat} which recorded the call, e.g. the name of {@link PaintComponentMethodStat}. */
+    @Nullable
+    public String getStatClass() {
+      return myStatClass;
+    }
+
+    /** The class of the object whose method was called, e.g. the component being painted. */
+    @Nullable
+    public String getOwnerClass() {
+      return myOwnerClass;
+    }
+
+    /** The depth of the call in its frame, 0 being the outermost call. */
+    public int getDepth() {
+      return myDepth;
+    }
+
+    public int getStartOffsetUs() {
+      return myStartOffsetUs;
+    }
+
+    public int getDurationUs() {
+      return myDurationUs;
+    }
+  }
+}
@@ -36,6 +36,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class provides the global and per-thread storage of all call tree bases, which is represented by {@link ThreadStat}.
@@ -52,6 +53,7 @@ public final class RenderStatsManager {
   };
 
   private static volatile boolean ourIsEnabled = false;
+  @Nullable private static volatile FrameRecorder ourFrameRecorder;
 
   /**
    * Enables/disables swingp's collection of stats.
@@ -64,6 +66,20 @@ public final class RenderStatsManager {
     JComponentTreeManager.setEnabled(isEnabled);
   }
 
+  /**
+   * Installs a {@link FrameRecorder}, which records paint calls with a much lower overhead than the call trees collected
+   * when {@link #setIsEnabled(boolean) enabled}, or uninstalls it if null. While a recorder is installed, new call trees
+   * go to the recorder only, so it shouldn't be combined with {@link #setIsEnabled(boolean)}.
+   */
+  public static void setFrameRecorder(@Nullable FrameRecorder recorder) {
+    ourFrameRecorder = recorder;
+  }
+
+  @Nullable
+  public static FrameRecorder getFrameRecorder() {
+    return ourFrameRecorder;
+  }
+
   @VisibleForTesting
   @NotNull
   public static Gson createSwingpGson() {
@@ -131,10 +147,19 @@ public final class RenderStatsManager {
   }
 
   static void push(@NotNull MethodStat methodStat) {
+    FrameRecorder recorder = ourFrameRecorder;
+    if (recorder != null) {
+      recorder.push(methodStat);
+      return;
+    }
     ourThreadStat.get().pushMethod(methodStat);
   }
 
   static void pop(@NotNull MethodStat verification) {
+    FrameRecorder recorder = ourFrameRecorder;
+    if (recorder != null && recorder.pop(verification)) {
+      return;
+    }
     ourThreadStat.get().popMethod(verification);
   }
 }
@@ -15,11 +15,24 @@
  */
 package com.android.tools.swingp.instrumenter;
 
+import com.android.tools.swingp.FrameRecorder;
+import com.android.tools.swingp.RenderStatsManager;
+
 import javax.swing.*;
 import java.awt.*;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.instrument.Instrumentation;
 
+/**
+ * Instrumentation agent. By default, stats are only collected once enabled through {@link RenderStatsManager}; with the
+ * {@code frames=<file>} argument, slow frames are recorded right away with a {@link FrameRecorder}, and written to the
+ * given file when the JVM exits.
+ */
 public class Agent {
+  private static final String FRAMES_ARG = "frames=";
+
   public static void premain(String agentArgs, Instrumentation instrumentation) {
     System.out.println("Starting instrumentation agent.");
     agentmain(agentArgs, instrumentation);
@@ -40,5 +53,23 @@ public class Agent {
     catch (Exception e) {
       System.out.println(e);
     }
+
+    if (agentArgs != null && agentArgs.startsWith(FRAMES_ARG)) {
+      startFrameRecording(agentArgs.substring(FRAMES_ARG.length()));
+    }
+  }
+
+  private static void startFrameRecording(String path) {
+    FrameRecorder recorder = new FrameRecorder();
+    RenderStatsManager.setFrameRecorder(recorder);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try (OutputStream stream = new FileOutputStream(path)) {
+        recorder.writeTo(stream);
+        System.out.println("Wrote " + recorder.getSlowFrameCount() + " slow frames out of " + recorder.getFrameCount() + " to " + path);
+      }
+      catch (IOException e) {
+        System.out.println(e);
+      }
+    }, "Swingp Frame Dump"));
   }
 }
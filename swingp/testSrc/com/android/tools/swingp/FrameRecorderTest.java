@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.swingp;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FrameRecorderTest {
+  @After
+  public void tearDown() {
+    RenderStatsManager.setFrameRecorder(null);
+  }
+
+  @Test
+  public void keepsOnlySlowFrames() throws IOException {
+    FrameRecorder recorder = new FrameRecorder(Long.MAX_VALUE, 16, 16);
+    RenderStatsManager.setFrameRecorder(recorder);
+    paintFrame();
+    paintFrame();
+
+    assertThat(recorder.getFrameCount()).isEqualTo(2);
+    assertThat(recorder.getSlowFrameCount()).isEqualTo(0);
+    assertThat(dump(recorder)).isEmpty();
+  }
+
+  @Test
+  public void writesSlowFrames() throws IOException {
+    FrameRecorder recorder = new FrameRecorder(0, 16, 16);
+    RenderStatsManager.setFrameRecorder(recorder);
+    paintFrame();
+
+    List<FrameRecorder.Frame> frames = dump(recorder);
+    assertThat(frames).hasSize(1);
+    FrameRecorder.Frame frame = frames.get(0);
+    assertThat(frame.getThreadName()).isEqualTo(Thread.currentThread().getName());
+    assertThat(frame.isTruncated()).isFalse();
+    assertThat(frame.getEvents()).hasSize(3);
+    assertThat(frame.getEvents().get(0).getDepth()).isEqualTo(0);
+    assertThat(frame.getEvents().get(1).getDepth()).isEqualTo(1);
+    assertThat(frame.getEvents().get(2).getDepth()).isEqualTo(1);
+    assertThat(frame.getEvents().get(0).getStatClass()).isEqualTo(TestMethodStat.class.getName());
+    assertThat(frame.getEvents().get(0).getOwnerClass()).isEqualTo(FrameRecorderTest.class.getName());
+
+    // Frames are removed once written
+    assertThat(dump(recorder)).isEmpty();
+  }
+
+  @Test
+  public void keepsLastEventsOfLargeFrames() throws IOException {
+    FrameRecorder recorder = new FrameRecorder(0, 2, 16);
+    RenderStatsManager.setFrameRecorder(recorder);
+    paintFrame();
+
+    List<FrameRecorder.Frame> frames = dump(recorder);
+    assertThat(frames).hasSize(1);
+    assertThat(frames.get(0).isTruncated()).isTrue();
+    assertThat(frames.get(0).getEvents()).hasSize(2);
+    assertThat(frames.get(0).getDurationNs()).isAtLeast(0L);
+  }
+
+  @Test
+  public void dropsOldestFramesWhenFull() throws IOException {
+    FrameRecorder recorder = new FrameRecorder(0, 16, 2);
+    RenderStatsManager.setFrameRecorder(recorder);
+    paintFrame();
+    paintFrame();
+    paintFrame();
+
+    assertThat(recorder.getDroppedFrameCount()).isEqualTo(1);
+    assertThat(dump(recorder)).hasSize(2);
+  }
+
+  @Test
+  public void recorderDoesNotBuildCallTrees() {
+    RenderStatsManager.setIsEnabled(true);
+    RenderStatsManager.setFrameRecorder(new FrameRecorder());
+    paintFrame();
+    RenderStatsManager.setFrameRecorder(null);
+    RenderStatsManager.setIsEnabled(false);
+
+    assertThat(RenderStatsManager.getJson().isJsonNull()).isTrue();
+  }
+
+  private void paintFrame() {
+    MethodStat root = new TestMethodStat(this);
+    new TestMethodStat(this).endMethod();
+    new TestMethodStat(this).endMethod();
+    root.endMethod();
+  }
+
+  @NotNull
+  private static List<FrameRecorder.Frame> dump(@NotNull FrameRecorder recorder) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    recorder.writeTo(stream);
+    return FrameRecorder.read(new ByteArrayInputStream(stream.toByteArray()));
+  }
+
+  /**
+   * Trivial extension of {@link MethodStat} (since it's abstract) to test its implementation.
+   */
+  private static final class TestMethodStat extends MethodStat {
+    public TestMethodStat(@NotNull Object owner) {
+      super(owner);
+    }
+  }
+}